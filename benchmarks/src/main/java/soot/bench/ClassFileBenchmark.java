@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2014 RoboVM AB
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/gpl-2.0.html>.
+ */
+package soot.bench;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import soot.G;
+import soot.coffi.ClassFile;
+
+/**
+ * Measures reading all corpus class files with {@link ClassFile}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class ClassFileBenchmark {
+
+    private String[] names;
+    private byte[][] data;
+
+    @Setup
+    public void setup() {
+        G.reset();
+        List<String> classNames = Corpus.classNames();
+        names = classNames.toArray(new String[classNames.size()]);
+        data = new byte[names.length][];
+        for (int i = 0; i < names.length; i++) {
+            data[i] = Corpus.classBytes(names[i]);
+        }
+    }
+
+    @Benchmark
+    public void loadClassFile(Blackhole bh) {
+        for (int i = 0; i < names.length; i++) {
+            ClassFile cf = new ClassFile(names[i]);
+            bh.consume(cf.loadClassFile(new ByteArrayInputStream(data[i])));
+            bh.consume(cf);
+        }
+    }
+
+    @Benchmark
+    public void loadClassFileFromBuffer(Blackhole bh) {
+        for (int i = 0; i < names.length; i++) {
+            ClassFile cf = new ClassFile(names[i]);
+            bh.consume(cf.loadClassFile(ByteBuffer.wrap(data[i])));
+            bh.consume(cf);
+        }
+    }
+
+    @Benchmark
+    public void readClass(Blackhole bh) {
+        for (int i = 0; i < names.length; i++) {
+            ClassFile cf = new ClassFile(names[i]);
+            bh.consume(cf.readClass(new DataInputStream(new ByteArrayInputStream(data[i]))));
+            bh.consume(cf);
+        }
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2014 RoboVM AB
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/gpl-2.0.html>.
+ */
+package soot.bench;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import soot.G;
+import soot.Scene;
+import soot.SourceLocator;
+import soot.coffi.ClassFile;
+
+/**
+ * Measures reading all corpus class files from the class path, through
+ * {@link SourceLocator.FoundFile#inputStream()} and
+ * {@link ClassFile#loadClassFile(java.io.InputStream)}, and through
+ * {@link SourceLocator.FoundFile#byteBuffer()} and
+ * {@link ClassFile#loadClassFile(java.nio.ByteBuffer)}. Unlike
+ * {@link ClassFileBenchmark} this includes the lookup and the reading of the
+ * files, from the benchmarks jar or from a directory.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class ClassFileReadBenchmark {
+
+    private String[] names;
+    private String[] fileNames;
+
+    @Setup
+    public void setup() {
+        G.reset();
+        Scene.v().setSootClassPath(Corpus.classPath());
+        List<String> classNames = Corpus.classNames();
+        names = classNames.toArray(new String[classNames.size()]);
+        fileNames = new String[names.length];
+        for (int i = 0; i < names.length; i++) {
+            fileNames[i] = names[i].replace('.', '/') + ".class";
+        }
+    }
+
+    @Benchmark
+    public void inputStream(Blackhole bh) {
+        for (int i = 0; i < names.length; i++) {
+            SourceLocator.FoundFile ff = SourceLocator.v().lookupInClassPath(fileNames[i]);
+            ClassFile cf = new ClassFile(names[i]);
+            bh.consume(cf.loadClassFile(ff.inputStream()));
+            bh.consume(cf);
+        }
+    }
+
+    @Benchmark
+    public void byteBuffer(Blackhole bh) {
+        for (int i = 0; i < names.length; i++) {
+            SourceLocator.FoundFile ff = SourceLocator.v().lookupInClassPath(fileNames[i]);
+            ClassFile cf = new ClassFile(names[i]);
+            bh.consume(cf.loadClassFile(ff.byteBuffer()));
+            bh.consume(cf);
+        }
+    }
+}
@@ -0,0 +1,272 @@
+/*
+ * Copyright (C) 2014 RoboVM AB
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/gpl-2.0.html>.
+ */
+package soot.bench;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import soot.Body;
+import soot.G;
+import soot.Scene;
+import soot.SootClass;
+import soot.SootMethod;
+import soot.Type;
+import soot.coffi.CFG;
+import soot.coffi.CONSTANT_Utf8_info;
+import soot.coffi.ClassFile;
+import soot.coffi.Util;
+import soot.coffi.method_info;
+import soot.jimple.Jimple;
+import soot.jimple.JimpleBody;
+import soot.options.Options;
+
+/**
+ * The fixed corpus of class files the benchmarks run over. The corpus
+ * consists of the classes in the <code>soot.bench.corpus</code> package,
+ * which are compiled for Java 7 together with the benchmarks and bundled in
+ * the benchmarks jar. Results are only comparable between runs which use the
+ * same corpus class files.
+ */
+public final class Corpus {
+
+    public static final String PACKAGE = "soot.bench.corpus";
+
+    private static List<String> classNames;
+
+    private Corpus() {
+    }
+
+    /**
+     * A method of a corpus class together with its freshly parsed coffi
+     * representation and CFG, ready for {@link CFG#jimplify}.
+     */
+    public static final class CoffiMethod {
+        public final SootMethod method;
+        public final ClassFile classFile;
+        public final method_info info;
+
+        CoffiMethod(SootMethod method, ClassFile classFile, method_info info) {
+            this.method = method;
+            this.classFile = classFile;
+            this.info = info;
+        }
+
+        /**
+         * Converts the CFG of this method into naive Jimple. May only be
+         * called once.
+         */
+        public JimpleBody jimplify() {
+            JimpleBody b = Jimple.v().newBody(method);
+            info.cfg.jimplify(classFile.constant_pool, classFile.this_class,
+                    classFile.bootstrap_methods_attribute, b);
+            return b;
+        }
+    }
+
+    /**
+     * Returns the sorted names of all corpus classes.
+     */
+    public static synchronized List<String> classNames() {
+        if (classNames == null) {
+            List<String> names = new ArrayList<String>();
+            File location = location();
+            String prefix = PACKAGE.replace('.', '/') + '/';
+            if (location.isDirectory()) {
+                File[] files = new File(location, prefix).listFiles();
+                if (files != null) {
+                    for (File f : files) {
+                        addClassName(prefix + f.getName(), names);
+                    }
+                }
+            } else {
+                try {
+                    ZipFile zip = new ZipFile(location);
+                    try {
+                        for (Enumeration<? extends ZipEntry> e = zip.entries(); e.hasMoreElements();) {
+                            String name = e.nextElement().getName();
+                            if (name.startsWith(prefix) && name.indexOf('/', prefix.length()) == -1) {
+                                addClassName(name, names);
+                            }
+                        }
+                    } finally {
+                        zip.close();
+                    }
+                } catch (IOException e) {
+                    throw new RuntimeException("Failed to list corpus classes in " + location, e);
+                }
+            }
+            if (names.isEmpty()) {
+                throw new RuntimeException("No corpus classes found in " + location);
+            }
+            Collections.sort(names);
+            classNames = Collections.unmodifiableList(names);
+        }
+        return classNames;
+    }
+
+    private static void addClassName(String path, List<String> names) {
+        if (path.endsWith(".class")) {
+            names.add(path.substring(0, path.length() - 6).replace('/', '.'));
+        }
+    }
+
+    /**
+     * Returns the directory or jar which contains the corpus classes, for use
+     * as a Soot class path.
+     */
+    public static String classPath() {
+        return location().getPath();
+    }
+
+    private static File location() {
+        try {
+            return new File(Corpus.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+        } catch (URISyntaxException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Returns the contents of the class file of the given corpus class.
+     */
+    public static byte[] classBytes(String className) {
+        String path = "/" + className.replace('.', '/') + ".class";
+        InputStream in = Corpus.class.getResourceAsStream(path);
+        if (in == null) {
+            throw new RuntimeException("Corpus class not found: " + className);
+        }
+        try {
+            try {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                byte[] buf = new byte[4096];
+                int n;
+                while ((n = in.read(buf)) != -1) {
+                    out.write(buf, 0, n);
+                }
+                return out.toByteArray();
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to read corpus class " + className, e);
+        }
+    }
+
+    /**
+     * Resets Soot and loads all corpus classes as application classes. The
+     * classes of the JDK are taken from the default class path and become
+     * phantom classes if they cannot be found.
+     */
+    public static List<SootClass> load() {
+        G.reset();
+        Options.v().set_allow_phantom_refs(true);
+        Options.v().set_whole_program(false);
+        List<SootClass> classes = new ArrayList<SootClass>();
+        for (String className : classNames()) {
+            SootClass c = Scene.v().loadClassAndSupport(className);
+            c.setApplicationClass();
+            classes.add(c);
+        }
+        Scene.v().loadNecessaryClasses();
+        // Jimplification creates phantom references for unresolved members
+        // the same way as CoffiMethodSource does.
+        Scene.v().setPhantomRefs(true);
+        return classes;
+    }
+
+    /**
+     * Returns the concrete methods of the given classes.
+     */
+    public static List<SootMethod> concreteMethods(List<SootClass> classes) {
+        List<SootMethod> result = new ArrayList<SootMethod>();
+        for (SootClass c : classes) {
+            for (SootMethod m : c.getMethods()) {
+                if (m.isConcrete()) {
+                    result.add(m);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the bodies of all concrete methods of the given classes after
+     * the jb pack has been applied.
+     */
+    public static List<Body> bodies(List<SootClass> classes) {
+        List<Body> result = new ArrayList<Body>();
+        for (SootMethod m : concreteMethods(classes)) {
+            result.add(m.retrieveActiveBody());
+        }
+        return result;
+    }
+
+    /**
+     * Parses the class files of the given classes again and builds the coffi
+     * CFGs of all their concrete methods.
+     */
+    public static List<CoffiMethod> coffiMethods(List<SootClass> classes) {
+        List<CoffiMethod> result = new ArrayList<CoffiMethod>();
+        for (SootClass c : classes) {
+            ClassFile cf = new ClassFile(c.getName());
+            if (!cf.loadClassFile(new ByteArrayInputStream(classBytes(c.getName())))) {
+                throw new RuntimeException("Failed to load corpus class " + c.getName());
+            }
+            for (int i = 0; i < cf.methods_count; i++) {
+                method_info mi = cf.methods[i];
+                SootMethod m = findMethod(c, cf, mi);
+                if (!m.isConcrete()) {
+                    continue;
+                }
+                cf.parseMethod(mi);
+                new CFG(mi);
+                result.add(new CoffiMethod(m, cf, mi));
+            }
+        }
+        return result;
+    }
+
+    private static SootMethod findMethod(SootClass c, ClassFile cf, method_info mi) {
+        String descriptor = ((CONSTANT_Utf8_info) cf.constant_pool[mi.descriptor_index]).convert();
+        Type[] types = Util.v().jimpleTypesOfFieldOrMethodDescriptor(descriptor);
+        List<Type> parameterTypes = Arrays.asList(types).subList(0, types.length - 1);
+        return c.getMethod(mi.toName(cf.constant_pool), parameterTypes, types[types.length - 1]);
+    }
+
+    /**
+     * Returns the naive Jimple bodies of all concrete methods of the given
+     * classes, before any jb transformation has been applied.
+     */
+    public static List<JimpleBody> jimpleBodies(List<SootClass> classes) {
+        List<JimpleBody> result = new ArrayList<JimpleBody>();
+        for (CoffiMethod m : coffiMethods(classes)) {
+            result.add(m.jimplify());
+        }
+        return result;
+    }
+}
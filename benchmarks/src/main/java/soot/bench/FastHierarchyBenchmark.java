@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2014 RoboVM AB
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/gpl-2.0.html>.
+ */
+package soot.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import soot.Body;
+import soot.FastHierarchy;
+import soot.Scene;
+import soot.SootClass;
+import soot.SootMethod;
+import soot.Unit;
+import soot.jimple.InstanceInvokeExpr;
+import soot.jimple.SpecialInvokeExpr;
+import soot.jimple.Stmt;
+
+/**
+ * Measures {@link FastHierarchy#resolveConcreteDispatch(SootClass, SootMethod)}
+ * for every virtual and interface call site of the corpus, combined with
+ * every concrete corpus class which may be the receiver of the call.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class FastHierarchyBenchmark {
+
+    private FastHierarchy hierarchy;
+    private SootClass[] receivers;
+    private SootMethod[] methods;
+
+    @Setup
+    public void load() {
+        List<SootClass> classes = Corpus.load();
+        List<Body> bodies = Corpus.bodies(classes);
+        hierarchy = Scene.v().getOrMakeFastHierarchy();
+        List<SootClass> concrete = new ArrayList<SootClass>();
+        for (SootClass c : classes) {
+            if (c.isConcrete()) {
+                concrete.add(c);
+            }
+        }
+        List<SootClass> r = new ArrayList<SootClass>();
+        List<SootMethod> m = new ArrayList<SootMethod>();
+        for (Body b : bodies) {
+            for (Unit u : b.getUnits()) {
+                Stmt s = (Stmt) u;
+                if (!s.containsInvokeExpr() || !(s.getInvokeExpr() instanceof InstanceInvokeExpr)
+                        || s.getInvokeExpr() instanceof SpecialInvokeExpr) {
+                    continue;
+                }
+                SootClass declaring = s.getInvokeExpr().getMethodRef().declaringClass();
+                if (!declaring.isApplicationClass()) {
+                    continue;
+                }
+                SootMethod target = s.getInvokeExpr().getMethod();
+                for (SootClass c : concrete) {
+                    if (hierarchy.canStoreType(c.getType(), declaring.getType())) {
+                        r.add(c);
+                        m.add(target);
+                    }
+                }
+            }
+        }
+        receivers = r.toArray(new SootClass[r.size()]);
+        methods = m.toArray(new SootMethod[m.size()]);
+    }
+
+    @Benchmark
+    public void resolveConcreteDispatch(Blackhole bh) {
+        for (int i = 0; i < receivers.length; i++) {
+            bh.consume(hierarchy.resolveConcreteDispatch(receivers[i], methods[i]));
+        }
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2014 RoboVM AB
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/gpl-2.0.html>.
+ */
+package soot.bench;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import soot.PackManager;
+import soot.Transform;
+import soot.jimple.JimpleBody;
+
+/**
+ * Measures a single transformation of the jb pack on all concrete methods of
+ * the corpus. The input of each transformation is the Jimple produced by the
+ * transformations running before it in {@link soot.JimpleBodyPack}, with the
+ * default phase options. jb.tr uses the fast type resolver unless
+ * use-older-type-assigner is set.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class JimpleBodyPackBenchmark {
+
+    /**
+     * The transformations of the jb pack in the order in which
+     * {@link soot.JimpleBodyPack} applies them.
+     */
+    static final List<String> PHASES = Arrays.asList("jb.tt", "jb.ls", "jb.a", "jb.ule", "jb.tr", "jb.lns",
+            "jb.cp", "jb.dae", "jb.cp-ule", "jb.lp", "jb.ne", "jb.uce");
+
+    @Param({ "jb.ls", "jb.a", "jb.tr", "jb.lp", "jb.cp", "jb.uce" })
+    public String phase;
+
+    private Transform transform;
+    private List<JimpleBody> input;
+    private List<JimpleBody> bodies;
+
+    @Setup(Level.Trial)
+    public void load() {
+        int index = PHASES.indexOf(phase);
+        if (index < 0) {
+            throw new IllegalArgumentException("Not a jb phase: " + phase);
+        }
+        input = Corpus.jimpleBodies(Corpus.load());
+        for (String p : PHASES.subList(0, index)) {
+            Transform t = PackManager.v().getTransform(p);
+            for (JimpleBody b : input) {
+                t.apply(b);
+            }
+        }
+        transform = PackManager.v().getTransform(phase);
+    }
+
+    @Setup(Level.Invocation)
+    public void copyBodies() {
+        bodies = new ArrayList<JimpleBody>(input.size());
+        for (JimpleBody b : input) {
+            bodies.add((JimpleBody) b.clone());
+        }
+    }
+
+    @Benchmark
+    public void apply(Blackhole bh) {
+        for (JimpleBody b : bodies) {
+            transform.apply(b);
+            bh.consume(b);
+        }
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright (C) 2014 RoboVM AB
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/gpl-2.0.html>.
+ */
+package soot.bench;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import soot.SootClass;
+import soot.coffi.CFG;
+
+/**
+ * Measures {@link CFG#jimplify} for all concrete methods of the corpus. The
+ * class files are parsed and the CFGs are built before each invocation since
+ * jimplification consumes them.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class JimplifyBenchmark {
+
+    private List<SootClass> classes;
+    private List<Corpus.CoffiMethod> methods;
+
+    @Setup(Level.Trial)
+    public void load() {
+        classes = Corpus.load();
+    }
+
+    @Setup(Level.Invocation)
+    public void buildCfgs() {
+        methods = Corpus.coffiMethods(classes);
+    }
+
+    @Benchmark
+    public void jimplify(Blackhole bh) {
+        for (Corpus.CoffiMethod m : methods) {
+            bh.consume(m.jimplify());
+        }
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2014 RoboVM AB
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/gpl-2.0.html>.
+ */
+package soot.bench;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import soot.PhaseOptions;
+import soot.Scene;
+import soot.SootClass;
+import soot.Transform;
+import soot.jimple.spark.SparkTransformer;
+
+/**
+ * Measures a complete Spark run, building the pointer assignment graph,
+ * propagating the points-to sets and building the call graph, for every
+ * combination of propagator and points-to set implementation. All concrete
+ * methods of the corpus are entry points and the call graph is built on the
+ * fly. Run with <code>-prof gc</code> to compare the memory allocated per
+ * run.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class SparkBenchmark {
+
+    /**
+     * The propagators which support the on-the-fly call graph. The cycle and
+     * merge propagators do not.
+     */
+    @Param({ "iter", "worklist", "alias", "parallel" })
+    public String propagator;
+
+    @Param({ "hash", "bit", "hybrid", "array", "heintze", "sharedlist", "double", "roaring",
+            "sharedroaring" })
+    public String setImpl;
+
+    private Map<String, String> options;
+
+    /**
+     * Spark adds to the Scene and to its own singletons, so every run starts
+     * from a freshly loaded corpus.
+     */
+    @Setup(Level.Invocation)
+    public void load() {
+        List<SootClass> classes = Corpus.load();
+        Corpus.bodies(classes);
+        Scene.v().setEntryPoints(Corpus.concreteMethods(classes));
+        // cg.spark is not part of the cg pack, so its options are taken from
+        // a transform which is not added to any pack.
+        Transform spark = new Transform("cg.spark", SparkTransformer.v());
+        PhaseOptions.v().setPhaseOption(spark, "enabled:true");
+        PhaseOptions.v().setPhaseOption(spark, "propagator:" + propagator);
+        PhaseOptions.v().setPhaseOption(spark, "set-impl:" + setImpl);
+        options = PhaseOptions.v().getPhaseOptions(spark);
+    }
+
+    @Benchmark
+    public int analyse() {
+        SparkTransformer.v().transform("cg.spark", options);
+        return Scene.v().getCallGraph().size();
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 2014 RoboVM AB
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/gpl-2.0.html>.
+ */
+package soot.bench;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import soot.Body;
+import soot.Scene;
+import soot.toolkits.exceptions.ThrowAnalysis;
+import soot.toolkits.graph.CompactExceptionalUnitGraph;
+import soot.toolkits.graph.ExceptionalUnitGraph;
+
+/**
+ * Measures the construction of {@link ExceptionalUnitGraph} and
+ * {@link CompactExceptionalUnitGraph} for all concrete methods of the corpus,
+ * with and without the edges from excepting units. Run with
+ * <code>-prof gc</code> to compare the memory allocated per graph.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class UnitGraphBenchmark {
+
+    @Param({ "false", "true" })
+    public boolean omitExceptingUnitEdges;
+
+    private List<Body> bodies;
+    private ThrowAnalysis throwAnalysis;
+
+    @Setup
+    public void load() {
+        bodies = Corpus.bodies(Corpus.load());
+        throwAnalysis = Scene.v().getDefaultThrowAnalysis();
+    }
+
+    @Benchmark
+    public void exceptionalUnitGraph(Blackhole bh) {
+        for (Body b : bodies) {
+            bh.consume(new ExceptionalUnitGraph(b, throwAnalysis, omitExceptingUnitEdges));
+        }
+    }
+
+    @Benchmark
+    public void compactExceptionalUnitGraph(Blackhole bh) {
+        for (Body b : bodies) {
+            bh.consume(new CompactExceptionalUnitGraph(b, throwAnalysis, omitExceptingUnitEdges));
+        }
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) 2014 RoboVM AB
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/gpl-2.0.html>.
+ */
+package soot.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import soot.AnySubType;
+import soot.Body;
+import soot.RefType;
+import soot.Scene;
+import soot.SootClass;
+import soot.SootMethod;
+import soot.Unit;
+import soot.jimple.InstanceInvokeExpr;
+import soot.jimple.SpecialInvokeExpr;
+import soot.jimple.Stmt;
+import soot.jimple.toolkits.callgraph.VirtualCalls;
+import soot.util.NumberedString;
+import soot.util.queue.ChunkedQueue;
+import soot.util.queue.QueueReader;
+
+/**
+ * Measures {@link VirtualCalls} for every virtual and interface call site of
+ * the corpus, once as class hierarchy analysis resolves it, with any subtype
+ * of the declared type as receiver, and once for every concrete corpus class
+ * which may be the receiver, as Spark resolves it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class VirtualCallsBenchmark {
+
+    private RefType[] declaredTypes;
+    private NumberedString[] subSigs;
+    private SootMethod[] containers;
+    private RefType[] receivers;
+    private RefType[] receiverDeclaredTypes;
+    private NumberedString[] receiverSubSigs;
+
+    @Setup
+    public void load() {
+        List<SootClass> classes = Corpus.load();
+        List<Body> bodies = Corpus.bodies(classes);
+        List<SootClass> concrete = new ArrayList<SootClass>();
+        for (SootClass c : classes) {
+            if (c.isConcrete()) {
+                concrete.add(c);
+            }
+        }
+        List<RefType> d = new ArrayList<RefType>();
+        List<NumberedString> s = new ArrayList<NumberedString>();
+        List<SootMethod> m = new ArrayList<SootMethod>();
+        List<RefType> r = new ArrayList<RefType>();
+        List<RefType> rd = new ArrayList<RefType>();
+        List<NumberedString> rs = new ArrayList<NumberedString>();
+        for (Body b : bodies) {
+            for (Unit u : b.getUnits()) {
+                Stmt stmt = (Stmt) u;
+                if (!stmt.containsInvokeExpr() || !(stmt.getInvokeExpr() instanceof InstanceInvokeExpr)
+                        || stmt.getInvokeExpr() instanceof SpecialInvokeExpr) {
+                    continue;
+                }
+                SootClass declaring = stmt.getInvokeExpr().getMethodRef().declaringClass();
+                NumberedString subSig = stmt.getInvokeExpr().getMethodRef().getSubSignature();
+                d.add(declaring.getType());
+                s.add(subSig);
+                m.add(b.getMethod());
+                if (!declaring.isApplicationClass()) {
+                    continue;
+                }
+                for (SootClass c : concrete) {
+                    if (Scene.v().getOrMakeFastHierarchy().canStoreType(c.getType(), declaring.getType())) {
+                        r.add(c.getType());
+                        rd.add(declaring.getType());
+                        rs.add(subSig);
+                    }
+                }
+            }
+        }
+        declaredTypes = d.toArray(new RefType[d.size()]);
+        subSigs = s.toArray(new NumberedString[s.size()]);
+        containers = m.toArray(new SootMethod[m.size()]);
+        receivers = r.toArray(new RefType[r.size()]);
+        receiverDeclaredTypes = rd.toArray(new RefType[rd.size()]);
+        receiverSubSigs = rs.toArray(new NumberedString[rs.size()]);
+    }
+
+    @Benchmark
+    public void resolveAnySubType(Blackhole bh) {
+        ChunkedQueue targets = new ChunkedQueue();
+        QueueReader reader = targets.reader();
+        for (int i = 0; i < declaredTypes.length; i++) {
+            VirtualCalls.v().resolve(AnySubType.v(declaredTypes[i]), declaredTypes[i], subSigs[i],
+                    containers[i], targets);
+            while (reader.hasNext()) {
+                bh.consume(reader.next());
+            }
+        }
+    }
+
+    @Benchmark
+    public void resolveReceiver(Blackhole bh) {
+        ChunkedQueue targets = new ChunkedQueue();
+        QueueReader reader = targets.reader();
+        for (int i = 0; i < receivers.length; i++) {
+            VirtualCalls.v().resolve(receivers[i], receiverDeclaredTypes[i], receiverSubSigs[i], null, targets);
+            while (reader.hasNext()) {
+                bh.consume(reader.next());
+            }
+        }
+    }
+}
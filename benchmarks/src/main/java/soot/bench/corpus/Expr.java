@@ -0,0 +1,416 @@
+/*
+ * Copyright (C) 2014 RoboVM AB
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/gpl-2.0.html>.
+ */
+package soot.bench.corpus;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Expression trees with a small class hierarchy. Used as corpus input with
+ * plenty of virtual and interface dispatch.
+ */
+public abstract class Expr {
+
+    public interface Visitor<R> {
+        R visitConst(Const e);
+        R visitVar(Var e);
+        R visitBinary(Binary e);
+        R visitNeg(Neg e);
+        R visitCond(Cond e);
+    }
+
+    public abstract long eval(Map<String, Long> env);
+
+    public abstract <R> R accept(Visitor<R> v);
+
+    public Expr simplify() {
+        return this;
+    }
+
+    public int size() {
+        return 1;
+    }
+
+    public static class Const extends Expr {
+        final long value;
+
+        public Const(long value) {
+            this.value = value;
+        }
+
+        @Override
+        public long eval(Map<String, Long> env) {
+            return value;
+        }
+
+        @Override
+        public <R> R accept(Visitor<R> v) {
+            return v.visitConst(this);
+        }
+
+        @Override
+        public String toString() {
+            return Long.toString(value);
+        }
+    }
+
+    public static class Var extends Expr {
+        final String name;
+
+        public Var(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public long eval(Map<String, Long> env) {
+            Long v = env.get(name);
+            if (v == null) {
+                throw new IllegalStateException("Unbound variable " + name);
+            }
+            return v.longValue();
+        }
+
+        @Override
+        public <R> R accept(Visitor<R> v) {
+            return v.visitVar(this);
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    public abstract static class Binary extends Expr {
+        final Expr left;
+        final Expr right;
+
+        protected Binary(Expr left, Expr right) {
+            this.left = left;
+            this.right = right;
+        }
+
+        protected abstract long apply(long a, long b);
+
+        protected abstract Binary make(Expr l, Expr r);
+
+        public abstract char operator();
+
+        @Override
+        public long eval(Map<String, Long> env) {
+            return apply(left.eval(env), right.eval(env));
+        }
+
+        @Override
+        public Expr simplify() {
+            Expr l = left.simplify();
+            Expr r = right.simplify();
+            if (l instanceof Const && r instanceof Const) {
+                try {
+                    return new Const(apply(((Const) l).value, ((Const) r).value));
+                } catch (ArithmeticException e) {
+                    // Keep the division by zero for run time.
+                }
+            }
+            if (l == left && r == right) {
+                return this;
+            }
+            return make(l, r);
+        }
+
+        @Override
+        public int size() {
+            return 1 + left.size() + right.size();
+        }
+
+        @Override
+        public <R> R accept(Visitor<R> v) {
+            return v.visitBinary(this);
+        }
+
+        @Override
+        public String toString() {
+            return "(" + left + " " + operator() + " " + right + ")";
+        }
+    }
+
+    public static class Add extends Binary {
+        public Add(Expr left, Expr right) {
+            super(left, right);
+        }
+
+        protected long apply(long a, long b) {
+            return a + b;
+        }
+
+        protected Binary make(Expr l, Expr r) {
+            return new Add(l, r);
+        }
+
+        public char operator() {
+            return '+';
+        }
+
+        @Override
+        public Expr simplify() {
+            Expr e = super.simplify();
+            if (e instanceof Add) {
+                Add a = (Add) e;
+                if (a.left instanceof Const && ((Const) a.left).value == 0) {
+                    return a.right;
+                }
+                if (a.right instanceof Const && ((Const) a.right).value == 0) {
+                    return a.left;
+                }
+            }
+            return e;
+        }
+    }
+
+    public static class Sub extends Binary {
+        public Sub(Expr left, Expr right) {
+            super(left, right);
+        }
+
+        protected long apply(long a, long b) {
+            return a - b;
+        }
+
+        protected Binary make(Expr l, Expr r) {
+            return new Sub(l, r);
+        }
+
+        public char operator() {
+            return '-';
+        }
+    }
+
+    public static class Mul extends Binary {
+        public Mul(Expr left, Expr right) {
+            super(left, right);
+        }
+
+        protected long apply(long a, long b) {
+            return a * b;
+        }
+
+        protected Binary make(Expr l, Expr r) {
+            return new Mul(l, r);
+        }
+
+        public char operator() {
+            return '*';
+        }
+
+        @Override
+        public Expr simplify() {
+            Expr e = super.simplify();
+            if (e instanceof Mul) {
+                Mul m = (Mul) e;
+                for (Expr side : new Expr[] { m.left, m.right }) {
+                    if (side instanceof Const) {
+                        long v = ((Const) side).value;
+                        if (v == 0) {
+                            return side;
+                        }
+                        if (v == 1) {
+                            return side == m.left ? m.right : m.left;
+                        }
+                    }
+                }
+            }
+            return e;
+        }
+    }
+
+    public static class Div extends Binary {
+        public Div(Expr left, Expr right) {
+            super(left, right);
+        }
+
+        protected long apply(long a, long b) {
+            if (b == 0) {
+                throw new ArithmeticException("Division by zero");
+            }
+            return a / b;
+        }
+
+        protected Binary make(Expr l, Expr r) {
+            return new Div(l, r);
+        }
+
+        public char operator() {
+            return '/';
+        }
+    }
+
+    public static class Neg extends Expr {
+        final Expr operand;
+
+        public Neg(Expr operand) {
+            this.operand = operand;
+        }
+
+        @Override
+        public long eval(Map<String, Long> env) {
+            return -operand.eval(env);
+        }
+
+        @Override
+        public Expr simplify() {
+            Expr o = operand.simplify();
+            if (o instanceof Const) {
+                return new Const(-((Const) o).value);
+            }
+            if (o instanceof Neg) {
+                return ((Neg) o).operand;
+            }
+            return o == operand ? this : new Neg(o);
+        }
+
+        @Override
+        public int size() {
+            return 1 + operand.size();
+        }
+
+        @Override
+        public <R> R accept(Visitor<R> v) {
+            return v.visitNeg(this);
+        }
+
+        @Override
+        public String toString() {
+            return "-" + operand;
+        }
+    }
+
+    public static class Cond extends Expr {
+        final Expr test;
+        final Expr then;
+        final Expr otherwise;
+
+        public Cond(Expr test, Expr then, Expr otherwise) {
+            this.test = test;
+            this.then = then;
+            this.otherwise = otherwise;
+        }
+
+        @Override
+        public long eval(Map<String, Long> env) {
+            return test.eval(env) != 0 ? then.eval(env) : otherwise.eval(env);
+        }
+
+        @Override
+        public Expr simplify() {
+            Expr t = test.simplify();
+            if (t instanceof Const) {
+                return ((Const) t).value != 0 ? then.simplify() : otherwise.simplify();
+            }
+            return new Cond(t, then.simplify(), otherwise.simplify());
+        }
+
+        @Override
+        public int size() {
+            return 1 + test.size() + then.size() + otherwise.size();
+        }
+
+        @Override
+        public <R> R accept(Visitor<R> v) {
+            return v.visitCond(this);
+        }
+
+        @Override
+        public String toString() {
+            return "(" + test + " ? " + then + " : " + otherwise + ")";
+        }
+    }
+
+    /**
+     * Collects the free variables of an expression in the order of their
+     * first occurrence.
+     */
+    public static class FreeVars implements Visitor<List<String>> {
+        private final List<String> vars = new ArrayList<String>();
+
+        public List<String> visitConst(Const e) {
+            return vars;
+        }
+
+        public List<String> visitVar(Var e) {
+            if (!vars.contains(e.name)) {
+                vars.add(e.name);
+            }
+            return vars;
+        }
+
+        public List<String> visitBinary(Binary e) {
+            e.left.accept(this);
+            return e.right.accept(this);
+        }
+
+        public List<String> visitNeg(Neg e) {
+            return e.operand.accept(this);
+        }
+
+        public List<String> visitCond(Cond e) {
+            e.test.accept(this);
+            e.then.accept(this);
+            return e.otherwise.accept(this);
+        }
+    }
+
+    /**
+     * Counts the nodes of each kind in an expression.
+     */
+    public static class Histogram implements Visitor<Map<String, Integer>> {
+        private final Map<String, Integer> counts = new HashMap<String, Integer>();
+
+        private Map<String, Integer> count(String kind) {
+            Integer c = counts.get(kind);
+            counts.put(kind, c == null ? 1 : c + 1);
+            return counts;
+        }
+
+        public Map<String, Integer> visitConst(Const e) {
+            return count("const");
+        }
+
+        public Map<String, Integer> visitVar(Var e) {
+            return count("var");
+        }
+
+        public Map<String, Integer> visitBinary(Binary e) {
+            e.left.accept(this);
+            e.right.accept(this);
+            return count(String.valueOf(e.operator()));
+        }
+
+        public Map<String, Integer> visitNeg(Neg e) {
+            e.operand.accept(this);
+            return count("neg");
+        }
+
+        public Map<String, Integer> visitCond(Cond e) {
+            e.test.accept(this);
+            e.then.accept(this);
+            e.otherwise.accept(this);
+            return count("cond");
+        }
+    }
+}
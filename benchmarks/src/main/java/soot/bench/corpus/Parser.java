@@ -0,0 +1,254 @@
+/*
+ * Copyright (C) 2014 RoboVM AB
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/gpl-2.0.html>.
+ */
+package soot.bench.corpus;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tokenizer and recursive descent parser for {@link Expr}. Used as corpus
+ * input with switches, loops and exception handlers.
+ */
+public class Parser {
+
+    public static class ParseException extends Exception {
+        private static final long serialVersionUID = 1L;
+        private final int position;
+
+        public ParseException(String message, int position) {
+            super(message + " at " + position);
+            this.position = position;
+        }
+
+        public int getPosition() {
+            return position;
+        }
+    }
+
+    enum Kind {
+        NUMBER, IDENT, OP, LPAREN, RPAREN, QUESTION, COLON, EOF
+    }
+
+    static class Token {
+        final Kind kind;
+        final String text;
+        final int position;
+
+        Token(Kind kind, String text, int position) {
+            this.kind = kind;
+            this.text = text;
+            this.position = position;
+        }
+
+        @Override
+        public String toString() {
+            return kind + "(" + text + ")@" + position;
+        }
+    }
+
+    private final List<Token> tokens;
+    private int index;
+
+    public Parser(String text) throws ParseException {
+        this.tokens = tokenize(new StringReader(text));
+    }
+
+    static List<Token> tokenize(Reader in) throws ParseException {
+        List<Token> result = new ArrayList<Token>();
+        StringBuilder sb = new StringBuilder();
+        int pos = 0;
+        try {
+            int c = in.read();
+            while (c != -1) {
+                int start = pos;
+                switch (c) {
+                case ' ':
+                case '\t':
+                case '\n':
+                case '\r':
+                    c = in.read();
+                    pos++;
+                    continue;
+                case '+':
+                case '-':
+                case '*':
+                case '/':
+                    result.add(new Token(Kind.OP, String.valueOf((char) c), start));
+                    break;
+                case '(':
+                    result.add(new Token(Kind.LPAREN, "(", start));
+                    break;
+                case ')':
+                    result.add(new Token(Kind.RPAREN, ")", start));
+                    break;
+                case '?':
+                    result.add(new Token(Kind.QUESTION, "?", start));
+                    break;
+                case ':':
+                    result.add(new Token(Kind.COLON, ":", start));
+                    break;
+                default:
+                    sb.setLength(0);
+                    if (Character.isDigit(c)) {
+                        while (c != -1 && Character.isDigit(c)) {
+                            sb.append((char) c);
+                            c = in.read();
+                            pos++;
+                        }
+                        result.add(new Token(Kind.NUMBER, sb.toString(), start));
+                        continue;
+                    } else if (Character.isJavaIdentifierStart(c)) {
+                        while (c != -1 && Character.isJavaIdentifierPart(c)) {
+                            sb.append((char) c);
+                            c = in.read();
+                            pos++;
+                        }
+                        result.add(new Token(Kind.IDENT, sb.toString(), start));
+                        continue;
+                    }
+                    throw new ParseException("Unexpected character '" + (char) c + "'", start);
+                }
+                c = in.read();
+                pos++;
+            }
+        } catch (IOException e) {
+            throw new ParseException(e.getMessage(), pos);
+        } finally {
+            try {
+                in.close();
+            } catch (IOException e) {
+            }
+        }
+        result.add(new Token(Kind.EOF, "", pos));
+        return result;
+    }
+
+    private Token peek() {
+        return tokens.get(index);
+    }
+
+    private Token next() {
+        return tokens.get(index++);
+    }
+
+    private Token expect(Kind kind) throws ParseException {
+        Token t = next();
+        if (t.kind != kind) {
+            throw new ParseException("Expected " + kind + " but got " + t.kind, t.position);
+        }
+        return t;
+    }
+
+    public Expr parse() throws ParseException {
+        Expr e = parseConditional();
+        expect(Kind.EOF);
+        return e;
+    }
+
+    private Expr parseConditional() throws ParseException {
+        Expr test = parseAdditive();
+        if (peek().kind == Kind.QUESTION) {
+            next();
+            Expr then = parseConditional();
+            expect(Kind.COLON);
+            Expr otherwise = parseConditional();
+            return new Expr.Cond(test, then, otherwise);
+        }
+        return test;
+    }
+
+    private Expr parseAdditive() throws ParseException {
+        Expr e = parseMultiplicative();
+        while (peek().kind == Kind.OP) {
+            char op = peek().text.charAt(0);
+            if (op != '+' && op != '-') {
+                break;
+            }
+            next();
+            Expr r = parseMultiplicative();
+            e = op == '+' ? new Expr.Add(e, r) : new Expr.Sub(e, r);
+        }
+        return e;
+    }
+
+    private Expr parseMultiplicative() throws ParseException {
+        Expr e = parseUnary();
+        while (peek().kind == Kind.OP) {
+            char op = peek().text.charAt(0);
+            if (op != '*' && op != '/') {
+                break;
+            }
+            next();
+            Expr r = parseUnary();
+            e = op == '*' ? new Expr.Mul(e, r) : new Expr.Div(e, r);
+        }
+        return e;
+    }
+
+    private Expr parseUnary() throws ParseException {
+        Token t = next();
+        switch (t.kind) {
+        case NUMBER:
+            try {
+                return new Expr.Const(Long.parseLong(t.text));
+            } catch (NumberFormatException e) {
+                throw new ParseException("Number too large: " + t.text, t.position);
+            }
+        case IDENT:
+            return new Expr.Var(t.text);
+        case OP:
+            if ("-".equals(t.text)) {
+                return new Expr.Neg(parseUnary());
+            }
+            break;
+        case LPAREN:
+            Expr e = parseConditional();
+            expect(Kind.RPAREN);
+            return e;
+        default:
+            break;
+        }
+        throw new ParseException("Unexpected token " + t, t.position);
+    }
+
+    /**
+     * Parses every line of the given text and returns the simplified
+     * expressions. Lines which cannot be parsed are reported in
+     * {@code errors}.
+     */
+    public static List<Expr> parseAll(String text, List<String> errors) {
+        List<Expr> result = new ArrayList<Expr>();
+        int lineNo = 0;
+        for (String line : text.split("\n")) {
+            lineNo++;
+            if (line.trim().isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            try {
+                result.add(new Parser(line).parse().simplify());
+            } catch (ParseException e) {
+                errors.add(lineNo + ": " + e.getMessage());
+            } catch (RuntimeException e) {
+                errors.add(lineNo + ": internal error: " + e);
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,213 @@
+/*
+ * Copyright (C) 2014 RoboVM AB
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/gpl-2.0.html>.
+ */
+package soot.bench.corpus;
+
+import java.util.Comparator;
+import java.util.Random;
+
+/**
+ * Sorting algorithms on primitive and object arrays. Used as corpus input
+ * with nested loops, many locals of mixed types and monitors.
+ */
+public final class Sorting {
+
+    private static final int INSERTION_SORT_THRESHOLD = 16;
+    private static final Object LOCK = new Object();
+    private static long comparisons;
+
+    private Sorting() {
+    }
+
+    public static void insertionSort(int[] a, int from, int to) {
+        for (int i = from + 1; i < to; i++) {
+            int v = a[i];
+            int j = i - 1;
+            while (j >= from && a[j] > v) {
+                a[j + 1] = a[j];
+                j--;
+            }
+            a[j + 1] = v;
+        }
+    }
+
+    public static void quickSort(int[] a) {
+        quickSort(a, 0, a.length);
+    }
+
+    private static void quickSort(int[] a, int from, int to) {
+        while (to - from > INSERTION_SORT_THRESHOLD) {
+            int mid = (from + to) >>> 1;
+            int pivot = median(a[from], a[mid], a[to - 1]);
+            int i = from;
+            int j = to - 1;
+            while (i <= j) {
+                while (a[i] < pivot) {
+                    i++;
+                }
+                while (a[j] > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    int t = a[i];
+                    a[i] = a[j];
+                    a[j] = t;
+                    i++;
+                    j--;
+                }
+            }
+            if (j - from < to - i) {
+                quickSort(a, from, j + 1);
+                from = i;
+            } else {
+                quickSort(a, i, to);
+                to = j + 1;
+            }
+        }
+        insertionSort(a, from, to);
+    }
+
+    private static int median(int a, int b, int c) {
+        return a < b ? (b < c ? b : a < c ? c : a) : (a < c ? a : b < c ? c : b);
+    }
+
+    public static void heapSort(long[] a) {
+        int n = a.length;
+        for (int i = n / 2 - 1; i >= 0; i--) {
+            siftDown(a, i, n);
+        }
+        for (int end = n - 1; end > 0; end--) {
+            long t = a[0];
+            a[0] = a[end];
+            a[end] = t;
+            siftDown(a, 0, end);
+        }
+    }
+
+    private static void siftDown(long[] a, int i, int n) {
+        long v = a[i];
+        int child;
+        while ((child = 2 * i + 1) < n) {
+            if (child + 1 < n && a[child + 1] > a[child]) {
+                child++;
+            }
+            if (v >= a[child]) {
+                break;
+            }
+            a[i] = a[child];
+            i = child;
+        }
+        a[i] = v;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <T> void mergeSort(T[] a, Comparator<? super T> c) {
+        Object[] tmp = new Object[a.length];
+        mergeSort(a, (T[]) tmp, 0, a.length, c);
+    }
+
+    private static <T> void mergeSort(T[] a, T[] tmp, int from, int to, Comparator<? super T> c) {
+        if (to - from < 2) {
+            return;
+        }
+        int mid = (from + to) >>> 1;
+        mergeSort(a, tmp, from, mid, c);
+        mergeSort(a, tmp, mid, to, c);
+        if (compare(c, a[mid - 1], a[mid]) <= 0) {
+            return;
+        }
+        System.arraycopy(a, from, tmp, from, to - from);
+        int i = from;
+        int j = mid;
+        for (int k = from; k < to; k++) {
+            if (j >= to || i < mid && compare(c, tmp[i], tmp[j]) <= 0) {
+                a[k] = tmp[i++];
+            } else {
+                a[k] = tmp[j++];
+            }
+        }
+    }
+
+    private static <T> int compare(Comparator<? super T> c, T a, T b) {
+        synchronized (LOCK) {
+            comparisons++;
+        }
+        return c.compare(a, b);
+    }
+
+    public static long comparisons() {
+        synchronized (LOCK) {
+            return comparisons;
+        }
+    }
+
+    public static double[] shuffle(double[] a, long seed) {
+        Random r = new Random(seed);
+        for (int i = a.length - 1; i > 0; i--) {
+            int j = r.nextInt(i + 1);
+            double t = a[i];
+            a[i] = a[j];
+            a[j] = t;
+        }
+        return a;
+    }
+
+    public static boolean isSorted(Object array) {
+        if (array instanceof int[]) {
+            int[] a = (int[]) array;
+            for (int i = 1; i < a.length; i++) {
+                if (a[i - 1] > a[i]) {
+                    return false;
+                }
+            }
+            return true;
+        } else if (array instanceof long[]) {
+            long[] a = (long[]) array;
+            for (int i = 1; i < a.length; i++) {
+                if (a[i - 1] > a[i]) {
+                    return false;
+                }
+            }
+            return true;
+        } else if (array instanceof double[]) {
+            double[] a = (double[]) array;
+            for (int i = 1; i < a.length; i++) {
+                if (Double.compare(a[i - 1], a[i]) > 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        throw new IllegalArgumentException("Not a primitive array: " + array);
+    }
+
+    public static int binarySearch(char[] a, char key) {
+        int lo = 0;
+        int hi = a.length - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            char v = a[mid];
+            if (v < key) {
+                lo = mid + 1;
+            } else if (v > key) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(lo + 1);
+    }
+}
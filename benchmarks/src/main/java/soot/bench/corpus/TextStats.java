@@ -0,0 +1,176 @@
+/*
+ * Copyright (C) 2014 RoboVM AB
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/gpl-2.0.html>.
+ */
+package soot.bench.corpus;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Word and character statistics over text. Used as corpus input with string
+ * switches, try-with-resources and floating point code.
+ */
+public class TextStats {
+
+    public enum Category {
+        LETTER, DIGIT, SPACE, PUNCTUATION, OTHER
+    }
+
+    private final Map<String, Integer> words = new TreeMap<String, Integer>();
+    private final int[] categories = new int[Category.values().length];
+    private int lines;
+    private long chars;
+
+    public static Category categorize(char c) {
+        if (Character.isLetter(c)) {
+            return Category.LETTER;
+        }
+        if (Character.isDigit(c)) {
+            return Category.DIGIT;
+        }
+        switch (c) {
+        case ' ':
+        case '\t':
+        case '\n':
+        case '\r':
+        case '\f':
+            return Category.SPACE;
+        case '.':
+        case ',':
+        case ';':
+        case ':':
+        case '!':
+        case '?':
+        case '"':
+        case '\'':
+            return Category.PUNCTUATION;
+        default:
+            return Category.OTHER;
+        }
+    }
+
+    public void addLine(String line) {
+        lines++;
+        chars += line.length();
+        StringBuilder word = new StringBuilder();
+        for (int i = 0; i <= line.length(); i++) {
+            char c = i < line.length() ? line.charAt(i) : ' ';
+            Category cat = categorize(c);
+            if (i < line.length()) {
+                categories[cat.ordinal()]++;
+            }
+            if (cat == Category.LETTER || cat == Category.DIGIT) {
+                word.append(Character.toLowerCase(c));
+            } else if (word.length() > 0) {
+                String w = word.toString();
+                if (!isStopWord(w)) {
+                    Integer n = words.get(w);
+                    words.put(w, n == null ? 1 : n + 1);
+                }
+                word.setLength(0);
+            }
+        }
+    }
+
+    static boolean isStopWord(String w) {
+        switch (w) {
+        case "a":
+        case "an":
+        case "and":
+        case "in":
+        case "is":
+        case "of":
+        case "or":
+        case "the":
+        case "to":
+            return true;
+        default:
+            return false;
+        }
+    }
+
+    public void addFile(File f, String encoding) throws IOException {
+        try (BufferedReader r = new BufferedReader(new InputStreamReader(new FileInputStream(f), encoding))) {
+            String line;
+            while ((line = r.readLine()) != null) {
+                addLine(line);
+            }
+        }
+    }
+
+    public List<String> addFiles(List<File> files) {
+        List<String> errors = new ArrayList<String>();
+        for (File f : files) {
+            try {
+                addFile(f, "UTF-8");
+            } catch (UnsupportedEncodingException e) {
+                errors.add(f + ": " + e.getMessage());
+            } catch (SecurityException e) {
+                errors.add(f + ": access denied");
+            } catch (IOException e) {
+                errors.add(f + ": I/O error: " + e.getMessage());
+            }
+        }
+        return errors;
+    }
+
+    public double averageLineLength() {
+        return lines == 0 ? 0.0 : (double) chars / lines;
+    }
+
+    public float ratio(Category c) {
+        long total = 0;
+        for (int n : categories) {
+            total += n;
+        }
+        return total == 0 ? 0f : categories[c.ordinal()] / (float) total;
+    }
+
+    public List<Map.Entry<String, Integer>> topWords(int n) {
+        List<Map.Entry<String, Integer>> entries = new ArrayList<Map.Entry<String, Integer>>(words.entrySet());
+        Collections.sort(entries, new Comparator<Map.Entry<String, Integer>>() {
+            public int compare(Map.Entry<String, Integer> a, Map.Entry<String, Integer> b) {
+                int c = b.getValue().compareTo(a.getValue());
+                return c != 0 ? c : a.getKey().compareTo(b.getKey());
+            }
+        });
+        return entries.subList(0, Math.min(n, entries.size()));
+    }
+
+    public String summary() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(lines).append(" lines, ").append(chars).append(" chars, ");
+        sb.append(String.format("%.1f", averageLineLength())).append(" chars/line\n");
+        for (Category c : Category.values()) {
+            sb.append(c.name().toLowerCase()).append(": ");
+            sb.append(Math.round(ratio(c) * 1000) / 10.0).append("%\n");
+        }
+        for (Map.Entry<String, Integer> e : topWords(10)) {
+            sb.append(e.getKey()).append('=').append(e.getValue()).append('\n');
+        }
+        return sb.toString();
+    }
+}
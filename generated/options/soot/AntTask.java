@@ -561,6 +561,24 @@ public class AntTask extends MatchingTask {
             addArg("compare-type-assigners:"+(arg?"true":"false"));
           }
       
+          public void setbounded_typing(boolean arg) {
+            addArg("-p");
+            addArg("jb.tr");
+            addArg("bounded-typing:"+(arg?"true":"false"));
+          }
+      
+          public void setmax_typings(String arg) {
+            addArg("-p");
+            addArg("jb.tr");
+            addArg("max-typings:"+arg);
+          }
+      
+          public void settyping_stats(boolean arg) {
+            addArg("-p");
+            addArg("jb.tr");
+            addArg("typing-stats:"+(arg?"true":"false"));
+          }
+      
         }
     
         public Object createp_jb_ulp() {
@@ -582,6 +600,12 @@ public class AntTask extends MatchingTask {
             addArg("unsplit-original-locals:"+(arg?"true":"false"));
           }
       
+          public void setuse_older_colorer(boolean arg) {
+            addArg("-p");
+            addArg("jb.ulp");
+            addArg("use-older-colorer:"+(arg?"true":"false"));
+          }
+      
         }
     
         public Object createp_jb_lns() {
@@ -687,6 +711,12 @@ public class AntTask extends MatchingTask {
             addArg("unsplit-original-locals:"+(arg?"true":"false"));
           }
       
+          public void setuse_older_colorer(boolean arg) {
+            addArg("-p");
+            addArg("jb.lp");
+            addArg("use-older-colorer:"+(arg?"true":"false"));
+          }
+      
         }
     
         public Object createp_jb_ne() {
@@ -1032,6 +1062,12 @@ public class AntTask extends MatchingTask {
             addArg("trim-clinit:"+(arg?"true":"false"));
           }
       
+          public void setcompact_edges(boolean arg) {
+            addArg("-p");
+            addArg("cg");
+            addArg("compact-edges:"+(arg?"true":"false"));
+          }
+      
           public void setjdkver(String arg) {
             addArg("-p");
             addArg("cg");
@@ -1071,6 +1107,12 @@ public class AntTask extends MatchingTask {
             addArg("verbose:"+(arg?"true":"false"));
           }
       
+          public void setparallel(boolean arg) {
+            addArg("-p");
+            addArg("cg.cha");
+            addArg("parallel:"+(arg?"true":"false"));
+          }
+      
         }
     
         public Object createp_cg_spark() {
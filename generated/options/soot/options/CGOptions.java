@@ -142,6 +142,20 @@ public class CGOptions
         return soot.PhaseOptions.getBoolean( options, "trim-clinit" );
     }
     
+    /** Compact Edges --
+    
+     * Store call graph edges in primitive arrays.
+    
+     * When this option is set to true, the call graph keeps its edges 
+     * as rows of int arrays instead of as linked edge objects, and 
+     * makes edge objects only when the edges are iterated over. This 
+     * takes much less memory for large call graphs, at the cost of 
+     * making iteration slower. 
+     */
+    public boolean compact_edges() {
+        return soot.PhaseOptions.getBoolean( options, "compact-edges" );
+    }
+    
     /** JDK version --
     
      * JDK version for native methods.
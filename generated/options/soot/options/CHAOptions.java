@@ -54,5 +54,18 @@ public class CHAOptions
         return soot.PhaseOptions.getBoolean( options, "verbose" );
     }
     
+    /** Parallel --
+    
+     * Resolve the call sites of newly reachable methods in parallel.
+    
+     * Setting this option to true causes the call graph to be built in 
+     * waves. The bodies of the methods found reachable in a wave are 
+     * retrieved, and the virtual call sites in them resolved, on as 
+     * many threads as given by -num-threads.
+     */
+    public boolean parallel() {
+        return soot.PhaseOptions.getBoolean( options, "parallel" );
+    }
+    
 }
         
\ No newline at end of file
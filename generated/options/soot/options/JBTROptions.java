@@ -84,5 +84,48 @@ public class JBTROptions
         return soot.PhaseOptions.getBoolean( options, "compare-type-assigners" );
     }
     
+    /** Bounded typing --
+    
+     * Collapses copied locals and bounds the typings explored.
+    
+     * Runs Ben Bellamy's type assigner in a bounded mode. Locals 
+     * connected by copies are first collapsed into classes which share 
+     * one type, and types are inferred for the classes. At most 
+     * max-typings candidate typings are explored at the same time. 
+     * This bounds the time and memory spent on pathological methods, 
+     * such as some obfuscated code, but the result may need more casts 
+     * than the exact inference would insert. 
+     */
+    public boolean bounded_typing() {
+        return soot.PhaseOptions.getBoolean( options, "bounded-typing" );
+    }
+    
+    /** Maximum typings --
+    
+     * Maximum number of typings explored in bounded mode.
+    
+     * The maximum number of candidate typings which the type assigner 
+     * explores at the same time when bounded-typing is on. It must be 
+     * positive. 
+     */
+    public int max_typings() {
+        return soot.PhaseOptions.getInt( options, "max-typings" );
+    }
+    
+    /** Typing statistics --
+    
+     * Prints per-method statistics of Ben Bellamy's type assigner.
+    
+     * Prints a line for each method typed by Ben Bellamy's type 
+     * assigner, with the number of locals, of classes of locals, of 
+     * typings created, the largest number of typings explored at the 
+     * same time, the number of typings dropped in bounded mode, and the 
+     * time taken. The fields are separated by semicolons and the first 
+     * field is always 'typing', so the lines can be found with grep. 
+     */
+    public boolean typing_stats() {
+        return soot.PhaseOptions.getBoolean( options, "typing-stats" );
+    }
+    
 }
         
\ No newline at end of file
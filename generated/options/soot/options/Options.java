@@ -167,6 +167,28 @@ public class Options extends OptionsBase {
             )
                 debug_resolver = true;
   
+            else if( false
+            || option.equals( "num-threads" )
+            ) {
+                if( !hasMoreOptions() ) {
+                    G.v().out.println( "No value given for option -"+option );
+                    return false;
+                }
+                String value = nextOption();
+    
+                try {
+                    num_threads = Integer.parseInt( value );
+                } catch( NumberFormatException e ) {
+                    G.v().out.println( "Invalid value "+value+" given for option -"+option );
+                    return false;
+                }
+            }
+  
+            else if( false 
+            || option.equals( "parallel-resolver" )
+            )
+                parallel_resolver = true;
+  
             else if( false
             || option.equals( "cp" )
             || option.equals( "soot-class-path" )
@@ -296,6 +318,50 @@ public class Options extends OptionsBase {
             )
                 j2me = true;
   
+            else if( false 
+            || option.equals( "mmap-class-files" )
+            )
+                mmap_class_files = true;
+  
+            else if( false 
+            || option.equals( "lazy-constant-pool" )
+            )
+                lazy_constant_pool = true;
+  
+            else if( false
+            || option.equals( "body-cache-dir" )
+            ) {
+                if( !hasMoreOptions() ) {
+                    G.v().out.println( "No value given for option -"+option );
+                    return false;
+                }
+                String value = nextOption();
+    
+                if( body_cache_dir.length() == 0 )
+                    body_cache_dir = value;
+                else {
+                    G.v().out.println( "Duplicate values "+body_cache_dir+" and "+value+" for option -"+option );
+                    return false;
+                }
+            }
+  
+            else if( false
+            || option.equals( "body-cache-size" )
+            ) {
+                if( !hasMoreOptions() ) {
+                    G.v().out.println( "No value given for option -"+option );
+                    return false;
+                }
+                String value = nextOption();
+    
+                try {
+                    body_cache_size = Integer.parseInt( value );
+                } catch( NumberFormatException e ) {
+                    G.v().out.println( "Invalid value "+value+" given for option -"+option );
+                    return false;
+                }
+            }
+  
             else if( false
             || option.equals( "main-class" )
             ) {
@@ -961,6 +1027,13 @@ public class Options extends OptionsBase {
     private boolean debug_resolver = false;
     public void set_debug_resolver( boolean setting ) { debug_resolver = setting; }
   
+    public int num_threads() { return num_threads; }
+    public void set_num_threads( int setting ) { num_threads = setting; }
+    private int num_threads = 1;
+    public boolean parallel_resolver() { return parallel_resolver; }
+    private boolean parallel_resolver = false;
+    public void set_parallel_resolver( boolean setting ) { parallel_resolver = setting; }
+  
     public String soot_classpath() { return soot_classpath; }
     public void set_soot_classpath( String setting ) { soot_classpath = setting; }
     private String soot_classpath = "";
@@ -1002,6 +1075,20 @@ public class Options extends OptionsBase {
     private boolean j2me = false;
     public void set_j2me( boolean setting ) { j2me = setting; }
   
+    public boolean mmap_class_files() { return mmap_class_files; }
+    private boolean mmap_class_files = false;
+    public void set_mmap_class_files( boolean setting ) { mmap_class_files = setting; }
+  
+    public boolean lazy_constant_pool() { return lazy_constant_pool; }
+    private boolean lazy_constant_pool = false;
+    public void set_lazy_constant_pool( boolean setting ) { lazy_constant_pool = setting; }
+  
+    public String body_cache_dir() { return body_cache_dir; }
+    public void set_body_cache_dir( String setting ) { body_cache_dir = setting; }
+    private String body_cache_dir = "";
+    public int body_cache_size() { return body_cache_size; }
+    public void set_body_cache_size( int setting ) { body_cache_size = setting; }
+    private int body_cache_size = 512;
     public String main_class() { return main_class; }
     public void set_main_class( String setting ) { main_class = setting; }
     private String main_class = "";
@@ -1159,6 +1246,8 @@ public class Options extends OptionsBase {
 +padOpt(" -validate", "Run internal validation on bodies" )
 +padOpt(" -debug", "Print various Soot debugging info" )
 +padOpt(" -debug-resolver", "Print debugging info from SootResolver" )
++padOpt(" -num-threads NUM", "Run body construction and body packs on NUM threads" )
++padOpt(" -parallel-resolver", "Resolve independent classes in parallel" )
 +"\nInput Options:\n"
       
 +padOpt(" -cp PATH -soot-class-path PATH -soot-classpath PATH", "Use PATH as the classpath for finding classes." )
@@ -1174,6 +1263,10 @@ public class Options extends OptionsBase {
 +padOpt(" -allow-phantom-refs", "Allow unresolved classes; may cause errors" )
 +padOpt(" -no-bodies-for-excluded", "Do not load bodies for excluded classes" )
 +padOpt(" -j2me", "Use J2ME mode; changes assignment of types" )
++padOpt(" -mmap-class-files", "Parse class files from memory-mapped or pooled buffers" )
++padOpt(" -lazy-constant-pool", "Decode constant pool strings only when needed" )
++padOpt(" -body-cache-dir DIR", "Cache Jimple bodies from class files in DIR" )
++padOpt(" -body-cache-size MB", "Limit the body cache to MB megabytes" )
 +padOpt(" -main-class CLASS", "Sets the main class for whole-program analysis." )
 +padOpt(" -polyglot", "Use Java 1.4 Polyglot frontend instead of JastAdd" )
 +"\nOutput Options:\n"
@@ -1388,14 +1481,18 @@ public class Options extends OptionsBase {
                 +padOpt( "enabled (true)", "" )
                 +padOpt( "ignore-wrong-staticness (false)", "Ignores errors due to wrong staticness" )
                 +padOpt( "use-older-type-assigner (false)", "Enables the older type assigner" )
-                +padOpt( "compare-type-assigners (false)", "Compares Ben Bellamy's and the older type assigner" );
+                +padOpt( "compare-type-assigners (false)", "Compares Ben Bellamy's and the older type assigner" )
+                +padOpt( "bounded-typing (false)", "Collapses copied locals and bounds the typings explored" )
+                +padOpt( "max-typings (32)", "Maximum number of typings explored in bounded mode" )
+                +padOpt( "typing-stats (false)", "Prints per-method statistics of Ben Bellamy's type assigner" );
     
         if( phaseName.equals( "jb.ulp" ) )
             return "Phase "+phaseName+":\n"+
                 "\nThe Unsplit-originals Local Packer executes only when the \n`use-original-names' option is chosen for the `jb' phase. The \nLocal Packer attempts to minimize the number of local variables \nrequired in a method by reusing the same variable for disjoint \nDU-UD webs. Conceptually, it is the inverse of the Local \nSplitter. "
                 +"\n\nRecognized options (with default values):\n"
                 +padOpt( "enabled (true)", "" )
-                +padOpt( "unsplit-original-locals (true)", "" );
+                +padOpt( "unsplit-original-locals (true)", "" )
+                +padOpt( "use-older-colorer (false)", "Enables the older local colorer" );
     
         if( phaseName.equals( "jb.lns" ) )
             return "Phase "+phaseName+":\n"+
@@ -1430,7 +1527,8 @@ public class Options extends OptionsBase {
                 "\nThe Local Packer attempts to minimize the number of local \nvariables required in a method by reusing the same variable for \ndisjoint DU-UD webs. Conceptually, it is the inverse of the \nLocal Splitter. "
                 +"\n\nRecognized options (with default values):\n"
                 +padOpt( "enabled (false)", "" )
-                +padOpt( "unsplit-original-locals (false)", "" );
+                +padOpt( "unsplit-original-locals (false)", "" )
+                +padOpt( "use-older-colorer (false)", "Enables the older local colorer" );
     
         if( phaseName.equals( "jb.ne" ) )
             return "Phase "+phaseName+":\n"+
@@ -1561,6 +1659,7 @@ public class Options extends OptionsBase {
                 +padOpt( "all-reachable (false)", "Assume all methods of application classes are reachable." )
                 +padOpt( "implicit-entry (true)", "Include methods called implicitly by the VM as entry points" )
                 +padOpt( "trim-clinit (true)", "Removes redundant static initializer calls" )
+                +padOpt( "compact-edges (false)", "Store call graph edges in primitive arrays" )
                 +padOpt( "reflection-log", "Uses a reflection log to resolve reflective calls." )
                 +padOpt( "guards (ignore)", "Describes how to guard the program from unsound assumptions." );
     
@@ -1569,7 +1668,8 @@ public class Options extends OptionsBase {
                 "\nThis phase uses Class Hierarchy Analysis to generate a call \ngraph."
                 +"\n\nRecognized options (with default values):\n"
                 +padOpt( "enabled (true)", "" )
-                +padOpt( "verbose (false)", "Print statistics about the resulting call graph" );
+                +padOpt( "verbose (false)", "Print statistics about the resulting call graph" )
+                +padOpt( "parallel (false)", "Resolve the call sites of newly reachable methods in parallel" );
     
         if( phaseName.equals( "cg.spark" ) )
             return "Phase "+phaseName+":\n"+
@@ -1593,6 +1693,7 @@ public class Options extends OptionsBase {
                 +padOpt( "simplify-offline (false)", "Collapse single-entry subgraphs of the PAG" )
                 +padOpt( "simplify-sccs (false)", "Collapse strongly-connected components of the PAG" )
                 +padOpt( "ignore-types-for-sccs (false)", "Ignore declared types when determining node equivalence for SCCs" )
+                +padOpt( "compact-edges (false)", "Store PAG edges as arrays of node numbers" )
                 +padOpt( "propagator", "Select propagation algorithm" )
                 +padVal( "iter", "Simple iterative algorithm" )
                 
@@ -1606,6 +1707,8 @@ public class Options extends OptionsBase {
                 
                 +padVal( "none", "Disable propagation" )
                 
+                +padVal( "parallel", "Worklist algorithm propagating in parallel waves" )
+                
                 +padOpt( "set-impl", "Select points-to set implementation" )
                 +padVal( "hash", "Use Java HashSet" )
                 
@@ -1621,6 +1724,10 @@ public class Options extends OptionsBase {
                 
                 +padVal( "double (default)", "Double set representation for incremental propagation" )
                 
+                +padVal( "roaring", "Compressed bitmap representation" )
+                
+                +padVal( "sharedroaring", "Compressed bitmap representation sharing equal sets" )
+                
                 +padOpt( "double-set-old", "Select implementation of points-to set for old part of double set" )
                 +padVal( "hash", "Use Java HashSet" )
                 
@@ -1679,7 +1786,8 @@ public class Options extends OptionsBase {
                 +padOpt( "geom-trans (false)", "Transform to context-insensitive result" )
                 +padOpt( "geom-frac-base (40)", "Fractional parameter for precision/performance trade-off" )
                 +padOpt( "geom-blocking (true)", "Enable blocking strategy for recursive calls" )
-                +padOpt( "geom-runs (1)", "Iterations of analysis" );
+                +padOpt( "geom-runs (1)", "Iterations of analysis" )
+                +padOpt( "geom-parallel (false)", "Solve independent parts of the constraint graph concurrently" );
     
         if( phaseName.equals( "cg.paddle" ) )
             return "Phase "+phaseName+":\n"+
@@ -2382,12 +2490,16 @@ public class Options extends OptionsBase {
                 +"enabled "
                 +"ignore-wrong-staticness "
                 +"use-older-type-assigner "
-                +"compare-type-assigners ";
+                +"compare-type-assigners "
+                +"bounded-typing "
+                +"max-typings "
+                +"typing-stats ";
     
         if( phaseName.equals( "jb.ulp" ) )
             return ""
                 +"enabled "
-                +"unsplit-original-locals ";
+                +"unsplit-original-locals "
+                +"use-older-colorer ";
     
         if( phaseName.equals( "jb.lns" ) )
             return ""
@@ -2412,7 +2524,8 @@ public class Options extends OptionsBase {
         if( phaseName.equals( "jb.lp" ) )
             return ""
                 +"enabled "
-                +"unsplit-original-locals ";
+                +"unsplit-original-locals "
+                +"use-older-colorer ";
     
         if( phaseName.equals( "jb.ne" ) )
             return ""
@@ -2505,13 +2618,15 @@ public class Options extends OptionsBase {
                 +"all-reachable "
                 +"implicit-entry "
                 +"trim-clinit "
+                +"compact-edges "
                 +"reflection-log "
                 +"guards ";
     
         if( phaseName.equals( "cg.cha" ) )
             return ""
                 +"enabled "
-                +"verbose ";
+                +"verbose "
+                +"parallel ";
     
         if( phaseName.equals( "cg.spark" ) )
             return ""
@@ -2533,6 +2648,7 @@ public class Options extends OptionsBase {
                 +"simplify-offline "
                 +"simplify-sccs "
                 +"ignore-types-for-sccs "
+                +"compact-edges "
                 +"propagator "
                 +"set-impl "
                 +"double-set-old "
@@ -2559,7 +2675,8 @@ public class Options extends OptionsBase {
                 +"geom-trans "
                 +"geom-frac-base "
                 +"geom-blocking "
-                +"geom-runs ";
+                +"geom-runs "
+                +"geom-parallel ";
     
         if( phaseName.equals( "cg.paddle" ) )
             return ""
@@ -2986,12 +3103,16 @@ public class Options extends OptionsBase {
               +"enabled:true "
               +"ignore-wrong-staticness:false "
               +"use-older-type-assigner:false "
-              +"compare-type-assigners:false ";
+              +"compare-type-assigners:false "
+              +"bounded-typing:false "
+              +"max-typings:32 "
+              +"typing-stats:false ";
     
         if( phaseName.equals( "jb.ulp" ) )
             return ""
               +"enabled:true "
-              +"unsplit-original-locals:true ";
+              +"unsplit-original-locals:true "
+              +"use-older-colorer:false ";
     
         if( phaseName.equals( "jb.lns" ) )
             return ""
@@ -3016,7 +3137,8 @@ public class Options extends OptionsBase {
         if( phaseName.equals( "jb.lp" ) )
             return ""
               +"enabled:false "
-              +"unsplit-original-locals:false ";
+              +"unsplit-original-locals:false "
+              +"use-older-colorer:false ";
     
         if( phaseName.equals( "jb.ne" ) )
             return ""
@@ -3109,12 +3231,14 @@ public class Options extends OptionsBase {
               +"all-reachable:false "
               +"implicit-entry:true "
               +"trim-clinit:true "
+              +"compact-edges:false "
               +"guards:ignore ";
     
         if( phaseName.equals( "cg.cha" ) )
             return ""
               +"enabled:true "
-              +"verbose:false ";
+              +"verbose:false "
+              +"parallel:false ";
     
         if( phaseName.equals( "cg.spark" ) )
             return ""
@@ -3136,6 +3260,7 @@ public class Options extends OptionsBase {
               +"simplify-offline:false "
               +"simplify-sccs:false "
               +"ignore-types-for-sccs:false "
+              +"compact-edges:false "
               +"propagator:worklist "
               +"set-impl:double "
               +"double-set-old:hybrid "
@@ -3164,7 +3289,8 @@ public class Options extends OptionsBase {
               +"geom-trans:false "
               +"geom-frac-base:40 "
               +"geom-blocking:true "
-              +"geom-runs:1 ";
+              +"geom-runs:1 "
+              +"geom-parallel:false ";
     
         if( phaseName.equals( "cg.paddle" ) )
             return ""
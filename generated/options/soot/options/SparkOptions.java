@@ -274,6 +274,21 @@ public class SparkOptions {
         return soot.PhaseOptions.getBoolean(options, "ignore-types-for-sccs");
     }
 
+    /**
+     * Compact Edges --
+     * Store PAG edges as arrays of node numbers.
+     *
+     * When this option is set to true, the edges of the pointer 
+     * assignment graph are stored as arrays of node numbers, which are 
+     * compacted into a single array per kind of edge once the graph 
+     * has been built, instead of in hash maps of node sets. This takes 
+     * much less memory for large graphs, but looking up the edges of 
+     * a node allocates a new array.
+     */
+    public boolean compact_edges() {
+        return soot.PhaseOptions.getBoolean(options, "compact-edges");
+    }
+
     /**
      * Dump HTML --
      * Dump pointer assignment graph to HTML for debugging.
@@ -393,9 +408,12 @@ public class SparkOptions {
      * After running Spark, refine points-to sets on demand with 
      * context information.
      *
-     * When this option is set to true, Manu Sridharan's demand-driven, 
-     * refinement-based points-to analysis (PLDI 06) is applied after 
-     * Spark was run.
+     * When this option is set to true, the points-to queries for 
+     * locals are answered after Spark was run by a demand-driven 
+     * traversal of the pointer assignment graph, which matches the 
+     * returns of methods with their call sites. A query which 
+     * traverses more nodes than allowed is answered with the Spark 
+     * points-to set.
      */
     public boolean cs_demand() {
         return soot.PhaseOptions.getBoolean(options, "cs-demand");
@@ -530,6 +548,21 @@ public class SparkOptions {
         return soot.PhaseOptions.getInt(options, "geom-runs");
     }
 
+    /**
+     * Parallel solving --
+     * Solve independent parts of the constraint graph concurrently.
+     *
+     * When this option is on, the pointers are split into partitions 
+     * which cannot exchange points-to facts, and the partitions are 
+     * solved concurrently on the number of threads given by the 
+     * num-threads option. The result is the same as the one of the 
+     * sequential solver. With geom-eval, the sizes and solving times 
+     * of the partitions are reported.
+     */
+    public boolean geom_parallel() {
+        return soot.PhaseOptions.getBoolean(options, "geom-parallel");
+    }
+
     /**
      * Verbose dump file --
      * Filename for detailed execution log.
@@ -562,6 +595,7 @@ public class SparkOptions {
     public static final int propagator_merge = 4;
     public static final int propagator_alias = 5;
     public static final int propagator_none = 6;
+    public static final int propagator_parallel = 7;
 
     /**
      * Propagator --
@@ -586,6 +620,8 @@ public class SparkOptions {
             return propagator_alias;
         if (s.equalsIgnoreCase("none"))
             return propagator_none;
+        if (s.equalsIgnoreCase("parallel"))
+            return propagator_parallel;
 
         throw new RuntimeException(String.format("Invalid value %s of phase option propagator", s));
     }
@@ -597,6 +633,8 @@ public class SparkOptions {
     public static final int set_impl_heintze = 5;
     public static final int set_impl_sharedlist = 6;
     public static final int set_impl_double = 7;
+    public static final int set_impl_roaring = 8;
+    public static final int set_impl_sharedroaring = 9;
 
     /**
      * Set Implementation --
@@ -623,6 +661,10 @@ public class SparkOptions {
             return set_impl_sharedlist;
         if (s.equalsIgnoreCase("double"))
             return set_impl_double;
+        if (s.equalsIgnoreCase("roaring"))
+            return set_impl_roaring;
+        if (s.equalsIgnoreCase("sharedroaring"))
+            return set_impl_sharedroaring;
 
         throw new RuntimeException(String.format("Invalid value %s of phase option set-impl", s));
     }
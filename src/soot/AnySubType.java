@@ -40,10 +40,12 @@ public class AnySubType extends RefLikeType
     }
 
     public static AnySubType v( RefType base ) {
-        if( base.getAnySubType() == null ) {
-            base.setAnySubType( new AnySubType( base ) );
+        synchronized (base) {
+            if( base.getAnySubType() == null ) {
+                base.setAnySubType( new AnySubType( base ) );
+            }
+            return base.getAnySubType();
         }
-        return base.getAnySubType();
     }
     
     public String toString()
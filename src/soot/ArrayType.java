@@ -78,10 +78,12 @@ public class ArrayType extends RefLikeType
         } else {
             elementType = ArrayType.v( baseType, numDimensions-1 );
         }
-        ret = elementType.getArrayType();
-        if( ret == null ) {
-            ret = new ArrayType(baseType, numDimensions);
-            elementType.setArrayType( ret );
+        synchronized (elementType) {
+            ret = elementType.getArrayType();
+            if( ret == null ) {
+                ret = new ArrayType(baseType, numDimensions);
+                elementType.setArrayType( ret );
+            }
         }
         return ret;
     }
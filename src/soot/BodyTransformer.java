@@ -27,6 +27,8 @@ package soot;
 
 import java.util.*;
 
+import soot.toolkits.scalar.BodyAnalysisManager;
+
 /**
  *  An abstract class which acts on a Body. This class provides a harness and acts as an
  *  interface for classes that wish to transform a Body. Subclasses 
@@ -49,6 +51,9 @@ public abstract class BodyTransformer extends Transformer
             return;
 
         internalTransform(b, phaseName, options);
+
+        if(!maintainsBodyAnalyses())
+            BodyAnalysisManager.v().invalidate(b);
     }
 
     public final void transform(Body b, String phaseName)
@@ -73,6 +78,17 @@ public abstract class BodyTransformer extends Transformer
      */
     protected abstract void internalTransform(Body b, String phaseName, Map options);
 
+    /**
+     *  Returns true if this transformer keeps the analyses cached by
+     *  {@link BodyAnalysisManager} valid, that is, if every change it makes
+     *  to a Body either modifies its unit, trap or local chain or is
+     *  followed by a call to {@link BodyAnalysisManager#invalidate(Body)}.
+     *  Otherwise the cached analyses are dropped after each transformation.
+     */
+    protected boolean maintainsBodyAnalyses() {
+        return false;
+    }
+
 }
 
 
@@ -31,6 +31,8 @@ public class CoffiClassProvider implements ClassProvider
         SourceLocator.FoundFile file = 
             SourceLocator.v().lookupInClassPath(fileName);
         if( file == null ) return null;
+        if( soot.options.Options.v().mmap_class_files() )
+            return new CoffiClassSource(className, file);
         return new CoffiClassSource(className, file.inputStream());
     }
 }
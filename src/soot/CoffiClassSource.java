@@ -32,20 +32,31 @@ public class CoffiClassSource extends ClassSource
         super( className );
         this.classFile = classFile;
     }
+    /** Creates a source which reads the class file through
+     * {@link SourceLocator.FoundFile#byteBuffer()} when it is resolved. */
+    public CoffiClassSource( String className, SourceLocator.FoundFile foundFile ) {
+        super( className );
+        this.foundFile = foundFile;
+    }
     public Dependencies resolve( SootClass sc ) {
         if(Options.v().verbose())
             G.v().out.println("resolving [from .class]: " + className );
         List references = new ArrayList();
-        soot.coffi.Util.v().resolveFromClassFile(sc, classFile, references);
+        if( foundFile != null ) {
+            soot.coffi.Util.v().resolveFromClassFile(sc, foundFile.byteBuffer(), references);
+        } else {
+            soot.coffi.Util.v().resolveFromClassFile(sc, classFile, references);
 
-        try {
-            classFile.close();
-        } catch (IOException e) { throw new RuntimeException("!?"); }
+            try {
+                classFile.close();
+            } catch (IOException e) { throw new RuntimeException("!?"); }
+        }
         
         IInitialResolver.Dependencies deps = new IInitialResolver.Dependencies();
         deps.typesToSignature.addAll(references);
         return deps;
     }
     protected InputStream classFile;
+    protected SourceLocator.FoundFile foundFile;
 }
 
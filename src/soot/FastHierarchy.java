@@ -153,7 +153,7 @@ public class FastHierarchy
 
     /** For an interface parent (MUST be an interface), returns set of all
      * implementers of it but NOT their subclasses. */
-    public Set getAllImplementersOfInterface( SootClass parent ) {
+    public synchronized Set getAllImplementersOfInterface( SootClass parent ) {
         parent.checkLevel(SootClass.HIERARCHY);
         if( !interfaceToAllImplementers.containsKey( parent ) ) {
             for( Iterator subinterfaceIt = getAllSubinterfaces( parent ).iterator(); subinterfaceIt.hasNext(); ) {
@@ -170,7 +170,7 @@ public class FastHierarchy
 
     /** For an interface parent (MUST be an interface), returns set of all
      * subinterfaces. */
-    protected Set getAllSubinterfaces( SootClass parent ) {
+    protected synchronized Set getAllSubinterfaces( SootClass parent ) {
         parent.checkLevel(SootClass.HIERARCHY);
         if( !interfaceToAllSubinterfaces.containsKey( parent ) ) {
             interfaceToAllSubinterfaces.put( parent, parent );
@@ -52,8 +52,6 @@ public class G extends Singletons
     public HashMap<SootMethod, MethodPAG> MethodPAG_methodToPag = new HashMap<SootMethod, MethodPAG>();
     
     public long coffi_BasicBlock_ids = 0;
-    public Utf8_Enumeration coffi_CONSTANT_Utf8_info_e1 = new Utf8_Enumeration();
-    public Utf8_Enumeration coffi_CONSTANT_Utf8_info_e2 = new Utf8_Enumeration();
     public int SETNodeLabel_uniqueId = 0;
     public boolean ASTAnalysis_modified;
     public NativeHelper NativeHelper_helper = null;
@@ -26,6 +26,8 @@
 
 package soot;
 
+import soot.metrics.Metrics;
+import soot.toolkits.scalar.BodyAnalysisManager;
 import soot.util.*;
 import java.util.*;
 
@@ -108,13 +110,25 @@ public abstract class Pack implements HasPhaseOptions
     public final void apply() {
         Map options = PhaseOptions.v().getPhaseOptions( this );
         if( !PhaseOptions.getBoolean( options, "enabled" ) ) return;
-        internalApply();
+        Metrics.Sample sample = Metrics.v().start( name, null );
+        try {
+            internalApply();
+        } finally {
+            Metrics.v().finish( sample );
+        }
     }
 
     public final void apply(Body b) {
         Map options = PhaseOptions.v().getPhaseOptions( this );
         if( !PhaseOptions.getBoolean( options, "enabled" ) ) return;
-        internalApply(b);
+        Metrics.Sample sample = Metrics.v().start( name, b );
+        BodyAnalysisManager.v().enterScope(b);
+        try {
+            internalApply(b);
+        } finally {
+            BodyAnalysisManager.v().exitScope(b);
+            Metrics.v().finish( sample );
+        }
     }
 
     public String getDeclaredOptions() { return soot.options.Options.getDeclaredOptionsForPhase( getPhaseName() ); }
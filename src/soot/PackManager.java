@@ -19,6 +19,8 @@
 
 package soot;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 import java.io.*;
 import java.util.zip.*;
 import soot.util.*;
@@ -228,12 +230,86 @@ public class PackManager {
 
 
     private void runBodyPacks( Iterator classes ) {
+        int threads = bodyThreads();
+        if( threads > 1 ) {
+            runInParallel( concreteMethods( classes ), true, threads );
+            return;
+        }
         while( classes.hasNext() ) {
             SootClass cl = (SootClass) classes.next();
             runBodyPacks( cl );
         }
     }
 
+    /** Returns the number of threads used to retrieve bodies and to run
+     * the body packs on them, as given by {@link Options#num_threads()}.
+     * Returns 1 if methods have to be processed sequentially. */
+    private int bodyThreads() {
+        int threads = Options.v().num_threads();
+        if( threads <= 0 )
+            threads = Runtime.getRuntime().availableProcessors();
+        if( threads > 1 && ( Options.v().time() || Options.v().interactive_mode() ) ) {
+            // Timers and the interaction handler are global and cannot be
+            // shared between threads.
+            threads = 1;
+        }
+        return threads;
+    }
+
+    private List<SootMethod> concreteMethods( Iterator classes ) {
+        List<SootMethod> methods = new ArrayList<SootMethod>();
+        while( classes.hasNext() ) {
+            SootClass cl = (SootClass) classes.next();
+            for( SootMethod m : new ArrayList<SootMethod>( cl.getMethods() ) ) {
+                if( m.isConcrete() ) methods.add( m );
+            }
+        }
+        return methods;
+    }
+
+    /** Retrieves the bodies of the given methods and, if
+     * <code>runPacks</code> is set, applies the body packs to them, using a
+     * fork-join pool with the given number of threads. */
+    private void runInParallel( List<SootMethod> methods, boolean runPacks, int threads ) {
+        // The ThrowableSet manager looks up types in the Scene while it is
+        // being created, so create it before any worker holds the Scene lock.
+        soot.toolkits.exceptions.ThrowableSet.Manager.v();
+        ForkJoinPool pool = new ForkJoinPool( threads );
+        try {
+            pool.invoke( new BodyTask( methods, 0, methods.size(), runPacks ) );
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private class BodyTask extends RecursiveAction {
+        private final List<SootMethod> methods;
+        private final int from;
+        private final int to;
+        private final boolean runPacks;
+
+        BodyTask( List<SootMethod> methods, int from, int to, boolean runPacks ) {
+            this.methods = methods;
+            this.from = from;
+            this.to = to;
+            this.runPacks = runPacks;
+        }
+
+        protected void compute() {
+            if( to - from > 1 ) {
+                int mid = ( from + to ) >>> 1;
+                invokeAll( new BodyTask( methods, from, mid, runPacks ),
+                        new BodyTask( methods, mid, to, runPacks ) );
+                return;
+            }
+            for( int i = from; i < to; i++ ) {
+                SootMethod m = methods.get( i );
+                if( runPacks ) runBodyPacks( m );
+                else m.retrieveActiveBody();
+            }
+        }
+    }
+
     private void handleInnerClasses(){
        InnerClassTagAggregator agg = InnerClassTagAggregator.v();
        agg.internalTransform("", null);
@@ -274,13 +350,7 @@ public class PackManager {
 
 
             if (produceJimple) {
-                JimpleBody body =(JimpleBody) m.retrieveActiveBody();
-                PackManager.v().getPack("jtp").apply(body);
-                if( Options.v().validate() ) {
-                    body.validate();
-                }
-                PackManager.v().getPack("jop").apply(body);
-                PackManager.v().getPack("jap").apply(body);
+                runBodyPacks(m);
             }
             
             //PackManager.v().getPack("cfg").apply(m.retrieveActiveBody());
@@ -290,6 +360,16 @@ public class PackManager {
 
     }
 
+    private void runBodyPacks(SootMethod m) {
+        JimpleBody body =(JimpleBody) m.retrieveActiveBody();
+        PackManager.v().getPack("jtp").apply(body);
+        if( Options.v().validate() ) {
+            body.validate();
+        }
+        PackManager.v().getPack("jop").apply(body);
+        PackManager.v().getPack("jap").apply(body);
+    }
+
 
     private void releaseBodies( SootClass cl ) {
         Iterator methodIt = cl.methodIterator();
@@ -302,6 +382,11 @@ public class PackManager {
     }
 
     private void retrieveAllBodies() {
+        int threads = bodyThreads();
+        if( threads > 1 ) {
+            runInParallel( concreteMethods( reachableClasses() ), false, threads );
+            return;
+        }
         Iterator clIt = reachableClasses();
         while( clIt.hasNext() ) {
             SootClass cl = (SootClass) clIt.next();
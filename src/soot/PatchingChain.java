@@ -32,6 +32,7 @@ import java.util.LinkedList;
 import java.util.List;
 
 import soot.util.Chain;
+import soot.util.HashChain;
 
 /** An implementation of a Chain which can contain only Units,
  * and handles patching to deal with element insertions and removals.
@@ -284,4 +285,15 @@ public class PatchingChain<E extends Unit> extends AbstractCollection<E> impleme
 
     /** Returns the size of this Chain. */
     public int size(){return innerChain.size(); }
+
+    /** Returns the modification count of the inner chain, or -1 if the
+     * inner chain does not count its modifications. */
+    public long getModificationCount()
+    {
+        if (innerChain instanceof HashChain)
+            return ((HashChain<E>) innerChain).getModificationCount();
+        if (innerChain instanceof PatchingChain)
+            return ((PatchingChain<E>) innerChain).getModificationCount();
+        return -1;
+    }
 }
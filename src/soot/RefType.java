@@ -44,7 +44,7 @@ public class RefType extends RefLikeType implements Comparable
     /** the class name that parametrizes this RefType */
     private String className;
     public String getClassName() { return className; }
-    private SootClass sootClass;
+    private volatile SootClass sootClass;
     private AnySubType anySubType;
 
     private RefType(String className)
@@ -62,12 +62,18 @@ public class RefType extends RefLikeType implements Comparable
      */
     public static RefType v(String className)
     {
-        if(Scene.v().containsType(className)) {
-        	return Scene.v().getRefType( className );
-        } else {
-	        RefType ret = new RefType(className);
-	        Scene.v().addRefType( ret );
-	        return ret;
+        Scene scene = Scene.v();
+        if(scene.containsType(className)) {
+            return scene.getRefType( className );
+        }
+        synchronized (scene.classesLock) {
+            if(scene.containsType(className)) {
+            	return scene.getRefType( className );
+            } else {
+    	        RefType ret = new RefType(className);
+    	        scene.addRefType( ret );
+    	        return ret;
+            }
         }
     }
 
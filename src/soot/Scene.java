@@ -32,13 +32,13 @@ import java.io.FileInputStream;
 import java.io.InputStreamReader;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import soot.jimple.toolkits.callgraph.CallGraph;
 import soot.jimple.toolkits.callgraph.ContextSensitiveCallGraph;
@@ -111,7 +111,16 @@ public class Scene  //extends AbstractHost
     Chain<SootClass> libraryClasses = new HashChain<SootClass>();
     Chain<SootClass> phantomClasses = new HashChain<SootClass>();
     
-    private final Map<String,Type> nameToClass = new HashMap<String,Type>();
+    /** Guards changes to the chains of classes and to the names of the
+     * types. It is taken after the lock of the Scene and the locks of
+     * SootClasses (see {@link SootResolver}), and only the locks of the
+     * numberers are taken while it is held, so that classes may be added
+     * while SootClasses are locked. */
+    final Object classesLock = new Object();
+
+    /** Written under classesLock, but read without it, so that threads
+     * resolving classes in parallel do not contend for lookups. */
+    private final Map<String,Type> nameToClass = new ConcurrentHashMap<String,Type>();
 
     ArrayNumberer kindNumberer = new ArrayNumberer();
     ArrayNumberer typeNumberer = new ArrayNumberer();
@@ -282,39 +291,43 @@ public class Scene  //extends AbstractHost
 
     public void addClass(SootClass c) 
     {
-        if(c.isInScene())
-            throw new RuntimeException("already managed: "+c.getName());
+        synchronized (classesLock) {
+            if(c.isInScene())
+                throw new RuntimeException("already managed: "+c.getName());
 
-        if(containsClass(c.getName()))
-            throw new RuntimeException("duplicate class: "+c.getName());
+            if(containsClass(c.getName()))
+                throw new RuntimeException("duplicate class: "+c.getName());
 
-        classes.add(c);
-        c.setLibraryClass();
+            classes.add(c);
+            c.setLibraryClass();
 
-        nameToClass.put(c.getName(), c.getType());
-        c.getType().setSootClass(c);
-        c.setInScene(true);
-        modifyHierarchy();
+            nameToClass.put(c.getName(), c.getType());
+            c.getType().setSootClass(c);
+            c.setInScene(true);
+            modifyHierarchy();
+        }
     }
 
     public void removeClass(SootClass c)
     {
-        if(!c.isInScene())
-            throw new RuntimeException();
+        synchronized (classesLock) {
+            if(!c.isInScene())
+                throw new RuntimeException();
 
-        classes.remove(c);
-        
-        if(c.isLibraryClass()) {
-            libraryClasses.remove(c);
-        } else if(c.isPhantomClass()) {
-            phantomClasses.remove(c);
-        } else if(c.isApplicationClass()) {
-            applicationClasses.remove(c);
+            classes.remove(c);
+            
+            if(c.isLibraryClass()) {
+                libraryClasses.remove(c);
+            } else if(c.isPhantomClass()) {
+                phantomClasses.remove(c);
+            } else if(c.isApplicationClass()) {
+                applicationClasses.remove(c);
+            }
+            
+            c.getType().setSootClass(null);
+            c.setInScene(false);
+            modifyHierarchy();
         }
-        
-        c.getType().setSootClass(null);
-        c.setInScene(false);
-        modifyHierarchy();
     }
 
     public boolean containsClass(String className)
@@ -483,7 +496,9 @@ public class Scene  //extends AbstractHost
      */
     public void addRefType(RefType type) 
     {
-        nameToClass.put(type.getClassName(), type);
+        synchronized (classesLock) {
+            nameToClass.put(type.getClassName(), type);
+        }
     }
 
     /**
@@ -492,21 +507,30 @@ public class Scene  //extends AbstractHost
 
 	public SootClass getSootClass(String className) {
 		RefType type = (RefType) nameToClass.get(className);
-		SootClass toReturn = null;
 		if (type != null)
-			toReturn = type.getSootClass();
-
-		if (toReturn != null) {
-			return toReturn;
-		} else if (allowsPhantomRefs() ||
-				   className.equals(SootClass.INVOKEDYNAMIC_DUMMY_CLASS_NAME)) {
-			SootClass c = new SootClass(className);
-			c.setPhantom(true);
-			addClass(c);
-			return c;
-		} else {
-			throw new RuntimeException(System.getProperty("line.separator")
-					+ "Aborting: can't find classfile " + className);
+			return type.getSootClass();
+		return getOrMakePhantomClass(className);
+	}
+
+	private SootClass getOrMakePhantomClass(String className) {
+		synchronized (classesLock) {
+			RefType type = (RefType) nameToClass.get(className);
+			SootClass toReturn = null;
+			if (type != null)
+				toReturn = type.getSootClass();
+
+			if (toReturn != null) {
+				return toReturn;
+			} else if (allowsPhantomRefs() ||
+					   className.equals(SootClass.INVOKEDYNAMIC_DUMMY_CLASS_NAME)) {
+				SootClass c = new SootClass(className);
+				c.setPhantom(true);
+				addClass(c);
+				return c;
+			} else {
+				throw new RuntimeException(System.getProperty("line.separator")
+						+ "Aborting: can't find classfile " + className);
+			}
 		}
 	}
 
@@ -631,7 +655,7 @@ public class Scene  //extends AbstractHost
     /****************************************************************************/
     /** Makes a new fast hierarchy is none is active, and returns the active
      * fast hierarchy. */
-    public FastHierarchy getOrMakeFastHierarchy() {
+    public synchronized FastHierarchy getOrMakeFastHierarchy() {
 	if(!hasFastHierarchy() ) {
 	    setFastHierarchy( new FastHierarchy() );
 	}
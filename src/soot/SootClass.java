@@ -65,7 +65,7 @@ public class SootClass extends AbstractHost implements Numberable
     protected List<SootMethod> methodList = new ArrayList<SootMethod>();
     protected Chain<SootClass> interfaces = new HashChain<SootClass>();
 
-    protected boolean isInScene;
+    protected volatile boolean isInScene;
     protected SootClass superClass;
     protected SootClass outerClass;
 
@@ -903,12 +903,14 @@ public class SootClass extends AbstractHost implements Numberable
     /** Makes this class an application class. */
     public void setApplicationClass()
     {
-        Chain<SootClass> c = Scene.v().getContainingChain(this);
-        if (c != null)
-            c.remove(this);
-        Scene.v().getApplicationClasses().add(this);
+        synchronized (Scene.v().classesLock) {
+            Chain<SootClass> c = Scene.v().getContainingChain(this);
+            if (c != null)
+                c.remove(this);
+            Scene.v().getApplicationClasses().add(this);
 
-        isPhantom = false;
+            isPhantom = false;
+        }
     }
 
     /** Convenience method returning true if this class is a library class.
@@ -922,12 +924,14 @@ public class SootClass extends AbstractHost implements Numberable
     /** Makes this class a library class. */
     public void setLibraryClass()
     {
-        Chain<SootClass> c = Scene.v().getContainingChain(this);
-        if (c != null)
-            c.remove(this);
-        Scene.v().getLibraryClasses().add(this);
+        synchronized (Scene.v().classesLock) {
+            Chain<SootClass> c = Scene.v().getContainingChain(this);
+            if (c != null)
+                c.remove(this);
+            Scene.v().getLibraryClasses().add(this);
 
-        isPhantom = false;
+            isPhantom = false;
+        }
     }
 
     /**
@@ -960,11 +964,13 @@ public class SootClass extends AbstractHost implements Numberable
     /** Makes this class a phantom class. */
     public void setPhantomClass()
     {
-        Chain<SootClass> c = Scene.v().getContainingChain(this);
-        if (c != null)
-            c.remove(this);
-        Scene.v().getPhantomClasses().add(this);
-        isPhantom = true;
+        synchronized (Scene.v().classesLock) {
+            Chain<SootClass> c = Scene.v().getContainingChain(this);
+            if (c != null)
+                c.remove(this);
+            Scene.v().getPhantomClasses().add(this);
+            isPhantom = true;
+        }
     }
     
     /** Convenience method returning true if this class is phantom. */
@@ -27,13 +27,14 @@
 
 package soot;
 
+import soot.jimple.spark.pag.SparkField;
 import soot.tagkit.*;
 import soot.util.*;
 
 /**
     Soot representation of a Java field.  Can be declared to belong to a SootClass.
 */
-public class SootField extends AbstractHost implements ClassMember, Numberable
+public class SootField extends AbstractHost implements ClassMember, SparkField, Numberable
 {
     String name;
     Type type;
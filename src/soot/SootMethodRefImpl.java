@@ -124,14 +124,19 @@ class SootMethodRefImpl implements SootMethodRef {
         while(true) {
             if(trace != null) trace.append(
                     "Looking in "+cl+" which has methods "+cl.getMethods()+"\n" );
-            if( cl.declaresMethod( getSubSignature() ) )
-                return checkStatic(cl.getMethod( getSubSignature() ));
-            if(Scene.v().allowsPhantomRefs() && cl.isPhantom())
-            {
-                SootMethod m = new SootMethod(name, parameterTypes, returnType, isStatic()?Modifier.STATIC:0);
-                m.setPhantom(true);
-                cl.addMethod(m);
-                return checkStatic(m);
+            // Bodies may be built on several threads, which may add
+            // methods to the same class; each class is locked while it is
+            // looked at and changed.
+            synchronized( cl ) {
+                if( cl.declaresMethod( getSubSignature() ) )
+                    return checkStatic(cl.getMethod( getSubSignature() ));
+                if(Scene.v().allowsPhantomRefs() && cl.isPhantom())
+                {
+                    SootMethod m = new SootMethod(name, parameterTypes, returnType, isStatic()?Modifier.STATIC:0);
+                    m.setPhantom(true);
+                    cl.addMethod(m);
+                    return checkStatic(m);
+                }
             }
             if( cl.hasSuperclass() ) cl = cl.getSuperclass();
             else break;
@@ -144,8 +149,10 @@ class SootMethodRefImpl implements SootMethodRef {
                 SootClass iface = queue.removeFirst();
                 if(trace != null) trace.append(
                         "Looking in "+iface+" which has methods "+iface.getMethods()+"\n" );
-                if( iface.declaresMethod( getSubSignature() ) )
-                    return checkStatic(iface.getMethod( getSubSignature() ));
+                synchronized( iface ) {
+                    if( iface.declaresMethod( getSubSignature() ) )
+                        return checkStatic(iface.getMethod( getSubSignature() ));
+                }
                 queue.addAll( iface.getInterfaces() );
             }
             if( cl.hasSuperclass() ) cl = cl.getSuperclass();
@@ -177,7 +184,14 @@ class SootMethodRefImpl implements SootMethodRef {
 			//throw exc
 			body.getUnits().insertAfter(Jimple.v().newThrowStmt(exceptionLocal), initStmt);
 
-			declaringClass.addMethod(m);
+			// The body is built before the class is locked, since building
+			// it may lock the Scene; another thread may have added the
+			// method in the meantime.
+			synchronized( declaringClass ) {
+				if( declaringClass.declaresMethod( getSubSignature() ) )
+					return declaringClass.getMethod( getSubSignature() );
+				declaringClass.addMethod(m);
+			}
 			return m; 
         } else if( trace == null ) {
         	throw new ClassResolutionFailedException();
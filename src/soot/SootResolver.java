@@ -32,28 +32,64 @@ import soot.options.*;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 
 
-/** Loads symbols for SootClasses from either class files or jimple files. */
+/** Loads symbols for SootClasses from either class files or jimple files.
+ *
+ * <p>Each class is brought to a level while holding the lock of its
+ * SootClass. With <tt>-parallel-resolver</tt>, the classes waiting to be
+ * brought to a level are processed concurrently on a pool of
+ * <tt>-num-threads</tt> threads; the classes they refer to are collected
+ * for the next round.
+ *
+ * <p>Locks are taken in the order: the Scene, then a SootClass, then the
+ * lock serializing class sources which are not class files. No lock is
+ * held while waiting for the pool, and the worklists are only locked to
+ * hand classes over. A class source may resolve other classes: a class
+ * file source brings only the class it asks for to the level, on its own
+ * thread, and other sources, which hold the source lock, only queue it.
+ * The Scene updates its classes under a lock of its own, which is taken
+ * last, rather than under the lock of the Scene. */
 public class SootResolver 
 {
     /** Maps each resolved class to a list of all references in it. */
-    private final Map<SootClass, ArrayList> classToTypesSignature = new HashMap<SootClass, ArrayList>();
+    private final Map<SootClass, ArrayList> classToTypesSignature = new ConcurrentHashMap<SootClass, ArrayList>();
 
     /** Maps each resolved class to a list of all references in it. */
-    private final Map<SootClass, ArrayList> classToTypesHierarchy = new HashMap<SootClass, ArrayList>();
+    private final Map<SootClass, ArrayList> classToTypesHierarchy = new ConcurrentHashMap<SootClass, ArrayList>();
+
+    /** SootClasses waiting to be resolved, indexed by the level to bring
+     * them to. Guarded by worklistLock. */
+    private final List<Queue<SootClass>> worklist = new ArrayList<Queue<SootClass>>();
+
+    /** Guards the worklists and the number of pending classes. No other
+     * lock is taken while it is held. */
+    private final Object worklistLock = new Object();
 
-    /** SootClasses waiting to be resolved. */
-    private final LinkedList/*SootClass*/[] worklist = new LinkedList[4];
+    /** The number of classes added to the worklists which have not been
+     * brought to their level yet. */
+    private int pending;
+
+    /** Whether the current thread is bringing a class to a level, and so
+     * must neither wait for the classes other threads are resolving nor
+     * take the locks of the classes it did not ask for. */
+    private final ThreadLocal<Boolean> inResolver = new ThreadLocal<Boolean>();
+
+    /** Serializes class sources other than class files, which are not
+     * known to be thread-safe. */
+    private final Object sourceLock = new Object();
+
+    private ForkJoinPool pool;
 
 
     public SootResolver (Singletons.Global g) {
-        worklist[SootClass.HIERARCHY] = new LinkedList();
-        worklist[SootClass.SIGNATURES] = new LinkedList();
-        worklist[SootClass.BODIES] = new LinkedList();
-        
-        
+        for( int i = 0; i <= SootClass.BODIES; i++ ) {
+            worklist.add( new ArrayDeque<SootClass>() );
+        }
     }
 
     public static SootResolver v() { return G.v().soot_SootResolver();}
@@ -71,15 +107,18 @@ public class SootResolver
      * */
     public SootClass makeClassRef(String className)
     {
-        if(Scene.v().containsClass(className))
-            return Scene.v().getSootClass(className);
+        Scene scene = Scene.v();
+        synchronized (scene.classesLock) {
+            if(scene.containsClass(className))
+                return scene.getSootClass(className);
 
-        SootClass newClass;
-        newClass = new SootClass(className);
-        newClass.setResolvingLevel(SootClass.DANGLING);
-        Scene.v().addClass(newClass);
+            SootClass newClass;
+            newClass = new SootClass(className);
+            newClass.setResolvingLevel(SootClass.DANGLING);
+            scene.addClass(newClass);
 
-        return newClass;
+            return newClass;
+        }
     }
 
 
@@ -90,40 +129,162 @@ public class SootResolver
      * */
     public SootClass resolveClass(String className, int desiredLevel) {
         SootClass resolvedClass = makeClassRef(className);
+        if( inResolver.get() != null && !Thread.holdsLock( sourceLock ) ) {
+            // Asked for by a class source: only this class is brought to the
+            // level, the classes it refers to are left to the outer loop.
+            if( resolvedClass.resolvingLevel() < desiredLevel )
+                processResolveWorklistEntry(resolvedClass, desiredLevel);
+            return resolvedClass;
+        }
         addToResolveWorklist(resolvedClass, desiredLevel);
         processResolveWorklist();
         return resolvedClass;
     }
 
-    /** Resolve all classes on toResolveWorklist. */
+    /** Resolve all classes on toResolveWorklist, and wait for the classes
+     * other threads took from the worklists, so that all the classes are
+     * resolved when it returns. While a class is brought to a level, the
+     * classes are only queued, for the outer loop to resolve them. */
     private void processResolveWorklist() {
-        for( int i = SootClass.BODIES; i >= SootClass.HIERARCHY; i-- ) {
-            while( !worklist[i].isEmpty() ) {
-                SootClass sc = (SootClass) worklist[i].removeFirst();
-                if( resolveEverything() ) {
-                    boolean onlySignatures = sc.isPhantom() || (
-	            			Options.v().no_bodies_for_excluded() &&
-	            			Scene.v().isExcluded(sc) &&
-	            			!Scene.v().getBasicClasses().contains(sc.getName())
-            			);
-					if( onlySignatures ) {
-						bringToSignatures(sc);
-						sc.setPhantomClass();
-				        if(sc.isPhantom()) {
-				        	for( SootMethod m: sc.getMethods() ) {
-				        		m.setPhantom(true);
-				        	}
-				        	for( SootField f: sc.getFields() ) {
-				        		f.setPhantom(true);
-				        	}
-				        }
-			        } else bringToBodies(sc);
-                } else {
-                    switch(i) {
-                        case SootClass.BODIES: bringToBodies(sc); break;
-                        case SootClass.SIGNATURES: bringToSignatures(sc); break;
-                        case SootClass.HIERARCHY: bringToHierarchy(sc); break;
+        if( inResolver.get() != null ) return;
+        ForkJoinPool pool = pool();
+        while( true ) {
+            for( int i = SootClass.BODIES; i >= SootClass.HIERARCHY; i-- ) {
+                List<SootClass> batch;
+                while( !( batch = takeBatch( i, pool != null ) ).isEmpty() ) {
+                    try {
+                        if( batch.size() == 1 ) {
+                            processResolveWorklistEntry(batch.get(0), i);
+                        } else {
+                            pool.invoke(new ResolveTask(batch, 0, batch.size(), i));
+                        }
+                    } finally {
+                        finished( batch.size() );
+                    }
+                }
+            }
+            synchronized( worklistLock ) {
+                if( pending == 0 ) return;
+                if( isWorklistEmpty() ) {
+                    try {
+                        worklistLock.wait();
+                    } catch( InterruptedException e ) {
+                        Thread.currentThread().interrupt();
+                        throw new RuntimeException( e );
+                    }
+                }
+            }
+        }
+    }
+
+    /** Takes the classes waiting to be brought to the given level: all of
+     * them, or only the first one if they are resolved sequentially. */
+    private List<SootClass> takeBatch( int level, boolean all ) {
+        List<SootClass> batch = new ArrayList<SootClass>();
+        synchronized( worklistLock ) {
+            Queue<SootClass> queue = worklist.get( level );
+            if( all ) {
+                batch.addAll( queue );
+                queue.clear();
+            } else if( !queue.isEmpty() ) {
+                batch.add( queue.remove() );
+            }
+        }
+        return batch;
+    }
+
+    /** Records that count classes taken from the worklists were processed. */
+    private void finished( int count ) {
+        synchronized( worklistLock ) {
+            pending -= count;
+            if( pending == 0 ) worklistLock.notifyAll();
+        }
+    }
+
+    private boolean isWorklistEmpty() {
+        for( Queue<SootClass> queue : worklist ) {
+            if( !queue.isEmpty() ) return false;
+        }
+        return true;
+    }
+
+    /** Returns the pool on which classes are resolved, or null if they are
+     * resolved sequentially. */
+    private synchronized ForkJoinPool pool() {
+        if( !Options.v().parallel_resolver() ) return null;
+        int threads = Options.v().num_threads();
+        if( threads <= 0 )
+            threads = Runtime.getRuntime().availableProcessors();
+        // Timers are global and cannot be shared between threads.
+        if( threads <= 1 || Options.v().time() ) return null;
+        if( pool == null || pool.getParallelism() != threads ) {
+            if( pool != null ) pool.shutdown();
+            pool = new ForkJoinPool( threads );
+        }
+        return pool;
+    }
+
+    private class ResolveTask extends RecursiveAction {
+        private final List<SootClass> classes;
+        private final int from;
+        private final int to;
+        private final int level;
+
+        ResolveTask( List<SootClass> classes, int from, int to, int level ) {
+            this.classes = classes;
+            this.from = from;
+            this.to = to;
+            this.level = level;
+        }
+
+        protected void compute() {
+            if( to - from > 1 ) {
+                int mid = ( from + to ) >>> 1;
+                invokeAll( new ResolveTask( classes, from, mid, level ),
+                        new ResolveTask( classes, mid, to, level ) );
+                return;
+            }
+            for( int i = from; i < to; i++ ) {
+                processResolveWorklistEntry( classes.get( i ), level );
+            }
+        }
+    }
+
+    private void processResolveWorklistEntry(SootClass sc, int i) {
+        Boolean outer = inResolver.get();
+        inResolver.set( Boolean.TRUE );
+        try {
+            processResolveWorklistEntryLocked(sc, i);
+        } finally {
+            if( outer == null ) inResolver.remove();
+        }
+    }
+
+    private void processResolveWorklistEntryLocked(SootClass sc, int i) {
+        synchronized( sc ) {
+            if( resolveEverything() ) {
+                boolean onlySignatures = sc.isPhantom() || (
+                        Options.v().no_bodies_for_excluded() &&
+                        Scene.v().isExcluded(sc) &&
+                        !Scene.v().getBasicClasses().contains(sc.getName())
+                        );
+                if( onlySignatures ) {
+                    bringToSignatures(sc);
+                    sc.setPhantomClass();
+                    if(sc.isPhantom()) {
+                        for( SootMethod m: sc.getMethods() ) {
+                            m.setPhantom(true);
+                        }
+                        for( SootField f: sc.getFields() ) {
+                            f.setPhantom(true);
+                        }
                     }
+                } else bringToBodies(sc);
+            } else {
+                switch(i) {
+                    case SootClass.BODIES: bringToBodies(sc); break;
+                    case SootClass.SIGNATURES: bringToSignatures(sc); break;
+                    case SootClass.HIERARCHY: bringToHierarchy(sc); break;
                 }
             }
         }
@@ -140,7 +301,12 @@ public class SootResolver
     }
     private void addToResolveWorklist(SootClass sc, int desiredLevel) {
         if( sc.resolvingLevel() >= desiredLevel ) return;
-        worklist[desiredLevel].add(sc);
+        synchronized( worklistLock ) {
+            worklist.get( desiredLevel ).add(sc);
+            pending++;
+            // Threads waiting for the classes of others may help with it.
+            worklistLock.notifyAll();
+        }
     }
 
     /** Hierarchy - we know the hierarchy of the class and that's it
@@ -148,46 +314,55 @@ public class SootResolver
      * */
     // RoboVM note: Made this method public
     public void bringToHierarchy(SootClass sc) {
-        if(sc.resolvingLevel() >= SootClass.HIERARCHY ) return;
-        if(Options.v().debug_resolver())
-            G.v().out.println("bringing to HIERARCHY: "+sc);
-        sc.setResolvingLevel(SootClass.HIERARCHY);
-
-        String className = sc.getName();
-        ClassSource is = SourceLocator.v().getClassSource(className);
-        boolean modelAsPhantomRef = is == null;
+        synchronized( sc ) {
+            if(sc.resolvingLevel() >= SootClass.HIERARCHY ) return;
+            if(Options.v().debug_resolver())
+                G.v().out.println("bringing to HIERARCHY: "+sc);
+            sc.setResolvingLevel(SootClass.HIERARCHY);
+
+            String className = sc.getName();
+            ClassSource is = SourceLocator.v().getClassSource(className);
+            boolean modelAsPhantomRef = is == null;
 //        || (
 //        		Options.v().no_jrl() &&
 //        		Scene.v().isExcluded(sc) &&
 //        		!Scene.v().getBasicClasses().contains(sc.getName())
 //    		);        
-		if( modelAsPhantomRef ) {
-            if(!Scene.v().allowsPhantomRefs()) {
-            	String suffix="";
-            	if(className.equals("java.lang.Object")) {
-            		suffix = " Try adding rt.jar to Soot's classpath, e.g.:\n" +
-            				"java -cp sootclasses.jar soot.Main -cp " +
-            				".:/path/to/jdk/jre/lib/rt.jar <other options>";
-            	} else if(className.equals("javax.crypto.Cipher")) {
-            		suffix = " Try adding jce.jar to Soot's classpath, e.g.:\n" +
-            				"java -cp sootclasses.jar soot.Main -cp " +
-            				".:/path/to/jdk/jre/lib/rt.jar:/path/to/jdk/jre/lib/jce.jar <other options>";
-            	}
-                throw new RuntimeException("couldn't find class: " +
-                    className + " (is your soot-class-path set properly?)"+suffix);
+            if( modelAsPhantomRef ) {
+                if(!Scene.v().allowsPhantomRefs()) {
+                	String suffix="";
+                	if(className.equals("java.lang.Object")) {
+                		suffix = " Try adding rt.jar to Soot's classpath, e.g.:\n" +
+                				"java -cp sootclasses.jar soot.Main -cp " +
+                				".:/path/to/jdk/jre/lib/rt.jar <other options>";
+                	} else if(className.equals("javax.crypto.Cipher")) {
+                		suffix = " Try adding jce.jar to Soot's classpath, e.g.:\n" +
+                				"java -cp sootclasses.jar soot.Main -cp " +
+                				".:/path/to/jdk/jre/lib/rt.jar:/path/to/jdk/jre/lib/jce.jar <other options>";
+                	}
+                    throw new RuntimeException("couldn't find class: " +
+                        className + " (is your soot-class-path set properly?)"+suffix);
+                } else {
+                    G.v().out.println(
+                            "Warning: " + className + " is a phantom class!");
+                    sc.setPhantomClass();
+                    classToTypesSignature.put( sc, new ArrayList() );
+                    classToTypesHierarchy.put( sc, new ArrayList() );
+                }
             } else {
-                G.v().out.println(
-                        "Warning: " + className + " is a phantom class!");
-                sc.setPhantomClass();
-                classToTypesSignature.put( sc, new ArrayList() );
-                classToTypesHierarchy.put( sc, new ArrayList() );
+                Dependencies dependencies;
+                if( is instanceof CoffiClassSource ) {
+                    dependencies = is.resolve(sc);
+                } else {
+                    synchronized( sourceLock ) {
+                        dependencies = is.resolve(sc);
+                    }
+                }
+                classToTypesSignature.put( sc, new ArrayList(dependencies.typesToSignature) );
+                classToTypesHierarchy.put( sc, new ArrayList(dependencies.typesToHierarchy) );
             }
-        } else {
-            Dependencies dependencies = is.resolve(sc);
-            classToTypesSignature.put( sc, new ArrayList(dependencies.typesToSignature) );
-            classToTypesHierarchy.put( sc, new ArrayList(dependencies.typesToHierarchy) );
+            reResolveHierarchy(sc);
         }
-        reResolveHierarchy(sc);
     }
 
     public void reResolveHierarchy(SootClass sc) {
@@ -207,35 +382,37 @@ public class SootResolver
     * */
     // RoboVM note: Made this method public
     public void bringToSignatures(SootClass sc) {
-        if(sc.resolvingLevel() >= SootClass.SIGNATURES ) return;
-        bringToHierarchy(sc);
-        if(Options.v().debug_resolver()) 
-            G.v().out.println("bringing to SIGNATURES: "+sc);
-        sc.setResolvingLevel(SootClass.SIGNATURES);
+        synchronized( sc ) {
+            if(sc.resolvingLevel() >= SootClass.SIGNATURES ) return;
+            bringToHierarchy(sc);
+            if(Options.v().debug_resolver()) 
+                G.v().out.println("bringing to SIGNATURES: "+sc);
+            sc.setResolvingLevel(SootClass.SIGNATURES);
 
-        for( Iterator fIt = sc.getFields().iterator(); fIt.hasNext(); ) {
+            for( Iterator fIt = sc.getFields().iterator(); fIt.hasNext(); ) {
 
-            final SootField f = (SootField) fIt.next();
-            addToResolveWorklist( f.getType(), SootClass.HIERARCHY );
-        }
-        for( Iterator mIt = sc.getMethods().iterator(); mIt.hasNext(); ) {
-            final SootMethod m = (SootMethod) mIt.next();
-            addToResolveWorklist( m.getReturnType(), SootClass.HIERARCHY );
-            for( Iterator ptypeIt = m.getParameterTypes().iterator(); ptypeIt.hasNext(); ) {
-                final Type ptype = (Type) ptypeIt.next();
-                addToResolveWorklist( ptype, SootClass.HIERARCHY );
+                final SootField f = (SootField) fIt.next();
+                addToResolveWorklist( f.getType(), SootClass.HIERARCHY );
             }
-            for (SootClass exception : m.getExceptions()) {
-                addToResolveWorklist( exception, SootClass.HIERARCHY );
+            for( Iterator mIt = sc.getMethods().iterator(); mIt.hasNext(); ) {
+                final SootMethod m = (SootMethod) mIt.next();
+                addToResolveWorklist( m.getReturnType(), SootClass.HIERARCHY );
+                for( Iterator ptypeIt = m.getParameterTypes().iterator(); ptypeIt.hasNext(); ) {
+                    final Type ptype = (Type) ptypeIt.next();
+                    addToResolveWorklist( ptype, SootClass.HIERARCHY );
+                }
+                for (SootClass exception : m.getExceptions()) {
+                    addToResolveWorklist( exception, SootClass.HIERARCHY );
+                }
             }
-        }
 
-        // Bring superclasses to signatures
-        if(sc.hasSuperclass()) 
-            addToResolveWorklist(sc.getSuperclass(), SootClass.SIGNATURES);
-        for( Iterator ifaceIt = sc.getInterfaces().iterator(); ifaceIt.hasNext(); ) {
-            final SootClass iface = (SootClass) ifaceIt.next();
-            addToResolveWorklist(iface, SootClass.SIGNATURES);
+            // Bring superclasses to signatures
+            if(sc.hasSuperclass()) 
+                addToResolveWorklist(sc.getSuperclass(), SootClass.SIGNATURES);
+            for( Iterator ifaceIt = sc.getInterfaces().iterator(); ifaceIt.hasNext(); ) {
+                final SootClass iface = (SootClass) ifaceIt.next();
+                addToResolveWorklist(iface, SootClass.SIGNATURES);
+            }
         }
     }
 
@@ -288,11 +465,13 @@ public class SootResolver
     }
 
     public void reResolve(SootClass cl) {
-        int resolvingLevel = cl.resolvingLevel();
-        if( resolvingLevel < SootClass.HIERARCHY ) return;
-        reResolveHierarchy(cl);
-        cl.setResolvingLevel(SootClass.HIERARCHY);
-        addToResolveWorklist(cl, resolvingLevel);
+        synchronized( cl ) {
+            int resolvingLevel = cl.resolvingLevel();
+            if( resolvingLevel < SootClass.HIERARCHY ) return;
+            reResolveHierarchy(cl);
+            cl.setResolvingLevel(SootClass.HIERARCHY);
+            addToResolveWorklist(cl, resolvingLevel);
+        }
         processResolveWorklist();
     }
 
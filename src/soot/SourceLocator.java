@@ -23,6 +23,10 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
 import java.util.ArrayList;
 import java.util.Enumeration;
 import java.util.HashMap;
@@ -50,20 +54,7 @@ public class SourceLocator
     /** Given a class name, uses the soot-class-path to return a ClassSource for the given class. */
 	public ClassSource getClassSource(String className) 
     {
-		if(classesToLoad==null) {
-			classesToLoad = new HashSet<String>();
-			classesToLoad.addAll(Scene.v().getBasicClasses());
-			for(SootClass c: Scene.v().getApplicationClasses()) {
-				classesToLoad.add(c.getName());
-			}
-		}
-    	
-        if( classPath == null ) {
-            classPath = explodeClassPath(Scene.v().getSootClassPath());
-        }
-        if( classProviders == null ) {
-            setupClassProviders();
-        }
+        List<ClassProvider> classProviders = initialize();
         for (ClassProvider cp : classProviders) {
 	        	ClassSource ret = cp.find(className);
 	            if( ret != null ) return ret;
@@ -95,19 +86,40 @@ public class SourceLocator
     	additionalClassLoaders.add(c);
     }
 
+    /** Sets up the class path and the class providers if necessary, and
+     * returns the class providers. Classes may be looked up by several
+     * threads at once (see <tt>-parallel-resolver</tt>). */
+    private synchronized List<ClassProvider> initialize() {
+		if(classesToLoad==null) {
+			classesToLoad = new HashSet<String>();
+			classesToLoad.addAll(Scene.v().getBasicClasses());
+			for(SootClass c: Scene.v().getApplicationClasses()) {
+				classesToLoad.add(c.getName());
+			}
+		}
+    	
+        if( classPath == null ) {
+            classPath = explodeClassPath(Scene.v().getSootClassPath());
+        }
+        if( classProviders == null ) {
+            setupClassProviders();
+        }
+        return classProviders;
+    }
+
     private void setupClassProviders() {
         classProviders = new LinkedList<ClassProvider>();
                 classProviders.add(new CoffiClassProvider());
     }
 
     private List<ClassProvider> classProviders;
-    public void setClassProviders( List<ClassProvider> classProviders ) {
+    public synchronized void setClassProviders( List<ClassProvider> classProviders ) {
         this.classProviders = classProviders;
     }
 
     private List<String> classPath;
-    public List<String> classPath() { return classPath; }
-    public void invalidateClassPath() {
+    public synchronized List<String> classPath() { return classPath; }
+    public synchronized void invalidateClassPath() {
         classPath = null;
     }
 
@@ -386,6 +398,64 @@ public class SourceLocator
                 throw new RuntimeException( "Caught IOException "+e );
             }
         }
+        /** Returns the contents of this file in a buffer. Large files in a
+         * directory are memory-mapped; other files and jar entries are read
+         * into a buffer owned by the calling thread, which is overwritten by
+         * the next call to this method on the same thread. */
+        public ByteBuffer byteBuffer() {
+            try {
+                if( file != null ) {
+                    FileInputStream in = new FileInputStream(file);
+                    try {
+                        FileChannel ch = in.getChannel();
+                        long size = ch.size();
+                        if( size >= MAP_THRESHOLD )
+                            return ch.map(FileChannel.MapMode.READ_ONLY, 0, size);
+                        return SourceLocator.v().readIntoThreadBuffer(ch, size);
+                    } finally {
+                        in.close();
+                    }
+                }
+                InputStream in = zipFile.getInputStream(entry);
+                try {
+                    return SourceLocator.v().readIntoThreadBuffer(Channels.newChannel(in),
+                            entry.getSize());
+                } finally {
+                    in.close();
+                }
+            } catch( IOException e ) {
+                throw new RuntimeException( "Caught IOException "+e );
+            }
+        }
+    }
+
+    /** Files smaller than this are cheaper to read than to map. */
+    private static final long MAP_THRESHOLD = 1 << 20;
+
+    private final ThreadLocal<ByteBuffer> threadBuffer = new ThreadLocal<ByteBuffer>();
+
+    /** Reads <code>ch</code> to its end into the calling thread's buffer,
+     * growing the buffer as needed, and returns it flipped for reading. */
+    private ByteBuffer readIntoThreadBuffer(ReadableByteChannel ch, long size) throws IOException {
+        ByteBuffer buf = threadBuffer.get();
+        int needed = (int) Math.max(size, 4096);
+        if( buf == null || buf.capacity() < needed ) {
+            buf = ByteBuffer.allocate(Integer.highestOneBit(needed - 1) << 1);
+            threadBuffer.set(buf);
+        }
+        buf.clear();
+        while( true ) {
+            if( !buf.hasRemaining() ) {
+                ByteBuffer bigger = ByteBuffer.allocate(buf.capacity() * 2);
+                buf.flip();
+                bigger.put(buf);
+                buf = bigger;
+                threadBuffer.set(buf);
+            }
+            if( ch.read(buf) < 0 ) break;
+        }
+        buf.flip();
+        return buf;
     }
 
     private static InputStream doJDKBugWorkaround(InputStream is, long size) throws IOException {
@@ -408,6 +478,13 @@ public class SourceLocator
 
     /** Searches for a file with the given name in the exploded classPath. */
     public FoundFile lookupInClassPath( String fileName ) {
+        List<String> classPath;
+        synchronized( this ) {
+            if( this.classPath == null ) {
+                this.classPath = explodeClassPath(Scene.v().getSootClassPath());
+            }
+            classPath = this.classPath;
+        }
         for (String dir : classPath) {
             FoundFile ret;
             if(isJar(dir)) {
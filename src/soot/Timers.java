@@ -29,6 +29,8 @@ import java.text.DecimalFormat;
 
 import soot.options.Options;
 
+/** Global timers printed by -time. For measurements per phase and per
+ * method that other tools can consume see {@link soot.metrics.Metrics}. */
 public class Timers
 {
     public Timers( Singletons.Global g ) {}
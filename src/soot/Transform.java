@@ -28,6 +28,7 @@ package soot;
 
 import java.util.*;
 import soot.util.*;
+import soot.metrics.Metrics;
 import soot.options.Options;
 
 /** Maintains the pair (phaseName, singleton) needed for a
@@ -77,24 +78,34 @@ public class Transform implements HasPhaseOptions
 
     public void apply() {
         Map options = PhaseOptions.v().getPhaseOptions( phaseName );
+        Metrics.Sample sample = null;
         if( PhaseOptions.getBoolean( options, "enabled" ) ) {
             if( Options.v().verbose()  ) {
                 G.v().out.println( "Applying phase "+phaseName+" to the scene." );
             }
+            sample = Metrics.v().start( phaseName, null );
         }
 
-        ((SceneTransformer) t).transform( phaseName, options );
-
+        try {
+            ((SceneTransformer) t).transform( phaseName, options );
+        } finally {
+            Metrics.v().finish( sample );
+        }
     }
     public void apply(Body b) {
         Map options = PhaseOptions.v().getPhaseOptions( phaseName );
+        Metrics.Sample sample = null;
         if( PhaseOptions.getBoolean( options, "enabled" ) ) {
             if( Options.v().verbose() ) {
                 G.v().out.println( "Applying phase "+phaseName+" to "+b.getMethod()+"." );
             }
+            sample = Metrics.v().start( phaseName, b );
         }
 
-        ((BodyTransformer) t).transform( b, phaseName, options );
-
+        try {
+            ((BodyTransformer) t).transform( b, phaseName, options );
+        } finally {
+            Metrics.v().finish( sample );
+        }
     }
 }
@@ -0,0 +1,336 @@
+/* Soot - a J*va Optimization Framework
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place - Suite 330,
+ * Boston, MA 02111-1307, USA.
+ */
+
+package soot.coffi;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import soot.G;
+import soot.HasPhaseOptions;
+import soot.PackManager;
+import soot.PhaseOptions;
+import soot.Singletons;
+import soot.SootMethod;
+import soot.jimple.Jimple;
+import soot.jimple.JimpleBody;
+import soot.jimple.JimpleBodySerializer;
+import soot.options.Options;
+
+/**
+ * Keeps the bodies produced by the <tt>jb</tt> pack for methods read from
+ * class files in the directory given by <tt>-body-cache-dir</tt>, so that
+ * later runs over unchanged class files can skip bytecode conversion and
+ * the <tt>jb</tt> pack.
+ *
+ * <p>An entry is keyed by a hash of the class file contents, the method
+ * signature and every option which affects body creation. Entries are
+ * written to a temporary file and renamed into place, so concurrent runs
+ * sharing a directory never see a partial entry. Unreadable entries are
+ * deleted and treated as misses. When the directory grows beyond
+ * <tt>-body-cache-size</tt> megabytes the least recently used entries are
+ * removed.
+ *
+ * <p>A cached body refers to other classes by name only. Like incremental
+ * compilation, the cache assumes that classes referred to by an unchanged
+ * class file have not changed in a way that would alter its bodies, e.g.
+ * the inferred types of locals.
+ */
+public class BodyCache
+{
+    public BodyCache( Singletons.Global g ) {}
+    public static BodyCache v() { return G.v().soot_coffi_BodyCache(); }
+
+    private static final int MAGIC = 0x4A424331;
+
+    private File dir;
+    private byte[] optionsKey;
+    private long size = -1;
+
+    /** Returns true if <tt>-body-cache-dir</tt> has been set. */
+    public boolean isEnabled()
+    {
+        return Options.v().body_cache_dir().length() > 0;
+    }
+
+    /** Computes the hash which identifies the contents of a class file. */
+    static byte[] contentHash(byte[] data, int off, int len)
+    {
+        MessageDigest md = newDigest();
+        md.update(data, off, len);
+        return md.digest();
+    }
+
+    /** Computes the hash which identifies the contents of a class file,
+     * reading from the current position of <code>buf</code> to its limit
+     * without moving its position. */
+    static byte[] contentHash(ByteBuffer buf)
+    {
+        MessageDigest md = newDigest();
+        md.update(buf.duplicate());
+        return md.digest();
+    }
+
+    /** Returns the cached body of <code>m</code> or null on a miss. */
+    public JimpleBody load(SootMethod m, ClassFile classFile)
+    {
+        if (classFile.content_hash == null)
+            return null;
+        File file = entryFile(key(m, classFile));
+        if (!file.isFile())
+            return null;
+
+        byte[] data;
+        try {
+            data = readFile(file);
+        } catch (IOException e) {
+            return null;
+        }
+
+        JimpleBody jb = Jimple.v().newBody(m);
+        try {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+            if (in.readInt() != MAGIC || in.readInt() != JimpleBodySerializer.FORMAT_VERSION)
+                throw new IOException("Unsupported format");
+            // Resolving the references in a body toggles the phantom refs
+            // flag of the Scene, which jimplification guards with the same lock.
+            synchronized (Util.v()) {
+                JimpleBodySerializer.read(jb, in);
+            }
+        } catch (Exception e) {
+            if (Options.v().verbose())
+                G.v().out.println("Discarding body cache entry " + file + ": " + e);
+            delete(file);
+            return null;
+        }
+        file.setLastModified(System.currentTimeMillis());
+        return jb;
+    }
+
+    /** Stores the body of <code>m</code>. Bodies the cache cannot represent
+     * and failures to write are silently skipped. */
+    public void store(SootMethod m, ClassFile classFile, JimpleBody jb)
+    {
+        if (classFile.content_hash == null)
+            return;
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(MAGIC);
+            out.writeInt(JimpleBodySerializer.FORMAT_VERSION);
+            if (!JimpleBodySerializer.write(jb, out))
+                return;
+            out.flush();
+
+            File file = entryFile(key(m, classFile));
+            File parent = file.getParentFile();
+            parent.mkdirs();
+            File tmp = File.createTempFile(file.getName(), ".tmp", parent);
+            FileOutputStream fos = new FileOutputStream(tmp);
+            try {
+                bytes.writeTo(fos);
+            } finally {
+                fos.close();
+            }
+            if (!tmp.renameTo(file)) {
+                // Another thread or process stored the same entry first.
+                tmp.delete();
+                return;
+            }
+            grow(file.length());
+        } catch (IOException e) {
+            if (Options.v().verbose())
+                G.v().out.println("Could not store " + m.getSignature() + " in the body cache: " + e);
+        }
+    }
+
+    private synchronized File dir()
+    {
+        if (dir == null)
+            dir = new File(Options.v().body_cache_dir());
+        return dir;
+    }
+
+    private File entryFile(String key)
+    {
+        return new File(new File(dir(), key.substring(0, 2)), key.substring(2));
+    }
+
+    private String key(SootMethod m, ClassFile classFile)
+    {
+        MessageDigest md = newDigest();
+        md.update(optionsKey());
+        md.update(classFile.content_hash);
+        md.update(utf8(m.getSignature()));
+        byte[] digest = md.digest();
+        StringBuilder sb = new StringBuilder(digest.length * 2);
+        for (byte b : digest) {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16));
+            sb.append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
+
+    /** Encodes the options of the <tt>jb</tt> pack and its transforms and
+     * the global options which affect the bodies it produces. */
+    private synchronized byte[] optionsKey()
+    {
+        if (optionsKey == null) {
+            StringBuilder sb = new StringBuilder();
+            sb.append(JimpleBodySerializer.FORMAT_VERSION);
+            HasPhaseOptions jb = PackManager.v().getPack("jb");
+            sb.append(';').append(sorted(PhaseOptions.v().getPhaseOptions(jb)));
+            for (Iterator<?> it = PackManager.v().getPack("jb").iterator(); it.hasNext();) {
+                HasPhaseOptions t = (HasPhaseOptions) it.next();
+                sb.append(';').append(t.getPhaseName());
+                sb.append(sorted(PhaseOptions.v().getPhaseOptions(t)));
+            }
+            Options o = Options.v();
+            sb.append(";keep-line-number=").append(o.keep_line_number());
+            sb.append(";keep-offset=").append(o.keep_offset());
+            sb.append(";omit-excepting-unit-edges=").append(o.omit_excepting_unit_edges());
+            sb.append(";throw-analysis=").append(o.throw_analysis());
+            sb.append(";j2me=").append(o.j2me());
+            optionsKey = utf8(sb.toString());
+        }
+        return optionsKey;
+    }
+
+    /** Returns the phase options <code>options</code> sorted by name. */
+    private static Map<String, String> sorted(Map<?, ?> options)
+    {
+        Map<String, String> ret = new TreeMap<String, String>();
+        for (Map.Entry<?, ?> e : options.entrySet())
+            ret.put(String.valueOf(e.getKey()), String.valueOf(e.getValue()));
+        return ret;
+    }
+
+    /** Adds <code>n</code> bytes to the size of the cache and removes the
+     * least recently used entries once it exceeds the limit. */
+    private synchronized void grow(long n)
+    {
+        if (size < 0)
+            size = sizeOf(dir());
+        else
+            size += n;
+        long maxSize = Options.v().body_cache_size() * 1024L * 1024L;
+        if (size <= maxSize)
+            return;
+
+        List<File> files = new ArrayList<File>();
+        File[] subdirs = dir().listFiles();
+        if (subdirs != null) {
+            for (File subdir : subdirs) {
+                File[] entries = subdir.listFiles();
+                if (entries != null)
+                    files.addAll(Arrays.asList(entries));
+            }
+        }
+        final long[] lastModified = new long[files.size()];
+        List<Integer> order = new ArrayList<Integer>(files.size());
+        for (int i = 0; i < files.size(); i++) {
+            lastModified[i] = files.get(i).lastModified();
+            order.add(i);
+        }
+        Collections.sort(order, new Comparator<Integer>() {
+            public int compare(Integer a, Integer b) {
+                return Long.compare(lastModified[a], lastModified[b]);
+            }
+        });
+        long target = maxSize / 4 * 3;
+        for (int i = 0; i < order.size() && size > target; i++) {
+            File f = files.get(order.get(i));
+            long length = f.length();
+            if (f.delete())
+                size -= length;
+        }
+    }
+
+    private static long sizeOf(File f)
+    {
+        File[] children = f.listFiles();
+        if (children == null)
+            return f.length();
+        long size = 0;
+        for (File child : children)
+            size += sizeOf(child);
+        return size;
+    }
+
+    private static byte[] readFile(File file) throws IOException
+    {
+        FileInputStream in = new FileInputStream(file);
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream((int) file.length());
+            byte[] buf = new byte[4096];
+            int n;
+            while ((n = in.read(buf)) != -1)
+                out.write(buf, 0, n);
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+
+    private void delete(File file)
+    {
+        long length = file.length();
+        if (file.delete()) {
+            synchronized (this) {
+                if (size >= 0)
+                    size -= length;
+            }
+        }
+    }
+
+    private static MessageDigest newDigest()
+    {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static byte[] utf8(String s)
+    {
+        try {
+            return s.getBytes("UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -0,0 +1,145 @@
+/* Soot - a J*va Optimization Framework
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place - Suite 330,
+ * Boston, MA 02111-1307, USA.
+ */
+
+package soot.coffi;
+
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/** A {@link DataInput} reading big-endian values straight out of a
+ * {@link ByteBuffer}, so that a class file can be parsed from a mapped or
+ * pooled buffer without first copying it into a byte array and wrapping
+ * it in streams. Reading past the limit of the buffer raises an
+ * {@link EOFException}, as {@link DataInputStream} would.
+ */
+class ByteBufferDataInput implements DataInput {
+    private final ByteBuffer buf;
+
+    /** Reads from <code>buf</code>, starting at its current position. */
+    ByteBufferDataInput(ByteBuffer buf) {
+        this.buf = buf.duplicate().order(ByteOrder.BIG_ENDIAN);
+    }
+
+    /** Returns the number of bytes read so far, counted from the position
+     * the buffer had when this object was created. */
+    int position() {
+        return buf.position();
+    }
+
+    public void readFully(byte[] b) throws IOException {
+        readFully(b, 0, b.length);
+    }
+
+    public void readFully(byte[] b, int off, int len) throws IOException {
+        if (len > buf.remaining())
+            throw new EOFException();
+        buf.get(b, off, len);
+    }
+
+    public int skipBytes(int n) {
+        int skipped = Math.max(0, Math.min(n, buf.remaining()));
+        buf.position(buf.position() + skipped);
+        return skipped;
+    }
+
+    public boolean readBoolean() throws IOException {
+        return readByte() != 0;
+    }
+
+    public byte readByte() throws IOException {
+        try {
+            return buf.get();
+        } catch (BufferUnderflowException e) {
+            throw new EOFException();
+        }
+    }
+
+    public int readUnsignedByte() throws IOException {
+        return readByte() & 0xFF;
+    }
+
+    public short readShort() throws IOException {
+        try {
+            return buf.getShort();
+        } catch (BufferUnderflowException e) {
+            throw new EOFException();
+        }
+    }
+
+    public int readUnsignedShort() throws IOException {
+        return readShort() & 0xFFFF;
+    }
+
+    public char readChar() throws IOException {
+        return (char) readShort();
+    }
+
+    public int readInt() throws IOException {
+        try {
+            return buf.getInt();
+        } catch (BufferUnderflowException e) {
+            throw new EOFException();
+        }
+    }
+
+    public long readLong() throws IOException {
+        try {
+            return buf.getLong();
+        } catch (BufferUnderflowException e) {
+            throw new EOFException();
+        }
+    }
+
+    public float readFloat() throws IOException {
+        return Float.intBitsToFloat(readInt());
+    }
+
+    public double readDouble() throws IOException {
+        return Double.longBitsToDouble(readLong());
+    }
+
+    /** Reads a line as {@link DataInputStream#readLine()} does: each byte
+     * becomes one character, and the line ends at "\n", "\r", "\r\n" or
+     * the end of the buffer. Returns null if no byte is left. */
+    public String readLine() {
+        if (!buf.hasRemaining())
+            return null;
+        StringBuilder sb = new StringBuilder();
+        while (buf.hasRemaining()) {
+            int c = buf.get() & 0xFF;
+            if (c == '\n')
+                break;
+            if (c == '\r') {
+                if (buf.hasRemaining() && buf.get(buf.position()) == '\n')
+                    buf.get();
+                break;
+            }
+            sb.append((char) c);
+        }
+        return sb.toString();
+    }
+
+    public String readUTF() throws IOException {
+        return DataInputStream.readUTF(this);
+    }
+}
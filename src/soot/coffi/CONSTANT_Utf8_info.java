@@ -42,31 +42,42 @@ public class CONSTANT_Utf8_info extends cp_info {
    private int sHashCode;
    // for caching the conversion.
    private String s;
-   /** Byte array of actual utf8 string. */
+   /** Byte array holding the size and the actual utf8 string at <tt>offset</tt>. */
    private final byte bytes[];
-   /** Constructor from a DataInputSream */
-   public CONSTANT_Utf8_info(DataInputStream d) throws IOException {
+   private final int offset;
+   /** Set for entries pointing into the bytes of their class file. */
+   private final boolean lazy;
+   /** Constructor from a DataInput */
+   public CONSTANT_Utf8_info(DataInput d) throws IOException {
           int len;
           len = d.readUnsignedShort();
           bytes = new byte[len+2];
           bytes[0] = (byte)(len>>8);
           bytes[1] = (byte)(len & 0xff);
-          if (len>0) {
-          int j;
-                 for (j=0; j<len;j++)
-                    bytes[j+2] = (byte)d.readUnsignedByte();
-          }
+          if (len>0)
+             d.readFully(bytes, 2, len);
+          offset = 0;
+          lazy = false;
+   }
+   /** Constructor for an entry whose size and string start at
+    * <tt>offset</tt> in the given class file bytes, which must not change
+    * afterwards. The string is only decoded, and then interned, when first
+    * asked for. */
+   CONSTANT_Utf8_info(byte classBytes[], int offset) {
+          this.bytes = classBytes;
+          this.offset = offset;
+          this.lazy = true;
    }
    /** For writing out the byte stream for this utf8 properly (incl size). */
    public void writeBytes(DataOutputStream dd) throws IOException {
           int len;
-          len = bytes.length;
-          dd.writeShort(len-2);
-          dd.write(bytes,2,len-2);
+          len = length();
+          dd.writeShort(len);
+          dd.write(bytes,offset+2,len);
    }
    /** Length in bytes of byte array. */
    public int length() {
-      return (((((bytes[0]))&0xff)<<8) + (((bytes[1]))&0xff));
+      return (((((bytes[offset]))&0xff)<<8) + (((bytes[offset+1]))&0xff));
    }
    /** Returns the size of this cp_info object.
     * @return number of bytes occupied by this object.
@@ -79,10 +90,14 @@ public class CONSTANT_Utf8_info extends cp_info {
    public String convert() {
       if (s==null) {
          try {
-            ByteArrayInputStream bs = new ByteArrayInputStream(bytes);
+            ByteArrayInputStream bs = new ByteArrayInputStream(bytes, offset, length()+2);
             DataInputStream d = new DataInputStream(bs);
             String buf = d.readUTF();
             sHashCode = buf.hashCode();
+            if (lazy) {
+               buf = buf.intern();
+               s = buf;
+            }
             return buf;
          } catch(IOException e) {
             return "!!IOException!!";
@@ -108,10 +123,10 @@ public class CONSTANT_Utf8_info extends cp_info {
     */
    public boolean equals(CONSTANT_Utf8_info cu) {
       int i,j;
-      j = bytes.length;
-      if (j!=cu.bytes.length) return false;
+      j = length()+2;
+      if (j!=cu.length()+2) return false;
       for (i=0; i<j; i++) {
-         if (bytes[i]!=cu.bytes[i]) return false;
+         if (bytes[offset+i]!=cu.bytes[cu.offset+i]) return false;
       }
       return true;
    }
@@ -140,16 +155,20 @@ public class CONSTANT_Utf8_info extends cp_info {
    public int compareTo(cp_info cp) {
       if (tag!=cp.tag) return tag-cp.tag;
       CONSTANT_Utf8_info cu = (CONSTANT_Utf8_info)cp;
-      G.v().coffi_CONSTANT_Utf8_info_e1.reset(bytes);
-      G.v().coffi_CONSTANT_Utf8_info_e2.reset(cu.bytes);
-      for (;G.v().coffi_CONSTANT_Utf8_info_e1.hasMoreElements() && G.v().coffi_CONSTANT_Utf8_info_e2.hasMoreElements();) {
-         G.v().coffi_CONSTANT_Utf8_info_e1.nextElement();
-         G.v().coffi_CONSTANT_Utf8_info_e2.nextElement();
-         if (G.v().coffi_CONSTANT_Utf8_info_e1.c<G.v().coffi_CONSTANT_Utf8_info_e2.c) return -1;
-         if (G.v().coffi_CONSTANT_Utf8_info_e2.c<G.v().coffi_CONSTANT_Utf8_info_e1.c) return 1;
+      // Class files may be read on several threads, so the enumerations
+      // cannot be shared.
+      Utf8_Enumeration e1 = new Utf8_Enumeration();
+      Utf8_Enumeration e2 = new Utf8_Enumeration();
+      e1.reset(bytes, offset);
+      e2.reset(cu.bytes, cu.offset);
+      for (;e1.hasMoreElements() && e2.hasMoreElements();) {
+         e1.nextElement();
+         e2.nextElement();
+         if (e1.c<e2.c) return -1;
+         if (e2.c<e1.c) return 1;
       }
-      if (G.v().coffi_CONSTANT_Utf8_info_e1.hasMoreElements()) return -1;
-      if (G.v().coffi_CONSTANT_Utf8_info_e2.hasMoreElements()) return 1;
+      if (e1.hasMoreElements()) return -1;
+      if (e2.hasMoreElements()) return 1;
       return 0;
    }
    /** Utility method; converts the given String into a utf8 encoded array
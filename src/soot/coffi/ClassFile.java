@@ -31,6 +31,7 @@
 
 package soot.coffi;
 import soot.*;
+import soot.options.Options;
 
 import java.io.*;
 
@@ -162,6 +163,14 @@ public class ClassFile {
     /** bootstrap-methods attribute (if any) */
     public BootstrapMethods_attribute bootstrap_methods_attribute;
 
+    /** Private copy of the class file while it is read in lazy constant
+     * pool mode; Utf8 entries of the constant pool refer into it. */
+    private byte[] classBytes;
+
+    /** Hash of the contents of the class file, used as part of the key of
+     * the {@link BodyCache}. Only computed when the cache is enabled. */
+    public byte[] content_hash;
+
    /** Creates a new ClassFile object given the name of the file.
     * @param nfn file name which this ClassFile will represent.
     */
@@ -176,34 +185,41 @@ public class ClassFile {
     {
       InputStream f = null;
       InputStream classFileStream;
-      DataInputStream d;
       boolean b;
 
       classFileStream = is;
      
-      byte[]  data;
+      byte[]  data = null;
       
       
-      Timers.v().readTimer.start();
+      if (Options.v().time())
+         Timers.v().readTimer.start();
       
       try 
       {
         data = new byte[classFileStream.available()];
         classFileStream.read(data);
         f = new ByteArrayInputStream(data);
+        if (BodyCache.v().isEnabled())
+          content_hash = BodyCache.contentHash(data, 0, data.length);
          
       } catch(IOException e)
       {
       }
       
-      Timers.v().readTimer.end();
+      if (Options.v().time())
+         Timers.v().readTimer.end();
       
-      d = new DataInputStream(f);
-      b = readClass(d);
+      if (Options.v().lazy_constant_pool() && data != null) {
+        classBytes = data;
+        b = readClass(new ByteBufferDataInput(java.nio.ByteBuffer.wrap(data)));
+        classBytes = null;
+      }
+      else
+        b = readClass(new DataInputStream(f));
       
       try {
         classFileStream.close();
-        d.close(); 
         f.close();
       } catch(IOException e) {
          G.v().out.println("IOException with " + fn + ": " + e.getMessage());
@@ -216,6 +232,28 @@ public class ClassFile {
       return true;
    }
 
+    /** Reads this class file from the given buffer, starting at its current
+     * position. Everything kept by this ClassFile is copied out of the
+     * buffer, so the buffer may be reused once this method returns.
+     * @param buf buffer holding the <tt>.class</tt> file.
+     * @return <i>true</i> on success.
+     */
+    public boolean loadClassFile(java.nio.ByteBuffer buf)
+    {
+      if (BodyCache.v().isEnabled())
+        content_hash = BodyCache.contentHash(buf);
+      if (Options.v().lazy_constant_pool()) {
+        // The buffer may be reused, so the constant pool has to refer to a copy.
+        byte[] data = new byte[buf.remaining()];
+        buf.duplicate().get(data);
+        classBytes = data;
+        boolean b = readClass(new ByteBufferDataInput(java.nio.ByteBuffer.wrap(data)));
+        classBytes = null;
+        return b;
+      }
+      return readClass(new ByteBufferDataInput(buf));
+   }
+
 
 
 
@@ -363,7 +401,7 @@ public class ClassFile {
     * @param d Stream forming the <tt>.class</tt> file.
     * @return <i>true</i> if read was successful, <i>false</i> on some error.
     */
-   public boolean readClass(DataInputStream d) {
+   public boolean readClass(DataInput d) {
       try {
          // first read in magic number
          magic = d.readInt() & 0xFFFFFFFFL;
@@ -397,20 +435,25 @@ public class ClassFile {
          }
          //G.v().out.println("Implements " + interfaces_count + " interface(s)");
 
-         Timers.v().fieldTimer.start();
+         if (Options.v().time())
+            Timers.v().fieldTimer.start();
          
          fields_count = d.readUnsignedShort();
          //G.v().out.println("Has " + fields_count + " field(s)");
          readFields(d);
-         Timers.v().fieldTimer.end();
+         if (Options.v().time())
+            Timers.v().fieldTimer.end();
         
-         Timers.v().methodTimer.start();
+         if (Options.v().time())
+            Timers.v().methodTimer.start();
          methods_count = d.readUnsignedShort();
          //G.v().out.println("Has " + methods_count + " method(s)");
          readMethods(d);
-         Timers.v().methodTimer.end();
+         if (Options.v().time())
+            Timers.v().methodTimer.end();
         
-         Timers.v().attributeTimer.start();
+         if (Options.v().time())
+            Timers.v().attributeTimer.start();
          
          attributes_count = d.readUnsignedShort();
          //G.v().out.println("Has " + attributes_count + " attribute(s)");
@@ -418,7 +461,8 @@ public class ClassFile {
             attributes =  new attribute_info[attributes_count];
             readAttributes(d,attributes_count,attributes);
          }
-         Timers.v().attributeTimer.end();
+         if (Options.v().time())
+            Timers.v().attributeTimer.end();
          
       } catch(IOException e) {
          throw new RuntimeException("IOException with " + fn + ": " + e.getMessage(), e);
@@ -436,7 +480,7 @@ public class ClassFile {
     * @return <i>true</i> if read was successful, <i>false</i> on some error.
     * @exception java.io.IOException on error.
     */
-   protected boolean readConstantPool(DataInputStream d) throws IOException {
+   protected boolean readConstantPool(DataInput d) throws IOException {
       byte tag;
       cp_info cp;
       int i;
@@ -531,6 +575,18 @@ public class ClassFile {
             if (debug) G.v().out.println("Constant pool[" + i + "]: Name and Type");
             break;
          case cp_info.CONSTANT_Utf8:
+            if (classBytes != null) {
+               // Lazy mode: keep the offset of the entry and decode it on demand.
+               int offset = ((ByteBufferDataInput) d).position();
+               int len = d.readUnsignedShort();
+               if (d.skipBytes(len) != len)
+                  throw new EOFException();
+               cp = new CONSTANT_Utf8_info(classBytes, offset);
+               if (debug)
+                  G.v().out.println("Constant pool[" + i + "]: Utf8 = \"" +
+                                     ((CONSTANT_Utf8_info) cp).convert() + "\"");
+               break;
+            }
             CONSTANT_Utf8_info cputf8 = new CONSTANT_Utf8_info(d);
             // If an equivalent CONSTANT_Utf8 already exists, we return
             // the pre-existing one and allow cputf8 to be GC'd.
@@ -572,7 +628,7 @@ public class ClassFile {
     * @return <i>true</i> if read was successful, <i>false</i> on some error.
     * @exception java.io.IOException on error.
     */
-   protected boolean readAttributes(DataInputStream d,int attributes_count,
+   protected boolean readAttributes(DataInput d,int attributes_count,
                                     attribute_info[] ai) throws IOException {
       attribute_info a=null;
       int i;
@@ -602,7 +658,7 @@ public class ClassFile {
             ca.max_locals = d.readUnsignedShort();
             ca.code_length = d.readInt() & 0xFFFFFFFFL;
             ca.code = new byte[(int) ca.code_length];
-            d.read(ca.code);
+            d.readFully(ca.code);
             ca.exception_table_length = d.readUnsignedShort();
             ca.exception_table = new exception_table_entry[ca.exception_table_length];
             int k;
@@ -817,7 +873,7 @@ public class ClassFile {
             Generic_attribute ga = new Generic_attribute();
             if (len>0) {
                ga.info = new byte[(int) len];
-               d.read(ga.info);
+               d.readFully(ga.info);
             }
             a = (attribute_info)ga;
          }
@@ -828,7 +884,7 @@ public class ClassFile {
       return true;
    }
 
-    private element_value [] readElementValues(int count, DataInputStream d, boolean needName, int name_index)
+    private element_value [] readElementValues(int count, DataInput d, boolean needName, int name_index)
         throws IOException {
         element_value [] list = new element_value[count];
         for (int x = 0; x < count; x++){
@@ -890,7 +946,7 @@ public class ClassFile {
     * @return <i>true</i> if read was successful, <i>false</i> on some error.
     * @exception java.io.IOException on error.
     */
-   protected boolean readFields(DataInputStream d) throws IOException {
+   protected boolean readFields(DataInput d) throws IOException {
       field_info fi;
       int i;
 
@@ -920,7 +976,7 @@ public class ClassFile {
     * @return <i>true</i> if read was successful, <i>false</i> on some error.
     * @exception java.io.IOException on error.
     */
-   protected boolean readMethods(DataInputStream d) throws IOException {
+   protected boolean readMethods(DataInput d) throws IOException {
       method_info mi;
       int i;
 
@@ -63,7 +63,25 @@ public class CoffiMethodSource implements MethodSource
 
         if(m.isAbstract() || m.isNative() || m.isPhantom())
             return jb;
-            
+
+        ClassFile classFile = coffiClass;
+        BodyCache cache = BodyCache.v();
+        if(cache.isEnabled())
+        {
+            JimpleBody cached = cache.load(m, classFile);
+            if(cached != null)
+            {
+                if(Options.v().verbose())
+                    G.v().out.println("[" + m.getName() + "]     Read JimpleBody from body cache");
+                freeCoffiMethod();
+                return cached;
+            }
+        }
+
+        // CFG construction and jimplification keep their working state in
+        // the coffi Util singleton, so only one body may be converted at a
+        // time. The jb pack below runs outside of the lock.
+        synchronized (Util.v()) {
         if(Options.v().time())
             Timers.v().conversionTimer.start();
 
@@ -101,7 +119,18 @@ public class CoffiMethodSource implements MethodSource
 
         if(Options.v().time())
             Timers.v().conversionTimer.end();
+        }
+
+         freeCoffiMethod();
+         
+         PackManager.v().getPack("jb").apply(jb);
+         if(cache.isEnabled())
+             cache.store(m, classFile, jb);
+         return jb;
+    }
 
+    private void freeCoffiMethod()
+    {
          coffiMethod.instructions = null;
          coffiMethod.cfg = null;
          coffiMethod.attributes = null;
@@ -111,8 +140,5 @@ public class CoffiMethodSource implements MethodSource
 
          coffiMethod = null;
          coffiClass = null;
-         
-         PackManager.v().getPack("jb").apply(jb);
-         return jb;
     }
 }
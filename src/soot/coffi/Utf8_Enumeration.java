@@ -50,8 +50,8 @@ public class Utf8_Enumeration implements Enumeration {
     */
    public int c;            // latest character
 
-   private short curindex;
-   private short length;
+   private int curindex;
+   private int length;
    private byte bytes[];
 
    /** For creating an empty enumeration; you must use reset() after this
@@ -64,16 +64,24 @@ public class Utf8_Enumeration implements Enumeration {
     */
    public Utf8_Enumeration(byte b[]) {
       bytes = b;
-      curindex = (short)2;
-      length = (short)(((((bytes[0]))&0xff)<<8) + (((bytes[1]))&0xff) + 2);
+      curindex = 2;
+      length = (((((bytes[0]))&0xff)<<8) + (((bytes[1]))&0xff) + 2);
    }
    /** Resets this object to be an enumeration of the given Utf8 string.
     * @param b array of bytes in Utf8 format.
     */
    public void reset(byte b[]) {
+      reset(b, 0);
+   }
+   /** Resets this object to be an enumeration of the Utf8 string starting
+    * at <tt>offset</tt> in the given array.
+    * @param b array of bytes in Utf8 format.
+    * @param offset index of the size of the string in b.
+    */
+   public void reset(byte b[], int offset) {
       bytes = b;
-      curindex = (short)2;
-      length = (short)(((((bytes[0]))&0xff)<<8) + (((bytes[1]))&0xff) + 2);
+      curindex = offset+2;
+      length = offset+2 + (((((bytes[offset]))&0xff)<<8) + (((bytes[offset+1]))&0xff));
    }
 
    /** <i>true</i> if the entire string hasn't been enumerated yet. */
@@ -32,6 +32,7 @@
 package soot.coffi;
 import soot.jimple.*;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.io.*;
 
 import soot.jimple.internal.ImmediateBox;
@@ -63,14 +64,26 @@ public class Util
     }    
 
     public void resolveFromClassFile(SootClass aClass, InputStream is, List references)
+    {
+        ClassFile coffiClass = new ClassFile(aClass.getName());
+        resolveFromClassFile(aClass, coffiClass, coffiClass.loadClassFile(is), references);
+    }
+
+    /** Resolves <code>aClass</code> from a class file held in <code>buf</code>,
+     * as {@link #resolveFromClassFile(SootClass, InputStream, List)} does. */
+    public void resolveFromClassFile(SootClass aClass, java.nio.ByteBuffer buf, List references)
+    {
+        ClassFile coffiClass = new ClassFile(aClass.getName());
+        resolveFromClassFile(aClass, coffiClass, coffiClass.loadClassFile(buf), references);
+    }
+
+    private void resolveFromClassFile(SootClass aClass, ClassFile coffiClass, boolean success, List references)
     {
         SootClass bclass = aClass;                
         String className = bclass.getName();
-        ClassFile coffiClass = new ClassFile(className);
         
         // Load up class file, and retrieve bclass from class manager.
         {
-            boolean success = coffiClass.loadClassFile(is);
 
             if(!success)
                 {
@@ -435,8 +448,6 @@ public class Util
         return types[types.length - 1];
     }
 
-    private final ArrayList<Type> conversionTypes = new ArrayList<Type>();
-    
     /*
     private Map cache = new HashMap();
     public Type[] jimpleTypesOfFieldOrMethodDescriptor(String descriptor)
@@ -546,14 +557,16 @@ public class Util
 */
 
 
-    private final Map<String, Type[]> cache = new HashMap<String, Type[]>();
+    // The descriptor cache is shared by class resolution and by bodies
+    // being jimplified on several threads (see Options.num_threads()).
+    private final Map<String, Type[]> cache = new ConcurrentHashMap<String, Type[]>();
     public Type[] jimpleTypesOfFieldOrMethodDescriptor(String descriptor)
     {
         Type[] ret = cache.get(descriptor);
         if( ret != null ) return ret;
         char[] d = descriptor.toCharArray();
         int p = 0;
-        conversionTypes.clear();
+        ArrayList<Type> conversionTypes = new ArrayList<Type>();
 
 outer:
         while(p<d.length)
@@ -0,0 +1,923 @@
+/* Soot - a J*va Optimization Framework
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place - Suite 330,
+ * Boston, MA 02111-1307, USA.
+ */
+
+package soot.jimple;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import soot.ArrayType;
+import soot.BooleanType;
+import soot.ByteType;
+import soot.CharType;
+import soot.DoubleType;
+import soot.FloatType;
+import soot.IntType;
+import soot.Local;
+import soot.LocalVariable;
+import soot.LongType;
+import soot.NullType;
+import soot.RefType;
+import soot.Scene;
+import soot.ShortType;
+import soot.SootFieldRef;
+import soot.SootMethodHandle;
+import soot.SootMethodRef;
+import soot.SootMethodType;
+import soot.StmtAddressType;
+import soot.Trap;
+import soot.Type;
+import soot.Unit;
+import soot.UnitBox;
+import soot.UnknownType;
+import soot.Value;
+import soot.ValueBox;
+import soot.VoidType;
+import soot.jimple.internal.*;
+import soot.robovm.RoboVMLocalAlias;
+import soot.tagkit.BytecodeOffsetTag;
+import soot.tagkit.LineNumberTag;
+import soot.tagkit.Tag;
+
+/**
+ * Writes a {@link JimpleBody} to a compact binary form and reads it back.
+ * Locals (including {@link RoboVMLocalAlias}es and the slot locals they
+ * stand for), units, traps, local variable tables and the line number and
+ * bytecode offset tags of units are preserved; class, field and method
+ * references are written by name and re-created through the {@link Scene}.
+ * <p>
+ * Only bodies made of the standard Jimple statements and values can be
+ * written. {@link #write(JimpleBody, DataOutput)} returns <code>false</code>
+ * for anything else (e.g. bodies holding tags other than the ones above),
+ * in which case the output must be discarded.
+ */
+public class JimpleBodySerializer
+{
+    /** Changes whenever the format written by this class changes. */
+    public static final int FORMAT_VERSION = 1;
+
+    private static final int TYPE_BOOLEAN = 1, TYPE_BYTE = 2, TYPE_CHAR = 3, TYPE_SHORT = 4,
+        TYPE_INT = 5, TYPE_LONG = 6, TYPE_FLOAT = 7, TYPE_DOUBLE = 8, TYPE_VOID = 9,
+        TYPE_NULL = 10, TYPE_UNKNOWN = 11, TYPE_STMT_ADDRESS = 12, TYPE_REF = 13, TYPE_ARRAY = 14;
+
+    private static final int V_LOCAL = 1, V_INT = 2, V_LONG = 3, V_FLOAT = 4, V_DOUBLE = 5,
+        V_STRING = 6, V_NULL = 7, V_CLASS = 8, V_METHOD_HANDLE = 9, V_METHOD_TYPE = 10,
+        V_PARAMETER = 11, V_THIS = 12, V_CAUGHT_EXCEPTION = 13, V_ARRAY_REF = 14,
+        V_INSTANCE_FIELD = 15, V_STATIC_FIELD = 16,
+        V_ADD = 17, V_AND = 18, V_CMP = 19, V_CMPG = 20, V_CMPL = 21, V_DIV = 22, V_EQ = 23,
+        V_GE = 24, V_GT = 25, V_LE = 26, V_LT = 27, V_MUL = 28, V_NE = 29, V_OR = 30,
+        V_REM = 31, V_SHL = 32, V_SHR = 33, V_SUB = 34, V_USHR = 35, V_XOR = 36,
+        V_NEG = 37, V_LENGTH = 38, V_CAST = 39, V_INSTANCE_OF = 40, V_NEW = 41,
+        V_NEW_ARRAY = 42, V_NEW_MULTI_ARRAY = 43, V_STATIC_INVOKE = 44, V_SPECIAL_INVOKE = 45,
+        V_VIRTUAL_INVOKE = 46, V_INTERFACE_INVOKE = 47, V_DYNAMIC_INVOKE = 48;
+
+    private static final int S_ASSIGN = 1, S_IDENTITY = 2, S_INVOKE = 3, S_IF = 4, S_GOTO = 5,
+        S_TABLE_SWITCH = 6, S_LOOKUP_SWITCH = 7, S_RETURN = 8, S_RETURN_VOID = 9, S_THROW = 10,
+        S_ENTER_MONITOR = 11, S_EXIT_MONITOR = 12, S_NOP = 13, S_RET = 14, S_BREAKPOINT = 15;
+
+    private static final int LOCAL_PLAIN = 1, LOCAL_ALIAS = 2;
+
+    private static final int TAG_LINE_NUMBER = 1, TAG_BYTECODE_OFFSET = 2;
+
+    private static final Map<Class<?>, Integer> binopKinds = new HashMap<Class<?>, Integer>();
+    static {
+        binopKinds.put(JAddExpr.class, V_ADD);
+        binopKinds.put(JAndExpr.class, V_AND);
+        binopKinds.put(JCmpExpr.class, V_CMP);
+        binopKinds.put(JCmpgExpr.class, V_CMPG);
+        binopKinds.put(JCmplExpr.class, V_CMPL);
+        binopKinds.put(JDivExpr.class, V_DIV);
+        binopKinds.put(JEqExpr.class, V_EQ);
+        binopKinds.put(JGeExpr.class, V_GE);
+        binopKinds.put(JGtExpr.class, V_GT);
+        binopKinds.put(JLeExpr.class, V_LE);
+        binopKinds.put(JLtExpr.class, V_LT);
+        binopKinds.put(JMulExpr.class, V_MUL);
+        binopKinds.put(JNeExpr.class, V_NE);
+        binopKinds.put(JOrExpr.class, V_OR);
+        binopKinds.put(JRemExpr.class, V_REM);
+        binopKinds.put(JShlExpr.class, V_SHL);
+        binopKinds.put(JShrExpr.class, V_SHR);
+        binopKinds.put(JSubExpr.class, V_SUB);
+        binopKinds.put(JUshrExpr.class, V_USHR);
+        binopKinds.put(JXorExpr.class, V_XOR);
+    }
+
+    private JimpleBodySerializer() {}
+
+    /** Writes <code>b</code> to <code>out</code>.
+     * @return <code>false</code> if <code>b</code> holds something this
+     * format cannot represent; <code>out</code> is then left in an
+     * unspecified state. */
+    public static boolean write(JimpleBody b, DataOutput out) throws IOException
+    {
+        try {
+            new Writer(out).writeBody(b);
+            return true;
+        } catch (UnsupportedException e) {
+            return false;
+        }
+    }
+
+    /** Fills the empty body <code>b</code> with a body previously written by
+     * {@link #write(JimpleBody, DataOutput)}. Missing classes referred to by
+     * the body are created as phantom classes. */
+    public static void read(JimpleBody b, DataInput in) throws IOException
+    {
+        boolean oldPhantomValue = Scene.v().getPhantomRefs();
+        Scene.v().setPhantomRefs(true);
+        try {
+            new Reader(in).readBody(b);
+        } finally {
+            Scene.v().setPhantomRefs(oldPhantomValue);
+        }
+    }
+
+    private static class UnsupportedException extends RuntimeException
+    {
+        private static final long serialVersionUID = 1L;
+
+        UnsupportedException(Object o)
+        {
+            super(String.valueOf(o));
+        }
+    }
+
+    private static class Writer
+    {
+        private final DataOutput out;
+        private final Map<String, Integer> strings = new HashMap<String, Integer>();
+        /** Aliases compare equal to their owner, so locals are told apart by identity. */
+        private final Map<Local, Integer> locals = new IdentityHashMap<Local, Integer>();
+        private final Map<Unit, Integer> units = new HashMap<Unit, Integer>();
+
+        Writer(DataOutput out)
+        {
+            this.out = out;
+        }
+
+        void writeBody(JimpleBody b) throws IOException
+        {
+            if (!b.getTags().isEmpty())
+                throw new UnsupportedException(b.getTags());
+
+            writeInt(b.getLocalCount());
+            for (Local l : b.getLocals())
+                writeLocal(l);
+
+            for (Unit u : b.getUnits())
+                units.put(u, units.size());
+
+            writeInt(b.getUnits().size());
+            for (Unit u : b.getUnits()) {
+                writeStmt(u);
+                for (Object box : u.getUseAndDefBoxes()) {
+                    if (!((ValueBox) box).getTags().isEmpty())
+                        throw new UnsupportedException(((ValueBox) box).getTags());
+                }
+                List<Tag> tags = u.getTags();
+                writeInt(tags.size());
+                for (Tag t : tags) {
+                    if (t instanceof LineNumberTag) {
+                        out.writeByte(TAG_LINE_NUMBER);
+                        writeInt(((LineNumberTag) t).getLineNumber());
+                    } else if (t instanceof BytecodeOffsetTag) {
+                        out.writeByte(TAG_BYTECODE_OFFSET);
+                        writeInt(((BytecodeOffsetTag) t).getBytecodeOffset());
+                    } else {
+                        throw new UnsupportedException(t);
+                    }
+                }
+            }
+
+            writeInt(b.getTraps().size());
+            for (Trap t : b.getTraps()) {
+                if (t.getClass() != JTrap.class)
+                    throw new UnsupportedException(t);
+                writeString(t.getException().getName());
+                writeUnit(t.getBeginUnit());
+                writeUnit(t.getEndUnit());
+                writeUnit(t.getHandlerUnit());
+            }
+
+            List<LocalVariable> vars = b.getLocalVariables();
+            writeInt(vars.size());
+            for (LocalVariable v : vars) {
+                writeString(v.getName());
+                writeInt(v.getIndex());
+                writeUnit(v.getStartUnit());
+                writeNullableUnit(v.getEndUnit());
+                writeNullableString(v.getDescriptor());
+            }
+        }
+
+        /** Writes a non-negative int in 7-bit groups. */
+        void writeInt(int i) throws IOException
+        {
+            if (i < 0)
+                throw new UnsupportedException(i);
+            while ((i & ~0x7F) != 0) {
+                out.writeByte((i & 0x7F) | 0x80);
+                i >>>= 7;
+            }
+            out.writeByte(i);
+        }
+
+        /** Writes a reference to <code>l</code>, preceded by its definition
+         * the first time it is seen. Aliases are defined after their owner. */
+        void writeLocal(Local l) throws IOException
+        {
+            Integer index = locals.get(l);
+            if (index != null) {
+                writeInt(index + 1);
+                return;
+            }
+            writeInt(0);
+            if (l.getClass() == RoboVMLocalAlias.class) {
+                out.writeByte(LOCAL_ALIAS);
+                writeLocal(((RoboVMLocalAlias) l).getOwner());
+            } else if (l.getClass() == JimpleLocal.class) {
+                out.writeByte(LOCAL_PLAIN);
+                writeString(l.getName());
+                writeType(l.getType());
+            } else {
+                throw new UnsupportedException(l);
+            }
+            writeInt(l.getVariableTableIndex() + 1);
+            Set<Integer> sameSlotVariables = l.getSameSlotVariables();
+            if (sameSlotVariables == null) {
+                writeInt(0);
+            } else {
+                writeInt(sameSlotVariables.size() + 1);
+                for (Integer i : sameSlotVariables)
+                    out.writeInt(i);
+            }
+            locals.put(l, locals.size());
+        }
+
+        void writeString(String s) throws IOException
+        {
+            Integer index = strings.get(s);
+            if (index != null) {
+                writeInt(index + 1);
+            } else {
+                strings.put(s, strings.size());
+                writeInt(0);
+                out.writeUTF(s);
+            }
+        }
+
+        void writeNullableString(String s) throws IOException
+        {
+            out.writeBoolean(s != null);
+            if (s != null)
+                writeString(s);
+        }
+
+        void writeUnit(Unit u) throws IOException
+        {
+            Integer index = units.get(u);
+            if (index == null)
+                throw new UnsupportedException(u);
+            writeInt(index);
+        }
+
+        void writeNullableUnit(Unit u) throws IOException
+        {
+            if (u == null)
+                writeInt(0);
+            else {
+                Integer index = units.get(u);
+                if (index == null)
+                    throw new UnsupportedException(u);
+                writeInt(index + 1);
+            }
+        }
+
+        void writeType(Type t) throws IOException
+        {
+            if (t instanceof RefType) {
+                out.writeByte(TYPE_REF);
+                writeString(((RefType) t).getClassName());
+            } else if (t instanceof ArrayType) {
+                out.writeByte(TYPE_ARRAY);
+                writeType(((ArrayType) t).baseType);
+                writeInt(((ArrayType) t).numDimensions);
+            } else if (t == BooleanType.v()) out.writeByte(TYPE_BOOLEAN);
+            else if (t == ByteType.v()) out.writeByte(TYPE_BYTE);
+            else if (t == CharType.v()) out.writeByte(TYPE_CHAR);
+            else if (t == ShortType.v()) out.writeByte(TYPE_SHORT);
+            else if (t == IntType.v()) out.writeByte(TYPE_INT);
+            else if (t == LongType.v()) out.writeByte(TYPE_LONG);
+            else if (t == FloatType.v()) out.writeByte(TYPE_FLOAT);
+            else if (t == DoubleType.v()) out.writeByte(TYPE_DOUBLE);
+            else if (t == VoidType.v()) out.writeByte(TYPE_VOID);
+            else if (t == NullType.v()) out.writeByte(TYPE_NULL);
+            else if (t == UnknownType.v()) out.writeByte(TYPE_UNKNOWN);
+            else if (t == StmtAddressType.v()) out.writeByte(TYPE_STMT_ADDRESS);
+            else throw new UnsupportedException(t);
+        }
+
+        void writeTypes(List<?> types) throws IOException
+        {
+            writeInt(types.size());
+            for (Object t : types)
+                writeType((Type) t);
+        }
+
+        void writeMethodRef(SootMethodRef ref) throws IOException
+        {
+            writeString(ref.declaringClass().getName());
+            writeString(ref.name());
+            writeTypes(ref.parameterTypes());
+            writeType(ref.returnType());
+            out.writeBoolean(ref.isStatic());
+        }
+
+        void writeFieldRef(SootFieldRef ref) throws IOException
+        {
+            writeString(ref.declaringClass().getName());
+            writeString(ref.name());
+            writeType(ref.type());
+            out.writeBoolean(ref.isStatic());
+        }
+
+        void writeValues(List<?> values) throws IOException
+        {
+            writeInt(values.size());
+            for (Object v : values)
+                writeValue((Value) v);
+        }
+
+        void writeValue(Value v) throws IOException
+        {
+            Class<?> c = v.getClass();
+            Integer binop = binopKinds.get(c);
+            if (binop != null) {
+                out.writeByte(binop);
+                writeValue(((BinopExpr) v).getOp1());
+                writeValue(((BinopExpr) v).getOp2());
+            } else if (v instanceof Local) {
+                out.writeByte(V_LOCAL);
+                writeLocal((Local) v);
+            } else if (c == IntConstant.class) {
+                out.writeByte(V_INT);
+                out.writeInt(((IntConstant) v).value);
+            } else if (c == LongConstant.class) {
+                out.writeByte(V_LONG);
+                out.writeLong(((LongConstant) v).value);
+            } else if (c == FloatConstant.class) {
+                out.writeByte(V_FLOAT);
+                out.writeFloat(((FloatConstant) v).value);
+            } else if (c == DoubleConstant.class) {
+                out.writeByte(V_DOUBLE);
+                out.writeDouble(((DoubleConstant) v).value);
+            } else if (c == StringConstant.class) {
+                out.writeByte(V_STRING);
+                writeString(((StringConstant) v).value);
+            } else if (c == NullConstant.class) {
+                out.writeByte(V_NULL);
+            } else if (c == ClassConstant.class) {
+                out.writeByte(V_CLASS);
+                writeString(((ClassConstant) v).value);
+            } else if (c == JMethodHandle.class) {
+                out.writeByte(V_METHOD_HANDLE);
+                writeInt(((SootMethodHandle) v).getReferenceKind());
+                writeMethodRef(((SootMethodHandle) v).getMethodRef());
+            } else if (c == JMethodType.class) {
+                out.writeByte(V_METHOD_TYPE);
+                writeType(((SootMethodType) v).getReturnType());
+                writeTypes(((SootMethodType) v).getParameterTypes());
+            } else if (c == ParameterRef.class) {
+                out.writeByte(V_PARAMETER);
+                writeType(v.getType());
+                writeInt(((ParameterRef) v).getIndex());
+            } else if (c == ThisRef.class) {
+                out.writeByte(V_THIS);
+                writeType(v.getType());
+            } else if (c == JCaughtExceptionRef.class) {
+                out.writeByte(V_CAUGHT_EXCEPTION);
+            } else if (c == JArrayRef.class) {
+                out.writeByte(V_ARRAY_REF);
+                writeValue(((ArrayRef) v).getBase());
+                writeValue(((ArrayRef) v).getIndex());
+            } else if (c == JInstanceFieldRef.class) {
+                out.writeByte(V_INSTANCE_FIELD);
+                writeValue(((InstanceFieldRef) v).getBase());
+                writeFieldRef(((InstanceFieldRef) v).getFieldRef());
+            } else if (c == StaticFieldRef.class) {
+                out.writeByte(V_STATIC_FIELD);
+                writeFieldRef(((StaticFieldRef) v).getFieldRef());
+            } else if (c == JNegExpr.class) {
+                out.writeByte(V_NEG);
+                writeValue(((NegExpr) v).getOp());
+            } else if (c == JLengthExpr.class) {
+                out.writeByte(V_LENGTH);
+                writeValue(((LengthExpr) v).getOp());
+            } else if (c == JCastExpr.class) {
+                out.writeByte(V_CAST);
+                writeValue(((CastExpr) v).getOp());
+                writeType(((CastExpr) v).getCastType());
+            } else if (c == JInstanceOfExpr.class) {
+                out.writeByte(V_INSTANCE_OF);
+                writeValue(((InstanceOfExpr) v).getOp());
+                writeType(((InstanceOfExpr) v).getCheckType());
+            } else if (c == JNewExpr.class) {
+                out.writeByte(V_NEW);
+                writeType(((NewExpr) v).getBaseType());
+            } else if (c == JNewArrayExpr.class) {
+                out.writeByte(V_NEW_ARRAY);
+                writeType(((NewArrayExpr) v).getBaseType());
+                writeValue(((NewArrayExpr) v).getSize());
+            } else if (c == JNewMultiArrayExpr.class) {
+                out.writeByte(V_NEW_MULTI_ARRAY);
+                writeType(((NewMultiArrayExpr) v).getBaseType());
+                writeValues(((NewMultiArrayExpr) v).getSizes());
+            } else if (c == JStaticInvokeExpr.class) {
+                out.writeByte(V_STATIC_INVOKE);
+                writeMethodRef(((InvokeExpr) v).getMethodRef());
+                writeValues(((InvokeExpr) v).getArgs());
+            } else if (c == JSpecialInvokeExpr.class || c == JVirtualInvokeExpr.class
+                    || c == JInterfaceInvokeExpr.class) {
+                out.writeByte(c == JSpecialInvokeExpr.class ? V_SPECIAL_INVOKE
+                        : c == JVirtualInvokeExpr.class ? V_VIRTUAL_INVOKE : V_INTERFACE_INVOKE);
+                writeValue(((InstanceInvokeExpr) v).getBase());
+                writeMethodRef(((InvokeExpr) v).getMethodRef());
+                writeValues(((InvokeExpr) v).getArgs());
+            } else if (c == JDynamicInvokeExpr.class) {
+                DynamicInvokeExpr e = (DynamicInvokeExpr) v;
+                out.writeByte(V_DYNAMIC_INVOKE);
+                writeMethodRef(e.getBootstrapMethodRef());
+                writeValues(e.getBootstrapArgs());
+                writeMethodRef(e.getMethodRef());
+                writeValues(e.getArgs());
+            } else {
+                throw new UnsupportedException(v);
+            }
+        }
+
+        void writeStmt(Unit u) throws IOException
+        {
+            Class<?> c = u.getClass();
+            if (c == JAssignStmt.class) {
+                out.writeByte(S_ASSIGN);
+                writeValue(((AssignStmt) u).getLeftOp());
+                writeValue(((AssignStmt) u).getRightOp());
+            } else if (c == JIdentityStmt.class) {
+                out.writeByte(S_IDENTITY);
+                writeValue(((IdentityStmt) u).getLeftOp());
+                writeValue(((IdentityStmt) u).getRightOp());
+            } else if (c == JInvokeStmt.class) {
+                out.writeByte(S_INVOKE);
+                writeValue(((InvokeStmt) u).getInvokeExpr());
+            } else if (c == JIfStmt.class) {
+                out.writeByte(S_IF);
+                writeValue(((IfStmt) u).getCondition());
+                writeUnit(((IfStmt) u).getTarget());
+            } else if (c == JGotoStmt.class) {
+                out.writeByte(S_GOTO);
+                writeUnit(((GotoStmt) u).getTarget());
+            } else if (c == JTableSwitchStmt.class) {
+                TableSwitchStmt s = (TableSwitchStmt) u;
+                out.writeByte(S_TABLE_SWITCH);
+                writeValue(s.getKey());
+                out.writeInt(s.getLowIndex());
+                out.writeInt(s.getHighIndex());
+                writeInt(s.getTargets().size());
+                for (Object t : s.getTargets())
+                    writeUnit((Unit) t);
+                writeUnit(s.getDefaultTarget());
+            } else if (c == JLookupSwitchStmt.class) {
+                LookupSwitchStmt s = (LookupSwitchStmt) u;
+                out.writeByte(S_LOOKUP_SWITCH);
+                writeValue(s.getKey());
+                writeInt(s.getTargetCount());
+                for (int i = 0; i < s.getTargetCount(); i++) {
+                    out.writeInt(s.getLookupValue(i));
+                    writeUnit(s.getTarget(i));
+                }
+                writeUnit(s.getDefaultTarget());
+            } else if (c == JReturnStmt.class) {
+                out.writeByte(S_RETURN);
+                writeValue(((ReturnStmt) u).getOp());
+            } else if (c == JReturnVoidStmt.class) {
+                out.writeByte(S_RETURN_VOID);
+            } else if (c == JThrowStmt.class) {
+                out.writeByte(S_THROW);
+                writeValue(((ThrowStmt) u).getOp());
+            } else if (c == JEnterMonitorStmt.class) {
+                out.writeByte(S_ENTER_MONITOR);
+                writeValue(((EnterMonitorStmt) u).getOp());
+            } else if (c == JExitMonitorStmt.class) {
+                out.writeByte(S_EXIT_MONITOR);
+                writeValue(((ExitMonitorStmt) u).getOp());
+            } else if (c == JNopStmt.class) {
+                out.writeByte(S_NOP);
+            } else if (c == JRetStmt.class) {
+                out.writeByte(S_RET);
+                writeValue(((RetStmt) u).getStmtAddress());
+            } else if (c == JBreakpointStmt.class) {
+                out.writeByte(S_BREAKPOINT);
+            } else {
+                throw new UnsupportedException(u);
+            }
+        }
+    }
+
+    private static class Reader
+    {
+        private final DataInput in;
+        private final List<String> strings = new ArrayList<String>();
+        private final List<Local> locals = new ArrayList<Local>();
+        private Unit[] units;
+        /** Unit boxes whose target is set once all units have been read,
+         * paired with the index of the target. */
+        private final List<UnitBox> pendingBoxes = new ArrayList<UnitBox>();
+        private final List<Integer> pendingTargets = new ArrayList<Integer>();
+
+        Reader(DataInput in)
+        {
+            this.in = in;
+        }
+
+        void readBody(JimpleBody b) throws IOException
+        {
+            Jimple j = Jimple.v();
+
+            int localCount = readInt();
+            for (int i = 0; i < localCount; i++)
+                b.getLocals().add(readLocal());
+
+            units = new Unit[readInt()];
+            for (int i = 0; i < units.length; i++) {
+                Unit u = readStmt();
+                int tagCount = readInt();
+                for (int k = 0; k < tagCount; k++) {
+                    int kind = in.readByte();
+                    if (kind == TAG_LINE_NUMBER)
+                        u.addTag(new LineNumberTag(readInt()));
+                    else if (kind == TAG_BYTECODE_OFFSET)
+                        u.addTag(new BytecodeOffsetTag(readInt()));
+                    else
+                        throw new IOException("Unknown tag kind " + kind);
+                }
+                units[i] = u;
+                b.getUnits().add(u);
+            }
+            for (int i = 0; i < pendingBoxes.size(); i++)
+                pendingBoxes.get(i).setUnit(units[pendingTargets.get(i)]);
+
+            int trapCount = readInt();
+            for (int i = 0; i < trapCount; i++) {
+                String exception = readString();
+                Unit begin = readUnit();
+                Unit end = readUnit();
+                Unit handler = readUnit();
+                b.getTraps().add(j.newTrap(Scene.v().getSootClass(exception), begin, end, handler));
+            }
+
+            int varCount = readInt();
+            for (int i = 0; i < varCount; i++) {
+                String name = readString();
+                int index = readInt();
+                Unit start = readUnit();
+                Unit end = readNullableUnit();
+                String descriptor = in.readBoolean() ? readString() : null;
+                b.getLocalVariables().add(new LocalVariable(name, index, start, end, descriptor));
+            }
+        }
+
+        int readInt() throws IOException
+        {
+            int result = 0;
+            for (int shift = 0; ; shift += 7) {
+                int b = in.readUnsignedByte();
+                result |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0)
+                    return result;
+            }
+        }
+
+        Local readLocal() throws IOException
+        {
+            int index = readInt();
+            if (index > 0)
+                return locals.get(index - 1);
+            int kind = in.readByte();
+            Local l;
+            if (kind == LOCAL_ALIAS) {
+                Local owner = readLocal();
+                l = new RoboVMLocalAlias(owner, readInt() - 1);
+            } else if (kind == LOCAL_PLAIN) {
+                String name = readString();
+                l = Jimple.v().newLocal(name, readType());
+                l.setVariableTableIndex(readInt() - 1);
+            } else {
+                throw new IOException("Unknown local kind " + kind);
+            }
+            int sameSlotCount = readInt();
+            if (sameSlotCount > 0) {
+                Set<Integer> sameSlotVariables = new HashSet<Integer>();
+                for (int i = 1; i < sameSlotCount; i++)
+                    sameSlotVariables.add(in.readInt());
+                l.setSameSlotVariables(sameSlotVariables);
+            }
+            locals.add(l);
+            return l;
+        }
+
+        String readString() throws IOException
+        {
+            int index = readInt();
+            if (index > 0)
+                return strings.get(index - 1);
+            String s = in.readUTF();
+            strings.add(s);
+            return s;
+        }
+
+        Unit readUnit() throws IOException
+        {
+            return units[readInt()];
+        }
+
+        Unit readNullableUnit() throws IOException
+        {
+            int index = readInt();
+            return index == 0 ? null : units[index - 1];
+        }
+
+        /** Reads the index of a unit which may not have been read yet and
+         * points <code>box</code> to it later. */
+        void readTarget(UnitBox box) throws IOException
+        {
+            pendingBoxes.add(box);
+            pendingTargets.add(readInt());
+        }
+
+        Type readType() throws IOException
+        {
+            int kind = in.readByte();
+            switch (kind) {
+            case TYPE_BOOLEAN: return BooleanType.v();
+            case TYPE_BYTE: return ByteType.v();
+            case TYPE_CHAR: return CharType.v();
+            case TYPE_SHORT: return ShortType.v();
+            case TYPE_INT: return IntType.v();
+            case TYPE_LONG: return LongType.v();
+            case TYPE_FLOAT: return FloatType.v();
+            case TYPE_DOUBLE: return DoubleType.v();
+            case TYPE_VOID: return VoidType.v();
+            case TYPE_NULL: return NullType.v();
+            case TYPE_UNKNOWN: return UnknownType.v();
+            case TYPE_STMT_ADDRESS: return StmtAddressType.v();
+            case TYPE_REF: return RefType.v(readString());
+            case TYPE_ARRAY: {
+                Type baseType = readType();
+                return ArrayType.v(baseType, readInt());
+            }
+            default:
+                throw new IOException("Unknown type kind " + kind);
+            }
+        }
+
+        List<Type> readTypes() throws IOException
+        {
+            int n = readInt();
+            List<Type> types = new ArrayList<Type>(n);
+            for (int i = 0; i < n; i++)
+                types.add(readType());
+            return types;
+        }
+
+        SootMethodRef readMethodRef() throws IOException
+        {
+            String declaringClass = readString();
+            String name = readString();
+            List<Type> parameterTypes = readTypes();
+            Type returnType = readType();
+            boolean isStatic = in.readBoolean();
+            return Scene.v().makeMethodRef(Scene.v().getSootClass(declaringClass), name,
+                    parameterTypes, returnType, isStatic);
+        }
+
+        SootFieldRef readFieldRef() throws IOException
+        {
+            String declaringClass = readString();
+            String name = readString();
+            Type type = readType();
+            boolean isStatic = in.readBoolean();
+            return Scene.v().makeFieldRef(Scene.v().getSootClass(declaringClass), name,
+                    type, isStatic);
+        }
+
+        List<Value> readValues() throws IOException
+        {
+            int n = readInt();
+            List<Value> values = new ArrayList<Value>(n);
+            for (int i = 0; i < n; i++)
+                values.add(readValue());
+            return values;
+        }
+
+        Value readValue() throws IOException
+        {
+            Jimple j = Jimple.v();
+            int kind = in.readByte();
+            switch (kind) {
+            case V_LOCAL: return readLocal();
+            case V_INT: return IntConstant.v(in.readInt());
+            case V_LONG: return LongConstant.v(in.readLong());
+            case V_FLOAT: return FloatConstant.v(in.readFloat());
+            case V_DOUBLE: return DoubleConstant.v(in.readDouble());
+            case V_STRING: return StringConstant.v(readString());
+            case V_NULL: return NullConstant.v();
+            case V_CLASS: return ClassConstant.v(readString());
+            case V_METHOD_HANDLE: {
+                int referenceKind = readInt();
+                return j.newMethodHandle(referenceKind, readMethodRef());
+            }
+            case V_METHOD_TYPE: {
+                Type returnType = readType();
+                return j.newMethodType(returnType, readTypes());
+            }
+            case V_PARAMETER: {
+                Type type = readType();
+                return j.newParameterRef(type, readInt());
+            }
+            case V_THIS: return j.newThisRef((RefType) readType());
+            case V_CAUGHT_EXCEPTION: return j.newCaughtExceptionRef();
+            case V_ARRAY_REF: {
+                Value base = readValue();
+                return j.newArrayRef(base, readValue());
+            }
+            case V_INSTANCE_FIELD: {
+                Value base = readValue();
+                return j.newInstanceFieldRef(base, readFieldRef());
+            }
+            case V_STATIC_FIELD: return j.newStaticFieldRef(readFieldRef());
+            case V_NEG: return j.newNegExpr(readValue());
+            case V_LENGTH: return j.newLengthExpr(readValue());
+            case V_CAST: {
+                Value op = readValue();
+                return j.newCastExpr(op, readType());
+            }
+            case V_INSTANCE_OF: {
+                Value op = readValue();
+                return j.newInstanceOfExpr(op, readType());
+            }
+            case V_NEW: return j.newNewExpr((RefType) readType());
+            case V_NEW_ARRAY: {
+                Type type = readType();
+                return j.newNewArrayExpr(type, readValue());
+            }
+            case V_NEW_MULTI_ARRAY: {
+                ArrayType type = (ArrayType) readType();
+                return j.newNewMultiArrayExpr(type, readValues());
+            }
+            case V_STATIC_INVOKE: {
+                SootMethodRef ref = readMethodRef();
+                return j.newStaticInvokeExpr(ref, readValues());
+            }
+            case V_SPECIAL_INVOKE:
+            case V_VIRTUAL_INVOKE:
+            case V_INTERFACE_INVOKE: {
+                Local base = (Local) readValue();
+                SootMethodRef ref = readMethodRef();
+                List<Value> args = readValues();
+                if (kind == V_SPECIAL_INVOKE)
+                    return j.newSpecialInvokeExpr(base, ref, args);
+                if (kind == V_VIRTUAL_INVOKE)
+                    return j.newVirtualInvokeExpr(base, ref, args);
+                return j.newInterfaceInvokeExpr(base, ref, args);
+            }
+            case V_DYNAMIC_INVOKE: {
+                SootMethodRef bootstrapRef = readMethodRef();
+                List<Value> bootstrapArgs = readValues();
+                SootMethodRef ref = readMethodRef();
+                return j.newDynamicInvokeExpr(bootstrapRef, bootstrapArgs, ref, readValues());
+            }
+            default: {
+                Value op1, op2;
+                switch (kind) {
+                case V_ADD: op1 = readValue(); op2 = readValue(); return j.newAddExpr(op1, op2);
+                case V_AND: op1 = readValue(); op2 = readValue(); return j.newAndExpr(op1, op2);
+                case V_CMP: op1 = readValue(); op2 = readValue(); return j.newCmpExpr(op1, op2);
+                case V_CMPG: op1 = readValue(); op2 = readValue(); return j.newCmpgExpr(op1, op2);
+                case V_CMPL: op1 = readValue(); op2 = readValue(); return j.newCmplExpr(op1, op2);
+                case V_DIV: op1 = readValue(); op2 = readValue(); return j.newDivExpr(op1, op2);
+                case V_EQ: op1 = readValue(); op2 = readValue(); return j.newEqExpr(op1, op2);
+                case V_GE: op1 = readValue(); op2 = readValue(); return j.newGeExpr(op1, op2);
+                case V_GT: op1 = readValue(); op2 = readValue(); return j.newGtExpr(op1, op2);
+                case V_LE: op1 = readValue(); op2 = readValue(); return j.newLeExpr(op1, op2);
+                case V_LT: op1 = readValue(); op2 = readValue(); return j.newLtExpr(op1, op2);
+                case V_MUL: op1 = readValue(); op2 = readValue(); return j.newMulExpr(op1, op2);
+                case V_NE: op1 = readValue(); op2 = readValue(); return j.newNeExpr(op1, op2);
+                case V_OR: op1 = readValue(); op2 = readValue(); return j.newOrExpr(op1, op2);
+                case V_REM: op1 = readValue(); op2 = readValue(); return j.newRemExpr(op1, op2);
+                case V_SHL: op1 = readValue(); op2 = readValue(); return j.newShlExpr(op1, op2);
+                case V_SHR: op1 = readValue(); op2 = readValue(); return j.newShrExpr(op1, op2);
+                case V_SUB: op1 = readValue(); op2 = readValue(); return j.newSubExpr(op1, op2);
+                case V_USHR: op1 = readValue(); op2 = readValue(); return j.newUshrExpr(op1, op2);
+                case V_XOR: op1 = readValue(); op2 = readValue(); return j.newXorExpr(op1, op2);
+                default:
+                    throw new IOException("Unknown value kind " + kind);
+                }
+            }
+            }
+        }
+
+        Unit readStmt() throws IOException
+        {
+            Jimple j = Jimple.v();
+            int kind = in.readByte();
+            switch (kind) {
+            case S_ASSIGN: {
+                Value lhs = readValue();
+                return j.newAssignStmt(lhs, readValue());
+            }
+            case S_IDENTITY: {
+                Value lhs = readValue();
+                return j.newIdentityStmt(lhs, readValue());
+            }
+            case S_INVOKE: return j.newInvokeStmt(readValue());
+            case S_IF: {
+                IfStmt s = j.newIfStmt(readValue(), (Unit) null);
+                readTarget(s.getTargetBox());
+                return s;
+            }
+            case S_GOTO: {
+                GotoStmt s = j.newGotoStmt((Unit) null);
+                readTarget(s.getTargetBox());
+                return s;
+            }
+            case S_TABLE_SWITCH: {
+                Value key = readValue();
+                int low = in.readInt();
+                int high = in.readInt();
+                int n = readInt();
+                List<Unit> targets = new ArrayList<Unit>(n);
+                for (int i = 0; i < n; i++)
+                    targets.add(null);
+                TableSwitchStmt s = j.newTableSwitchStmt(key, low, high, targets, (Unit) null);
+                for (int i = 0; i < n; i++)
+                    readTarget(s.getTargetBox(i));
+                readTarget(s.getDefaultTargetBox());
+                return s;
+            }
+            case S_LOOKUP_SWITCH: {
+                Value key = readValue();
+                int n = readInt();
+                List<IntConstant> values = new ArrayList<IntConstant>(n);
+                List<Unit> targets = new ArrayList<Unit>(n);
+                int[] targetIndexes = new int[n];
+                for (int i = 0; i < n; i++) {
+                    values.add(IntConstant.v(in.readInt()));
+                    targets.add(null);
+                    targetIndexes[i] = readInt();
+                }
+                LookupSwitchStmt s = j.newLookupSwitchStmt(key, values, targets, (Unit) null);
+                for (int i = 0; i < n; i++) {
+                    pendingBoxes.add(s.getTargetBox(i));
+                    pendingTargets.add(targetIndexes[i]);
+                }
+                readTarget(s.getDefaultTargetBox());
+                return s;
+            }
+            case S_RETURN: return j.newReturnStmt(readValue());
+            case S_RETURN_VOID: return j.newReturnVoidStmt();
+            case S_THROW: return j.newThrowStmt(readValue());
+            case S_ENTER_MONITOR: return j.newEnterMonitorStmt(readValue());
+            case S_EXIT_MONITOR: return j.newExitMonitorStmt(readValue());
+            case S_NOP: return j.newNopStmt();
+            case S_RET: return j.newRetStmt(readValue());
+            case S_BREAKPOINT: return j.newBreakpointStmt();
+            default:
+                throw new IOException("Unknown statement kind " + kind);
+            }
+        }
+    }
+}
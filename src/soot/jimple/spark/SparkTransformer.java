@@ -39,6 +39,7 @@ import soot.jimple.ReachingTypeDumper;
 import soot.jimple.Stmt;
 import soot.jimple.spark.builder.ContextInsensitiveBuilder;
 import soot.jimple.spark.geom.geomPA.GeomPointsTo;
+import soot.jimple.spark.ondemand.DemandPointsTo;
 import soot.jimple.spark.pag.AllocDotField;
 import soot.jimple.spark.pag.AllocNode;
 import soot.jimple.spark.pag.Node;
@@ -51,6 +52,7 @@ import soot.jimple.spark.solver.PropAlias;
 import soot.jimple.spark.solver.PropCycle;
 import soot.jimple.spark.solver.PropIter;
 import soot.jimple.spark.solver.PropMerge;
+import soot.jimple.spark.solver.PropParallel;
 import soot.jimple.spark.solver.PropWorklist;
 import soot.jimple.spark.solver.Propagator;
 import soot.jimple.spark.solver.SCCCollapser;
@@ -122,13 +124,18 @@ public class SparkTransformer extends SceneTransformer
         // Propagate
        
         final Propagator[] propagator = new Propagator[1];
-        /* switch( opts.propagator() ) {
+        if( pag.getOnFlyCallGraph() != null
+                && ( opts.propagator() == SparkOptions.propagator_cycle
+                    || opts.propagator() == SparkOptions.propagator_merge ) ) {
+            throw new RuntimeException( "The cycle and merge propagators do not support the on-the-fly call graph! Use a different propagator or turn off on-fly-cg." );
+        }
+        switch( opts.propagator() ) {
             case SparkOptions.propagator_iter:
                 propagator[0] = new PropIter( pag );
                 break;
-            case SparkOptions.propagator_worklist:*/
+            case SparkOptions.propagator_worklist:
                 propagator[0] = new PropWorklist( pag );
-               /* break;
+                break;
             case SparkOptions.propagator_cycle:
                 propagator[0] = new PropCycle( pag );
                 break;
@@ -138,14 +145,16 @@ public class SparkTransformer extends SceneTransformer
             case SparkOptions.propagator_alias:
                 propagator[0] = new PropAlias( pag );
                 break;
+            case SparkOptions.propagator_parallel:
+                propagator[0] = new PropParallel( pag );
+                break;
             case SparkOptions.propagator_none:
                 break;
             default:
                 throw new RuntimeException();
-        }*/
-        
-        //if( propagator[0] != null ) 
-        	propagator[0].propagate();
+        }
+
+        if( propagator[0] != null ) propagator[0].propagate();
        
         if( opts.force_gc() ) doGC();
         
@@ -154,6 +163,13 @@ public class SparkTransformer extends SceneTransformer
             cgb.build();
        // }
 
+        if( opts.cs_demand() ) {
+            // Answer the queries by traversing the PAG, and keep the Spark
+            // sets for the queries that run out of steps
+            Scene.v().setPointsToAnalysis( DemandPointsTo.makeWithBudget(
+                        pag, opts.traversal(), opts.lazy_pts() ) );
+        }
+
        /* if( opts.verbose() ) {
             G.v().out.println( "[Spark] Number of reachable methods: "
                     +Scene.v().getReachableMethods().size() );
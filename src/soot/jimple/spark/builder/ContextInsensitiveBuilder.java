@@ -64,7 +64,7 @@ public class ContextInsensitiveBuilder {
     }
     /** Creates an empty pointer assignment graph. */
     public PAG setup( SparkOptions opts ) {
-        pag = new PAG( opts );
+        pag = opts.geom_pta() ? new GeomPointsTo( opts ) : new PAG( opts );
         if( opts.simulate_natives() ) {
             pag.nativeMethodDriver = new NativeMethodDriver(new SparkNativeHelper(pag));
         }
@@ -341,7 +341,7 @@ public class FullSensitiveNode extends IVarAbstraction
 		SegmentNode p = gm.addNewObject( code, pres );
 		if ( p != null ) {
 			new_pts.put(obj, gm);
-			++IEncodingBroker.n_added_pts;
+			IEncodingBroker.n_added_pts.incrementAndGet();
 			return true;
 		}
 		
@@ -358,7 +358,7 @@ public class FullSensitiveNode extends IVarAbstraction
 		}
 		
 		if (gm.addNewObject( code, pres ) != null) {
-			++IEncodingBroker.n_added_flowedge;
+			IEncodingBroker.n_added_flowedge.incrementAndGet();
 			return true;
 		}
 		
@@ -255,6 +255,9 @@ public class GeomEvaluator {
 		outputer.println();
 		pts_size_bar_geom.printResult( ptsProvider.ps, "Points-to Set Sizes Distribution :", pts_size_bar_spark );
 		type_size_bar_geom.printResult( ptsProvider.ps, "Points-to Set Types Distribution :", type_size_bar_spark );
+		
+		if ( ptsProvider.partitions != null )
+			ptsProvider.partitions.printStatistics( outputer );
 	}
 
 	public void check_virtual_functions()
@@ -66,6 +66,7 @@ import soot.jimple.spark.sets.EmptyPointsToSet;
 import soot.jimple.spark.sets.P2SetVisitor;
 import soot.jimple.spark.sets.PointsToSetInternal;
 import soot.jimple.toolkits.callgraph.Edge;
+import soot.options.Options;
 import soot.options.SparkOptions;
 import soot.toolkits.scalar.Pair;
 import soot.util.queue.QueueReader;
@@ -114,6 +115,9 @@ public class GeomPointsTo extends PAG
 	// Other choice, FIFO_Worklist
 	protected IWorklist worklist = null;
 	
+	// The same worklist, if the partitions of the constraint graph are solved concurrently
+	protected PartitionedWorklist partitions = null;
+	
 	// The generator that is used to generate the internal representations for the pointers and objects
 	protected IEncodingBroker nodeGenerator = null;
 	
@@ -219,15 +223,13 @@ public class GeomPointsTo extends PAG
     	solver_encoding = nodeGenerator.getEncodingType();
     	
     	// Then, we set the worklist
-    	switch ( opts.geom_worklist() ) {
-	    	case SparkOptions.geom_worklist_FIFO:
-	    		worklist = new FIFO_Worklist();
-	    		break;
-	    		
-	    	case SparkOptions.geom_worklist_PQ:
-	    		worklist = new PQ_Worklist();
-	    		break;
+    	int threads = threads();
+    	if ( opts.geom_parallel() && threads > 1 ) {
+    		partitions = new PartitionedWorklist( this, opts.geom_worklist(), threads );
+    		worklist = partitions;
     	}
+    	else
+    		worklist = makeWorklist( opts.geom_worklist() );
     	
     	// We dump the processing statistics to an external file if needed by the user
     	dump_file_name = opts.geom_dump_verbose();
@@ -278,6 +280,38 @@ public class GeomPointsTo extends PAG
 		ps.println( solver_encoding + " starts working on " + (dump_file_name.isEmpty() ? "untitled" : dump_file_name) + " benchmark." );
 	}
 	
+	/**
+	 * Creates an empty worklist of the given kind.
+	 * @see SparkOptions#geom_worklist_FIFO
+	 * @see SparkOptions#geom_worklist_PQ
+	 */
+	static IWorklist makeWorklist( int kind )
+	{
+		switch ( kind ) {
+		case SparkOptions.geom_worklist_FIFO:
+			return new FIFO_Worklist();
+			
+		case SparkOptions.geom_worklist_PQ:
+			return new PQ_Worklist();
+		}
+		
+		return null;
+	}
+	
+	/**
+	 * Returns the number of threads given by the num-threads option, or 1 if
+	 * the timers or the interaction handler are in use.
+	 */
+	private static int threads()
+	{
+		int threads = Options.v().num_threads();
+		if ( threads <= 0 )
+			threads = Runtime.getRuntime().availableProcessors();
+		if ( Options.v().time() || Options.v().interactive_mode() )
+			return 1;
+		return threads;
+	}
+	
 	/**
 	 *	Read in the program facts generated by SPARK.
 	 *  We also construct our own call graph and node representations.
@@ -1015,7 +1049,10 @@ public class GeomPointsTo extends PAG
 			nodeGenerator.initFlowGraph(this);
 
 			// Solve the constraints
-			solveConstraints();
+			if ( partitions != null )
+				partitions.solve();
+			else
+				solveConstraints();
 			
 			if (++rounds >= cg_refine_times)
 				break;
@@ -18,13 +18,16 @@
  */
 package soot.jimple.spark.geom.geomPA;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 import soot.jimple.spark.pag.Node;
 import soot.options.SparkOptions;
 
 public abstract class IEncodingBroker 
 {
-	public static int n_added_flowedge = 0;
-	public static int n_added_pts = 0;
+	// Atomic, since the partitions may be solved concurrently
+	public static final AtomicInteger n_added_flowedge = new AtomicInteger();
+	public static final AtomicInteger n_added_pts = new AtomicInteger();
 	
 	/**
 	 * Generate a node of proper kind.
@@ -38,14 +38,18 @@ public abstract class IVarAbstraction implements Numberable {
 	
 	// Used for the context insensitive points-to information recharged from SPARK
 	protected static GeometricManager stubManager;
-	protected static RectangleNode pres;
+	private static RectangleNode stubPres;
 	
 	static {
 		stubManager = new GeometricManager();
-		pres = new RectangleNode(1, 1, GeomPointsTo.MAX_CONTEXTS, GeomPointsTo.MAX_CONTEXTS);
-		stubManager.addNewObject(GeomPointsTo.MANY_TO_MANY, pres);
+		stubPres = new RectangleNode(1, 1, GeomPointsTo.MAX_CONTEXTS, GeomPointsTo.MAX_CONTEXTS);
+		stubManager.addNewObject(GeomPointsTo.MANY_TO_MANY, stubPres);
 	}
 	
+	// The scratch shape used to pass a new shape to another pointer
+	// The pointers solved by the same thread share it, see PartitionedWorklist
+	protected RectangleNode pres = stubPres;
+	
 	// Corresponding SPARK node
 	public Node me;
 	// The integer mapping for this node
@@ -106,6 +110,11 @@ public abstract class IVarAbstraction implements Numberable {
     	return id;
     }
     
+    void setScratch( RectangleNode pres )
+    {
+    	this.pres = pres;
+    }
+    
 	// Initiation
 	public abstract boolean add_points_to_3( AllocNode obj, long I1, long I2, long L );
 	public abstract boolean add_points_to_4( AllocNode obj, long I1, long I2, long L1, long L2 );
@@ -85,6 +85,9 @@ public class OfflineProcessor
 		buildInstanceAssignmentGraph();
 		setAllUserCodeVariablesUseful( virtualBaseSet );
 		eliminateUselessConstraints();
+		// The partitions are computed from the SPARK points-to sets
+		if ( ptAnalyzer.partitions != null )
+			ptAnalyzer.partitions.partition();
 		cleanSparkResults();
 		
 		// Then, we do the rest of the work on the symbolic assignment graph
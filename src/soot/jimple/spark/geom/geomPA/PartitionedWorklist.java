@@ -0,0 +1,318 @@
+/* Soot - a J*va Optimization Framework
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place - Suite 330,
+ * Boston, MA 02111-1307, USA.
+ */
+package soot.jimple.spark.geom.geomPA;
+
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import soot.jimple.spark.pag.AllocDotField;
+import soot.jimple.spark.pag.AllocNode;
+import soot.jimple.spark.pag.Node;
+import soot.jimple.spark.pag.SparkField;
+import soot.jimple.spark.sets.P2SetVisitor;
+
+/**
+ * A worklist that splits the pointers into partitions which cannot exchange
+ * points-to facts, so that the partitions can be solved concurrently.
+ *
+ * Two pointers are put into the same partition if a constraint relates them,
+ * or if one of them may be the instance field of an object the other one
+ * points to in the SPARK result. Since the geometric points-to sets are
+ * subsets of the SPARK ones, propagating a pointer only ever touches the
+ * pointers of its own partition. Each partition has its own worklist of the
+ * kind chosen by the user, and the pointers of a partition are propagated in
+ * the same order as on a single worklist. The result is therefore the same
+ * as the one of the sequential solver.
+ *
+ * Besides, all the pointers of a partition share a private scratch shape,
+ * which the encodings use to pass the new shapes between the pointers.
+ */
+public class PartitionedWorklist implements IWorklist
+{
+	// The number of pointers below which the partitions of a task are not split among threads
+	private static final int MIN_TASK = 1024;
+
+	private GeomPointsTo ptAnalyzer;
+	private int worklistType;
+	private int threads;
+
+	// Union-find forest over the pointer IDs, built before the SPARK points-to sets are discarded
+	private int parent[] = null;
+	// The partition of each pointer, and the worklist of each partition
+	private int part[] = null;
+	private IWorklist parts[] = null;
+	private int partSize[] = null;
+
+	// The statistics of all the solving rounds
+	private int rounds = 0;
+	private long maxPartTime = 0;
+	private int maxPartSize = 0;
+	private Histogram timeHistogram = new Histogram( new int[] { 1, 10, 100, 1000, 10000, 100000 } );
+	private Histogram sizeHistogram = new Histogram( new int[] { 1, 10, 100, 1000, 10000, 100000 } );
+
+	public PartitionedWorklist( GeomPointsTo ptAnalyzer, int worklistType, int threads )
+	{
+		this.ptAnalyzer = ptAnalyzer;
+		this.worklistType = worklistType;
+		this.threads = threads;
+	}
+
+	/**
+	 * Puts the pointers related by the viable constraints into the same partitions.
+	 * It must be called while the SPARK points-to sets are still available.
+	 */
+	public void partition()
+	{
+		int n = ptAnalyzer.getNumberOfPointers();
+		parent = new int[n];
+		for ( int i = 0; i < n; ++i )
+			parent[i] = i;
+
+		for ( PlainConstraint cons : ptAnalyzer.constraints ) {
+			if ( cons.isViable == false )
+				continue;
+
+			IVarAbstraction lhs = cons.expr.getO1();
+			IVarAbstraction rhs = cons.expr.getO2();
+
+			switch ( cons.type ) {
+			case GeomPointsTo.ASSIGN_CONS:
+				union( lhs, rhs );
+				break;
+
+			case GeomPointsTo.LOAD_CONS:
+				// lhs.f -> rhs
+				union( lhs, rhs );
+				unionFields( lhs, cons.f );
+				break;
+
+			case GeomPointsTo.STORE_CONS:
+				// lhs -> rhs.f
+				union( lhs, rhs );
+				unionFields( rhs, cons.f );
+				break;
+			}
+			// The objects of the allocation constraints are never changed
+		}
+	}
+
+	/**
+	 * Called once the pointers are merged, to set up the partitions.
+	 */
+	public void initialize( int size )
+	{
+		if ( parent == null )
+			throw new RuntimeException( "The constraints have not been partitioned" );
+
+		int n = parent.length;
+		for ( IVarAbstraction pn : ptAnalyzer.pointers ) {
+			// The merged pointers are solved by their representatives
+			union( pn, pn.getRepresentative() );
+		}
+
+		int n_parts = 0;
+		int label[] = new int[n];
+		part = new int[n];
+		Arrays.fill( label, -1 );
+		for ( int i = 0; i < n; ++i ) {
+			int r = find( i );
+			if ( label[r] == -1 )
+				label[r] = n_parts++;
+			part[i] = label[r];
+		}
+		parent = null;
+
+		partSize = new int[n_parts];
+		for ( int i = 0; i < n; ++i )
+			++partSize[part[i]];
+
+		parts = new IWorklist[n_parts];
+		RectangleNode scratch[] = new RectangleNode[n_parts];
+		for ( int i = 0; i < n_parts; ++i ) {
+			parts[i] = GeomPointsTo.makeWorklist( worklistType );
+			parts[i].initialize( partSize[i] + 1 );
+			scratch[i] = new RectangleNode();
+		}
+		for ( IVarAbstraction pn : ptAnalyzer.pointers )
+			pn.setScratch( scratch[part[pn.id]] );
+	}
+
+	public boolean has_job()
+	{
+		for ( IWorklist w : parts )
+			if ( w.has_job() ) return true;
+		return false;
+	}
+
+	public IVarAbstraction next()
+	{
+		for ( IWorklist w : parts )
+			if ( w.has_job() ) return w.next();
+		return null;
+	}
+
+	public void push( IVarAbstraction p )
+	{
+		parts[part[p.id]].push( p );
+	}
+
+	public int size()
+	{
+		int ans = 0;
+		for ( IWorklist w : parts )
+			ans += w.size();
+		return ans;
+	}
+
+	public void clear()
+	{
+		for ( IWorklist w : parts )
+			w.clear();
+	}
+
+	/**
+	 * Solves the partitions having jobs on the given number of threads.
+	 */
+	public void solve()
+	{
+		int n_jobs = 0;
+		for ( IWorklist w : parts )
+			if ( w.has_job() ) ++n_jobs;
+
+		int jobs[] = new int[n_jobs];
+		n_jobs = 0;
+		for ( int i = 0; i < parts.length; ++i )
+			if ( parts[i].has_job() ) jobs[n_jobs++] = i;
+
+		long weights[] = new long[n_jobs + 1];
+		for ( int i = 0; i < n_jobs; ++i )
+			weights[i + 1] = weights[i] + partSize[jobs[i]];
+
+		long times[] = new long[parts.length];
+		ForkJoinPool pool = new ForkJoinPool( threads );
+		try {
+			pool.invoke( new SolveTask( jobs, weights, times, 0, n_jobs ) );
+		} finally {
+			pool.shutdown();
+		}
+
+		++rounds;
+		for ( int i : jobs ) {
+			long ms = times[i] / 1000000;
+			timeHistogram.addNumber( (int) ms );
+			sizeHistogram.addNumber( partSize[i] );
+			if ( times[i] > maxPartTime ) {
+				maxPartTime = times[i];
+				maxPartSize = partSize[i];
+			}
+		}
+
+		ptAnalyzer.ps.printf( "Solved %d of %d partitions on %d threads, the slowest one so far (%d pointers) took %.3fs \n",
+				n_jobs, parts.length, threads, maxPartSize, (double) maxPartTime / 1000000000 );
+	}
+
+	/**
+	 * Prints the distributions of the sizes and solving times of the partitions.
+	 */
+	public void printStatistics( PrintStream outputer )
+	{
+		outputer.println( "Partitions : " + parts.length + ", solved in " + rounds + " rounds on " + threads + " threads" );
+		sizeHistogram.printResult( outputer, "Solved Partition Sizes Distribution :" );
+		timeHistogram.printResult( outputer, "Partition Solving Time Distribution (ms) :" );
+	}
+
+	private void union( IVarAbstraction p, IVarAbstraction q )
+	{
+		int rp = find( p.id ), rq = find( q.id );
+		if ( rp != rq )
+			parent[rp] = rq;
+	}
+
+	/**
+	 * Puts the field f of all the objects that p may point to into the partition of p.
+	 */
+	private void unionFields( final IVarAbstraction p, final SparkField f )
+	{
+		p.getWrappedNode().getP2Set().forall( new P2SetVisitor() {
+			public void visit( Node n ) {
+				AllocDotField adf = ptAnalyzer.findAllocDotField( (AllocNode) n, f );
+				if ( adf == null )
+					return;
+				IVarAbstraction padf = ptAnalyzer.consG.get( adf );
+				if ( padf != null )
+					union( p, padf );
+			}
+		});
+	}
+
+	private int find( int x )
+	{
+		while ( parent[x] != x ) {
+			parent[x] = parent[parent[x]];
+			x = parent[x];
+		}
+		return x;
+	}
+
+	private void solve( int k, long times[] )
+	{
+		long begin = System.nanoTime();
+		IWorklist w = parts[k];
+
+		while ( w.has_job() ) {
+			IVarAbstraction pn = w.next();
+			pn.do_before_propagation();
+			pn.propagate( ptAnalyzer, this );
+			pn.do_after_propagation();
+		}
+
+		times[k] = System.nanoTime() - begin;
+	}
+
+	private class SolveTask extends RecursiveAction
+	{
+		private final int jobs[];
+		// weights[i] is the number of pointers in the partitions jobs[0..i-1]
+		private final long weights[];
+		private final long times[];
+		private final int from, to;
+
+		SolveTask( int jobs[], long weights[], long times[], int from, int to )
+		{
+			this.jobs = jobs;
+			this.weights = weights;
+			this.times = times;
+			this.from = from;
+			this.to = to;
+		}
+
+		protected void compute()
+		{
+			if ( to - from > 1 && weights[to] - weights[from] > MIN_TASK ) {
+				int mid = ( from + to ) >>> 1;
+				invokeAll( new SolveTask( jobs, weights, times, from, mid ),
+						new SolveTask( jobs, weights, times, mid, to ) );
+				return;
+			}
+			for ( int i = from; i < to; ++i )
+				solve( jobs[i], times );
+		}
+	}
+}
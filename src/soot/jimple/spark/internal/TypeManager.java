@@ -41,6 +41,17 @@ public final class TypeManager {
     }
     final public BitVector get( Type type ) {
         if( type == null ) return null;
+        update();
+        BitVector ret = (BitVector) typeMask.get( type );
+        if( ret == null && fh != null ) throw new RuntimeException( "oops"+type );
+        return ret;
+    }
+    /** Adds the allocation nodes created since the last call to the type
+     * masks. Once this has been called, {@link #get(Type)} does not modify
+     * the type manager until new allocation nodes are created, so it may be
+     * called from several threads. */
+    final public void update() {
+        if( allocNodeListener == null ) return;
         while(allocNodeListener.hasNext()) {
             AllocNode n = (AllocNode) allocNodeListener.next();
             for( Iterator tIt = Scene.v().getTypeNumberer().iterator(); tIt.hasNext(); ) {
@@ -64,9 +75,6 @@ public final class TypeManager {
                 }
             }
         }
-        BitVector ret = (BitVector) typeMask.get( type );
-        if( ret == null && fh != null ) throw new RuntimeException( "oops"+type );
-        return ret;
     }
     final public void clearTypeMask() {
         typeMask = null;
@@ -0,0 +1,364 @@
+/* Soot - a J*va Optimization Framework
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place - Suite 330,
+ * Boston, MA 02111-1307, USA.
+ */
+
+package soot.jimple.spark.ondemand;
+import soot.*;
+import soot.jimple.*;
+import soot.jimple.spark.pag.*;
+import soot.jimple.spark.sets.*;
+import soot.jimple.toolkits.callgraph.CallGraph;
+import soot.jimple.toolkits.callgraph.Edge;
+import soot.toolkits.scalar.Pair;
+import java.io.PrintStream;
+import java.util.*;
+
+/** Answers points-to queries for locals on demand, by a backward traversal
+ * of the pointer assignment graph from the queried variable. Along the
+ * traversal, a value returned by a method is only matched with the
+ * arguments of the call sites it is returned to, which makes the answers
+ * sensitive to call sites. A load is answered with the contents of the field
+ * of the objects its base may point to, as already computed on the graph by
+ * Spark or by the geometric analysis.
+ *
+ * <p>Each query may take at most the given number of steps. A query that
+ * runs out of steps is answered with the points-to set already computed
+ * for the variable, so the answers are never less precise than those sets.
+ * Answers are cached per variable.
+ */
+public class DemandPointsTo implements PointsToAnalysis {
+    /** Call sites deeper than this in the stack are forgotten. */
+    private static final int MAX_CONTEXT = 4;
+
+    public static DemandPointsTo makeWithBudget( PAG pag, int maxTraversal, boolean lazy ) {
+        return new DemandPointsTo( pag, maxTraversal, lazy );
+    }
+
+    public DemandPointsTo( PAG pag, int maxTraversal, boolean lazy ) {
+        this.pag = pag;
+        this.maxTraversal = maxTraversal;
+        this.lazy = lazy;
+    }
+
+    /** Returns the set of objects pointed to by variable l. If this analysis
+     * is lazy, the set is only refined when its types are asked for, or when
+     * its intersection with another set is computed and the points-to sets
+     * already computed intersect. */
+    public PointsToSet reachingObjects( Local l ) {
+        VarNode v = pag.findLocalVarNode( l );
+        if( v == null ) return EmptyPointsToSet.v();
+        v = (VarNode) v.getReplacement();
+        if( lazy ) return new LazyPointsToSet( this, v );
+        return refine( v );
+    }
+
+    /** Returns the same set as {@link #reachingObjects(Local)}. */
+    public PointsToSet reachingObjects( Context c, Local l ) {
+        return reachingObjects( l );
+    }
+
+    public PointsToSet reachingObjects( SootField f ) {
+        return pag.reachingObjects( f );
+    }
+
+    public PointsToSet reachingObjects( PointsToSet s, SootField f ) {
+        return pag.reachingObjects( unwrap( s ), f );
+    }
+
+    public PointsToSet reachingObjects( Local l, SootField f ) {
+        return reachingObjects( reachingObjects( l ), f );
+    }
+
+    public PointsToSet reachingObjects( Context c, Local l, SootField f ) {
+        return reachingObjects( l, f );
+    }
+
+    public PointsToSet reachingObjectsOfArrayElement( PointsToSet s ) {
+        return pag.reachingObjectsOfArrayElement( unwrap( s ) );
+    }
+
+    /** Returns true if l1 and l2 may point to the same object. */
+    public boolean hasNonEmptyIntersection( Local l1, Local l2 ) {
+        VarNode v1 = pag.findLocalVarNode( l1 );
+        VarNode v2 = pag.findLocalVarNode( l2 );
+        if( v1 == null || v2 == null ) return false;
+        return hasNonEmptyIntersection( (VarNode) v1.getReplacement(),
+                (VarNode) v2.getReplacement() );
+    }
+
+    public PAG getPAG() {
+        return pag;
+    }
+
+    /** Prints the numbers of queries, cache hits and queries which ran out
+     * of steps. */
+    public void printStatistics( PrintStream out ) {
+        out.println( "[Demand] Queries: "+queries+", cached: "+cacheHits
+                +", out of budget: "+fallbacks+", steps: "+steps );
+    }
+
+    /* End of public methods. */
+
+    /** Returns the refined points-to set of v, from the cache if it has
+     * already been computed. */
+    PointsToSet refine( VarNode v ) {
+        queries++;
+        PointsToSet ret = cache.get( v );
+        if( ret != null ) {
+            cacheHits++;
+            return ret;
+        }
+        ret = traverse( v );
+        cache.put( v, ret );
+        return ret;
+    }
+
+    boolean hasNonEmptyIntersection( VarNode v1, VarNode v2 ) {
+        if( !v1.getP2Set().hasNonEmptyIntersection( v2.getP2Set() ) ) return false;
+        return refine( v1 ).hasNonEmptyIntersection( refine( v2 ) );
+    }
+
+    /* End of package methods. */
+
+    private static PointsToSet unwrap( PointsToSet s ) {
+        if( s instanceof LazyPointsToSet ) return ((LazyPointsToSet) s).getVarNode().getP2Set();
+        return s;
+    }
+
+    /** Collects the allocation sites reaching v, and keeps those in the
+     * points-to set already computed for v. */
+    private PointsToSet traverse( VarNode v ) {
+        final PointsToSetInternal computed = v.getP2Set();
+        if( computed.isEmpty() ) return computed;
+        Set<AllocNode> allocs = collect( v );
+        if( allocs == null ) {
+            fallbacks++;
+            return computed;
+        }
+        PointsToSetInternal ret = pag.getSetFactory().newSet( v.getType(), pag );
+        for( AllocNode a : allocs ) {
+            if( computed.contains( a ) ) ret.add( a );
+        }
+        return ret;
+    }
+
+    /** Returns the allocation sites whose objects may flow to v along a
+     * realizable path, or null if it takes more steps than allowed. */
+    private Set<AllocNode> collect( VarNode v ) {
+        if( merged == null ) index();
+        final Set<AllocNode> ret = new HashSet<AllocNode>();
+        // The contents of the fields are taken from the computed sets, so
+        // each load is only looked at once
+        Set<FieldRefNode> loads = new HashSet<FieldRefNode>();
+        final P2SetVisitor objects = new P2SetVisitor() {
+        public final void visit( Node o ) {
+            ret.add( (AllocNode) o );
+        }};
+        Set<State> visited = new HashSet<State>();
+        LinkedList<State> worklist = new LinkedList<State>();
+        State start = new State( v, null );
+        visited.add( start );
+        worklist.add( start );
+        int budget = maxTraversal;
+        while( !worklist.isEmpty() ) {
+            if( --budget < 0 ) return null;
+            steps++;
+            State s = worklist.removeFirst();
+            VarNode n = s.node;
+
+            for( Node a : pag.allocInvLookup( n ) ) {
+                ret.add( (AllocNode) a );
+            }
+
+            CallSite top = s.context;
+            boolean matchArgs = false;
+            CallSite rest = null;
+            if( isParm( n ) && !merged.contains( n ) ) {
+                // Only the arguments of the call site on top of the stack flow
+                // to a parameter. Without such call site, the path may come
+                // from any caller.
+                if( top != null && top.edge.tgt() == ((LocalVarNode) n).getMethod() ) {
+                    matchArgs = top.edge.isExplicit() || top.edge.isThreadRunCall();
+                    rest = top.next;
+                }
+                top = rest;
+            }
+            Node arg = matchArgs ? argument( s.context.edge, n ) : null;
+            for( Node u : pag.simpleInvLookup( n ) ) {
+                VarNode src = (VarNode) u;
+                if( arg != null && src != arg && !(src instanceof GlobalVarNode) ) continue;
+                if( src instanceof GlobalVarNode ) {
+                    budget -= visit( src, null, visited, worklist );
+                } else if( isReturn( src ) && !merged.contains( n ) && !merged.contains( src ) ) {
+                    budget -= returnTo( src, n, top, visited, worklist );
+                } else {
+                    budget -= visit( src, top, visited, worklist );
+                }
+            }
+
+            for( Node l : pag.loadInvLookup( n ) ) {
+                FieldRefNode load = (FieldRefNode) l;
+                if( !loads.add( load ) ) continue;
+                final SparkField f = load.getField();
+                final List<PointsToSetInternal> contents = new ArrayList<PointsToSetInternal>();
+                load.getBase().getP2Set().forall( new P2SetVisitor() {
+                public final void visit( Node o ) {
+                    AllocDotField oDotF = ((AllocNode) o).dot( f );
+                    if( oDotF != null ) contents.add( oDotF.getP2Set() );
+                }} );
+                budget -= contents.size();
+                for( PointsToSetInternal c : contents ) budget -= c.size();
+                if( budget < 0 ) return null;
+                for( PointsToSetInternal c : contents ) c.forall( objects );
+            }
+        }
+        return ret;
+    }
+
+    /** Follows the returns of the method of ret to v in the caller, pushing
+     * the call site onto the stack. Returns the number of steps taken. */
+    private int returnTo( VarNode ret, VarNode v, CallSite context,
+            Set<State> visited, LinkedList<State> worklist ) {
+        SootMethod callee = ((LocalVarNode) ret).getMethod();
+        int taken = 0;
+        boolean found = false;
+        if( v instanceof LocalVarNode ) {
+            SootMethod caller = ((LocalVarNode) v).getMethod();
+            for( Iterator<Edge> eIt = callGraph.edgesOutOf( caller ); eIt.hasNext(); ) {
+                final Edge e = eIt.next();
+                taken++;
+                if( e.tgt() != callee ) continue;
+                if( !(e.srcUnit() instanceof AssignStmt) ) continue;
+                Node lhs = pag.findLocalVarNode( ((AssignStmt) e.srcUnit()).getLeftOp() );
+                if( lhs == null || lhs.getReplacement() != v ) continue;
+                found = true;
+                visit( ret, push( e, context ), visited, worklist );
+            }
+        }
+        if( !found ) visit( ret, null, visited, worklist );
+        return taken;
+    }
+
+    private int visit( VarNode n, CallSite context, Set<State> visited, LinkedList<State> worklist ) {
+        State s = new State( n, context );
+        if( visited.add( s ) ) worklist.add( s );
+        return 1;
+    }
+
+    /** Returns the node of the argument passed to parameter p by the call
+     * site of e, or null if it is not a local. */
+    private Node argument( Edge e, VarNode p ) {
+        Object index = ((Pair) p.getVariable()).getO2();
+        InvokeExpr ie = e.srcStmt().getInvokeExpr();
+        Value arg;
+        if( index == PointsToAnalysis.THIS_NODE ) {
+            if( !(ie instanceof InstanceInvokeExpr) ) return null;
+            arg = ((InstanceInvokeExpr) ie).getBase();
+        } else {
+            int i = ((Integer) index).intValue();
+            if( i >= ie.getArgCount() ) return null;
+            arg = ie.getArg( i );
+        }
+        if( !(arg instanceof Local) ) return null;
+        Node ret = pag.findLocalVarNode( arg );
+        return ret == null ? null : ret.getReplacement();
+    }
+
+    private static CallSite push( Edge e, CallSite context ) {
+        if( context != null && context.depth >= MAX_CONTEXT ) context = null;
+        return new CallSite( e, context );
+    }
+
+    /** Returns true if n is the this or a parameter node of its method. */
+    private static boolean isParm( VarNode n ) {
+        if( !(n instanceof LocalVarNode) || !(n.getVariable() instanceof Pair) ) return false;
+        Pair p = (Pair) n.getVariable();
+        return p.getO1() == ((LocalVarNode) n).getMethod()
+            && ( p.getO2() == PointsToAnalysis.THIS_NODE || p.getO2() instanceof Integer );
+    }
+
+    /** Returns true if n is the return node of its method. */
+    private static boolean isReturn( VarNode n ) {
+        if( !(n instanceof LocalVarNode) || !(n.getVariable() instanceof Parm) ) return false;
+        return ((Parm) n.getVariable()).getIndex() == PointsToAnalysis.RETURN_NODE;
+    }
+
+    private void index() {
+        // Nodes merged into a representative pass their edges to it, so the
+        // call site of an edge of the representative cannot be told.
+        merged = new HashSet<Node>();
+        for( Iterator it = pag.getVarNodeNumberer().iterator(); it.hasNext(); ) {
+            final Node n = (Node) it.next();
+            if( n.getReplacement() != n ) merged.add( n.getReplacement() );
+        }
+    }
+
+    /** A stack of call sites, the innermost first. */
+    private static final class CallSite {
+        final Edge edge;
+        final CallSite next;
+        final int depth;
+
+        CallSite( Edge edge, CallSite next ) {
+            this.edge = edge;
+            this.next = next;
+            this.depth = next == null ? 1 : next.depth + 1;
+        }
+
+        public int hashCode() {
+            return edge.hashCode() * 31 + ( next == null ? 0 : next.hashCode() );
+        }
+
+        public boolean equals( Object o ) {
+            if( !(o instanceof CallSite) ) return false;
+            CallSite other = (CallSite) o;
+            return edge == other.edge && depth == other.depth
+                && ( next == null ? other.next == null : next.equals( other.next ) );
+        }
+    }
+
+    private static final class State {
+        final VarNode node;
+        final CallSite context;
+
+        State( VarNode node, CallSite context ) {
+            this.node = node;
+            this.context = context;
+        }
+
+        public int hashCode() {
+            return node.hashCode() * 31 + ( context == null ? 0 : context.hashCode() );
+        }
+
+        public boolean equals( Object o ) {
+            State other = (State) o;
+            return node == other.node
+                && ( context == null ? other.context == null : context.equals( other.context ) );
+        }
+    }
+
+    private final PAG pag;
+    private final CallGraph callGraph = Scene.v().getCallGraph();
+    private final int maxTraversal;
+    private final boolean lazy;
+    private final Map<VarNode, PointsToSet> cache = new HashMap<VarNode, PointsToSet>();
+    private Set<Node> merged = null;
+    private long queries = 0;
+    private long cacheHits = 0;
+    private long fallbacks = 0;
+    private long steps = 0;
+}
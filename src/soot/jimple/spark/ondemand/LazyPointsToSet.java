@@ -0,0 +1,70 @@
+/* Soot - a J*va Optimization Framework
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place - Suite 330,
+ * Boston, MA 02111-1307, USA.
+ */
+
+package soot.jimple.spark.ondemand;
+import soot.*;
+import soot.jimple.ClassConstant;
+import soot.jimple.spark.pag.VarNode;
+import java.util.*;
+
+/** The points-to set of a variable returned by a lazy
+ * {@link DemandPointsTo}. It stands for the points-to set already computed
+ * for the variable, and is only refined when its types are asked for, or
+ * when it seems to intersect another set.
+ */
+final class LazyPointsToSet implements PointsToSet {
+    LazyPointsToSet( DemandPointsTo analysis, VarNode v ) {
+        this.analysis = analysis;
+        this.v = v;
+    }
+
+    public boolean isEmpty() {
+        return v.getP2Set().isEmpty();
+    }
+
+    public boolean hasNonEmptyIntersection( PointsToSet other ) {
+        if( other instanceof LazyPointsToSet ) {
+            return analysis.hasNonEmptyIntersection( v, ((LazyPointsToSet) other).v );
+        }
+        if( !v.getP2Set().hasNonEmptyIntersection( other ) ) return false;
+        return analysis.refine( v ).hasNonEmptyIntersection( other );
+    }
+
+    public Set<Type> possibleTypes() {
+        return analysis.refine( v ).possibleTypes();
+    }
+
+    public Set<String> possibleStringConstants() {
+        return v.getP2Set().possibleStringConstants();
+    }
+
+    public Set<ClassConstant> possibleClassConstants() {
+        return v.getP2Set().possibleClassConstants();
+    }
+
+    /* End of public methods. */
+
+    VarNode getVarNode() {
+        return v;
+    }
+
+    /* End of package methods. */
+
+    private final DemandPointsTo analysis;
+    private final VarNode v;
+}
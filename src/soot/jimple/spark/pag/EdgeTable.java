@@ -0,0 +1,280 @@
+/* Soot - a J*va Optimization Framework
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place - Suite 330,
+ * Boston, MA 02111-1307, USA.
+ */
+
+package soot.jimple.spark.pag;
+import java.util.*;
+
+/** One kind of edges of the pointer assignment graph, stored as arrays of
+ * node numbers instead of a map of node sets. All keys are nodes of one kind,
+ * and so are all values. The PAG numbers each kind of node separately, so a
+ * table must only be given keys and values of the kinds it was made for.
+ *
+ * <p>New edges are appended to a growable array per key. Once these hold
+ * more edges than the compacted part, all edges are compacted into a single
+ * array in compressed sparse row form. The values of a key are kept sorted,
+ * except for the last few added ones, so that duplicate edges are found by
+ * binary search.
+ */
+final class EdgeTable {
+    private static final int MIN_COMPACT = 1024;
+    /** The number of unsorted values of a key before they are sorted in. */
+    private static final int UNSORTED = 16;
+    private static final Node[] EMPTY_NODE_ARRAY = new Node[0];
+
+    /** Nodes by number, as far as they occur in this table. */
+    private Node[] keyNodes = new Node[16];
+    private Node[] valueNodes = new Node[16];
+
+    /** The compacted edges; the values of key k are
+     * csrTargets[csrStart[k]] to csrTargets[csrStart[k]+csrCount[k]-1],
+     * in ascending order. */
+    private int[] csrStart = new int[0];
+    private int[] csrCount = new int[0];
+    private int[] csrTargets = new int[0];
+    private int csrEdges = 0;
+
+    /** The edges added since the last compaction. The first extraSorted[k]
+     * values of key k are in ascending order. */
+    private int[][] extra = new int[16][];
+    private int[] extraCount = new int[16];
+    private int[] extraSorted = new int[16];
+    private int extraEdges = 0;
+
+    /** Adds an edge, returns false if it was already there. */
+    boolean add( Node key, Node value ) {
+        int k = key.getNumber();
+        int v = value.getNumber();
+        if( contains( k, v ) ) return false;
+        if( v >= valueNodes.length ) valueNodes = Arrays.copyOf( valueNodes, grow( valueNodes.length, v ) );
+        valueNodes[v] = value;
+        append( key, v );
+        if( extraEdges > MIN_COMPACT && extraEdges > csrEdges ) compact( false );
+        return true;
+    }
+
+    private boolean contains( int k, int v ) {
+        if( k < csrCount.length && csrCount[k] > 0
+                && Arrays.binarySearch( csrTargets, csrStart[k], csrStart[k] + csrCount[k], v ) >= 0 ) {
+            return true;
+        }
+        if( k >= extraCount.length || extraCount[k] == 0 ) return false;
+        int[] vs = extra[k];
+        if( Arrays.binarySearch( vs, 0, extraSorted[k], v ) >= 0 ) return true;
+        for( int i = extraSorted[k]; i < extraCount[k]; i++ ) {
+            if( vs[i] == v ) return true;
+        }
+        return false;
+    }
+
+    private void append( Node key, int v ) {
+        int k = key.getNumber();
+        if( k >= keyNodes.length ) {
+            int size = grow( keyNodes.length, k );
+            keyNodes = Arrays.copyOf( keyNodes, size );
+            extra = Arrays.copyOf( extra, size );
+            extraCount = Arrays.copyOf( extraCount, size );
+            extraSorted = Arrays.copyOf( extraSorted, size );
+        }
+        keyNodes[k] = key;
+        int[] vs = extra[k];
+        int count = extraCount[k];
+        if( vs == null ) {
+            extra[k] = vs = new int[4];
+        } else if( count == vs.length ) {
+            extra[k] = vs = Arrays.copyOf( vs, vs.length * 2 );
+        }
+        vs[count++] = v;
+        extraCount[k] = count;
+        extraEdges++;
+        int sorted = extraSorted[k];
+        if( count - sorted >= UNSORTED ) {
+            Arrays.sort( vs, sorted, count );
+            if( sorted > 0 ) merge( vs, sorted, count );
+            extraSorted[k] = count;
+        }
+    }
+
+    /** Merges the ascending runs vs[0..mid) and vs[mid..end). */
+    private static void merge( int[] vs, int mid, int end ) {
+        int[] tail = Arrays.copyOfRange( vs, mid, end );
+        int i = mid - 1;
+        int j = tail.length - 1;
+        int out = end - 1;
+        while( j >= 0 ) {
+            if( i >= 0 && vs[i] > tail[j] ) vs[out--] = vs[i--];
+            else vs[out--] = tail[j--];
+        }
+    }
+
+    private static int grow( int length, int index ) {
+        int size = length * 2;
+        while( size <= index ) size *= 2;
+        return size;
+    }
+
+    private int degree( int k ) {
+        int ret = 0;
+        if( k < csrCount.length ) ret += csrCount[k];
+        if( k < extraCount.length ) ret += extraCount[k];
+        return ret;
+    }
+
+    /** Returns the values of key as numbers. */
+    private int[] values( int k ) {
+        int[] ret = new int[degree( k )];
+        int j = 0;
+        if( k < csrCount.length ) {
+            System.arraycopy( csrTargets, csrStart[k], ret, 0, csrCount[k] );
+            j = csrCount[k];
+        }
+        if( k < extraCount.length && extraCount[k] > 0 ) {
+            System.arraycopy( extra[k], 0, ret, j, extraCount[k] );
+        }
+        return ret;
+    }
+
+    /** Returns the values of key. If some nodes have been merged, the values
+     * are replaced by their representatives, and key is left out. */
+    Node[] lookup( Node key, boolean merged ) {
+        int k = key.getNumber();
+        if( degree( k ) == 0 ) return EMPTY_NODE_ARRAY;
+        int[] vs = values( k );
+        Node[] ret = new Node[vs.length];
+        for( int i = 0; i < vs.length; i++ ) ret[i] = valueNodes[vs[i]];
+        if( !merged ) return ret;
+        Set<Node> seen = new HashSet<Node>( ret.length * 2 );
+        int j = 0;
+        for( Node n : ret ) {
+            Node rep = n.getReplacement();
+            if( rep == key ) continue;
+            if( seen.add( rep ) ) ret[j++] = rep;
+        }
+        return j == ret.length ? ret : Arrays.copyOf( ret, j );
+    }
+
+    /** Returns the keys which have at least one value. */
+    Set<Object> sources() {
+        return new AbstractSet<Object>() {
+            public Iterator<Object> iterator() {
+                return new Iterator<Object>() {
+                    int next = advance( 1 );
+                    private int advance( int k ) {
+                        while( k < keyNodes.length && degree( k ) == 0 ) k++;
+                        return k;
+                    }
+                    public boolean hasNext() { return next < keyNodes.length; }
+                    public Object next() {
+                        if( !hasNext() ) throw new NoSuchElementException();
+                        Node ret = keyNodes[next];
+                        next = advance( next + 1 );
+                        return ret;
+                    }
+                    public void remove() {
+                        throw new UnsupportedOperationException();
+                    }
+                };
+            }
+            public int size() {
+                int ret = 0;
+                for( int k = 1; k < keyNodes.length; k++ ) {
+                    if( degree( k ) > 0 ) ret++;
+                }
+                return ret;
+            }
+            public boolean contains( Object o ) {
+                if( !( o instanceof Node ) ) return false;
+                int k = ((Node) o).getNumber();
+                return k < keyNodes.length && keyNodes[k] == o && degree( k ) > 0;
+            }
+        };
+    }
+
+    /** Moves the values of n2 to n1. Does nothing if n2 is not a key of
+     * this table. */
+    void merge( Node n1, Node n2 ) {
+        int k2 = n2.getNumber();
+        if( k2 >= keyNodes.length || keyNodes[k2] != n2 ) return;
+        if( degree( k2 ) == 0 ) return;
+        int k1 = n1.getNumber();
+        int[] vs = values( k2 );
+        if( k2 < csrCount.length ) csrCount[k2] = 0;
+        extraEdges -= extraCount[k2];
+        extraCount[k2] = 0;
+        extraSorted[k2] = 0;
+        extra[k2] = null;
+        for( int v : vs ) {
+            if( !contains( k1, v ) ) append( n1, v );
+        }
+    }
+
+    /** Moves all edges into the compacted part. If merged is true, values
+     * are replaced by their representatives and edges from a node to
+     * itself are removed. */
+    void compact( boolean merged ) {
+        int keys = keyNodes.length;
+        int[] start = new int[keys];
+        int[] count = new int[keys];
+        int edges = 0;
+        for( int k = 0; k < keys; k++ ) edges += degree( k );
+        int[] targets = new int[edges];
+        int j = 0;
+        for( int k = 0; k < keys; k++ ) {
+            start[k] = j;
+            if( degree( k ) == 0 ) continue;
+            int[] vs = values( k );
+            if( merged ) {
+                int n = 0;
+                for( int v : vs ) {
+                    Node rep = valueNodes[v].getReplacement();
+                    if( rep == keyNodes[k] ) continue;
+                    int r = rep.getNumber();
+                    if( r >= valueNodes.length ) valueNodes = Arrays.copyOf( valueNodes, grow( valueNodes.length, r ) );
+                    valueNodes[r] = rep;
+                    vs[n++] = r;
+                }
+                vs = Arrays.copyOf( vs, n );
+            }
+            Arrays.sort( vs );
+            for( int i = 0; i < vs.length; i++ ) {
+                if( i == 0 || vs[i] != vs[i-1] ) targets[j++] = vs[i];
+            }
+            count[k] = j - start[k];
+        }
+        csrStart = start;
+        csrCount = count;
+        csrTargets = j == targets.length ? targets : Arrays.copyOf( targets, j );
+        csrEdges = j;
+        extra = new int[keys][];
+        extraCount = new int[keys];
+        extraSorted = new int[keys];
+        extraEdges = 0;
+    }
+
+    void clear() {
+        keyNodes = new Node[16];
+        valueNodes = new Node[16];
+        csrStart = new int[0];
+        csrCount = new int[0];
+        csrTargets = new int[0];
+        csrEdges = 0;
+        extra = new int[16][];
+        extraCount = new int[16];
+        extraSorted = new int[16];
+        extraEdges = 0;
+    }
+}
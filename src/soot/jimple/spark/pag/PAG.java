@@ -58,6 +58,7 @@ import soot.jimple.spark.sets.HybridPointsToSet;
 import soot.jimple.spark.sets.P2SetFactory;
 import soot.jimple.spark.sets.P2SetVisitor;
 import soot.jimple.spark.sets.PointsToSetInternal;
+import soot.jimple.spark.sets.RoaringPointsToSet;
 import soot.jimple.spark.sets.SharedHybridSet;
 import soot.jimple.spark.sets.SharedListSet;
 import soot.jimple.spark.sets.SortedArraySet;
@@ -65,6 +66,7 @@ import soot.jimple.spark.solver.OnFlyCallGraph;
 import soot.jimple.toolkits.callgraph.Edge;
 import soot.jimple.toolkits.pointer.util.NativeMethodDriver;
 import soot.options.SparkOptions;
+import soot.robovm.RoboVMLocalAlias;
 import soot.tagkit.LinkTag;
 import soot.tagkit.StringTag;
 import soot.tagkit.Tag;
@@ -81,6 +83,16 @@ import soot.util.queue.QueueReader;
 public class PAG implements PointsToAnalysis {
     public PAG( final SparkOptions opts ) {
         this.opts = opts;
+        if( opts.compact_edges() ) {
+            simpleEdges = new EdgeTable();
+            loadEdges = new EdgeTable();
+            storeEdges = new EdgeTable();
+            allocEdges = new EdgeTable();
+            simpleInvEdges = new EdgeTable();
+            loadInvEdges = new EdgeTable();
+            storeInvEdges = new EdgeTable();
+            allocInvEdges = new EdgeTable();
+        }
         if( opts.add_tags() ) {
             nodeToTag = new HashMap<Node, Tag>();
         }
@@ -107,6 +119,12 @@ public class PAG implements PointsToAnalysis {
             case SparkOptions.set_impl_bit:
                 setFactory = BitPointsToSet.getFactory();
                 break;
+            case SparkOptions.set_impl_roaring:
+                setFactory = RoaringPointsToSet.getFactory( false );
+                break;
+            case SparkOptions.set_impl_sharedroaring:
+                setFactory = RoaringPointsToSet.getFactory( true );
+                break;
             case SparkOptions.set_impl_double:
                 P2SetFactory oldF;
                 P2SetFactory newF;
@@ -236,6 +254,16 @@ public class PAG implements PointsToAnalysis {
         if( opts.verbose() ) {
             G.v().out.println( "Cleaning up graph for merged nodes" );
         }
+        if( simpleEdges != null ) {
+            for (EdgeTable t : edgeTables()) {
+                t.compact( somethingMerged );
+            }
+            somethingMerged = false;
+            if( opts.verbose() ) {
+                G.v().out.println( "Done cleaning up graph for merged nodes" );
+            }
+            return;
+        }
         Map[] maps = { simple, alloc, store, load,
             simpleInv, allocInv, storeInv, loadInv };
         for (Map<Object, Object> m : maps) {
@@ -249,18 +277,30 @@ public class PAG implements PointsToAnalysis {
         }
     }
     public boolean doAddSimpleEdge( VarNode from, VarNode to ) {
+        if( simpleEdges != null ) {
+            return simpleEdges.add( from, to ) | simpleInvEdges.add( to, from );
+        }
         return addToMap( simple, from, to ) | addToMap( simpleInv, to, from );
     }
 
     public boolean doAddStoreEdge( VarNode from, FieldRefNode to ) {
+        if( storeEdges != null ) {
+            return storeEdges.add( from, to ) | storeInvEdges.add( to, from );
+        }
         return addToMap( store, from, to ) | addToMap( storeInv, to, from );
     }
 
     public boolean doAddLoadEdge( FieldRefNode from, VarNode to ) {
+        if( loadEdges != null ) {
+            return loadEdges.add( from, to ) | loadInvEdges.add( to, from );
+        }
         return addToMap( load, from, to ) | addToMap( loadInv, to, from );
     }
 
     public boolean doAddAllocEdge( AllocNode from, VarNode to ) {
+        if( allocEdges != null ) {
+            return allocEdges.add( from, to ) | allocInvEdges.add( to, from );
+        }
         return addToMap( alloc, from, to ) | addToMap( allocInv, to, from );
     }
 
@@ -271,6 +311,13 @@ public class PAG implements PointsToAnalysis {
         somethingMerged = true;
         if( ofcg() != null ) ofcg().mergedWith( n1, n2 );
 
+        if( simpleEdges != null ) {
+            for (EdgeTable t : edgeTablesKeyedBy( n2 )) {
+                t.merge( n1, n2 );
+            }
+            return;
+        }
+
         Map[] maps = { simple, alloc, store, load,
             simpleInv, allocInv, storeInv, loadInv };
         for (Map<Node, Object> m : maps) {
@@ -330,6 +377,10 @@ public class PAG implements PointsToAnalysis {
         }
     }
     protected final static Node[] EMPTY_NODE_ARRAY = new Node[0];
+    private Node[] lookup( Map<Object, Object> m, EdgeTable t, Object key ) {
+        if( t != null ) return t.lookup( (Node) key, somethingMerged );
+        return lookup( m, key );
+    }
     protected Node[] lookup( Map<Object, Object> m, Object key ) {
 	Object valueList = m.get( key );
 	if( valueList == null ) {
@@ -385,38 +436,38 @@ public class PAG implements PointsToAnalysis {
     }
 
     public Node[] simpleLookup( VarNode key ) 
-    { return lookup( simple, key ); }
+    { return lookup( simple, simpleEdges, key ); }
     public Node[] simpleInvLookup( VarNode key ) 
-    { return lookup( simpleInv, key ); }
+    { return lookup( simpleInv, simpleInvEdges, key ); }
     public Node[] loadLookup( FieldRefNode key ) 
-    { return lookup( load, key ); }
+    { return lookup( load, loadEdges, key ); }
     public Node[] loadInvLookup( VarNode key ) 
-    { return lookup( loadInv, key ); }
+    { return lookup( loadInv, loadInvEdges, key ); }
     public Node[] storeLookup( VarNode key ) 
-    { return lookup( store, key ); }
+    { return lookup( store, storeEdges, key ); }
     public Node[] storeInvLookup( FieldRefNode key ) 
-    { return lookup( storeInv, key ); }
+    { return lookup( storeInv, storeInvEdges, key ); }
     public Node[] allocLookup( AllocNode key ) 
-    { return lookup( alloc, key ); }
+    { return lookup( alloc, allocEdges, key ); }
     public Node[] allocInvLookup( VarNode key ) 
-    { return lookup( allocInv, key ); }
-    public Set<Object> simpleSources() { return simple.keySet(); }
-    public Set<Object> allocSources() { return alloc.keySet(); }
-    public Set<Object> storeSources() { return store.keySet(); }
-    public Set<Object> loadSources() { return load.keySet(); }
-    public Set<Object> simpleInvSources() { return simpleInv.keySet(); }
-    public Set<Object> allocInvSources() { return allocInv.keySet(); }
-    public Set<Object> storeInvSources() { return storeInv.keySet(); }
-    public Set<Object> loadInvSources() { return loadInv.keySet(); }
-
-    public Iterator<Object> simpleSourcesIterator() { return simple.keySet().iterator(); }
-    public Iterator<Object> allocSourcesIterator() { return alloc.keySet().iterator(); }
-    public Iterator<Object> storeSourcesIterator() { return store.keySet().iterator(); }
-    public Iterator<Object> loadSourcesIterator() { return load.keySet().iterator(); }
-    public Iterator<Object> simpleInvSourcesIterator() { return simpleInv.keySet().iterator(); }
-    public Iterator<Object> allocInvSourcesIterator() { return allocInv.keySet().iterator(); }
-    public Iterator<Object> storeInvSourcesIterator() { return storeInv.keySet().iterator(); }
-    public Iterator<Object> loadInvSourcesIterator() { return loadInv.keySet().iterator(); }
+    { return lookup( allocInv, allocInvEdges, key ); }
+    public Set<Object> simpleSources() { return simpleEdges != null ? simpleEdges.sources() : simple.keySet(); }
+    public Set<Object> allocSources() { return allocEdges != null ? allocEdges.sources() : alloc.keySet(); }
+    public Set<Object> storeSources() { return storeEdges != null ? storeEdges.sources() : store.keySet(); }
+    public Set<Object> loadSources() { return loadEdges != null ? loadEdges.sources() : load.keySet(); }
+    public Set<Object> simpleInvSources() { return simpleInvEdges != null ? simpleInvEdges.sources() : simpleInv.keySet(); }
+    public Set<Object> allocInvSources() { return allocInvEdges != null ? allocInvEdges.sources() : allocInv.keySet(); }
+    public Set<Object> storeInvSources() { return storeInvEdges != null ? storeInvEdges.sources() : storeInv.keySet(); }
+    public Set<Object> loadInvSources() { return loadInvEdges != null ? loadInvEdges.sources() : loadInv.keySet(); }
+
+    public Iterator<Object> simpleSourcesIterator() { return simpleSources().iterator(); }
+    public Iterator<Object> allocSourcesIterator() { return allocSources().iterator(); }
+    public Iterator<Object> storeSourcesIterator() { return storeSources().iterator(); }
+    public Iterator<Object> loadSourcesIterator() { return loadSources().iterator(); }
+    public Iterator<Object> simpleInvSourcesIterator() { return simpleInvSources().iterator(); }
+    public Iterator<Object> allocInvSourcesIterator() { return allocInvSources().iterator(); }
+    public Iterator<Object> storeInvSourcesIterator() { return storeInvSources().iterator(); }
+    public Iterator<Object> loadInvSourcesIterator() { return loadInvSources().iterator(); }
 
     static private int getSize( Object set ) {
         if( set instanceof Set ) return ((Set) set).size();
@@ -504,6 +555,8 @@ public class PAG implements PointsToAnalysis {
         if( opts.rta() ) {
             value = null;
         } else if( value instanceof Local ) {
+            // Aliases share the node of the local they stand for
+            if( value instanceof RoboVMLocalAlias ) value = ((RoboVMLocalAlias) value).getOwner();
             return (LocalVarNode) localToNodeMap.get( (Local) value );
         }
 	return valToLocalVarNode.get( value );
@@ -532,6 +585,7 @@ public class PAG implements PointsToAnalysis {
             type = RefType.v("java.lang.Object");
             method = null;
         } else if( value instanceof Local ) {
+            if( value instanceof RoboVMLocalAlias ) value = ((RoboVMLocalAlias) value).getOwner();
             Local val = (Local) value;
             if( val.getNumber() == 0 ) Scene.v().getLocalNumberer().add(val);
             LocalVarNode ret = (LocalVarNode) localToNodeMap.get( val );
@@ -1074,6 +1128,11 @@ public class PAG implements PointsToAnalysis {
      */
     public void cleanPAG()
     {
+    	if( simpleEdges != null ) {
+    	    for (EdgeTable t : edgeTables()) {
+    	        t.clear();
+    	    }
+    	}
     	simple.clear();
     	load.clear();
     	store.clear();
@@ -1098,6 +1157,35 @@ public class PAG implements PointsToAnalysis {
     protected Map<Object, Object> storeInv = new HashMap<Object, Object>();
     protected Map<Object, Object> allocInv = new HashMap<Object, Object>();
 
+    /** The edges if the compact-edges option is set, null otherwise. */
+    private EdgeTable simpleEdges;
+    private EdgeTable loadEdges;
+    private EdgeTable storeEdges;
+    private EdgeTable allocEdges;
+    private EdgeTable simpleInvEdges;
+    private EdgeTable loadInvEdges;
+    private EdgeTable storeInvEdges;
+    private EdgeTable allocInvEdges;
+
+    private EdgeTable[] edgeTables() {
+        return new EdgeTable[] { simpleEdges, loadEdges, storeEdges, allocEdges,
+            simpleInvEdges, loadInvEdges, storeInvEdges, allocInvEdges };
+    }
+
+    /** Returns the edge tables whose keys are of the kind of node n. Each
+     * kind of node is numbered separately, so the other tables may hold
+     * another node under the number of n. */
+    private EdgeTable[] edgeTablesKeyedBy( Node n ) {
+        if( n instanceof VarNode ) {
+            return new EdgeTable[] { simpleEdges, storeEdges,
+                simpleInvEdges, loadInvEdges, allocInvEdges };
+        }
+        if( n instanceof FieldRefNode ) {
+            return new EdgeTable[] { loadEdges, storeInvEdges };
+        }
+        return new EdgeTable[] { allocEdges };
+    }
+
     protected boolean addToMap( Map<Object, Object> m, Node key, Node value ) {
 	Object valueList = m.get( key );
 
@@ -0,0 +1,121 @@
+/* Soot - a J*va Optimization Framework
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place - Suite 330,
+ * Boston, MA 02111-1307, USA.
+ */
+
+package soot.jimple.spark.sets;
+
+import soot.Type;
+import soot.jimple.spark.internal.TypeManager;
+import soot.jimple.spark.pag.Node;
+import soot.jimple.spark.pag.PAG;
+import soot.util.BitVector;
+import soot.util.RoaringBitVector;
+import soot.util.RoaringBitVectorCache;
+
+/** Implementation of points-to set using a {@link RoaringBitVector} of
+ * allocation node numbers, so that sets too large for a list but much
+ * smaller than the number of allocation nodes do not take a bit for every
+ * allocation node. If shared, the bits of equal sets are shared through
+ * the {@link RoaringBitVectorCache}, and copied before they are changed.
+ */
+public final class RoaringPointsToSet extends PointsToSetInternal {
+    public RoaringPointsToSet( Type type, PAG pag, boolean shared ) {
+        super( type );
+        this.pag = pag;
+        this.shared = shared;
+    }
+    /** Returns true if this set contains no run-time objects. */
+    public final boolean isEmpty() {
+        return bits == null;
+    }
+
+    private final boolean nativeAddAll( RoaringPointsToSet other, RoaringPointsToSet exclude ) {
+        if( other.bits == null ) return false;
+        BitVector mask = null;
+        TypeManager typeManager = pag.getTypeManager();
+        if( !typeManager.castNeverFails( other.getType(), this.getType() ) ) {
+            mask = typeManager.get( this.getType() );
+        }
+        RoaringBitVector ebits = ( exclude==null ? null : exclude.bits );
+        RoaringBitVector target = acquire();
+        if( !target.orAndAndNot( other.bits, mask, ebits ) ) return false;
+        release( target );
+        return true;
+    }
+
+    /** Adds contents of other into this set, returns true if this set
+     * changed. */
+    public final boolean addAll( PointsToSetInternal other,
+            PointsToSetInternal exclude ) {
+        if( other != null && !(other instanceof RoaringPointsToSet) )
+            return super.addAll( other, exclude );
+        if( exclude != null && !(exclude instanceof RoaringPointsToSet) )
+            return super.addAll( other, exclude );
+        return nativeAddAll( (RoaringPointsToSet) other, (RoaringPointsToSet) exclude );
+    }
+    /** Calls v's visit method on all nodes in this set. */
+    public final boolean forall( P2SetVisitor v ) {
+        if( bits == null ) return v.getReturnValue();
+        for( RoaringBitVector.BitIterator it = bits.iterator(); it.hasNext(); ) {
+            v.visit( (Node) pag.getAllocNodeNumberer().get( it.next() ) );
+        }
+        return v.getReturnValue();
+    }
+    /** Adds n to this set, returns true if n was not already in this set. */
+    public final boolean add( Node n ) {
+        if( !pag.getTypeManager().castNeverFails( n.getType(), type ) ) return false;
+        if( contains( n ) ) return false;
+        RoaringBitVector target = acquire();
+        target.set( n.getNumber() );
+        release( target );
+        return true;
+    }
+    /** Returns true iff the set contains n. */
+    public final boolean contains( Node n ) {
+        return bits != null && bits.get( n.getNumber() );
+    }
+    public final int size() {
+        return bits == null ? 0 : bits.cardinality();
+    }
+    public static P2SetFactory getFactory( final boolean shared ) {
+        return new P2SetFactory() {
+            public PointsToSetInternal newSet( Type type, PAG pag ) {
+                return new RoaringPointsToSet( type, pag, shared );
+            }
+        };
+    }
+
+    /* End of public methods. */
+    /* End of package methods. */
+
+    /** Returns bits to change, copying them if they may be shared. */
+    private RoaringBitVector acquire() {
+        if( bits == null ) return new RoaringBitVector();
+        if( shared ) return (RoaringBitVector) bits.clone();
+        return bits;
+    }
+
+    /** Makes the changed bits from acquire the bits of this set. */
+    private void release( RoaringBitVector target ) {
+        bits = shared ? RoaringBitVectorCache.v().canonicalize( target ) : target;
+    }
+
+    /** Null while the set is empty. */
+    private RoaringBitVector bits = null;
+    private final boolean shared;
+    private final PAG pag;
+}
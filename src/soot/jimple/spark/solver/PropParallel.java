@@ -0,0 +1,555 @@
+/* Soot - a J*va Optimization Framework
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place - Suite 330,
+ * Boston, MA 02111-1307, USA.
+ */
+
+package soot.jimple.spark.solver;
+import soot.jimple.spark.pag.*;
+import soot.jimple.spark.sets.*;
+import soot.*;
+import soot.options.Options;
+import soot.options.SparkOptions;
+import soot.util.ArrayNumberer;
+import soot.util.IdentityHashSet;
+import soot.util.queue.*;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/** Propagates points-to sets along the pointer assignment graph in waves.
+ *
+ * <p>The strongly connected components of the simple edges are sorted into
+ * levels such that every edge between two components goes from a lower level
+ * to a higher one. Each round first propagates the new points-to sets of the
+ * nodes on the worklist along the simple edges, one level after the other.
+ * The components of one level only read the sets of lower levels and only
+ * write the sets of their own nodes, so they are processed in parallel on a
+ * fork-join pool. The round then handles field stores, field loads and the
+ * on-the-fly call graph for the nodes whose sets changed, sequentially and in
+ * the order of their numbers. The result is the same as that of
+ * {@link PropWorklist}.
+ *
+ * <p>Propagation is sequential if {@link Options#num_threads()} is 1, or if
+ * the set implementation shares data between the sets of different nodes.
+ */
+
+public final class PropParallel extends Propagator {
+    /** Levels with fewer components than this are processed on the calling
+     * thread. */
+    private static final int MIN_PARALLEL_WAVE = 64;
+
+    public PropParallel( PAG pag ) { this.pag = pag; }
+    /** Actually does the propagation. */
+    public final void propagate() {
+        ofcg = pag.getOnFlyCallGraph();
+        graphChanges = pag.edgeReader();
+        int threads = threads();
+        if( threads > 1 ) pool = new ForkJoinPool( threads );
+        try {
+            rebuild();
+            for (Object object : pag.allocSources()) {
+                handleAllocNode( (AllocNode) object );
+            }
+
+            boolean verbose = pag.getOpts().verbose();
+            do {
+                while( !workList.isEmpty() ) {
+                    if( verbose ) {
+                        G.v().out.println( "Wave has "+workList.cardinality()+
+                                " nodes." );
+                    }
+                    round();
+                }
+                if( verbose ) {
+                    G.v().out.println( "Now handling field references" );
+                }
+                handleStores();
+                handleLoads();
+            } while( !workList.isEmpty() );
+        } finally {
+            if( pool != null ) pool.shutdown();
+            pool = null;
+        }
+    }
+
+    /* End of public methods. */
+    /* End of package methods. */
+
+    /** Returns the number of threads to propagate with, or 1 if the points-to
+     * sets cannot be updated from several threads. */
+    private int threads() {
+        int threads = Options.v().num_threads();
+        if( threads <= 0 )
+            threads = Runtime.getRuntime().availableProcessors();
+        if( Options.v().time() || Options.v().interactive_mode() ) return 1;
+        SparkOptions opts = pag.getOpts();
+        if( !threadConfined( opts.set_impl() ) ) return 1;
+        if( opts.set_impl() == SparkOptions.set_impl_double
+                && !( threadConfined( opts.double_set_old() )
+                    && threadConfined( opts.double_set_new() ) ) ) return 1;
+        return threads;
+    }
+    /** The shared, heintze and sharedroaring sets keep data shared by several
+     * sets. */
+    private static boolean threadConfined( int setImpl ) {
+        switch( setImpl ) {
+            case SparkOptions.set_impl_hash:
+            case SparkOptions.set_impl_bit:
+            case SparkOptions.set_impl_hybrid:
+            case SparkOptions.set_impl_array:
+            case SparkOptions.set_impl_roaring:
+            case SparkOptions.set_impl_double:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /** Propagates the new points-to sets of the worklist along the simple
+     * edges, then handles all other edges of the nodes whose sets changed. */
+    private void round() {
+        if( graphChanges.hasNext() || pag.getVarNodeNumberer().size() >= nodes.length ) {
+            rebuild();
+        }
+        boolean[] active = new boolean[nodes.length];
+        for( int n = workList.nextSetBit( 0 ); n >= 0; n = workList.nextSetBit( n+1 ) ) {
+            active[n] = true;
+        }
+        workList = new BitSet();
+        this.active = active;
+
+        // Points-to sets read the type masks, which must not change while
+        // they are being read from several threads.
+        pag.getTypeManager().update();
+        for( int w = 0; w < waveStart.length - 1; w++ ) {
+            int from = waveStart[w];
+            int to = waveStart[w+1];
+            if( pool == null || to - from < MIN_PARALLEL_WAVE ) {
+                for( int i = from; i < to; i++ ) propagateComponent( waveComps[i] );
+            } else {
+                pool.invoke( new WaveTask( from, to ) );
+            }
+        }
+
+        for( int n = 1; n < active.length; n++ ) {
+            if( active[n] ) handleVarNode( nodes[n] );
+        }
+    }
+
+    /** Pulls the new points-to sets of the active predecessors of the nodes
+     * of component c into them until no set of c changes. Only writes the
+     * sets of the nodes of c. */
+    private void propagateComponent( int c ) {
+        int from = compStart[c];
+        int to = compStart[c+1];
+        for( int i = from; i < to; i++ ) {
+            int n = compMembers[i];
+            VarNode node = nodes[n];
+            for( int e = predStart[n]; e < predStart[n+1]; e++ ) {
+                int p = preds[e];
+                if( comp[p] == c || !active[p] ) continue;
+                if( node.makeP2Set().addAll( nodes[p].getP2Set().getNewSet(), null ) ) {
+                    active[n] = true;
+                }
+            }
+        }
+        if( to - from == 1 ) return;
+        boolean change;
+        do {
+            change = false;
+            for( int i = from; i < to; i++ ) {
+                int n = compMembers[i];
+                VarNode node = nodes[n];
+                for( int e = predStart[n]; e < predStart[n+1]; e++ ) {
+                    int p = preds[e];
+                    if( comp[p] != c || !active[p] ) continue;
+                    if( node.makeP2Set().addAll( nodes[p].getP2Set().getNewSet(), null ) ) {
+                        active[n] = true;
+                        change = true;
+                    }
+                }
+            }
+        } while( change );
+    }
+
+    private class WaveTask extends RecursiveAction {
+        private final int from;
+        private final int to;
+
+        WaveTask( int from, int to ) {
+            this.from = from;
+            this.to = to;
+        }
+
+        protected void compute() {
+            if( to - from > MIN_PARALLEL_WAVE ) {
+                int mid = ( from + to ) >>> 1;
+                invokeAll( new WaveTask( from, mid ), new WaveTask( mid, to ) );
+                return;
+            }
+            for( int i = from; i < to; i++ ) propagateComponent( waveComps[i] );
+        }
+    }
+
+    /** Numbers the variable nodes, finds the strongly connected components of
+     * the simple edges and sorts them into waves. */
+    private void rebuild() {
+        while( graphChanges.hasNext() ) graphChanges.next();
+        ArrayNumberer numberer = pag.getVarNodeNumberer();
+        int size = numberer.size() + 1;
+        nodes = new VarNode[size];
+        for( Iterator vIt = numberer.iterator(); vIt.hasNext(); ) {
+            final VarNode v = (VarNode) vIt.next();
+            if( v.getReplacement() == v ) nodes[v.getNumber()] = v;
+        }
+
+        // Simple edges between representatives, as successor and
+        // predecessor arrays indexed by node number.
+        int[] succCount = new int[size+1];
+        int[] predCount = new int[size+1];
+        List<int[]> edges = new ArrayList<int[]>();
+        for (Object object : pag.simpleSources()) {
+            final VarNode src = (VarNode) ((VarNode) object).getReplacement();
+            for (Node element : pag.simpleLookup( (VarNode) object )) {
+                VarNode tgt = (VarNode) element.getReplacement();
+                if( tgt == src ) continue;
+                edges.add( new int[] { src.getNumber(), tgt.getNumber() } );
+                succCount[src.getNumber()+1]++;
+                predCount[tgt.getNumber()+1]++;
+            }
+        }
+        for( int i = 0; i < size; i++ ) {
+            succCount[i+1] += succCount[i];
+            predCount[i+1] += predCount[i];
+        }
+        succStart = succCount.clone();
+        predStart = predCount.clone();
+        succs = new int[edges.size()];
+        preds = new int[edges.size()];
+        for( int[] e : edges ) {
+            succs[succCount[e[0]]++] = e[1];
+            preds[predCount[e[1]]++] = e[0];
+        }
+
+        computeComponents( size );
+        computeWaves();
+    }
+
+    /** Tarjan's algorithm without recursion. Components are numbered in the
+     * order in which they are completed, so every edge between two
+     * components goes to a component with a lower number. */
+    private void computeComponents( int size ) {
+        comp = new int[size];
+        int[] index = new int[size];
+        int[] low = new int[size];
+        int[] stack = new int[size];
+        int[] callStack = new int[size];
+        int[] nextEdge = new int[size];
+        boolean[] onStack = new boolean[size];
+        int sp = 0;
+        int nextIndex = 1;
+        int comps = 0;
+        int[] members = new int[size];
+        int memberCount = 0;
+        int[] start = new int[size+1];
+
+        for( int root = 1; root < size; root++ ) {
+            if( nodes[root] == null || index[root] != 0 ) continue;
+            int csp = 0;
+            callStack[csp++] = root;
+            index[root] = low[root] = nextIndex++;
+            nextEdge[root] = succStart[root];
+            stack[sp++] = root;
+            onStack[root] = true;
+            while( csp > 0 ) {
+                int v = callStack[csp-1];
+                if( nextEdge[v] < succStart[v+1] ) {
+                    int w = succs[nextEdge[v]++];
+                    if( index[w] == 0 ) {
+                        index[w] = low[w] = nextIndex++;
+                        nextEdge[w] = succStart[w];
+                        stack[sp++] = w;
+                        onStack[w] = true;
+                        callStack[csp++] = w;
+                    } else if( onStack[w] && index[w] < low[v] ) {
+                        low[v] = index[w];
+                    }
+                    continue;
+                }
+                csp--;
+                if( csp > 0 ) {
+                    int u = callStack[csp-1];
+                    if( low[v] < low[u] ) low[u] = low[v];
+                }
+                if( low[v] != index[v] ) continue;
+                start[comps] = memberCount;
+                int w;
+                do {
+                    w = stack[--sp];
+                    onStack[w] = false;
+                    comp[w] = comps;
+                    members[memberCount++] = w;
+                } while( w != v );
+                comps++;
+            }
+        }
+        start[comps] = memberCount;
+        compStart = Arrays.copyOf( start, comps+1 );
+        compMembers = Arrays.copyOf( members, memberCount );
+        // Process the members of a component in the order of their numbers.
+        for( int c = 0; c < comps; c++ ) {
+            Arrays.sort( compMembers, compStart[c], compStart[c+1] );
+        }
+    }
+
+    /** Sorts the components into waves by the length of the longest path
+     * reaching them. */
+    private void computeWaves() {
+        int comps = compStart.length - 1;
+        int[] level = new int[comps];
+        int levels = comps == 0 ? 0 : 1;
+        for( int c = comps - 1; c >= 0; c-- ) {
+            for( int i = compStart[c]; i < compStart[c+1]; i++ ) {
+                int n = compMembers[i];
+                for( int e = succStart[n]; e < succStart[n+1]; e++ ) {
+                    int d = comp[succs[e]];
+                    if( d != c && level[d] <= level[c] ) {
+                        level[d] = level[c] + 1;
+                        if( level[d] >= levels ) levels = level[d] + 1;
+                    }
+                }
+            }
+        }
+        waveStart = new int[levels+1];
+        for( int c = 0; c < comps; c++ ) waveStart[level[c]+1]++;
+        for( int l = 0; l < levels; l++ ) waveStart[l+1] += waveStart[l];
+        int[] fill = waveStart.clone();
+        waveComps = new int[comps];
+        for( int c = comps - 1; c >= 0; c-- ) waveComps[fill[level[c]]++] = c;
+    }
+
+    /** Propagates new points-to information of node src to all its
+     * successors. */
+    protected final boolean handleAllocNode( AllocNode src ) {
+        boolean ret = false;
+        Node[] targets = pag.allocLookup( src );
+        for (Node element : targets) {
+            if( element.makeP2Set().add( src ) ) {
+                addToWorkList( (VarNode) element );
+                ret = true;
+            }
+        }
+        return ret;
+    }
+    /** Propagates the new points-to information of node src along all edges
+     * except the simple edges, which have been handled by the wave. */
+    protected final boolean handleVarNode( final VarNode src ) {
+        boolean ret = false;
+
+        if( src.getReplacement() != src ) throw new RuntimeException(
+                "Got bad node "+src+" with rep "+src.getReplacement() );
+
+        final PointsToSetInternal newP2Set = src.getP2Set().getNewSet();
+        if( newP2Set.isEmpty() ) return false;
+
+        if( ofcg != null ) {
+            QueueReader addedEdges = pag.edgeReader();
+            ofcg.updatedNode( src );
+            ofcg.build();
+
+            while(addedEdges.hasNext()) {
+                Node addedSrc = (Node) addedEdges.next();
+                Node addedTgt = (Node) addedEdges.next();
+                ret = true;
+                if( addedSrc instanceof VarNode ) {
+                    if( addedTgt instanceof VarNode ) {
+                        VarNode edgeSrc = (VarNode) addedSrc.getReplacement();
+                        VarNode edgeTgt = (VarNode) addedTgt.getReplacement();
+
+                        if( edgeTgt.makeP2Set().addAll( edgeSrc.getP2Set(), null ) ) {
+                            addToWorkList( edgeTgt );
+                        }
+                    }
+                } else if( addedSrc instanceof AllocNode ) {
+                    AllocNode edgeSrc = (AllocNode) addedSrc;
+                    VarNode edgeTgt = (VarNode) addedTgt.getReplacement();
+                    if( edgeTgt.makeP2Set().add( edgeSrc ) ) {
+                        addToWorkList( edgeTgt );
+                    }
+                }
+            }
+        }
+
+        Node[] storeTargets = pag.storeLookup( src );
+        for (Node element : storeTargets) {
+            final FieldRefNode fr = (FieldRefNode) element;
+            final SparkField f = fr.getField();
+            ret = fr.getBase().getP2Set().forall( new P2SetVisitor() {
+            public final void visit( Node n ) {
+                    AllocDotField nDotF = pag.makeAllocDotField(
+                        (AllocNode) n, f );
+                    if( nDotF.makeP2Set().addAll( newP2Set, null ) ) {
+                        returnValue = true;
+                    }
+                }
+            } ) | ret;
+        }
+
+        final List<Node[]> storesToPropagate = new ArrayList<Node[]>();
+        final List<Node[]> loadsToPropagate = new ArrayList<Node[]>();
+        for( FieldRefNode fr : src.getAllFieldRefs() ) {
+            final SparkField field = fr.getField();
+            final Node[] storeSources = pag.storeInvLookup( fr );
+            if( storeSources.length > 0 ) {
+                newP2Set.forall( new P2SetVisitor() {
+                public final void visit( Node n ) {
+                        AllocDotField nDotF = pag.makeAllocDotField(
+                            (AllocNode) n, field );
+                        for (Node element : storeSources) {
+                            Node[] pair = { element,
+                                nDotF.getReplacement() };
+                            storesToPropagate.add( pair );
+                        }
+                    }
+                } );
+            }
+
+            final Node[] loadTargets = pag.loadLookup( fr );
+            if( loadTargets.length > 0 ) {
+                newP2Set.forall( new P2SetVisitor() {
+                public final void visit( Node n ) {
+                        AllocDotField nDotF = pag.makeAllocDotField(
+                            (AllocNode) n, field );
+                        if( nDotF != null ) {
+                            for (Node element : loadTargets) {
+                                Node[] pair = { nDotF.getReplacement(),
+                                    element };
+                                loadsToPropagate.add( pair );
+                            }
+                        }
+                    }
+                } );
+            }
+        }
+        // Nodes which received points-to information since the wave keep it
+        // as new information for the next round.
+        if( !workList.get( src.getNumber() ) ) src.getP2Set().flushNew();
+        for (Node[] p : storesToPropagate) {
+            VarNode storeSource = (VarNode) p[0];
+            AllocDotField nDotF = (AllocDotField) p[1];
+            if( nDotF.makeP2Set().addAll( storeSource.getP2Set(), null ) ) {
+                ret = true;
+            }
+        }
+        for (Node[] p : loadsToPropagate) {
+            AllocDotField nDotF = (AllocDotField) p[0];
+            VarNode loadTarget = (VarNode) p[1];
+            if( loadTarget.makeP2Set().
+                addAll( nDotF.getP2Set(), null ) ) {
+                addToWorkList( loadTarget );
+                ret = true;
+            }
+        }
+        return ret;
+    }
+
+    /** Propagates the points-to sets of all store sources to the fields of
+     * the objects their bases point to. */
+    private void handleStores() {
+        for (Object object : pag.storeSources()) {
+            final VarNode src = (VarNode) object;
+            Node[] targets = pag.storeLookup( src );
+            for (Node element0 : targets) {
+                final FieldRefNode target = (FieldRefNode) element0;
+                target.getBase().makeP2Set().forall( new P2SetVisitor() {
+                public final void visit( Node n ) {
+                        AllocDotField nDotF = pag.makeAllocDotField(
+                            (AllocNode) n, target.getField() );
+                        nDotF.makeP2Set().addAll( src.getP2Set(), null );
+                    }
+                } );
+            }
+        }
+    }
+
+    /** Propagates the new points-to sets of the fields of objects to the
+     * targets of the loads from them. */
+    private void handleLoads() {
+        final List<Object[]> edgesToPropagate = new ArrayList<Object[]>();
+        for (Object object : pag.loadSources()) {
+            final FieldRefNode src = (FieldRefNode) object;
+            final Node[] loadTargets = pag.loadLookup( src );
+            if( loadTargets.length == 0 ) continue;
+            final SparkField field = src.getField();
+            src.getBase().getP2Set().forall( new P2SetVisitor() {
+            public final void visit( Node n ) {
+                    AllocDotField nDotF = pag.makeAllocDotField(
+                        (AllocNode) n, field );
+                    if( nDotF != null ) {
+                        PointsToSetInternal p2Set = nDotF.getP2Set();
+                        if( !p2Set.getNewSet().isEmpty() ) {
+                            for (Node element : loadTargets) {
+                                Object[] pair = { p2Set, element };
+                                edgesToPropagate.add( pair );
+                            }
+                        }
+                    }
+                }
+            } );
+        }
+        IdentityHashSet<PointsToSetInternal> nodesToFlush = new IdentityHashSet<PointsToSetInternal>();
+        for (Object[] pair : edgesToPropagate) {
+            PointsToSetInternal nDotF = (PointsToSetInternal) pair[0];
+            PointsToSetInternal newP2Set = nDotF.getNewSet();
+            VarNode loadTarget = (VarNode) pair[1];
+            if( loadTarget.makeP2Set().addAll( newP2Set, null ) ) {
+                addToWorkList( loadTarget );
+            }
+            nodesToFlush.add( nDotF );
+        }
+        for (PointsToSetInternal nDotF : nodesToFlush) {
+            nDotF.flushNew();
+        }
+    }
+
+    private void addToWorkList( VarNode n ) {
+        workList.set( n.getReplacement().getNumber() );
+    }
+
+    protected PAG pag;
+    protected OnFlyCallGraph ofcg;
+
+    private ForkJoinPool pool;
+    private QueueReader graphChanges;
+    /** Numbers of the nodes whose points-to sets have new information. */
+    private BitSet workList = new BitSet();
+    /** The worklist of the current round, plus the nodes whose sets changed
+     * in its wave. Each component only sets the flags of its own nodes. */
+    private boolean[] active;
+
+    /** Representative variable nodes by number. */
+    private VarNode[] nodes = new VarNode[0];
+    private int[] succStart;
+    private int[] succs;
+    private int[] predStart;
+    private int[] preds;
+    /** Component of each node. */
+    private int[] comp;
+    private int[] compStart;
+    private int[] compMembers;
+    private int[] waveStart;
+    private int[] waveComps;
+}
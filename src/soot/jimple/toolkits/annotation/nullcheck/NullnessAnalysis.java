@@ -341,6 +341,20 @@ public class NullnessAnalysis  extends ForwardBranchedFlowAnalysis
 		outflow.or((AnalysisInfo) in2);
 	}
 
+	/**
+	 * {@inheritDoc}
+	 */
+	protected void mergeInto(Object succNode, Object inout, Object in) {
+		((AnalysisInfo) inout).or((AnalysisInfo) in);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	protected boolean useNumberedSolver() {
+		return true;
+	}
+
 	/**
 	 * {@inheritDoc}
 	 */
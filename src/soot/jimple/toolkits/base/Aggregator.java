@@ -46,6 +46,9 @@ public class Aggregator extends BodyTransformer
       * 
       * option: only-stack-locals; if this is true, only aggregate variables
                         starting with $ */
+    // Aggregating a statement always removes it from the unit chain.
+    protected boolean maintainsBodyAnalyses() { return true; }
+
     protected void internalTransform(Body b, String phaseName, Map options)
     {
         StmtBody body = (StmtBody)b;
@@ -111,9 +114,9 @@ public class Aggregator extends BodyTransformer
       boolean hadAggregation = false;
       Chain units = body.getUnits();
       
-      graph = new ExceptionalUnitGraph(body);
-      localDefs = new SmartLocalDefs(graph, new SimpleLiveLocals(graph));
-      localUses = new SimpleLocalUses(graph, localDefs);
+      graph = BodyAnalysisManager.v().getExceptionalUnitGraph(body);
+      localDefs = BodyAnalysisManager.v().getLocalDefs(body);
+      localUses = BodyAnalysisManager.v().getLocalUses(body);
           
       stmtIt = (new PseudoTopologicalOrderer()).newList(graph,false).iterator();
       
@@ -36,16 +36,34 @@ public class CHATransformer extends SceneTransformer
     public CHATransformer( Singletons.Global g ) {}
     public static CHATransformer v() { return G.v().soot_jimple_toolkits_callgraph_CHATransformer(); }
 
+    private CallGraphBuilder builder;
+    /** Returns the builder of the call graph built last, which can
+     * {@link CallGraphBuilder#update(Collection) update} it after classes
+     * have changed, or null if no call graph was built. */
+    public CallGraphBuilder builder() { return builder; }
+
     protected void internalTransform(String phaseName, Map opts)
     {
         CHAOptions options = new CHAOptions( opts );
         CallGraphBuilder cg = new CallGraphBuilder( DumbPointerAnalysis.v() );
-        cg.build();
+        if( options.parallel() ) cg.buildInWaves( threads() );
+        else cg.build();
+        builder = cg;
         if( options.verbose() ) {
             G.v().out.println( "Number of reachable methods: "
                     +Scene.v().getReachableMethods().size() );
         }
     }
+
+    /** Returns the number of threads given by {@link Options#num_threads()},
+     * or 1 if the timers or the interaction handler are in use. */
+    private int threads() {
+        int threads = Options.v().num_threads();
+        if( threads <= 0 )
+            threads = Runtime.getRuntime().availableProcessors();
+        if( Options.v().time() || Options.v().interactive_mode() ) return 1;
+        return threads;
+    }
 }
 
 
@@ -20,17 +20,30 @@
 package soot.jimple.toolkits.callgraph;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
+import soot.AnySubType;
 import soot.EntryPoints;
+import soot.FastHierarchy;
 import soot.G;
 import soot.Local;
 import soot.MethodOrMethodContext;
 import soot.PointsToAnalysis;
+import soot.PhaseOptions;
 import soot.PointsToSet;
+import soot.RefType;
 import soot.Scene;
+import soot.SootClass;
+import soot.SootMethod;
 import soot.Type;
+import soot.options.CGOptions;
 import soot.util.queue.QueueReader;
 
 /** Models the call graph.
@@ -42,6 +55,9 @@ public final class CallGraphBuilder
     private final ReachableMethods reachables;
     private final OnFlyCallGraphBuilder ofcgb;
     private final CallGraph cg;
+    private final QueueReader worklist;
+    /** Receivers resolved by one task of buildInWaves. */
+    private static final int MIN_RESOLVE_TASK = 16;
 
     public CallGraph getCallGraph() { return cg; }
     public ReachableMethods reachables() { return reachables; }
@@ -50,15 +66,23 @@ public final class CallGraphBuilder
         return new ContextInsensitiveContextManager( cg );
     }
 
+    /** Returns a new, empty call graph of the kind chosen by the cg options. */
+    public static CallGraph makeCallGraph() {
+        CGOptions options = new CGOptions( PhaseOptions.v().getPhaseOptions("cg") );
+        if( options.compact_edges() ) return new CompactCallGraph();
+        return new CallGraph();
+    }
+
     /** This constructor builds a complete call graph using the given
      * PointsToAnalysis to resolve virtual calls. */
     public CallGraphBuilder( PointsToAnalysis pa ) {
         this.pa = pa;
-        cg = new CallGraph();
+        cg = makeCallGraph();
         Scene.v().setCallGraph( cg );
         reachables = Scene.v().getReachableMethods();
         ContextManager cm = makeContextManager(cg);
         ofcgb = new OnFlyCallGraphBuilder( cm, reachables );
+        worklist = reachables.listener();
    }
     /** This constructor builds the incomplete hack call graph for the
      * Dava ThrowFinder.
@@ -69,7 +93,7 @@ public final class CallGraphBuilder
         G.v().out.println( "Warning: using incomplete callgraph containing "+
                 "only application classes." );
         pa = soot.jimple.toolkits.pointer.DumbPointerAnalysis.v();
-        cg = new CallGraph();
+        cg = makeCallGraph();
         Scene.v().setCallGraph(cg);
         List<MethodOrMethodContext> entryPoints = new ArrayList<MethodOrMethodContext>();
         entryPoints.addAll( EntryPoints.v().methodsOfApplicationClasses() );
@@ -77,38 +101,267 @@ public final class CallGraphBuilder
         reachables = new ReachableMethods( cg, entryPoints );
         ContextManager cm = new ContextInsensitiveContextManager( cg );
         ofcgb = new OnFlyCallGraphBuilder( cm, reachables, true );
+        worklist = reachables.listener();
+    }
+    /** Builds the call graph like {@link #build()}, but in waves. Each
+     * wave retrieves the bodies of the methods found reachable by the
+     * previous one and resolves their virtual call sites on the given number
+     * of threads; the resulting edges are then added to the call graph in
+     * the order of the methods. The PointsToAnalysis must allow being
+     * queried from several threads, as DumbPointerAnalysis does.
+     *
+     * <p>The result contains every edge build() finds, but may contain more:
+     * the methods of a wave are all processed before any of their virtual
+     * call sites are resolved, so a virtual call may also reach a phantom
+     * method which another method of the wave added to a phantom class, and
+     * which build() had not yet created when it resolved that call. */
+    public void buildInWaves( int threads ) {
+        if( threads <= 1 ) {
+            build();
+            return;
+        }
+        // As in PackManager, the ThrowableSet manager has to exist before
+        // bodies are built on several threads.
+        soot.toolkits.exceptions.ThrowableSet.Manager.v();
+        Scene.v().getOrMakeFastHierarchy();
+        QueueReader unretrieved = reachables.listener();
+        ForkJoinPool pool = new ForkJoinPool( threads );
+        try {
+            while(true) {
+                reachables.update();
+                List<SootMethod> bodies = new ArrayList<SootMethod>();
+                while( unretrieved.hasNext() ) {
+                    SootMethod m = ((MethodOrMethodContext) unretrieved.next()).method();
+                    if( m.isConcrete() && !m.hasActiveBody() ) bodies.add( m );
+                }
+                pool.invoke( new BodyTask( bodies, 0, bodies.size() ) );
+                ofcgb.processCurrentReachables();
+
+                List<Local> receivers = new ArrayList<Local>();
+                List<Type> types = new ArrayList<Type>();
+                boolean empty = true;
+                while( worklist.hasNext() ) {
+                    empty = false;
+                    MethodOrMethodContext momc = (MethodOrMethodContext) worklist.next();
+                    List methodReceivers = (List) ofcgb.methodToReceivers().get(momc.method());
+                    if( methodReceivers != null ) for( Iterator receiverIt = methodReceivers.iterator(); receiverIt.hasNext(); ) {
+                        final Local receiver = (Local) receiverIt.next();
+                        final PointsToSet p2set = pa.reachingObjects( receiver );
+                        for( Iterator typeIt = p2set.possibleTypes().iterator(); typeIt.hasNext(); ) {
+                            receivers.add( receiver );
+                            types.add( (Type) typeIt.next() );
+                        }
+                    }
+                    addStringConstants( momc );
+                }
+                if( empty ) break;
+                // The tasks only set elements, so they may share the list.
+                List<List<Edge>> edges = new ArrayList<List<Edge>>(
+                        Collections.<List<Edge>>nCopies( receivers.size(), null ) );
+                pool.invoke( new ResolveTask( receivers, types, edges, 0, edges.size() ) );
+                for( List<Edge> es : edges ) {
+                    for( Edge e : es ) cg.addEdge( e );
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
     }
     public void build() {
-        QueueReader worklist = reachables.listener();
         while(true) {
             ofcgb.processReachables();
             reachables.update();
             if( !worklist.hasNext() ) break;
-            MethodOrMethodContext momc = (MethodOrMethodContext) worklist.next();
-            List receivers = (List) ofcgb.methodToReceivers().get(momc.method());
-            if( receivers != null) for( Iterator receiverIt = receivers.iterator(); receiverIt.hasNext(); ) {     
+            processReceivers( (MethodOrMethodContext) worklist.next() );
+        }
+    }
+    /** Updates the call graph after the given classes were changed during
+     * an incremental build, without building it again from scratch. The
+     * reachable methods of the changed classes, and the methods calling
+     * reachable methods which the changed classes no longer declare, lose
+     * their outgoing edges and are processed again; virtual calls which may
+     * now dispatch to a changed class are resolved again, and the methods
+     * which are no longer reachable are removed along with their outgoing
+     * edges. The methods are processed again from their active bodies, so
+     * the caller must replace the bodies of the changed classes beforehand,
+     * for instance by reloading them through {@link Scene#forceResolve}.
+     *
+     * <p>The update is conservative: an edge to a method which is now
+     * overridden in a changed subclass stays in the call graph until its
+     * caller changes. */
+    public void update( Collection<SootClass> changed ) {
+        if( !Scene.v().isIncrementalBuild() ) {
+            throw new RuntimeException( "The call graph can only be updated during an incremental build" );
+        }
+        // Dispatch depends on the hierarchy, which may have changed too.
+        Scene.v().releaseFastHierarchy();
+        FastHierarchy fh = Scene.v().getOrMakeFastHierarchy();
+        Set<String> changedNames = new HashSet<String>();
+        List<RefType> changedTypes = new ArrayList<RefType>();
+        for( SootClass cl : changed ) {
+            changedNames.add( cl.getName() );
+            if( cl.isInScene() ) changedTypes.add( cl.getType() );
+        }
+
+        Set<MethodOrMethodContext> current = new LinkedHashSet<MethodOrMethodContext>();
+        for( Iterator mIt = reachables.listener(); mIt.hasNext(); ) {
+            final MethodOrMethodContext m = (MethodOrMethodContext) mIt.next();
+            if( reachables.contains( m ) ) current.add( m );
+        }
+        Set<MethodOrMethodContext> stale = new LinkedHashSet<MethodOrMethodContext>();
+        Set<MethodOrMethodContext> candidates = new HashSet<MethodOrMethodContext>();
+        for( MethodOrMethodContext m : current ) {
+            if( isGone( m.method() ) ) {
+                candidates.add( m );
+                for( Iterator<Edge> eIt = cg.edgesInto( m ); eIt.hasNext(); ) {
+                    final MethodOrMethodContext src = eIt.next().getSrc();
+                    if( src != null && !isGone( src.method() ) ) stale.add( src );
+                }
+            } else if( changedNames.contains( m.method().getDeclaringClass().getName() ) ) {
+                stale.add( m );
+            }
+        }
+        for( MethodOrMethodContext m : current ) {
+            if( isGone( m.method() ) ) forget( m, candidates );
+        }
+        for( MethodOrMethodContext m : stale ) forget( m, candidates );
+        for( MethodOrMethodContext m : stale ) {
+            ofcgb.processAgain( m );
+            processReceivers( m );
+        }
+
+        for( MethodOrMethodContext m : current ) {
+            if( stale.contains( m ) || isGone( m.method() ) ) continue;
+            List receivers = (List) ofcgb.methodToReceivers().get(m.method());
+            if( receivers != null ) for( Iterator receiverIt = receivers.iterator(); receiverIt.hasNext(); ) {
                 final Local receiver = (Local) receiverIt.next();
                 final PointsToSet p2set = pa.reachingObjects( receiver );
                 for( Iterator typeIt = p2set.possibleTypes().iterator(); typeIt.hasNext(); ) {
                     final Type type = (Type) typeIt.next();
-                    ofcgb.addType( receiver, momc.context(), type, null );
+                    if( mayHold( fh, type, changedTypes ) ) {
+                        ofcgb.addType( receiver, m.context(), type, null );
+                    }
                 }
             }
-            List stringConstants = (List) ofcgb.methodToStringConstants().get(momc.method());
-            if( stringConstants != null ) for( Iterator stringConstantIt = stringConstants.iterator(); stringConstantIt.hasNext(); ) {     
-                final Local stringConstant = (Local) stringConstantIt.next();
-                PointsToSet p2set = pa.reachingObjects( stringConstant );
-                Collection possibleStringConstants = p2set.possibleStringConstants();
-                if( possibleStringConstants == null ) {
-                    ofcgb.addStringConstant( stringConstant, momc.context(), null );
-                } else {
-                    for( Iterator constantIt = possibleStringConstants.iterator(); constantIt.hasNext(); ) {
-                        final String constant = (String) constantIt.next();
-                        ofcgb.addStringConstant( stringConstant, momc.context(), constant );
-                    }
+        }
+        build();
+
+        for( MethodOrMethodContext m : reachables.removeUnreachable( candidates ) ) {
+            forget( m, null );
+        }
+    }
+
+    /* End of public methods. */
+
+    private void processReceivers( MethodOrMethodContext momc ) {
+        List receivers = (List) ofcgb.methodToReceivers().get(momc.method());
+        if( receivers != null) for( Iterator receiverIt = receivers.iterator(); receiverIt.hasNext(); ) {     
+            final Local receiver = (Local) receiverIt.next();
+            final PointsToSet p2set = pa.reachingObjects( receiver );
+            for( Iterator typeIt = p2set.possibleTypes().iterator(); typeIt.hasNext(); ) {
+                final Type type = (Type) typeIt.next();
+                ofcgb.addType( receiver, momc.context(), type, null );
+            }
+        }
+        addStringConstants( momc );
+    }
+
+    /** Returns true if m was removed from its class, or its class from the
+     * Scene. */
+    private static boolean isGone( SootMethod m ) {
+        return !m.isDeclared() || !m.getDeclaringClass().isInScene();
+    }
+
+    /** Removes the edges out of m, adding their targets to candidates if it
+     * is not null, and makes the OnFlyCallGraphBuilder forget m. */
+    private void forget( MethodOrMethodContext m, Set<MethodOrMethodContext> candidates ) {
+        List<Edge> edges = new ArrayList<Edge>();
+        for( Iterator<Edge> eIt = cg.edgesOutOf( m ); eIt.hasNext(); ) edges.add( eIt.next() );
+        for( Edge e : edges ) {
+            cg.removeEdge( e );
+            if( candidates != null ) candidates.add( e.getTgt() );
+        }
+        ofcgb.forget( m.method() );
+    }
+
+    /** Returns true if a receiver of the given possible type may hold an
+     * object of one of the given types. */
+    private static boolean mayHold( FastHierarchy fh, Type type, List<RefType> types ) {
+        if( type instanceof AnySubType ) type = ((AnySubType) type).getBase();
+        if( !(type instanceof RefType) ) return false;
+        for( RefType t : types ) {
+            if( fh.canStoreType( t, type ) ) return true;
+        }
+        return false;
+    }
+
+    private void addStringConstants( MethodOrMethodContext momc ) {
+        List stringConstants = (List) ofcgb.methodToStringConstants().get(momc.method());
+        if( stringConstants != null ) for( Iterator stringConstantIt = stringConstants.iterator(); stringConstantIt.hasNext(); ) {     
+            final Local stringConstant = (Local) stringConstantIt.next();
+            PointsToSet p2set = pa.reachingObjects( stringConstant );
+            Collection possibleStringConstants = p2set.possibleStringConstants();
+            if( possibleStringConstants == null ) {
+                ofcgb.addStringConstant( stringConstant, momc.context(), null );
+            } else {
+                for( Iterator constantIt = possibleStringConstants.iterator(); constantIt.hasNext(); ) {
+                    final String constant = (String) constantIt.next();
+                    ofcgb.addStringConstant( stringConstant, momc.context(), constant );
                 }
             }
         }
     }
+
+    private static class BodyTask extends RecursiveAction {
+        private final List<SootMethod> methods;
+        private final int from;
+        private final int to;
+
+        BodyTask( List<SootMethod> methods, int from, int to ) {
+            this.methods = methods;
+            this.from = from;
+            this.to = to;
+        }
+
+        protected void compute() {
+            if( to - from > 1 ) {
+                int mid = ( from + to ) >>> 1;
+                invokeAll( new BodyTask( methods, from, mid ),
+                        new BodyTask( methods, mid, to ) );
+                return;
+            }
+            for( int i = from; i < to; i++ ) methods.get( i ).retrieveActiveBody();
+        }
+    }
+
+    /** Resolves the call sites on receivers.get(i) for types.get(i) into
+     * edges[i]. */
+    private class ResolveTask extends RecursiveAction {
+        private final List<Local> receivers;
+        private final List<Type> types;
+        private final List<List<Edge>> edges;
+        private final int from;
+        private final int to;
+
+        ResolveTask( List<Local> receivers, List<Type> types, List<List<Edge>> edges, int from, int to ) {
+            this.receivers = receivers;
+            this.types = types;
+            this.edges = edges;
+            this.from = from;
+            this.to = to;
+        }
+
+        protected void compute() {
+            if( to - from > MIN_RESOLVE_TASK ) {
+                int mid = ( from + to ) >>> 1;
+                invokeAll( new ResolveTask( receivers, types, edges, from, mid ),
+                        new ResolveTask( receivers, types, edges, mid, to ) );
+                return;
+            }
+            for( int i = from; i < to; i++ ) {
+                edges.set( i, ofcgb.virtualEdges( receivers.get( i ), types.get( i ) ) );
+            }
+        }
+    }
 }
 
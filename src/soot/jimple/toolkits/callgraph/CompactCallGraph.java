@@ -0,0 +1,439 @@
+/* Soot - a J*va Optimization Framework
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place - Suite 330,
+ * Boston, MA 02111-1307, USA.
+ */
+
+package soot.jimple.toolkits.callgraph;
+import soot.*;
+import soot.util.queue.*;
+import java.lang.ref.WeakReference;
+import java.util.*;
+
+/** Represents the edges in a call graph without keeping an object per edge.
+ * Methods and call sites are numbered as they are first seen, and each
+ * edge is a row of int columns: its source, source unit, target and kind,
+ * and the previous and next edges with the same source, the same source
+ * unit and the same target. Edge objects are made when edges are iterated
+ * over, and are equal to the ones that were added. The rows of removed
+ * edges are reclaimed when the table is rebuilt, unless an iterator over
+ * the edges is still in progress.
+ *
+ * <p>listener() replays the edges added so far into a queue of its own,
+ * which is then also given the edges added later, so no queue holds on to
+ * every edge of the graph. The queue is dropped once the listener is no
+ * longer referenced, so a clone of a listener must not outlive it.
+ */
+public class CompactCallGraph extends CallGraph
+{
+    private static final int NONE = -1;
+    /** The kind column of removed edges. */
+    private static final byte REMOVED = -1;
+    /** The lists an edge is in. */
+    private static final int BY_SRC = 0;
+    private static final int BY_UNIT = 1;
+    private static final int BY_TGT = 2;
+
+    private final List<MethodOrMethodContext> methods = new ArrayList<MethodOrMethodContext>();
+    private final Map<MethodOrMethodContext, Integer> methodIds = new HashMap<MethodOrMethodContext, Integer>();
+    private final List<Unit> units = new ArrayList<Unit>();
+    private final Map<Unit, Integer> unitIds = new HashMap<Unit, Integer>();
+    /** Kinds are numbered here, since their own numbers belong to the
+     * Scene that was current when they were first used. */
+    private final List<Kind> kindList = new ArrayList<Kind>();
+
+    /** Indexed by edge. */
+    private int[] srcs = new int[64];
+    private int[] srcUnits = new int[64];
+    private int[] tgts = new int[64];
+    private byte[] kinds = new byte[64];
+    private int[] nextBySrc = new int[64];
+    private int[] nextByUnit = new int[64];
+    private int[] nextByTgt = new int[64];
+    private int[] prevBySrc = new int[64];
+    private int[] prevByUnit = new int[64];
+    private int[] prevByTgt = new int[64];
+    private int edgeCount = 0;
+    private int liveCount = 0;
+
+    /** First and last edges by method, for the edges out of and into it. */
+    private int[] firstBySrc = new int[0];
+    private int[] lastBySrc = new int[0];
+    private int[] firstByTgt = new int[0];
+    private int[] lastByTgt = new int[0];
+    /** First and last edges by unit. */
+    private int[] firstByUnit = new int[0];
+    private int[] lastByUnit = new int[0];
+
+    /** Open addressing table of edge numbers plus one, zero when free. */
+    private int[] table = new int[128];
+
+    private final ChunkedQueue<Edge> stream = new ChunkedQueue<Edge>();
+    private final List<Replay> replays = new ArrayList<Replay>();
+    /** The iterators which have not reached the end of their list. The rows
+     * are not renumbered while there are any. */
+    private final Map<EdgeIterator, Boolean> openIterators = new WeakHashMap<EdgeIterator, Boolean>();
+
+    /** The queue of a listener, which is fed while the listener is
+     * referenced. */
+    private static class Replay {
+        final ChunkedQueue<Edge> queue;
+        final WeakReference<QueueReader<Edge>> reader;
+        Replay( ChunkedQueue<Edge> queue, QueueReader<Edge> reader ) {
+            this.queue = queue;
+            this.reader = new WeakReference<QueueReader<Edge>>( reader );
+        }
+    }
+
+    /** Used to add an edge to the call graph. Returns true iff the edge was
+     * not already present. */
+    public boolean addEdge( Edge e ) {
+        int src = methodId( e.getSrc() );
+        int unit = unitId( e.srcUnit() );
+        int tgt = methodId( e.getTgt() );
+        byte kind = kindId( e.kind() );
+        int slot = slot( src, unit, tgt, kind );
+        if( table[slot] != 0 ) return false;
+
+        int n = edgeCount++;
+        if( n == srcs.length ) growEdges();
+        srcs[n] = src;
+        srcUnits[n] = unit;
+        tgts[n] = tgt;
+        kinds[n] = kind;
+        table[slot] = n + 1;
+        liveCount++;
+
+        if( src != NONE ) link( nextBySrc, prevBySrc, firstBySrc, lastBySrc, n, src );
+        else nextBySrc[n] = prevBySrc[n] = NONE;
+        if( unit != NONE ) link( nextByUnit, prevByUnit, firstByUnit, lastByUnit, n, unit );
+        else nextByUnit[n] = prevByUnit[n] = NONE;
+        link( nextByTgt, prevByTgt, firstByTgt, lastByTgt, n, tgt );
+
+        stream.add( e );
+        for( Iterator<Replay> it = replays.iterator(); it.hasNext(); ) {
+            Replay replay = it.next();
+            if( replay.reader.get() == null ) it.remove();
+            else replay.queue.add( e );
+        }
+        if( edgeCount * 2 > table.length ) rehash();
+        return true;
+    }
+    /** Removes the edge e from the call graph. Returns true iff the edge
+     * was originally present in the call graph. */
+    public boolean removeEdge( Edge e ) {
+        Integer src = e.getSrc() == null ? Integer.valueOf( NONE ) : methodIds.get( e.getSrc() );
+        Integer unit = e.srcUnit() == null ? Integer.valueOf( NONE ) : unitIds.get( e.srcUnit() );
+        Integer tgt = methodIds.get( e.getTgt() );
+        if( src == null || unit == null || tgt == null ) return false;
+        int kind = kindList.indexOf( e.kind() );
+        if( kind < 0 ) return false;
+        int slot = slot( src, unit, tgt, (byte) kind );
+        int n = table[slot] - 1;
+        if( n < 0 ) return false;
+        // The slot stays taken, so that the edges after it are still found.
+        kinds[n] = REMOVED;
+        liveCount--;
+        if( src != NONE ) unlink( nextBySrc, prevBySrc, firstBySrc, lastBySrc, n, src );
+        if( unit != NONE ) unlink( nextByUnit, prevByUnit, firstByUnit, lastByUnit, n, unit );
+        unlink( nextByTgt, prevByTgt, firstByTgt, lastByTgt, n, tgt );
+        return true;
+    }
+
+    public boolean isEntryMethod( SootMethod method ) {
+        Integer id = methodIds.get( method );
+        return id == null || firstByTgt[id] == NONE;
+    }
+
+    public Edge findEdge( Unit u, SootMethod callee ) {
+        Integer unit = unitIds.get( u );
+        if( unit == null ) return null;
+        for( int n = firstByUnit[unit]; n != NONE; n = nextByUnit[n] ) {
+            if( methods.get( tgts[n] ).method() == callee ) return edge( n );
+        }
+        return null;
+    }
+
+    /** Returns an iterator over all methods that are the sources of at least
+     * one edge. */
+    public Iterator<MethodOrMethodContext> sourceMethods() {
+        List<MethodOrMethodContext> ret = new ArrayList<MethodOrMethodContext>();
+        for( int i = 0; i < methods.size(); i++ ) {
+            if( firstBySrc[i] != NONE ) ret.add( methods.get( i ) );
+        }
+        return ret.iterator();
+    }
+    /** Returns an iterator over all edges that have u as their source unit. */
+    public Iterator<Edge> edgesOutOf( Unit u ) {
+        if( u == null ) throw new RuntimeException();
+        Integer unit = unitIds.get( u );
+        return new EdgeIterator( unit == null ? NONE : firstByUnit[unit], BY_UNIT );
+    }
+    /** Returns an iterator over all edges that have m as their source method. */
+    public Iterator<Edge> edgesOutOf( MethodOrMethodContext m ) {
+        if( m == null ) throw new RuntimeException();
+        Integer src = methodIds.get( m );
+        return new EdgeIterator( src == null ? NONE : firstBySrc[src], BY_SRC );
+    }
+    /** Returns an iterator over all edges that have m as their target method. */
+    public Iterator<Edge> edgesInto( MethodOrMethodContext m ) {
+        if( m == null ) throw new RuntimeException();
+        Integer tgt = methodIds.get( m );
+        return new EdgeIterator( tgt == null ? NONE : firstByTgt[tgt], BY_TGT );
+    }
+    /** Returns a QueueReader object containing all edges added so far, and
+     * which will be informed of any new edges that are later added to
+     * the graph. */
+    public QueueReader<Edge> listener() {
+        ChunkedQueue<Edge> replay = new ChunkedQueue<Edge>();
+        QueueReader<Edge> ret = replay.reader();
+        for( int n = 0; n < edgeCount; n++ ) {
+            if( kinds[n] != REMOVED ) replay.add( edge( n ) );
+        }
+        replays.add( new Replay( replay, ret ) );
+        return ret;
+    }
+    /** Returns a QueueReader object which will contain ONLY NEW edges
+     * which will be added to the graph.
+     */
+    public QueueReader<Edge> newListener() {
+        return stream.reader();
+    }
+    public String toString() {
+        StringBuffer out = new StringBuffer();
+        for( int n = 0; n < edgeCount; n++ ) {
+            if( kinds[n] != REMOVED ) out.append( edge( n ).toString() + "\n" );
+        }
+        return out.toString();
+    }
+    /** Returns the number of edges in the call graph. */
+    public int size() {
+        return liveCount;
+    }
+
+    /** Returns the number of rows, including the rows of removed edges
+     * which have not been reclaimed yet. */
+    int rowCount() {
+        return edgeCount;
+    }
+
+    /** Returns the number of listeners which are still fed. */
+    int listenerCount() {
+        return replays.size();
+    }
+
+    /* End of public methods. */
+
+    private int methodId( MethodOrMethodContext m ) {
+        if( m == null ) return NONE;
+        Integer ret = methodIds.get( m );
+        if( ret != null ) return ret;
+        int id = methods.size();
+        methods.add( m );
+        methodIds.put( m, id );
+        if( id == firstBySrc.length ) {
+            int length = Math.max( 16, id * 2 );
+            firstBySrc = grow( firstBySrc, length );
+            lastBySrc = grow( lastBySrc, length );
+            firstByTgt = grow( firstByTgt, length );
+            lastByTgt = grow( lastByTgt, length );
+        }
+        return id;
+    }
+
+    private byte kindId( Kind k ) {
+        int ret = kindList.indexOf( k );
+        if( ret < 0 ) {
+            ret = kindList.size();
+            kindList.add( k );
+        }
+        return (byte) ret;
+    }
+
+    private int unitId( Unit u ) {
+        if( u == null ) return NONE;
+        Integer ret = unitIds.get( u );
+        if( ret != null ) return ret;
+        int id = units.size();
+        units.add( u );
+        unitIds.put( u, id );
+        if( id == firstByUnit.length ) {
+            int length = Math.max( 16, id * 2 );
+            firstByUnit = grow( firstByUnit, length );
+            lastByUnit = grow( lastByUnit, length );
+        }
+        return id;
+    }
+
+    /** Returns a copy of a of the given length, filled up with NONE. */
+    private static int[] grow( int[] a, int length ) {
+        int[] ret = Arrays.copyOf( a, length );
+        Arrays.fill( ret, a.length, length, NONE );
+        return ret;
+    }
+
+    private void growEdges() {
+        int length = srcs.length * 2;
+        srcs = Arrays.copyOf( srcs, length );
+        srcUnits = Arrays.copyOf( srcUnits, length );
+        tgts = Arrays.copyOf( tgts, length );
+        kinds = Arrays.copyOf( kinds, length );
+        nextBySrc = Arrays.copyOf( nextBySrc, length );
+        nextByUnit = Arrays.copyOf( nextByUnit, length );
+        nextByTgt = Arrays.copyOf( nextByTgt, length );
+        prevBySrc = Arrays.copyOf( prevBySrc, length );
+        prevByUnit = Arrays.copyOf( prevByUnit, length );
+        prevByTgt = Arrays.copyOf( prevByTgt, length );
+    }
+
+    /** Returns the slot of the live edge with the given columns, or the free
+     * slot where it would go. */
+    private int slot( int src, int unit, int tgt, byte kind ) {
+        int mask = table.length - 1;
+        int i = hash( src, unit, tgt, kind ) & mask;
+        while( true ) {
+            int n = table[i] - 1;
+            if( n < 0 ) return i;
+            if( srcs[n] == src && srcUnits[n] == unit && tgts[n] == tgt
+                    && kinds[n] == kind ) return i;
+            i = ( i + 1 ) & mask;
+        }
+    }
+
+    private static int hash( int src, int unit, int tgt, byte kind ) {
+        int h = ( ( src * 31 + unit ) * 31 + tgt ) * 31 + kind;
+        return h ^ ( h >>> 16 );
+    }
+
+    /** Rebuilds the table, leaving out the removed edges. If at least half
+     * of the rows belong to removed edges, they are reclaimed first, and
+     * the table keeps its size if the live edges fit. */
+    private void rehash() {
+        if( ( edgeCount - liveCount ) * 2 >= edgeCount && openIterators.isEmpty() ) compact();
+        int length = table.length;
+        while( edgeCount * 2 > length ) length *= 2;
+        table = new int[length];
+        int mask = length - 1;
+        for( int n = 0; n < edgeCount; n++ ) {
+            if( kinds[n] == REMOVED ) continue;
+            int i = hash( srcs[n], srcUnits[n], tgts[n], kinds[n] ) & mask;
+            while( table[i] != 0 ) i = ( i + 1 ) & mask;
+            table[i] = n + 1;
+        }
+    }
+
+    /** Moves the rows of the live edges to the front, in the same order. */
+    private void compact() {
+        int[] forward = new int[edgeCount];
+        int m = 0;
+        for( int n = 0; n < edgeCount; n++ ) {
+            if( kinds[n] == REMOVED ) {
+                forward[n] = NONE;
+                continue;
+            }
+            forward[n] = m;
+            srcs[m] = srcs[n];
+            srcUnits[m] = srcUnits[n];
+            tgts[m] = tgts[n];
+            kinds[m] = kinds[n];
+            nextBySrc[m] = nextBySrc[n];
+            nextByUnit[m] = nextByUnit[n];
+            nextByTgt[m] = nextByTgt[n];
+            prevBySrc[m] = prevBySrc[n];
+            prevByUnit[m] = prevByUnit[n];
+            prevByTgt[m] = prevByTgt[n];
+            m++;
+        }
+        edgeCount = m;
+        // The lists only hold live edges.
+        renumber( nextBySrc, forward, m );
+        renumber( nextByUnit, forward, m );
+        renumber( nextByTgt, forward, m );
+        renumber( prevBySrc, forward, m );
+        renumber( prevByUnit, forward, m );
+        renumber( prevByTgt, forward, m );
+        renumber( firstBySrc, forward, firstBySrc.length );
+        renumber( lastBySrc, forward, lastBySrc.length );
+        renumber( firstByTgt, forward, firstByTgt.length );
+        renumber( lastByTgt, forward, lastByTgt.length );
+        renumber( firstByUnit, forward, firstByUnit.length );
+        renumber( lastByUnit, forward, lastByUnit.length );
+    }
+
+    private static void renumber( int[] a, int[] forward, int length ) {
+        for( int i = 0; i < length; i++ ) {
+            if( a[i] != NONE ) a[i] = forward[a[i]];
+        }
+    }
+
+    /** Appends edge n to the list of key. */
+    private static void link( int[] next, int[] prev, int[] first, int[] last, int n, int key ) {
+        next[n] = NONE;
+        prev[n] = last[key];
+        if( last[key] == NONE ) first[key] = n;
+        else next[last[key]] = n;
+        last[key] = n;
+    }
+
+    /** Removes edge n from the list of key. The next column of n is kept,
+     * so that an iterator standing on n can go on. */
+    private static void unlink( int[] next, int[] prev, int[] first, int[] last, int n, int key ) {
+        if( prev[n] == NONE ) first[key] = next[n];
+        else next[prev[n]] = next[n];
+        if( next[n] == NONE ) last[key] = prev[n];
+        else prev[next[n]] = prev[n];
+    }
+
+    private Edge edge( int n ) {
+        return new Edge( srcs[n] == NONE ? null : methods.get( srcs[n] ),
+                srcUnits[n] == NONE ? null : units.get( srcUnits[n] ),
+                methods.get( tgts[n] ),
+                kindList.get( kinds[n] ) );
+    }
+
+    private class EdgeIterator implements Iterator<Edge> {
+        private int position;
+        private final int list;
+        EdgeIterator( int first, int list ) {
+            this.position = first;
+            this.list = list;
+            if( first != NONE ) openIterators.put( this, Boolean.TRUE );
+        }
+        public boolean hasNext() {
+            // Edges may have been removed since the iterator stepped on them.
+            while( position != NONE && kinds[position] == REMOVED ) advance();
+            return position != NONE;
+        }
+        public Edge next() {
+            if( !hasNext() ) throw new NoSuchElementException();
+            Edge ret = edge( position );
+            advance();
+            return ret;
+        }
+        private void advance() {
+            // The columns may have been replaced by larger ones since the
+            // iterator was made.
+            switch( list ) {
+                case BY_SRC: position = nextBySrc[position]; break;
+                case BY_UNIT: position = nextByUnit[position]; break;
+                default: position = nextByTgt[position];
+            }
+            if( position == NONE ) openIterators.remove( this );
+        }
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -0,0 +1,241 @@
+/* Soot - a J*va Optimization Framework
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place - Suite 330,
+ * Boston, MA 02111-1307, USA.
+ */
+
+package soot.jimple.toolkits.callgraph;
+import soot.*;
+import soot.util.*;
+import java.util.*;
+
+/** Dispatch tables for {@link VirtualCalls}, built from a
+ * {@link FastHierarchy}. The table of a class holds, for each subsignature
+ * number, the method a virtual call on an object of that class resolves to.
+ * For each type, its concrete subclasses and implementers are kept as an
+ * array and as a set of type numbers.
+ *
+ * <p>Tables and subtypes are computed under a lock the first time they are
+ * needed, and never change afterwards, so looking them up takes no lock and
+ * the index may be queried from several threads.
+ */
+final class DispatchIndex {
+    private final FastHierarchy fh;
+    /** Indexed by type number. */
+    private volatile Table[] tables = new Table[0];
+    private volatile SubTypes[] subTypes = new SubTypes[0];
+
+    DispatchIndex( FastHierarchy fh ) {
+        this.fh = fh;
+    }
+
+    FastHierarchy hierarchy() {
+        return fh;
+    }
+
+    /** Returns the method a call of subSig on an object of type t resolves
+     * to, or null if there is none or it is abstract. */
+    SootMethod resolve( RefType t, NumberedString subSig ) {
+        Table table = table( t );
+        int i = Arrays.binarySearch( table.subSigs, subSig.getNumber() );
+        if( i < 0 && !table.isCurrent() ) {
+            // Phantom classes gain methods as code referring to them is
+            // loaded.
+            synchronized( this ) {
+                table = makeTable( t );
+            }
+            i = Arrays.binarySearch( table.subSigs, subSig.getNumber() );
+        }
+        return i < 0 ? null : table.targets[i];
+    }
+
+    /** Returns t, followed by the concrete classes whose objects can be
+     * stored in a variable of type t in the order of a breadth first
+     * traversal of the hierarchy below t. t comes first even if it is not
+     * concrete. */
+    RefType[] subTypesOf( RefType t ) {
+        return subTypes( t ).types;
+    }
+
+    /** Same as {@link FastHierarchy#canStoreType(Type, Type)}, but first
+     * looks for child among the subtypes of parent if it is a concrete
+     * class. The hierarchy is still asked when child is not found, since it
+     * numbers the classes below each phantom root from zero, and so
+     * considers some of them subclasses of unrelated classes. */
+    boolean canStoreType( RefType child, Type parent ) {
+        if( parent instanceof RefType && child.getSootClass().isConcrete()
+                && subTypes( (RefType) parent ).numbers.get( child.getNumber() ) ) {
+            return true;
+        }
+        return fh.canStoreType( child, parent );
+    }
+
+    /* End of package methods. */
+
+    private Table table( RefType t ) {
+        Table[] ts = tables;
+        int n = t.getNumber();
+        if( n < ts.length && ts[n] != null ) return ts[n];
+        synchronized( this ) {
+            return makeTable( t );
+        }
+    }
+
+    private Table makeTable( RefType t ) {
+        int n = t.getNumber();
+        Table[] ts = tables;
+        if( n < ts.length && ts[n] != null && ts[n].isCurrent() ) return ts[n];
+        SootClass cls = t.getSootClass();
+        Table sup = cls.hasSuperclass() ? makeTable( cls.getSuperclass().getType() ) : Table.EMPTY;
+        Table ret = sup.extend( cls );
+        ts = tables;
+        if( n >= ts.length ) ts = Arrays.copyOf( ts, Math.max( n + 1, ts.length * 2 ) );
+        ts[n] = ret;
+        tables = ts;
+        return ret;
+    }
+
+    private SubTypes subTypes( RefType t ) {
+        SubTypes[] ss = subTypes;
+        int n = t.getNumber();
+        if( n < ss.length && ss[n] != null ) return ss[n];
+        synchronized( this ) {
+            ss = subTypes;
+            if( n < ss.length && ss[n] != null ) return ss[n];
+            SubTypes ret = new SubTypes( t, concreteSubClasses( t.getSootClass() ) );
+            if( n >= ss.length ) ss = Arrays.copyOf( ss, Math.max( n + 1, ss.length * 2 ) );
+            ss[n] = ret;
+            subTypes = ss;
+            return ret;
+        }
+    }
+
+    private List<SootClass> concreteSubClasses( SootClass base ) {
+        List<SootClass> ret = new ArrayList<SootClass>();
+        LinkedList<SootClass> worklist = new LinkedList<SootClass>();
+        HashSet<SootClass> workset = new HashSet<SootClass>();
+        workset.add( base );
+        worklist.add( base );
+        while( !worklist.isEmpty() ) {
+            SootClass cl = worklist.removeFirst();
+            if( cl.isInterface() ) {
+                for( Iterator cIt = fh.getAllImplementersOfInterface( cl ).iterator(); cIt.hasNext(); ) {
+                    final SootClass c = (SootClass) cIt.next();
+                    if( workset.add( c ) ) worklist.add( c );
+                }
+            } else {
+                if( cl.isConcrete() ) ret.add( cl );
+                for( Iterator cIt = fh.getSubclassesOf( cl ).iterator(); cIt.hasNext(); ) {
+                    final SootClass c = (SootClass) cIt.next();
+                    if( workset.add( c ) ) worklist.add( c );
+                }
+            }
+        }
+        return ret;
+    }
+
+    /** Returns m if a call may resolve to it, or null if it is abstract. */
+    private static SootMethod target( SootMethod m ) {
+        return m.isConcrete() || m.isNative() || m.isPhantom() ? m : null;
+    }
+
+    /** The dispatch table of a class, as subsignature numbers in ascending
+     * order and their targets. */
+    private static final class Table {
+        static final Table EMPTY = new Table( new int[0], new SootMethod[0],
+                new SootClass[0], new int[0] );
+
+        final int[] subSigs;
+        /** Null for methods which are declared abstract. */
+        final SootMethod[] targets;
+        /** The phantom classes among the class and its superclasses, and
+         * their numbers of methods when the table was built. */
+        final SootClass[] phantoms;
+        final int[] methodCounts;
+
+        Table( int[] subSigs, SootMethod[] targets, SootClass[] phantoms, int[] methodCounts ) {
+            this.subSigs = subSigs;
+            this.targets = targets;
+            this.phantoms = phantoms;
+            this.methodCounts = methodCounts;
+        }
+
+        /** Returns false if a method has been added to a phantom class since
+         * the table was built. */
+        boolean isCurrent() {
+            for( int i = 0; i < phantoms.length; i++ ) {
+                if( phantoms[i].getMethodCount() != methodCounts[i] ) return false;
+            }
+            return true;
+        }
+
+        /** Returns the table of cls, which is this table overridden by the
+         * methods cls declares. */
+        Table extend( SootClass cls ) {
+            SootClass[] retPhantoms = phantoms;
+            int[] retCounts = methodCounts;
+            if( cls.isPhantom() ) {
+                retPhantoms = Arrays.copyOf( phantoms, phantoms.length + 1 );
+                retCounts = Arrays.copyOf( methodCounts, methodCounts.length + 1 );
+                retPhantoms[phantoms.length] = cls;
+                retCounts[methodCounts.length] = cls.getMethodCount();
+            }
+            List<SootMethod> methods = cls.getMethods();
+            if( methods.isEmpty() ) return new Table( subSigs, targets, retPhantoms, retCounts );
+            SootMethod[] declared = methods.toArray( new SootMethod[methods.size()] );
+            Arrays.sort( declared, new Comparator<SootMethod>() {
+                public int compare( SootMethod m1, SootMethod m2 ) {
+                    int n1 = m1.getNumberedSubSignature().getNumber();
+                    int n2 = m2.getNumberedSubSignature().getNumber();
+                    return n1 < n2 ? -1 : n1 == n2 ? 0 : 1;
+                }
+            } );
+            int[] retSigs = new int[subSigs.length + declared.length];
+            SootMethod[] retTargets = new SootMethod[retSigs.length];
+            int i = 0, j = 0, k = 0;
+            while( i < subSigs.length || j < declared.length ) {
+                int own = j < declared.length
+                    ? declared[j].getNumberedSubSignature().getNumber() : Integer.MAX_VALUE;
+                if( i < subSigs.length && subSigs[i] < own ) {
+                    retSigs[k] = subSigs[i];
+                    retTargets[k++] = targets[i++];
+                } else {
+                    if( i < subSigs.length && subSigs[i] == own ) i++;
+                    SootMethod m = declared[j++];
+                    retSigs[k] = own;
+                    retTargets[k++] = target( m );
+                }
+            }
+            return new Table( Arrays.copyOf( retSigs, k ), Arrays.copyOf( retTargets, k ),
+                    retPhantoms, retCounts );
+        }
+    }
+
+    private static final class SubTypes {
+        final RefType[] types;
+        final RoaringBitVector numbers = new RoaringBitVector();
+
+        SubTypes( RefType base, List<SootClass> classes ) {
+            List<RefType> ret = new ArrayList<RefType>( classes.size() + 1 );
+            ret.add( base );
+            for( SootClass cl : classes ) {
+                RefType t = cl.getType();
+                if( t != base ) ret.add( t );
+                numbers.set( t.getNumber() );
+            }
+            types = ret.toArray( new RefType[ret.size()] );
+        }
+    }
+}
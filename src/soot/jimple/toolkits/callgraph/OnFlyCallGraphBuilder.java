@@ -59,6 +59,7 @@ import soot.Unit;
 import soot.Value;
 import soot.javaToJimple.LocalGenerator;
 import soot.jimple.AssignStmt;
+import soot.jimple.DynamicInvokeExpr;
 import soot.jimple.FieldRef;
 import soot.jimple.InstanceInvokeExpr;
 import soot.jimple.InvokeExpr;
@@ -74,6 +75,7 @@ import soot.jimple.Stmt;
 import soot.jimple.StringConstant;
 import soot.jimple.VirtualInvokeExpr;
 import soot.jimple.toolkits.reflection.ReflectionTraceInfo;
+import soot.robovm.RoboVMLocalAlias;
 import soot.options.CGOptions;
 import soot.tagkit.Host;
 import soot.tagkit.SourceLnPosTag;
@@ -104,7 +106,7 @@ public final class OnFlyCallGraphBuilder
                 String cls = ((StringConstant) className ).value;
                 constantForName( cls, source, s );
             } else {
-                Local constant = (Local) className;
+                Local constant = owner( (Local) className );
                 if( options.safe_forname() ) {
                     for (SootMethod tgt : EntryPoints.v().clinits()) {
                         addEdge( source, s, tgt, Kind.CLINIT );
@@ -419,11 +421,7 @@ public final class OnFlyCallGraphBuilder
                 rm.update();
                 if( !worklist.hasNext() ) break;
             }
-            MethodOrMethodContext momc = (MethodOrMethodContext) worklist.next();
-            SootMethod m = momc.method();
-            if( appOnly && !m.getDeclaringClass().isApplicationClass() ) continue;
-            if( analyzedMethods.add( m ) ) processNewMethod( m );
-            processNewMethodContext( momc );
+            processReachable( (MethodOrMethodContext) worklist.next() );
         }
     }
     public boolean wantTypes( Local receiver ) {
@@ -433,28 +431,7 @@ public final class OnFlyCallGraphBuilder
         FastHierarchy fh = Scene.v().getOrMakeFastHierarchy();
         for( Iterator siteIt = ((Collection) receiverToSites.get( receiver )).iterator(); siteIt.hasNext(); ) {
             final VirtualCallSite site = (VirtualCallSite) siteIt.next();
-            InstanceInvokeExpr iie = site.iie();
-            if( site.kind() == Kind.THREAD 
-                    && !fh.canStoreType( type, clRunnable ) )
-                continue;
-
-            if( site.iie() instanceof SpecialInvokeExpr && site.kind != Kind.THREAD ) {
-                SootMethod target = VirtualCalls.v().resolveSpecial( 
-                        (SpecialInvokeExpr) site.iie(),
-                        site.subSig(),
-                        site.container() );
-                //if the call target resides in a phantom class then "target" will be null;
-                //simply do not add the target in that case
-                if(target!=null) {
-                    targetsQueue.add( target );            		
-                } 
-            } else {
-                VirtualCalls.v().resolve( type,
-                        receiver.getType(),
-                        site.subSig(),
-                        site.container(), 
-                        targetsQueue );
-            }
+            resolveSite( site, receiver, type, fh, targetsQueue );
             while(targets.hasNext()) {
                 SootMethod target = (SootMethod) targets.next();
                 cm.addVirtualEdge(
@@ -511,6 +488,116 @@ public final class OnFlyCallGraphBuilder
 
     /* End of public methods. */
 
+    /** Returns the edges from the call sites on receiver to the methods
+     * they may call on an object of the given type, without contexts.
+     * Unlike addType, this does not change the call graph, so it may be
+     * called from several threads, as long as no methods are being
+     * processed at the same time. */
+    List<Edge> virtualEdges( Local receiver, Type type ) {
+        FastHierarchy fh = Scene.v().getOrMakeFastHierarchy();
+        ChunkedQueue queue = new ChunkedQueue();
+        QueueReader reader = queue.reader();
+        List<Edge> ret = new ArrayList<Edge>();
+        for( Iterator siteIt = ((Collection) receiverToSites.get( receiver )).iterator(); siteIt.hasNext(); ) {
+            final VirtualCallSite site = (VirtualCallSite) siteIt.next();
+            resolveSite( site, receiver, type, fh, queue );
+            while(reader.hasNext()) {
+                SootMethod target = (SootMethod) reader.next();
+                ret.add( new Edge( site.container(), site.stmt(), target, site.kind() ) );
+            }
+        }
+        return ret;
+    }
+    /** Processes the methods found reachable so far, without looking for
+     * more reachable methods. The methods called by their special invokes
+     * are resolved here, since resolving may add methods to phantom
+     * classes, which must not happen while virtualEdges is running. */
+    void processCurrentReachables() {
+        while( worklist.hasNext() ) {
+            MethodOrMethodContext momc = (MethodOrMethodContext) worklist.next();
+            processReachable( momc );
+            List receivers = (List) methodToReceivers.get( momc.method() );
+            if( receivers == null ) continue;
+            for( Iterator receiverIt = receivers.iterator(); receiverIt.hasNext(); ) {
+                final Local receiver = (Local) receiverIt.next();
+                for( Iterator siteIt = ((Collection) receiverToSites.get( receiver )).iterator(); siteIt.hasNext(); ) {
+                    final VirtualCallSite site = (VirtualCallSite) siteIt.next();
+                    if( site.iie() instanceof SpecialInvokeExpr ) site.iie().getMethod();
+                }
+            }
+        }
+    }
+
+    /** Forgets the call sites found in the body of m, so that it is
+     * processed again by processAgain or when it is next found reachable.
+     * Edges out of m in the call graph are left alone. */
+    void forget( SootMethod m ) {
+        if( !analyzedMethods.remove( m ) ) return;
+        List<Edge> edges = new ArrayList<Edge>();
+        for( Iterator<Edge> eIt = cicg.edgesOutOf( m ); eIt.hasNext(); ) edges.add( eIt.next() );
+        for( Edge e : edges ) cicg.removeEdge( e );
+        List receivers = (List) methodToReceivers.get( m );
+        if( receivers != null ) {
+            for( Iterator receiverIt = receivers.iterator(); receiverIt.hasNext(); ) {
+                receiverToSites.put( (Local) receiverIt.next(), null );
+            }
+            methodToReceivers.put( m, null );
+        }
+        List stringConstants = (List) methodToStringConstants.get( m );
+        if( stringConstants != null ) {
+            for( Iterator constantIt = stringConstants.iterator(); constantIt.hasNext(); ) {
+                stringConstToSites.put( (Local) constantIt.next(), null );
+            }
+            methodToStringConstants.put( m, null );
+        }
+    }
+    /** Processes a method which is already reachable again, after it was
+     * forgotten. */
+    void processAgain( MethodOrMethodContext momc ) {
+        processReachable( momc );
+    }
+
+    /* End of package methods. */
+
+    private void processReachable( MethodOrMethodContext momc ) {
+        SootMethod m = momc.method();
+        if( appOnly && !m.getDeclaringClass().isApplicationClass() ) return;
+        if( analyzedMethods.add( m ) ) processNewMethod( m );
+        processNewMethodContext( momc );
+    }
+    /** Adds the methods site may call on an object of the given type to
+     * queue. */
+    private void resolveSite( VirtualCallSite site, Local receiver, Type type,
+            FastHierarchy fh, ChunkedQueue queue ) {
+        if( site.kind() == Kind.THREAD 
+                && !fh.canStoreType( type, clRunnable ) )
+            return;
+
+        if( site.iie() instanceof SpecialInvokeExpr && site.kind != Kind.THREAD ) {
+            SootMethod target = VirtualCalls.v().resolveSpecial( 
+                    (SpecialInvokeExpr) site.iie(),
+                    site.subSig(),
+                    site.container() );
+            //if the call target resides in a phantom class then "target" will be null;
+            //simply do not add the target in that case
+            if(target!=null) {
+                queue.add( target );            		
+            } 
+        } else {
+            VirtualCalls.v().resolve( type,
+                    receiver.getType(),
+                    site.subSig(),
+                    site.container(), 
+                    queue );
+        }
+    }
+
+    /** Returns the local l stands for if it is an alias, so that the
+     * sites are found from the variables of the points-to analysis. */
+    private static Local owner( Local l ) {
+        if( l instanceof RoboVMLocalAlias ) return ((RoboVMLocalAlias) l).getOwner();
+        return l;
+    }
     private void addVirtualCallSite( Stmt s, SootMethod m, Local receiver,
             InstanceInvokeExpr iie, NumberedString subSig, Kind kind ) {
         List<VirtualCallSite> sites = (List<VirtualCallSite>) receiverToSites.get(receiver);
@@ -539,7 +626,7 @@ public final class OnFlyCallGraphBuilder
 
                 if (ie instanceof InstanceInvokeExpr) {
                     InstanceInvokeExpr iie = (InstanceInvokeExpr) ie;
-                    Local receiver = (Local) iie.getBase();
+                    Local receiver = owner( (Local) iie.getBase() );
                     NumberedString subSig = 
                             iie.getMethodRef().getSubSignature();
                     addVirtualCallSite( s, m, receiver, iie, subSig,
@@ -548,7 +635,9 @@ public final class OnFlyCallGraphBuilder
                         addVirtualCallSite( s, m, receiver, iie, sigRun,
                                 Kind.THREAD );
                     }
-                } else {
+                } else if( !(ie instanceof DynamicInvokeExpr) ) {
+                    // The targets of dynamic invokes are only known once
+                    // their bootstrap methods have run
                     SootMethod tgt = ie.getMethod();
                     addEdge(m, s, tgt);
                     if( tgt.getSignature().equals( "<java.security.AccessController: java.lang.Object doPrivileged(java.security.PrivilegedAction)>" )
@@ -33,6 +33,7 @@ public class ReachableMethods
     private Iterator<Edge> edgeSource;
     private final ChunkedQueue<MethodOrMethodContext> reachables = new ChunkedQueue<MethodOrMethodContext>();
     private final Set<MethodOrMethodContext> set = new HashSet<MethodOrMethodContext>();
+    private final Set<MethodOrMethodContext> entryPoints = new HashSet<MethodOrMethodContext>();
     private QueueReader<MethodOrMethodContext> unprocessedMethods;
     private final QueueReader<MethodOrMethodContext> allReachables = reachables.reader();
     private Filter filter;
@@ -42,7 +43,7 @@ public class ReachableMethods
     public ReachableMethods( CallGraph graph, Iterator<MethodOrMethodContext> entryPoints, Filter filter ) {
         this.filter = filter;
         this.cg = graph;
-        addMethods( entryPoints );
+        addEntryPoints( entryPoints );
         unprocessedMethods = reachables.reader();
         this.edgeSource = graph.listener();
         if( filter != null ) this.edgeSource = filter.wrap( this.edgeSource );
@@ -50,6 +51,13 @@ public class ReachableMethods
     public ReachableMethods( CallGraph graph, Collection<MethodOrMethodContext> entryPoints ) {
     	this(graph, entryPoints.iterator());
     }
+    private void addEntryPoints( Iterator<MethodOrMethodContext> methods ) {
+        while( methods.hasNext() ) {
+            MethodOrMethodContext m = (MethodOrMethodContext) methods.next();
+            entryPoints.add( m );
+            addMethod( m );
+        }
+    }
     private void addMethods( Iterator<MethodOrMethodContext> methods ) {
         while( methods.hasNext() )
             addMethod( (MethodOrMethodContext) methods.next() );
@@ -73,6 +81,64 @@ public class ReachableMethods
             addMethods( new Targets( targets ) );
         }
     }
+    /** Removes the methods which are no longer reachable after edges into
+     * the given methods were removed from the call graph, and returns them.
+     * Only the given methods and the methods reachable from them are looked
+     * at. The removed methods stay in the QueueReader objects which already
+     * contain them, and are added to them again if they become reachable
+     * again. */
+    public List<MethodOrMethodContext> removeUnreachable( Collection<MethodOrMethodContext> candidates ) {
+        update();
+        // Any method reachable from a candidate may have lost its last
+        // path from the entry points.
+        Set<MethodOrMethodContext> affected = new HashSet<MethodOrMethodContext>();
+        LinkedList<MethodOrMethodContext> worklist = new LinkedList<MethodOrMethodContext>();
+        for( MethodOrMethodContext m : candidates ) {
+            if( set.contains( m ) && affected.add( m ) ) worklist.add( m );
+        }
+        while( !worklist.isEmpty() ) {
+            for( MethodOrMethodContext tgt : targets( worklist.removeFirst() ) ) {
+                if( set.contains( tgt ) && affected.add( tgt ) ) worklist.add( tgt );
+            }
+        }
+        set.removeAll( affected );
+        // The affected methods called from elsewhere are still reachable,
+        // and so is everything they call.
+        for( MethodOrMethodContext m : affected ) {
+            if( entryPoints.contains( m ) || hasReachableCaller( m ) ) {
+                set.add( m );
+                worklist.add( m );
+            }
+        }
+        while( !worklist.isEmpty() ) {
+            for( MethodOrMethodContext tgt : targets( worklist.removeFirst() ) ) {
+                if( affected.contains( tgt ) && set.add( tgt ) ) worklist.add( tgt );
+            }
+        }
+        List<MethodOrMethodContext> ret = new ArrayList<MethodOrMethodContext>();
+        for( MethodOrMethodContext m : affected ) {
+            if( !set.contains( m ) ) ret.add( m );
+        }
+        return ret;
+    }
+    private List<MethodOrMethodContext> targets( MethodOrMethodContext m ) {
+        Iterator<Edge> edges = cg.edgesOutOf( m );
+        if( filter != null ) edges = filter.wrap( edges );
+        List<MethodOrMethodContext> ret = new ArrayList<MethodOrMethodContext>();
+        for( Iterator<MethodOrMethodContext> tgts = new Targets( edges ); tgts.hasNext(); ) {
+            ret.add( tgts.next() );
+        }
+        return ret;
+    }
+    private boolean hasReachableCaller( MethodOrMethodContext m ) {
+        Iterator<Edge> edges = cg.edgesInto( m );
+        if( filter != null ) edges = filter.wrap( edges );
+        while( edges.hasNext() ) {
+            MethodOrMethodContext src = edges.next().getSrc();
+            if( src != null && set.contains( src ) ) return true;
+        }
+        return false;
+    }
     /** Returns a QueueReader object containing all methods found reachable
      * so far, and which will be informed of any new methods that are later
      * found to be reachable. */
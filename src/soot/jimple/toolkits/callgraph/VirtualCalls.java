@@ -24,7 +24,8 @@ import java.util.*;
 import soot.util.*;
 import soot.util.queue.*;
 
-/** Resolves virtual calls.
+/** Resolves virtual calls. The tables used are built once per hierarchy,
+ * after which calls may be resolved from several threads.
  * @author Ondrej Lhotak
  */
 public final class VirtualCalls
@@ -32,8 +33,20 @@ public final class VirtualCalls
     public VirtualCalls( Singletons.Global g ) {}
     public static VirtualCalls v() { return G.v().soot_jimple_toolkits_callgraph_VirtualCalls(); }
 
-    private final LargeNumberedMap typeToVtbl =
-        new LargeNumberedMap( Scene.v().getTypeNumberer() );
+    private volatile DispatchIndex index;
+
+    /** Returns the dispatch index of the current hierarchy. */
+    private DispatchIndex index() {
+        FastHierarchy fh = Scene.v().getOrMakeFastHierarchy();
+        DispatchIndex ret = index;
+        if( ret == null || ret.hierarchy() != fh ) {
+            synchronized( this ) {
+                ret = index;
+                if( ret == null || ret.hierarchy() != fh ) index = ret = new DispatchIndex( fh );
+            }
+        }
+        return ret;
+    }
 
     public SootMethod resolveSpecial( SpecialInvokeExpr iie, NumberedString subSig, SootMethod container ) {
         SootMethod target = iie.getMethod();
@@ -55,30 +68,9 @@ public final class VirtualCalls
     }
 
     public SootMethod resolveNonSpecial( RefType t, NumberedString subSig ) {
-        SmallNumberedMap vtbl = (SmallNumberedMap) typeToVtbl.get( t );
-        if( vtbl == null ) {
-            typeToVtbl.put( t, vtbl =
-                    new SmallNumberedMap( Scene.v().getMethodNumberer() ) );
-        }
-        SootMethod ret = (SootMethod) vtbl.get( subSig );
-        if( ret != null ) return ret;
-        SootClass cls = (t).getSootClass();
-        if( cls.declaresMethod( subSig ) ) {
-            SootMethod m = cls.getMethod( subSig );
-            if( m.isConcrete() || m.isNative() || m.isPhantom() ) {
-                ret = cls.getMethod( subSig );
-            }
-        } else {
-            if( cls.hasSuperclass() ) {
-                ret = resolveNonSpecial( cls.getSuperclass().getType(), subSig );
-            }
-        }
-        vtbl.put( subSig, ret );
-        return ret;
+        return index().resolve( t, subSig );
     }
 
-    private final Map<Type,List<Type>> baseToSubTypes = new HashMap<Type,List<Type>>();
-
     public void resolve( Type t, Type declaredType, NumberedString subSig, SootMethod container, ChunkedQueue targets ) {
         resolve(t, declaredType, null, subSig, container, targets);
     }
@@ -86,62 +78,26 @@ public final class VirtualCalls
         if( declaredType instanceof ArrayType ) declaredType = RefType.v("java.lang.Object");
         if( sigType instanceof ArrayType ) sigType = RefType.v("java.lang.Object");
         if( t instanceof ArrayType ) t = RefType.v( "java.lang.Object" );
-        if( declaredType != null && !Scene.v().getOrMakeFastHierarchy()
-                .canStoreType( t, declaredType ) ) {
-            return;
-        }
-        if( sigType != null && !Scene.v().getOrMakeFastHierarchy()
-                .canStoreType( t, sigType ) ) {
-            return;
-        }
+        DispatchIndex index = index();
         if( t instanceof RefType ) {
-            SootMethod target = resolveNonSpecial( (RefType) t, subSig );
-            if( target != null ) targets.add( target );
+            resolve( index, (RefType) t, declaredType, sigType, subSig, targets );
         } else if( t instanceof AnySubType ) {
             RefType base = ((AnySubType)t).getBase();
-
-            List subTypes = baseToSubTypes.get(base);
-            if( subTypes != null ) {
-                for( Iterator stIt = subTypes.iterator(); stIt.hasNext(); ) {
-                    final Type st = (Type) stIt.next();
-                    resolve( st, declaredType, sigType, subSig, container, targets );
-                }
-                return;
-            }
-
-            baseToSubTypes.put(base, subTypes = new ArrayList() );
-
-            subTypes.add(base);
-
-            LinkedList<SootClass> worklist = new LinkedList<SootClass>();
-            HashSet<SootClass> workset = new HashSet<SootClass>();
-            FastHierarchy fh = Scene.v().getOrMakeFastHierarchy();
-            SootClass cl = base.getSootClass();
-
-            if( workset.add( cl ) ) worklist.add( cl );
-            while( !worklist.isEmpty() ) {
-                cl = worklist.removeFirst();
-                if( cl.isInterface() ) {
-                    for( Iterator cIt = fh.getAllImplementersOfInterface(cl).iterator(); cIt.hasNext(); ) {
-                        final SootClass c = (SootClass) cIt.next();
-                        if( workset.add( c ) ) worklist.add( c );
-                    }
-                } else {
-                    if( cl.isConcrete() ) {
-                        resolve( cl.getType(), declaredType, sigType, subSig, container, targets );
-                        subTypes.add(cl.getType());
-                    }
-                    for( Iterator cIt = fh.getSubclassesOf( cl ).iterator(); cIt.hasNext(); ) {
-                        final SootClass c = (SootClass) cIt.next();
-                        if( workset.add( c ) ) worklist.add( c );
-                    }
-                }
+            for( RefType st : index.subTypesOf( base ) ) {
+                resolve( index, st, declaredType, sigType, subSig, targets );
             }
         } else if( t instanceof NullType ) {
         } else {
             throw new RuntimeException( "oops "+t );
         }
     }
+
+    private void resolve( DispatchIndex index, RefType t, Type declaredType, Type sigType, NumberedString subSig, ChunkedQueue targets ) {
+        if( declaredType != null && !index.canStoreType( t, declaredType ) ) return;
+        if( sigType != null && !index.canStoreType( t, sigType ) ) return;
+        SootMethod target = index.resolve( t, subSig );
+        if( target != null ) targets.add( target );
+    }
     
     public final NumberedString sigClinit =
         Scene.v().getSubSigNumberer().findOrAdd("void <clinit>()");
@@ -56,6 +56,8 @@ public class CopyPropagator extends BodyTransformer
         
         Does not propagate stack locals when the "only-regular-locals" option is true.
     */
+    protected boolean maintainsBodyAnalyses() { return true; }
+
     protected void internalTransform(Body b, String phaseName, Map opts)
     {
         CPOptions options = new CPOptions( opts );
@@ -98,11 +100,9 @@ public class CopyPropagator extends BodyTransformer
         
 //            ((JimpleBody) stmtBody).printDebugTo(new java.io.PrintWriter(G.v().out, true));
             
-        ExceptionalUnitGraph graph = new ExceptionalUnitGraph(stmtBody);
+        ExceptionalUnitGraph graph = BodyAnalysisManager.v().getExceptionalUnitGraph(stmtBody);
 
-        LocalDefs localDefs;
-        
-        localDefs = new SmartLocalDefs(graph, new SimpleLiveLocals(graph));
+        LocalDefs localDefs = BodyAnalysisManager.v().getLocalDefs(stmtBody);
 
         // Perform a local propagation pass.
         {
@@ -210,6 +210,10 @@ public class CopyPropagator extends BodyTransformer
         }
 
 
+        // Copies are propagated in place, which the unit chain does not see.
+        if(fastCopyPropagationCount + slowCopyPropagationCount > 0)
+            BodyAnalysisManager.v().invalidate(stmtBody);
+
         if(Options.v().verbose())
             G.v().out.println("[" + stmtBody.getMethod().getName() +
                 "]     Propagated: " +
@@ -50,6 +50,8 @@ public class DeadAssignmentEliminator extends BodyTransformer
         side for side effects. 
     */
     
+    protected boolean maintainsBodyAnalyses() { return true; }
+
     protected void internalTransform(Body b, String phaseName, Map options)
     {
         boolean eliminateOnlyStackLocals = PhaseOptions.getBoolean(options, "only-stack-locals");
@@ -153,9 +155,8 @@ public class DeadAssignmentEliminator extends BodyTransformer
             }
         }
 
-        ExceptionalUnitGraph graph = new ExceptionalUnitGraph(b);
-        LocalDefs defs = new SmartLocalDefs(graph, new SimpleLiveLocals(graph));
-        LocalUses uses = new SimpleLocalUses(graph, defs);
+        LocalDefs defs = BodyAnalysisManager.v().getLocalDefs(b);
+        LocalUses uses = BodyAnalysisManager.v().getLocalUses(b);
         
         // Add all the statements which are used to compute values
         // for the essential statements, recursively
@@ -101,6 +101,11 @@ public class FastAvailableExpressionsAnalysis extends ForwardFlowAnalysis
         doAnalysis();
     }
 
+    protected boolean useNumberedSolver()
+    {
+        return true;
+    }
+
     protected Object newInitialFlow()
     {
         Object newSet = emptySet.clone();
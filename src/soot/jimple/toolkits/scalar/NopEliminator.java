@@ -42,6 +42,8 @@ public class NopEliminator extends BodyTransformer
         with respect to the statements.
     */
     
+    protected boolean maintainsBodyAnalyses() { return true; }
+
     protected void internalTransform(Body b, String phaseName, Map options)
     {
         JimpleBody body = (JimpleBody)b;
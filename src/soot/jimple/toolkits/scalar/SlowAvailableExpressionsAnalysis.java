@@ -225,6 +225,11 @@ public class SlowAvailableExpressionsAnalysis extends ForwardFlowAnalysis
         doAnalysis();
     }
 
+    protected boolean useNumberedSolver()
+    {
+        return true;
+    }
+
     protected Object newInitialFlow()
     {
         BoundedFlowSet out = (BoundedFlowSet)emptySet.clone();
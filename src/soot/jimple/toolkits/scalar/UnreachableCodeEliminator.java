@@ -35,12 +35,15 @@ import java.util.*;
 
 import soot.toolkits.graph.*;
 import soot.toolkits.exceptions.PedanticThrowAnalysis;
+import soot.toolkits.scalar.BodyAnalysisManager;
 
 public class UnreachableCodeEliminator extends BodyTransformer
 {
     public UnreachableCodeEliminator( Singletons.Global g ) {}
     public static UnreachableCodeEliminator v() { return G.v().soot_jimple_toolkits_scalar_UnreachableCodeEliminator(); }
 
+    protected boolean maintainsBodyAnalyses() { return true; }
+
     protected void internalTransform(Body b, String phaseName, Map options) 
     {
         new Instance().internalTransform(b, phaseName, options);
@@ -61,15 +64,15 @@ public class UnreachableCodeEliminator extends BodyTransformer
             numPruned = 0;
 
             if (PhaseOptions.getBoolean(options, "remove-unreachable-traps")) {
-                stmtGraph = new ExceptionalUnitGraph(body);
+                stmtGraph = BodyAnalysisManager.v().getExceptionalUnitGraph(body);
             } else {
                 // Force a conservative ExceptionalUnitGraph() which
                 // necessarily includes an edge from every trapped Unit to
                 // its handler, so that we retain Traps in the case where
                 // trapped units remain, but the default ThrowAnalysis
                 // says that none of them can throw the caught exception.
-                stmtGraph = new ExceptionalUnitGraph(body, PedanticThrowAnalysis.v(),
-                                                    false);
+                stmtGraph = BodyAnalysisManager.v().getExceptionalUnitGraph(body,
+                                                    PedanticThrowAnalysis.v(), false);
             }
             visited = new HashSet<Object>();
 
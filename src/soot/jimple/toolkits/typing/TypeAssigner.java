@@ -98,8 +98,7 @@ public class TypeAssigner extends BodyTransformer {
 			if (opt.use_older_type_assigner())
 				TypeResolver.resolve((JimpleBody) b, Scene.v());
 			else
-				(new soot.jimple.toolkits.typing.fast.TypeResolver(
-						(JimpleBody) b)).inferTypes();
+				inferTypes((JimpleBody) b, opt);
 		}
 
 		Date finish = new Date();
@@ -115,6 +114,30 @@ public class TypeAssigner extends BodyTransformer {
 			throw new RuntimeException("type inference failed!");
 	}
 
+	/*
+	 * Runs Ben Bellamy's type assigner, in bounded mode if bounded-typing is
+	 * on. With typing-stats, a semicolon-delimited line is written to the
+	 * standard output for each method, with 'typing' as the first field:
+	 * 
+	 * typing;Method Name;Stmt Count;Local Count;Local Class Count;Typing
+	 * Count;Peak Typing Count;Pruned Typing Count;Inference Time (ms)
+	 */
+	private void inferTypes(JimpleBody jb, JBTROptions opt) {
+		int size = jb.getUnits().size();
+		long time = System.currentTimeMillis();
+		soot.jimple.toolkits.typing.fast.TypeResolver tr
+			= new soot.jimple.toolkits.typing.fast.TypeResolver(jb,
+					opt.bounded_typing() ? opt.max_typings() : 0);
+		tr.inferTypes();
+		time = System.currentTimeMillis() - time;
+
+		if (opt.typing_stats())
+			G.v().out.println("typing;" + jb.getMethod() + ";" + size + ";"
+					+ jb.getLocalCount() + ";" + tr.getLocalClassCount() + ";"
+					+ tr.getTypingCount() + ";" + tr.getPeakTypingCount() + ";"
+					+ tr.getPrunedTypingCount() + ";" + time);
+	}
+
 	private void compareTypeAssigners(Body b, boolean useOlderTypeAssigner) {
 		JimpleBody jb = (JimpleBody) b, oldJb, newJb;
 		int size = jb.getUnits().size();
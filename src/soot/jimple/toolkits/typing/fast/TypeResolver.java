@@ -49,15 +49,129 @@ public class TypeResolver
 	private List<DefinitionStmt> assignments;
 	private HashMap<Local, List<DefinitionStmt>> depends;
 	
+	/* In bounded mode, locals connected by copies share one type, and at
+	most maxTypings typings are explored at the same time. */
+	private int maxTypings;
+	private HashMap<Local, Local> classes;
+	private HashMap<Local, List<DefinitionStmt>> classDepends;
+	// Copies inserted by split_new, which must not collapse their locals.
+	private Set<DefinitionStmt> splitCopies;
+	
+	private int typingCount, peakTypingCount, prunedTypingCount;
+	
 	public TypeResolver(JimpleBody jb)
+	{
+		this(jb, 0);
+	}
+	
+	/**
+	 * Creates a resolver which runs in bounded mode if
+	 * <code>maxTypings</code> is positive. In bounded mode, the locals
+	 * connected by copies are first collapsed into classes which share one
+	 * type, and types are inferred for the classes. At most
+	 * <code>maxTypings</code> candidate typings are explored at the same
+	 * time; further candidates are dropped, so the result may need more
+	 * casts than the exact inference would insert.
+	 */
+	public TypeResolver(JimpleBody jb, int maxTypings)
 	{
 		this.jb = jb;
+		this.maxTypings = maxTypings;
 		
 		this.assignments = new LinkedList<DefinitionStmt>();
 		this.depends = new HashMap<Local, List<DefinitionStmt>>();
+		this.splitCopies = new HashSet<DefinitionStmt>();
 		for ( Local v : this.jb.getLocals() )
 			this.addLocal(v);
 		this.initAssignments();
+		this.buildClasses();
+	}
+	
+	/** Returns the number of typings created while inferring types. */
+	public int getTypingCount() { return this.typingCount; }
+	
+	/** Returns the largest number of typings explored at the same time. */
+	public int getPeakTypingCount() { return this.peakTypingCount; }
+	
+	/** Returns the number of typings dropped because of the cap on the
+	 * number of typings in bounded mode. */
+	public int getPrunedTypingCount() { return this.prunedTypingCount; }
+	
+	/** Returns the number of classes of locals which were typed: one per
+	 * local, unless copies were collapsed in bounded mode. */
+	public int getLocalClassCount()
+	{
+		if ( this.classes == null )
+			return this.jb.getLocals().size();
+		return this.classDepends.size();
+	}
+	
+	/* Collapses the locals connected by copies into union-find classes,
+	and collects the assignments which depend on each class. */
+	private void buildClasses()
+	{
+		if ( this.maxTypings <= 0 )
+			return;
+		HashMap<Local, Local> parent = new HashMap<Local, Local>();
+		for ( DefinitionStmt ds : this.assignments )
+		{
+			Value lhs = ds.getLeftOp(), rhs = ds.getRightOp();
+			if ( lhs instanceof Local && rhs instanceof Local
+				&& !this.splitCopies.contains(ds) )
+			{
+				Local a = find(parent, (Local)lhs), b = find(parent, (Local)rhs);
+				if ( a != b )
+					parent.put(a, b);
+			}
+		}
+		
+		this.classes = new HashMap<Local, Local>();
+		this.classDepends = new HashMap<Local, List<DefinitionStmt>>();
+		for ( Local v : this.jb.getLocals() )
+		{
+			Local r = find(parent, v);
+			if ( r != v )
+				this.classes.put(v, r);
+			List<DefinitionStmt> ds = this.classDepends.get(r);
+			if ( ds == null )
+			{
+				ds = new ArrayList<DefinitionStmt>();
+				this.classDepends.put(r, ds);
+			}
+			ds.addAll(this.depends.get(v));
+		}
+	}
+	
+	private static Local find(Map<Local, Local> parent, Local v)
+	{
+		Local r = v, p;
+		while ( (p = parent.get(r)) != null )
+			r = p;
+		while ( v != r )
+		{
+			p = parent.get(v);
+			parent.put(v, r);
+			v = p;
+		}
+		return r;
+	}
+	
+	private Typing newTyping()
+	{
+		return new Typing(this.jb.getLocals(), this.classes);
+	}
+	
+	/* The assignments to revisit when the type of v changes. */
+	private List<DefinitionStmt> dependsOf(Local v)
+	{
+		if ( this.classes != null )
+		{
+			Local r = this.classes.get(v);
+			List<DefinitionStmt> ds = this.classDepends.get(r == null ? v : r);
+			if ( ds != null )
+				return ds;
+		}
+		return this.depends.get(v);
 	}
 	
 	private void initAssignments()
@@ -111,21 +225,38 @@ public class TypeResolver
 		AugHierarchy ah = new AugHierarchy();
 		BytecodeHierarchy bh = new BytecodeHierarchy();
 		Collection<Typing> sigma = this.applyAssignmentConstraints(
-			new Typing(this.jb.getLocals()), ef, bh);
+			this.newTyping(), ef, bh);
 		int[] castCount = new int[1];
 		Typing tg = this.minCasts(sigma, bh, castCount);
 		if ( castCount[0] != 0 )
 		{
 			this.split_new();
+			this.buildClasses();
+			sigma = this.applyAssignmentConstraints(
+				this.newTyping(), ef, bh);
+			tg = this.minCasts(sigma, bh, castCount);
+		}
+		if ( tg == null && this.maxTypings > 0 )
+		{
+			// Every typing the bounded search kept failed: search exactly.
+			this.maxTypings = 0;
+			this.classes = null;
+			this.classDepends = null;
 			sigma = this.applyAssignmentConstraints(
-				new Typing(this.jb.getLocals()), ef, bh);
+				this.newTyping(), ef, bh);
 			tg = this.minCasts(sigma, bh, castCount);
 		}
 		this.insertCasts(tg, bh, false);
 		
+		/* Locals in the same class share one type in bounded mode, so read
+		every type before resetting the integer ones. */
+		List<Type> types = new ArrayList<Type>(this.jb.getLocals().size());
+		for ( Local v : this.jb.getLocals() )
+			types.add(tg.get(v));
+		Iterator<Type> ti = types.iterator();
 		for ( Local v : this.jb.getLocals() )
 		{
-			Type t = tg.get(v);
+			Type t = ti.next();
 			if ( t instanceof IntegerType )
 			{
 				t = IntType.v();
@@ -381,6 +512,8 @@ public class TypeResolver
 		QueuedSet<DefinitionStmt> wl = new QueuedSet<DefinitionStmt>(
 			this.assignments);
 		worklists.put(tg, wl);
+		this.typingCount++;
+		this.peakTypingCount = Math.max(this.peakTypingCount, 1);
 		
 		while ( !sigma.isEmpty() )
 		{
@@ -441,15 +574,32 @@ public class TypeResolver
 								wl_ = wl;
 								keep = true;
 							}
+							else if ( this.maxTypings > 0
+								&& sigma.size() >= this.maxTypings )
+							{
+								/* The cap is reached: tg follows the first
+								candidate, and the others are dropped. */
+								if ( keep )
+								{
+									this.prunedTypingCount++;
+									continue;
+								}
+								tg_ = tg;
+								wl_ = wl;
+								keep = true;
+							}
 							else
 							{
 								tg_ = new Typing(tg);
 								wl_ = new QueuedSet<DefinitionStmt>(wl);
 								sigma.add(tg_);
 								worklists.put(tg_, wl_);
+								this.typingCount++;
+								this.peakTypingCount = Math.max(
+									this.peakTypingCount, sigma.size());
 							}
 							tg_.set(v, t);
-							wl_.addLast(this.depends.get(v));
+							wl_.addLast(this.dependsOf(v));
 						}
 				}//end for
 				if ( !keep )
@@ -481,7 +631,8 @@ public class TypeResolver
 	version 2.2.5. */
 	private void split_new()
 	{
-		ExceptionalUnitGraph graph = new ExceptionalUnitGraph(this.jb);
+		ExceptionalUnitGraph graph =
+			BodyAnalysisManager.v().getExceptionalUnitGraph(this.jb);
 		SimpleLocalDefs defs = new SimpleLocalDefs(graph);
 		// SimpleLocalUses uses = new SimpleLocalUses(graph, defs);
 		PatchingChain<Unit> units = this.jb.getUnits();
@@ -537,6 +688,7 @@ public class TypeResolver
 									
 									this.addLocal(newlocal);
 									this.initAssignment(assignStmt);
+									this.splitCopies.add(assignStmt);
 								}
 							}
 							break;
@@ -24,37 +24,172 @@ import java.util.*;
 import soot.*;
 
 /**
+ * A map from locals to types. Copying a typing takes constant time: the
+ * types are kept in a persistent trie of 32-element nodes, indexed by
+ * slot numbers which all copies of a typing share. Changing a type
+ * copies the nodes on the path to its slot that are shared with other
+ * typings, so a copy costs memory in proportion to the changes made to
+ * it, and the original is never affected.
+ * 
  * @author Ben Bellamy
  */
 public class Typing
 {
-	private HashMap<Local, Type> map;
+	private static final int BITS = 5, WIDTH = 1 << BITS, MASK = WIDTH - 1;
+	
+	/* The slots of the locals, shared by all copies of a typing. Locals in
+	the same class share a slot. */
+	private final Slots slots;
+	
+	/* Each node has WIDTH children followed by its owner. A typing may
+	only modify the nodes it owns; it gets a new owner token whenever it
+	is copied, so that the nodes it had are shared from then on. */
+	private Object[] root;
+	private int shift;
+	private Object owner;
 	
 	public Typing(Collection<Local> vs)
 	{
-		this.map = new HashMap<Local, Type>();
+		this(vs, null);
+	}
+	
+	/**
+	 * Creates a typing in which each local in a class of
+	 * <code>classes</code> always has the type of the class'
+	 * representative. Locals without an entry in <code>classes</code>
+	 * are their own representatives.
+	 */
+	public Typing(Collection<Local> vs, Map<Local, Local> classes)
+	{
+		this.slots = new Slots();
+		this.owner = new Object();
+		this.root = this.newNode();
+		this.shift = 0;
+		for ( Local v : vs )
+		{
+			Local r = null;
+			if ( classes != null )
+				r = classes.get(v);
+			this.slots.add(v, r == null ? v : r);
+		}
 		for ( Local v : vs )
-			this.map.put(v, BottomType.v());
+			this.set(v, BottomType.v());
 	}
 	
 	public Typing(Typing tg)
 	{
-		this.map = new HashMap<Local, Type>(tg.map);
+		this.slots = tg.slots;
+		this.root = tg.root;
+		this.shift = tg.shift;
+		this.owner = new Object();
+		tg.owner = new Object();
 	}
 	
-	public Type get(Local v) { return this.map.get(v); }
+	public Type get(Local v)
+	{
+		Integer slot = this.slots.get(v);
+		return slot == null ? null : this.get(slot.intValue());
+	}
 	
-	public Type set(Local v, Type t) { return this.map.put(v, t); }
+	public Type set(Local v, Type t)
+	{
+		return this.set(this.slots.getOrAdd(v), t);
+	}
+	
+	private Type get(int slot)
+	{
+		if ( (slot >>> this.shift) >= WIDTH )
+			return null;
+		Object[] node = this.root;
+		for ( int level = this.shift; level > 0; level -= BITS )
+		{
+			node = (Object[])node[(slot >>> level) & MASK];
+			if ( node == null )
+				return null;
+		}
+		return (Type)node[slot & MASK];
+	}
+	
+	private Type set(int slot, Type t)
+	{
+		while ( (slot >>> this.shift) >= WIDTH )
+		{
+			Object[] r = this.newNode();
+			r[0] = this.root;
+			this.root = r;
+			this.shift += BITS;
+		}
+		this.root = this.editable(this.root);
+		Object[] node = this.root;
+		for ( int level = this.shift; level > 0; level -= BITS )
+		{
+			int i = (slot >>> level) & MASK;
+			Object[] child = (Object[])node[i];
+			child = child == null ? this.newNode() : this.editable(child);
+			node[i] = child;
+			node = child;
+		}
+		Type old = (Type)node[slot & MASK];
+		node[slot & MASK] = t;
+		return old;
+	}
+	
+	private Object[] newNode()
+	{
+		Object[] node = new Object[WIDTH + 1];
+		node[WIDTH] = this.owner;
+		return node;
+	}
+	
+	private Object[] editable(Object[] node)
+	{
+		if ( node[WIDTH] == this.owner )
+			return node;
+		Object[] copy = node.clone();
+		copy[WIDTH] = this.owner;
+		return copy;
+	}
+	
+	/* Numbers the locals of a typing and its copies densely. */
+	private static final class Slots
+	{
+		final HashMap<Local, Integer> slots = new HashMap<Local, Integer>();
+		// The local whose type each slot holds, for toString and compare.
+		final ArrayList<Local> locals = new ArrayList<Local>();
+		
+		Integer get(Local v) { return this.slots.get(v); }
+		
+		void add(Local v, Local r)
+		{
+			Integer slot = this.getOrAdd(r);
+			this.slots.put(v, slot);
+		}
+		
+		int getOrAdd(Local v)
+		{
+			Integer slot = this.slots.get(v);
+			if ( slot == null )
+			{
+				slot = this.locals.size();
+				this.slots.put(v, slot);
+				this.locals.add(v);
+			}
+			return slot.intValue();
+		}
+	}
 	
 	public String toString()
 	{
 		StringBuffer sb = new StringBuffer();
 		sb.append('{');
-		for ( Local v : this.map.keySet() )
+		for ( int i = 0; i < this.slots.locals.size(); i++ )
 		{
-			sb.append(v);
+			Type t = this.get(i);
+			if ( t == null )
+				continue;
+			sb.append(this.slots.locals.get(i));
 			sb.append(':');
-			sb.append(this.get(v));
+			sb.append(t);
 			sb.append(',');
 		}
 		sb.append('}');
@@ -80,26 +215,75 @@ public class Typing
 	
 	public static int compare(Typing a, Typing b, IHierarchy h)
 	{
-		int r = 0;
-		for ( Local v : a.map.keySet() )
+		int[] r = new int[1];
+		if ( a.slots == b.slots && a.shift == b.shift )
 		{
-			Type ta = a.get(v), tb = b.get(v);
-			
+			int cmp = compare(a.root, b.root, a.shift, r, h);
+			return cmp == CONTINUE ? r[0] : cmp;
+		}
+		for ( int i = 0; i < a.slots.locals.size(); i++ )
+		{
+			Type ta = a.get(i);
+			if ( ta == null )
+				continue;
+			Type tb = a.slots == b.slots ? b.get(i)
+				: b.get(a.slots.locals.get(i));
+			int cmp = compare(ta, tb, r, h);
+			if ( cmp != CONTINUE )
+				return cmp;
+		}
+		return r[0];
+	}
+	
+	private static final int CONTINUE = Integer.MIN_VALUE;
+	
+	/* Compares the types of the slots under two nodes in slot order, as the
+	loop above does. The types of a subtree which both typings share are
+	equal, and each compares as 1 since ancestor is reflexive. */
+	private static int compare(Object[] na, Object[] nb, int level,
+		int[] r, IHierarchy h)
+	{
+		for ( int i = 0; i < WIDTH; i++ )
+		{
+			Object ca = na[i];
+			if ( ca == null )
+				continue;
+			Object cb = nb == null ? null : nb[i];
+			if ( ca == cb )
+			{
+				if ( r[0] == -1 )
+					return 2;
+				if ( r[0] == 0 )
+					r[0] = 1;
+				continue;
+			}
 			int cmp;
-			if ( TypeResolver.typesEqual(ta, tb) )
-				cmp = 0;
-			if ( h.ancestor(ta, tb) )
-				cmp = 1;
-			else if ( h.ancestor(tb, ta) )
-				cmp = -1;
+			if ( level == 0 )
+				cmp = compare((Type)ca, (Type)cb, r, h);
 			else
-				return -2;
-			
-			if ( (cmp == 1 && r == -1) || (cmp == -1 && r == 1) )
-				return 2;
-			if ( r == 0 )
-				r = cmp;
+				cmp = compare((Object[])ca, (Object[])cb, level - BITS, r, h);
+			if ( cmp != CONTINUE )
+				return cmp;
 		}
-		return r;
+		return CONTINUE;
+	}
+	
+	/* Compares the types of one local, given the result r[0] for the
+	locals before it. Returns CONTINUE unless the result is known. */
+	private static int compare(Type ta, Type tb, int[] r, IHierarchy h)
+	{
+		int cmp;
+		if ( h.ancestor(ta, tb) )
+			cmp = 1;
+		else if ( h.ancestor(tb, ta) )
+			cmp = -1;
+		else
+			return -2;
+		
+		if ( (cmp == 1 && r[0] == -1) || (cmp == -1 && r[0] == 1) )
+			return 2;
+		if ( r[0] == 0 )
+			r[0] = cmp;
+		return CONTINUE;
 	}
 }
\ No newline at end of file
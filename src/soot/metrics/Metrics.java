@@ -0,0 +1,163 @@
+/* Soot - a J*va Optimization Framework
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place - Suite 330,
+ * Boston, MA 02111-1307, USA.
+ */
+
+package soot.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import soot.Body;
+import soot.G;
+import soot.Singletons;
+
+/**
+ * Measures packs and transforms and reports the results to the registered
+ * {@link PhaseMetricsListener}s. {@link soot.Pack} and {@link soot.Transform}
+ * call {@link #start} and {@link #finish} around every phase they apply;
+ * nothing is measured while no listener is registered.
+ *
+ * <p>Packs are measured as a whole as well as each of their transforms, so
+ * the measurements of a pack include those of its transforms. Allocated bytes
+ * are taken from the {@link java.lang.management.ThreadMXBean} of the
+ * virtual machine and are only available on virtual machines which support
+ * <code>com.sun.management.ThreadMXBean</code>.
+ */
+public class Metrics
+{
+    public Metrics( Singletons.Global g ) {}
+    public static Metrics v() { return G.v().soot_metrics_Metrics(); }
+
+    private final List<PhaseMetricsListener> listeners = new CopyOnWriteArrayList<PhaseMetricsListener>();
+    private volatile boolean enabled;
+    private volatile boolean allocationUnavailable;
+
+    /** The state of a phase captured by {@link Metrics#start}. */
+    public static final class Sample
+    {
+        final String phaseName;
+        final Body body;
+        final int unitsBefore;
+        final int localsBefore;
+        long startAllocated;
+        long startTime;
+
+        Sample( String phaseName, Body body ) {
+            this.phaseName = phaseName;
+            this.body = body;
+            if( body != null ) {
+                unitsBefore = body.getUnits().size();
+                localsBefore = body.getLocalCount();
+            } else {
+                unitsBefore = -1;
+                localsBefore = -1;
+            }
+        }
+    }
+
+    public void addListener( PhaseMetricsListener l ) {
+        listeners.add( l );
+        enabled = true;
+    }
+
+    public void removeListener( PhaseMetricsListener l ) {
+        listeners.remove( l );
+        enabled = !listeners.isEmpty();
+    }
+
+    /** Returns true if a listener is registered. */
+    public boolean isEnabled() { return enabled; }
+
+    /** Starts measuring the given phase on the given body, or on the
+     * scene if body is null. Returns null if no listener is registered. */
+    public Sample start( String phaseName, Body body ) {
+        if( !enabled ) return null;
+        Sample sample = new Sample( phaseName, body );
+        sample.startAllocated = allocatedBytes();
+        sample.startTime = System.nanoTime();
+        return sample;
+    }
+
+    /** Finishes the measurement started by {@link #start} and reports it
+     * to the listeners. Does nothing if sample is null. */
+    public void finish( Sample sample ) {
+        if( sample == null ) return;
+        long time = System.nanoTime() - sample.startTime;
+        long allocated = -1;
+        if( sample.startAllocated >= 0 ) {
+            allocated = allocatedBytes() - sample.startAllocated;
+        }
+        Body b = sample.body;
+        PhaseMetrics m;
+        if( b != null ) {
+            m = new PhaseMetrics( sample.phaseName, b.getMethod(), time, allocated,
+                    sample.unitsBefore, b.getUnits().size(),
+                    sample.localsBefore, b.getLocalCount() );
+        } else {
+            m = new PhaseMetrics( sample.phaseName, null, time, allocated, -1, -1, -1, -1 );
+        }
+        for( PhaseMetricsListener l : listeners ) {
+            l.phaseFinished( m );
+        }
+    }
+
+    /** Returns the bytes allocated so far by the current thread, or -1. */
+    private long allocatedBytes() {
+        if( allocationUnavailable ) return -1;
+        try {
+            long bytes = Allocation.currentThread();
+            if( bytes < 0 ) allocationUnavailable = true;
+            return bytes;
+        } catch( LinkageError e ) {
+            allocationUnavailable = true;
+            return -1;
+        }
+    }
+
+    /** Reads the allocation counter of the current thread. Kept in its own
+     * class so that virtual machines without com.sun.management only fail
+     * here. */
+    private static final class Allocation
+    {
+        private static final com.sun.management.ThreadMXBean bean = init();
+
+        private static com.sun.management.ThreadMXBean init() {
+            try {
+                java.lang.management.ThreadMXBean b = ManagementFactory.getThreadMXBean();
+                if( b instanceof com.sun.management.ThreadMXBean ) {
+                    com.sun.management.ThreadMXBean sb = (com.sun.management.ThreadMXBean) b;
+                    if( sb.isThreadAllocatedMemorySupported() && sb.isThreadAllocatedMemoryEnabled() ) {
+                        return sb;
+                    }
+                }
+            } catch( Throwable t ) {
+                // Not available on this virtual machine.
+            }
+            return null;
+        }
+
+        static long currentThread() {
+            if( bean == null ) return -1;
+            try {
+                return bean.getThreadAllocatedBytes( Thread.currentThread().getId() );
+            } catch( UnsupportedOperationException e ) {
+                return -1;
+            }
+        }
+    }
+}
@@ -0,0 +1,142 @@
+/* Soot - a J*va Optimization Framework
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place - Suite 330,
+ * Boston, MA 02111-1307, USA.
+ */
+
+package soot.metrics;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * A {@link PhaseMetricsListener} which keeps all measurements in memory and
+ * writes them as CSV or JSON, e.g.
+ *
+ * <pre>
+ * MetricsRecorder recorder = new MetricsRecorder();
+ * Metrics.v().addListener( recorder );
+ * PackManager.v().runPacks();
+ * recorder.writeCsv( new FileWriter( "metrics.csv" ) );
+ * </pre>
+ *
+ * Both formats contain one record per measurement with the fields
+ * <code>phase</code>, <code>method</code>, <code>wallTimeNanos</code>,
+ * <code>allocatedBytes</code>, <code>unitsBefore</code>, <code>unitsAfter</code>,
+ * <code>localsBefore</code> and <code>localsAfter</code>. The method is
+ * empty in CSV and null in JSON for scene phases.
+ */
+public class MetricsRecorder implements PhaseMetricsListener
+{
+    private final List<PhaseMetrics> metrics = new ArrayList<PhaseMetrics>();
+
+    public synchronized void phaseFinished( PhaseMetrics m ) {
+        metrics.add( m );
+    }
+
+    /** Returns a copy of the measurements recorded so far, in the order in
+     * which they were reported. */
+    public synchronized List<PhaseMetrics> getMetrics() {
+        return new ArrayList<PhaseMetrics>( metrics );
+    }
+
+    /** Returns the n measurements of the given phase with the longest wall
+     * time, longest first. */
+    public List<PhaseMetrics> getSlowest( String phaseName, int n ) {
+        List<PhaseMetrics> result = new ArrayList<PhaseMetrics>();
+        for( PhaseMetrics m : getMetrics() ) {
+            if( m.getPhaseName().equals( phaseName ) ) result.add( m );
+        }
+        Collections.sort( result, new Comparator<PhaseMetrics>() {
+            public int compare( PhaseMetrics a, PhaseMetrics b ) {
+                return Long.compare( b.getWallTimeNanos(), a.getWallTimeNanos() );
+            }
+        } );
+        return result.subList( 0, Math.min( n, result.size() ) );
+    }
+
+    public synchronized void clear() {
+        metrics.clear();
+    }
+
+    /** Writes the measurements as CSV with a header line. The writer is
+     * flushed but not closed. */
+    public void writeCsv( Writer out ) throws IOException {
+        out.write( "phase,method,wallTimeNanos,allocatedBytes,unitsBefore,unitsAfter,localsBefore,localsAfter\n" );
+        for( PhaseMetrics m : getMetrics() ) {
+            out.write( csv( m.getPhaseName() ) );
+            out.write( ',' );
+            if( m.getMethod() != null ) out.write( csv( m.getMethod().getSignature() ) );
+            out.write( "," + m.getWallTimeNanos() + "," + m.getAllocatedBytes()
+                    + "," + m.getUnitsBefore() + "," + m.getUnitsAfter()
+                    + "," + m.getLocalsBefore() + "," + m.getLocalsAfter() + "\n" );
+        }
+        out.flush();
+    }
+
+    /** Writes the measurements as a JSON array of objects. The writer is
+     * flushed but not closed. */
+    public void writeJson( Writer out ) throws IOException {
+        out.write( "[" );
+        boolean first = true;
+        for( PhaseMetrics m : getMetrics() ) {
+            out.write( first ? "\n" : ",\n" );
+            first = false;
+            out.write( "{\"phase\":" + json( m.getPhaseName() ) );
+            out.write( ",\"method\":" + ( m.getMethod() == null ? "null" : json( m.getMethod().getSignature() ) ) );
+            out.write( ",\"wallTimeNanos\":" + m.getWallTimeNanos()
+                    + ",\"allocatedBytes\":" + m.getAllocatedBytes()
+                    + ",\"unitsBefore\":" + m.getUnitsBefore()
+                    + ",\"unitsAfter\":" + m.getUnitsAfter()
+                    + ",\"localsBefore\":" + m.getLocalsBefore()
+                    + ",\"localsAfter\":" + m.getLocalsAfter() + "}" );
+        }
+        out.write( "\n]\n" );
+        out.flush();
+    }
+
+    /** Quotes s if it contains characters with a meaning in CSV. */
+    private static String csv( String s ) {
+        if( s.indexOf( ',' ) < 0 && s.indexOf( '"' ) < 0 && s.indexOf( '\n' ) < 0 ) return s;
+        return "\"" + s.replace( "\"", "\"\"" ) + "\"";
+    }
+
+    private static String json( String s ) {
+        StringBuilder sb = new StringBuilder( s.length() + 2 );
+        sb.append( '"' );
+        for( int i = 0; i < s.length(); i++ ) {
+            char c = s.charAt( i );
+            switch( c ) {
+            case '"': sb.append( "\\\"" ); break;
+            case '\\': sb.append( "\\\\" ); break;
+            case '\n': sb.append( "\\n" ); break;
+            case '\r': sb.append( "\\r" ); break;
+            case '\t': sb.append( "\\t" ); break;
+            default:
+                if( c < 0x20 ) {
+                    sb.append( String.format( "\\u%04x", (int) c ) );
+                } else {
+                    sb.append( c );
+                }
+            }
+        }
+        sb.append( '"' );
+        return sb.toString();
+    }
+}
@@ -0,0 +1,75 @@
+/* Soot - a J*va Optimization Framework
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place - Suite 330,
+ * Boston, MA 02111-1307, USA.
+ */
+
+package soot.metrics;
+
+import soot.SootMethod;
+
+/**
+ * The measurements taken for one application of a pack or transform. For a
+ * body phase they describe one method; for a scene phase {@link #getMethod()}
+ * is <code>null</code> and the unit and local counts are -1.
+ */
+public final class PhaseMetrics
+{
+    private final String phaseName;
+    private final SootMethod method;
+    private final long wallTimeNanos;
+    private final long allocatedBytes;
+    private final int unitsBefore;
+    private final int unitsAfter;
+    private final int localsBefore;
+    private final int localsAfter;
+
+    public PhaseMetrics( String phaseName, SootMethod method, long wallTimeNanos,
+            long allocatedBytes, int unitsBefore, int unitsAfter,
+            int localsBefore, int localsAfter ) {
+        this.phaseName = phaseName;
+        this.method = method;
+        this.wallTimeNanos = wallTimeNanos;
+        this.allocatedBytes = allocatedBytes;
+        this.unitsBefore = unitsBefore;
+        this.unitsAfter = unitsAfter;
+        this.localsBefore = localsBefore;
+        this.localsAfter = localsAfter;
+    }
+
+    /** Returns the name of the pack or transform, e.g. <code>jb</code> or <code>jb.ls</code>. */
+    public String getPhaseName() { return phaseName; }
+
+    /** Returns the method whose body was transformed, or null for a scene phase. */
+    public SootMethod getMethod() { return method; }
+
+    /** Returns the wall clock time spent in the phase. */
+    public long getWallTimeNanos() { return wallTimeNanos; }
+
+    /** Returns the bytes allocated by the thread running the phase, or -1
+     * if the virtual machine cannot measure them. */
+    public long getAllocatedBytes() { return allocatedBytes; }
+
+    public int getUnitsBefore() { return unitsBefore; }
+    public int getUnitsAfter() { return unitsAfter; }
+    public int getLocalsBefore() { return localsBefore; }
+    public int getLocalsAfter() { return localsAfter; }
+
+    public String toString() {
+        return phaseName + ( method == null ? "" : " " + method.getSignature() )
+            + ": " + wallTimeNanos / 1000 + " us, " + allocatedBytes + " bytes, units "
+            + unitsBefore + " -> " + unitsAfter + ", locals " + localsBefore + " -> " + localsAfter;
+    }
+}
@@ -36,6 +36,11 @@ public class RoboVMLocalAlias extends JimpleLocal {
         super.setVariableTableIndex(variableTableIndex);
     }
 
+    // the slot variable this alias stands for
+    public Local getOwner() {
+        return owner;
+    }
+
     // registers aliases for group of variables of same type
     public void addAliases(Set<Integer> varIndexes) {
         if (aliases == null)
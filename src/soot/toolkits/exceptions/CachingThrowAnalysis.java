@@ -0,0 +1,199 @@
+/* Soot - a J*va Optimization Framework
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place - Suite 330,
+ * Boston, MA 02111-1307, USA.
+ */
+
+package soot.toolkits.exceptions;
+
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import soot.FastHierarchy;
+import soot.Local;
+import soot.Scene;
+import soot.Type;
+import soot.Unit;
+import soot.Value;
+import soot.ValueBox;
+import soot.jimple.Expr;
+import soot.jimple.ThrowStmt;
+
+/**
+ * <p>A {@link ThrowAnalysis} which remembers the result of
+ * {@link #mightThrow(Unit)} for each {@link Unit}, and asks another
+ * <code>ThrowAnalysis</code> only for units it has not seen, or whose
+ * contents have changed since it last saw them.</p>
+ *
+ * <p>The results are kept in a side table with weak references to
+ * the units, so units which are dropped from their bodies are not
+ * kept alive by the cache. Along with each result, the table records
+ * the unit's {@link ValueBox}es, the value in each box, and the type
+ * of each {@link Local} and {@link Expr} among those values. A cached
+ * result is used only if all of these are unchanged, so replacing a
+ * value in any box of the unit, or retyping one of its locals, makes
+ * the next query recompute the result. Results also depend on the
+ * {@link FastHierarchy} which was active when they were computed.</p>
+ *
+ * <p>Any <code>ThrowAnalysis</code> whose answer for a unit depends
+ * only on those values and types may opt in by being wrapped in a
+ * <code>CachingThrowAnalysis</code>, and installed with
+ * {@link Scene#setDefaultThrowAnalysis(ThrowAnalysis)} or passed to
+ * the graphs directly. It pays off only for analyses which cost more
+ * than a table lookup per unit: {@link PedanticThrowAnalysis} and
+ * {@link UnitThrowAnalysis} are both cheaper than the cache, and are
+ * not wrapped by default. The queries about {@link ThrowStmt}s are
+ * passed to the wrapped analysis unchanged.</p>
+ *
+ * <p>A <code>CachingThrowAnalysis</code> may be queried from several
+ * threads at once.</p>
+ */
+public class CachingThrowAnalysis implements ThrowAnalysis {
+
+    private static final int STRIPES = 16;
+
+    private final ThrowAnalysis delegate;
+
+    // The table is split by unit hash code, so that threads working
+    // on different bodies seldom wait for one another.
+    private final Map<Unit, Entry>[] tables;
+
+    /**
+     * Constructs a <code>CachingThrowAnalysis</code> which remembers
+     * the results of <code>delegate</code>.
+     *
+     * @param delegate the analysis whose results are cached.
+     */
+    public CachingThrowAnalysis(ThrowAnalysis delegate) {
+	if (delegate == null) {
+	    throw new NullPointerException("delegate");
+	}
+	this.delegate = delegate;
+	tables = new Map[STRIPES];
+	for (int i = 0; i < STRIPES; i++) {
+	    tables[i] = new WeakHashMap<Unit, Entry>();
+	}
+    }
+
+    /**
+     * Returns the analysis whose results this analysis caches.
+     *
+     * @return the wrapped <code>ThrowAnalysis</code>.
+     */
+    public ThrowAnalysis getDelegate() {
+	return delegate;
+    }
+
+    public ThrowableSet mightThrow(Unit u) {
+	Map<Unit, Entry> table = tableOf(u);
+	Entry entry;
+	synchronized (table) {
+	    entry = table.get(u);
+	}
+	if (entry != null && entry.isCurrent()) {
+	    return entry.result;
+	}
+	entry = new Entry(u, delegate.mightThrow(u));
+	synchronized (table) {
+	    table.put(u, entry);
+	}
+	return entry.result;
+    }
+
+    public ThrowableSet mightThrowExplicitly(ThrowStmt t) {
+	return delegate.mightThrowExplicitly(t);
+    }
+
+    public ThrowableSet mightThrowImplicitly(ThrowStmt t) {
+	return delegate.mightThrowImplicitly(t);
+    }
+
+    /**
+     * Forgets all cached results.
+     */
+    public void clear() {
+	for (int i = 0; i < STRIPES; i++) {
+	    synchronized (tables[i]) {
+		tables[i].clear();
+	    }
+	}
+    }
+
+    /* End of public methods. */
+
+    private Map<Unit, Entry> tableOf(Unit u) {
+	int h = System.identityHashCode(u);
+	return tables[(h ^ (h >>> 16)) & (STRIPES - 1)];
+    }
+
+    private static FastHierarchy activeHierarchy() {
+	Scene scene = Scene.v();
+	return scene.hasFastHierarchy() ? scene.getFastHierarchy() : null;
+    }
+
+    /**
+     * A cached result, with the contents of the unit it was computed
+     * for. Entries are never modified once they are in the table.
+     */
+    private static final class Entry {
+	final ThrowableSet result;
+	final FastHierarchy hierarchy;
+	final ValueBox[] boxes;
+	final Value[] values;
+	// The type of values[i], or null if values[i] is neither
+	// a Local nor an Expr.
+	final Type[] types;
+
+	Entry(Unit u, ThrowableSet result) {
+	    this.result = result;
+	    this.hierarchy = activeHierarchy();
+	    List boxList = u.getUseAndDefBoxes();
+	    int n = boxList.size();
+	    boxes = new ValueBox[n];
+	    values = new Value[n];
+	    types = new Type[n];
+	    for (int i = 0; i < n; i++) {
+		ValueBox box = (ValueBox) boxList.get(i);
+		Value value = box.getValue();
+		boxes[i] = box;
+		values[i] = value;
+		if (value instanceof Local || value instanceof Expr) {
+		    types[i] = value.getType();
+		}
+	    }
+	}
+
+	boolean isCurrent() {
+	    if (hierarchy != activeHierarchy()) {
+		return false;
+	    }
+	    for (int i = 0; i < boxes.length; i++) {
+		Value value = boxes[i].getValue();
+		if (value != values[i]) {
+		    return false;
+		}
+		Type type = types[i];
+		if (type != null) {
+		    Type current = value.getType();
+		    if (current != type && ! type.equals(current)) {
+			return false;
+		    }
+		}
+	    }
+	    return true;
+	}
+    }
+}
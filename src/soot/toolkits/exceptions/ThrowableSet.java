@@ -23,6 +23,9 @@ import soot.*;
 import soot.options.Options;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * <p>A class for representing the set of exceptions that an
@@ -77,11 +80,23 @@ import java.util.*;
  * <code>RefLikeType</code> objects it contains, though, because we trust
  * {@link Scene} to enforce the existence of only one 
  * <code>RefLikeType</code> instance with a given name.</p>
+ *
+ * <p>There is only one <code>ThrowableSet</code> for a given content. The
+ * contents are compared as bit sets over the numbers of the {@link RefType}
+ * and {@link AnySubType} objects in the {@link Scene}. The sets and their
+ * memo tables may be shared between threads.</p>
  */
 
 public final class ThrowableSet {
 
-    private static final boolean INSTRUMENTING = true;
+    /**
+     * Whether to count the operations on sets, which can be reported
+     * with {@link Manager#reportInstrumentation()}. Set the system
+     * property <code>soot.throwableset.instrument</code> to
+     * <code>true</code> to enable it.
+     */
+    private static final boolean INSTRUMENTING = 
+	Boolean.getBoolean("soot.throwableset.instrument");
 
     /**
      * Singleton class for fields and initializers common to all
@@ -92,10 +107,11 @@ public final class ThrowableSet {
     public static class Manager {
 
 	/**
-	 * Map from {@link Integer}s representing set size to all
-	 * <code>ThrowableSet</code>s of that size.
+	 * Map from the contents of sets to the only
+	 * <code>ThrowableSet</code> with those contents.
 	 */
-	private final Map<Integer, List> sizeToSets = new HashMap<Integer, List>();
+	private final ConcurrentMap<Key, ThrowableSet> contentsToSets = 
+	    new ConcurrentHashMap<Key, ThrowableSet>();
 
 	/**
 	 * <code>ThrowableSet</code> containing no exception classes.
@@ -158,24 +174,24 @@ public final class ThrowableSet {
 	final RefType INSTANTIATION_ERROR;
 
 	// counts for instrumenting:
-	private int registeredSets = 0;
-	private int addsOfRefType = 0;
-	private int addsOfAnySubType = 0;
-	private int addsOfSet = 0;
-	private int addsInclusionFromMap = 0;
-	private int addsInclusionFromMemo = 0;
-	private int addsInclusionFromSearch = 0;
-	private int addsInclusionInterrupted = 0;
-	private int addsExclusionWithSearch = 0;
-	private int addsExclusionWithoutSearch = 0;
-	private int removesOfAnySubType = 0;
-	private final int removesFromMap = 0;
-	private final int removesFromMemo = 0;
-	private int removesFromSearch = 0;
-	private int registrationCalls = 0;
-	private int catchableAsQueries = 0;
-	private int catchableAsFromMap = 0;
-	private int catchableAsFromSearch = 0;
+	private final AtomicInteger registeredSets = new AtomicInteger();
+	private final AtomicInteger addsOfRefType = new AtomicInteger();
+	private final AtomicInteger addsOfAnySubType = new AtomicInteger();
+	private final AtomicInteger addsOfSet = new AtomicInteger();
+	private final AtomicInteger addsInclusionFromMap = new AtomicInteger();
+	private final AtomicInteger addsInclusionFromMemo = new AtomicInteger();
+	private final AtomicInteger addsInclusionFromSearch = new AtomicInteger();
+	private final AtomicInteger addsInclusionInterrupted = new AtomicInteger();
+	private final AtomicInteger addsExclusionWithSearch = new AtomicInteger();
+	private final AtomicInteger addsExclusionWithoutSearch = new AtomicInteger();
+	private final AtomicInteger removesOfAnySubType = new AtomicInteger();
+	private final AtomicInteger removesFromMap = new AtomicInteger();
+	private final AtomicInteger removesFromMemo = new AtomicInteger();
+	private final AtomicInteger removesFromSearch = new AtomicInteger();
+	private final AtomicInteger registrationCalls = new AtomicInteger();
+	private final AtomicInteger catchableAsQueries = new AtomicInteger();
+	private final AtomicInteger catchableAsFromMap = new AtomicInteger();
+	private final AtomicInteger catchableAsFromSearch = new AtomicInteger();
 	
 	/**
 	 * Constructs a <code>ThrowableSet.Manager</code> for inclusion in 
@@ -298,7 +314,7 @@ public final class ThrowableSet {
 	 */
 	private ThrowableSet registerSetIfNew(Set include, Set exclude) {
 	    if (INSTRUMENTING) {
-		registrationCalls++;
+		registrationCalls.incrementAndGet();
 	    }
 	    if (include == null) {
 		include = Collections.EMPTY_SET;
@@ -306,25 +322,18 @@ public final class ThrowableSet {
 	    if (exclude == null) {
 		exclude = Collections.EMPTY_SET;
 	    }
-	    int size = include.size() + exclude.size();
-	    Integer sizeKey = new Integer(size);
-
-	    List<ThrowableSet> sizeList = sizeToSets.get(sizeKey);
-	    if (sizeList == null) {
-		sizeList = new LinkedList<ThrowableSet>();
-		sizeToSets.put(sizeKey, sizeList);
-	    }
-	    for (ThrowableSet set : sizeList) {
-		if (set.exceptionsIncluded.equals(include) 
-		    && set.exceptionsExcluded.equals(exclude)) {
-		    return set;
+	    Key key = new Key(include, exclude);
+	    ThrowableSet result = contentsToSets.get(key);
+	    if (result == null) {
+		result = new ThrowableSet(include, exclude, key);
+		ThrowableSet previous = contentsToSets.putIfAbsent(key, result);
+		if (previous != null) {
+		    return previous;
+		}
+		if (INSTRUMENTING) {
+		    registeredSets.incrementAndGet();
 		}
 	    }
-	    if (INSTRUMENTING) {
-		registeredSets++;
-	    }
-	    ThrowableSet result = new ThrowableSet(include, exclude);
-	    sizeList.add(result);
 	    return result;
 	}
 
@@ -337,49 +346,49 @@ public final class ThrowableSet {
 	 * @return a string listing the counts.
 	 */
 	public String reportInstrumentation() {
-	    int setCount = 0;
-	    for (List sizeList : sizeToSets.values()) {
-		setCount += sizeList.size();
+	    if (! INSTRUMENTING) {
+		return "ThrowableSet instrumentation is disabled\n";
 	    }
-	    if (setCount != registeredSets) {
-		throw new IllegalStateException("ThrowableSet.reportInstrumentation() assertion failure: registeredSets != list count");
+	    int setCount = contentsToSets.size();
+	    if (setCount != registeredSets.get()) {
+		throw new IllegalStateException("ThrowableSet.reportInstrumentation() assertion failure: registeredSets != set count");
 	    }
 	    StringBuffer buf = new StringBuffer("registeredSets: ")
 		.append(setCount)
 		.append("\naddsOfRefType: ")
-		.append(addsOfRefType)
+		.append(addsOfRefType.get())
 		.append("\naddsOfAnySubType: ")
-		.append(addsOfAnySubType)
+		.append(addsOfAnySubType.get())
 		.append("\naddsOfSet: ")
-		.append(addsOfSet)
+		.append(addsOfSet.get())
 		.append("\naddsInclusionFromMap: ")
-		.append(addsInclusionFromMap)
+		.append(addsInclusionFromMap.get())
 		.append("\naddsInclusionFromMemo: ")
-		.append(addsInclusionFromMemo)
+		.append(addsInclusionFromMemo.get())
 		.append("\naddsInclusionFromSearch: ")
-		.append(addsInclusionFromSearch)
+		.append(addsInclusionFromSearch.get())
 		.append("\naddsInclusionInterrupted: ")
-		.append(addsInclusionInterrupted)
+		.append(addsInclusionInterrupted.get())
 		.append("\naddsExclusionWithoutSearch: ")
-		.append(addsExclusionWithoutSearch)
+		.append(addsExclusionWithoutSearch.get())
 		.append("\naddsExclusionWithSearch: ")
-		.append(addsExclusionWithSearch)
+		.append(addsExclusionWithSearch.get())
 		.append("\nremovesOfAnySubType: ")
-		.append(removesOfAnySubType)
+		.append(removesOfAnySubType.get())
 		.append("\nremovesFromMap: ")
-		.append(removesFromMap)
+		.append(removesFromMap.get())
 		.append("\nremovesFromMemo: ")
-		.append(removesFromMemo)
+		.append(removesFromMemo.get())
 		.append("\nremovesFromSearch: ")
-		.append(removesFromSearch)
+		.append(removesFromSearch.get())
 		.append("\nregistrationCalls: ")
-		.append(registrationCalls)
+		.append(registrationCalls.get())
 		.append("\ncatchableAsQueries: ")
-		.append(catchableAsQueries)
+		.append(catchableAsQueries.get())
 		.append("\ncatchableAsFromMap: ")
-		.append(catchableAsFromMap)
+		.append(catchableAsFromMap.get())
 		.append("\ncatchableAsFromSearch: ")
-		.append(catchableAsFromSearch)
+		.append(catchableAsFromSearch.get())
 		.append('\n');
 	    return buf.toString();
 	}
@@ -389,7 +398,71 @@ public final class ThrowableSet {
 	 * to the collection of ThrowableSets.   
 	 */
 	Map<Integer, List> getSizeToSets() {
-	    return Manager.v().sizeToSets;
+	    Map<Integer, List> sizeToSets = new HashMap<Integer, List>();
+	    for (ThrowableSet set : Manager.v().contentsToSets.values()) {
+		Integer size = new Integer(set.exceptionsIncluded.size() 
+					   + set.exceptionsExcluded.size());
+		List<ThrowableSet> sizeList = sizeToSets.get(size);
+		if (sizeList == null) {
+		    sizeList = new LinkedList<ThrowableSet>();
+		    sizeToSets.put(size, sizeList);
+		}
+		sizeList.add(set);
+	    }
+	    return sizeToSets;
+	}
+    }
+
+
+    /**
+     * The contents of a <code>ThrowableSet</code>: the numbers of the
+     * {@link RefType} and {@link AnySubType} objects it includes and 
+     * excludes, as bit sets without trailing zero words. Two sets 
+     * have the same contents if and only if they have equal keys.
+     */
+    private static final class Key {
+	private final long[] included;
+	private final long[] excluded;
+	private final int hashCode;
+
+	Key(Set include, Set exclude) {
+	    included = bits(include);
+	    excluded = bits(exclude);
+	    hashCode = 31 * Arrays.hashCode(included) + Arrays.hashCode(excluded);
+	}
+
+	private static long[] bits(Set types) {
+	    int max = -1;
+	    for (Iterator i = types.iterator(); i.hasNext(); ) {
+		max = Math.max(max, ((Type) i.next()).getNumber());
+	    }
+	    long[] result = new long[(max >> 6) + 1];
+	    for (Iterator i = types.iterator(); i.hasNext(); ) {
+		int number = ((Type) i.next()).getNumber();
+		result[number >> 6] |= 1L << number;
+	    }
+	    return result;
+	}
+
+	boolean includes(Type t) {
+	    int number = t.getNumber();
+	    int word = number >> 6;
+	    return word < included.length 
+		&& (included[word] & (1L << number)) != 0;
+	}
+
+	public boolean equals(Object o) {
+	    if (! (o instanceof Key)) {
+		return false;
+	    }
+	    Key k = (Key) o;
+	    return hashCode == k.hashCode 
+		&& Arrays.equals(included, k.included)
+		&& Arrays.equals(excluded, k.excluded);
+	}
+
+	public int hashCode() {
+	    return hashCode;
 	}
     }
 
@@ -428,15 +501,29 @@ public final class ThrowableSet {
      * {@link RefLikeType}, then v is the set that results from adding
      * k to <code>this</code>.
      */
-    private Map<Object,ThrowableSet> memoizedAdds;
+    private final ConcurrentMap<Object,ThrowableSet> memoizedAdds = 
+	new ConcurrentHashMap<Object,ThrowableSet>(4);
+
+    /**
+     * A map from the {@link RefType} of a handler to the result of
+     * {@link #whichCatchableAs(RefType)} for this set.
+     */
+    private final ConcurrentMap<RefType,Pair> memoizedCatches = 
+	new ConcurrentHashMap<RefType,Pair>(4);
+
+    /**
+     * The contents of this set, as bit sets of type numbers.
+     */
+    private final Key key;
 
     private ThrowableSet getMemoizedAdds(Object key) {
-	if (memoizedAdds == null) {
-	    memoizedAdds = new HashMap();
-	}
 	return memoizedAdds.get(key);
     }
 
+    private void putMemoizedAdds(Object key, ThrowableSet value) {
+	memoizedAdds.put(key, value);
+    }
+
 
     /**
      * Constructs a <code>ThrowableSet</code> which contains the
@@ -451,10 +538,14 @@ public final class ThrowableSet {
      * @param exclude The set of {@link AnySubType} 
      *                objects representing the types to be excluded 
      *                from the set.  
+     *
+     * @param key     The contents of <code>include</code> and 
+     *                <code>exclude</code> as bit sets.
      */
-    private ThrowableSet(Set include, Set exclude) {
+    private ThrowableSet(Set include, Set exclude, Key key) {
 	exceptionsIncluded = Collections.unmodifiableSet(include);
 	exceptionsExcluded = Collections.unmodifiableSet(exclude);
+	this.key = key;
 	// We don't need to clone include and exclude to guarantee
 	// immutability since ThrowableSet(Set,Set) is private to this
 	// class, where it is only called (via
@@ -502,29 +593,29 @@ public final class ThrowableSet {
     public ThrowableSet add(RefType e) 
       throws ThrowableSet.AlreadyHasExclusionsException {
 	if (INSTRUMENTING) {
-	    Manager.v().addsOfRefType++;
+	    Manager.v().addsOfRefType.incrementAndGet();
 	}
-	if (this.exceptionsIncluded.contains(e)) {
+	if (key.includes(e)) {
 	    if (INSTRUMENTING) {
-		Manager.v().addsInclusionFromMap++;
-		Manager.v().addsExclusionWithoutSearch++;
+		Manager.v().addsInclusionFromMap.incrementAndGet();
+		Manager.v().addsExclusionWithoutSearch.incrementAndGet();
 	    }
 	    return this; 
 	} else {
 	    ThrowableSet result = getMemoizedAdds(e);
 	    if (result != null) {
 		if (INSTRUMENTING) {
-		    Manager.v().addsInclusionFromMemo++;
-		    Manager.v().addsExclusionWithoutSearch++;
+		    Manager.v().addsInclusionFromMemo.incrementAndGet();
+		    Manager.v().addsExclusionWithoutSearch.incrementAndGet();
 		}
 		return result;
 	    } else {
 		if (INSTRUMENTING) {
-		    Manager.v().addsInclusionFromSearch++;
+		    Manager.v().addsInclusionFromSearch.incrementAndGet();
 		    if (exceptionsExcluded.size() != 0) {
-			Manager.v().addsExclusionWithSearch++;
+			Manager.v().addsExclusionWithSearch.incrementAndGet();
 		    } else {
-			Manager.v().addsExclusionWithoutSearch++;
+			Manager.v().addsExclusionWithoutSearch.incrementAndGet();
 		    }
 		}
 		FastHierarchy hierarchy = Scene.v().getOrMakeFastHierarchy();
@@ -548,7 +639,7 @@ public final class ThrowableSet {
 			// is not an AnySubType.
 			RefType incumbentBase = ((AnySubType) incumbent).getBase();
 			if (hierarchy.canStoreType(e, incumbentBase)) {
-			    memoizedAdds.put(e, this);
+			    putMemoizedAdds(e, this);
 			    return this;
 			}
 		    } else if (! (incumbent instanceof RefType)) {
@@ -562,7 +653,7 @@ public final class ThrowableSet {
 		resultSet.add(e);
 		result = Manager.v().registerSetIfNew(resultSet, 
 						      this.exceptionsExcluded);
-		memoizedAdds.put(e, result);
+		putMemoizedAdds(e, result);
 		return result;
 	    }
 	}
@@ -613,14 +704,14 @@ public final class ThrowableSet {
     public ThrowableSet add(AnySubType e) 
       throws ThrowableSet.AlreadyHasExclusionsException {
 	if (INSTRUMENTING) {
-	    Manager.v().addsOfAnySubType++;
+	    Manager.v().addsOfAnySubType.incrementAndGet();
 	}
 
 	ThrowableSet result = getMemoizedAdds(e);
 	if (result != null) {
 	    if (INSTRUMENTING) {
-		Manager.v().addsInclusionFromMemo++;
-		Manager.v().addsExclusionWithoutSearch++;
+		Manager.v().addsInclusionFromMemo.incrementAndGet();
+		Manager.v().addsExclusionWithoutSearch.incrementAndGet();
 	    }
 	    return result;
 	} else {
@@ -629,9 +720,9 @@ public final class ThrowableSet {
 
 	    if (INSTRUMENTING) {
 		if (exceptionsExcluded.size() != 0) {
-		    Manager.v().addsExclusionWithSearch++;
+		    Manager.v().addsExclusionWithSearch.incrementAndGet();
 		} else {
-		    Manager.v().addsExclusionWithoutSearch++;
+		    Manager.v().addsExclusionWithoutSearch.incrementAndGet();
 		}
 	    }
 	    for (Iterator i = exceptionsExcluded.iterator(); i.hasNext(); ) {
@@ -640,7 +731,7 @@ public final class ThrowableSet {
 		    || hierarchy.canStoreType(exclusionBase, newBase)) {
 		    if (INSTRUMENTING) {
 			// To ensure that the subcategories total properly:
-			Manager.v().addsInclusionInterrupted++;
+			Manager.v().addsInclusionInterrupted.incrementAndGet();
 		    }
 		    throw new AlreadyHasExclusionsException(
 			"ThrowableSet.add(" + e.toString() 
@@ -650,15 +741,15 @@ public final class ThrowableSet {
 		}
 	    }
 
-	    if (this.exceptionsIncluded.contains(e)) {
+	    if (key.includes(e)) {
 		if (INSTRUMENTING) {
-		    Manager.v().addsInclusionFromMap++;
+		    Manager.v().addsInclusionFromMap.incrementAndGet();
 		}
 		return this; 
 
 	    } else {
 		if (INSTRUMENTING) {
-		    Manager.v().addsInclusionFromSearch++;
+		    Manager.v().addsInclusionFromSearch.incrementAndGet();
 		}
 
 		int changes = 0;
@@ -705,7 +796,7 @@ public final class ThrowableSet {
 		} else {
 		    result = this;
 		}
-		memoizedAdds.put(e, result);
+		putMemoizedAdds(e, result);
 		return result;
 	    }
 	}
@@ -730,7 +821,7 @@ public final class ThrowableSet {
     public ThrowableSet add(ThrowableSet s)
       throws ThrowableSet.AlreadyHasExclusionsException {
 	if (INSTRUMENTING) {
-	    Manager.v().addsOfSet++;
+	    Manager.v().addsOfSet.incrementAndGet();
 	}
 	if (exceptionsExcluded.size() > 0 || s.exceptionsExcluded.size() > 0) {
 	    throw new AlreadyHasExclusionsException("ThrowableSet.Add(ThrowableSet): attempt to add to [" + this.toString() + "] after removals recorded.");
@@ -738,14 +829,14 @@ public final class ThrowableSet {
 	ThrowableSet result = getMemoizedAdds(s);
 	if (result == null) {
 	    if (INSTRUMENTING) {
-		Manager.v().addsInclusionFromSearch++;
-		Manager.v().addsExclusionWithoutSearch++;
+		Manager.v().addsInclusionFromSearch.incrementAndGet();
+		Manager.v().addsExclusionWithoutSearch.incrementAndGet();
 	    }
 	    result = this.add(s.exceptionsIncluded);
-	    memoizedAdds.put(s, result);
+	    putMemoizedAdds(s, result);
 	} else if (INSTRUMENTING) {
-	    Manager.v().addsInclusionFromMemo++;
-	    Manager.v().addsExclusionWithoutSearch++;
+	    Manager.v().addsInclusionFromMemo.incrementAndGet();
+	    Manager.v().addsExclusionWithoutSearch.incrementAndGet();
 	}
 	return result;
     }
@@ -861,14 +952,14 @@ public final class ThrowableSet {
      */
     public boolean catchableAs(RefType catcher) {
 	if (INSTRUMENTING) {
-	    Manager.v().catchableAsQueries++;
+	    Manager.v().catchableAsQueries.incrementAndGet();
 	}
 
 	FastHierarchy h = Scene.v().getOrMakeFastHierarchy();
 
 	if (exceptionsExcluded.size() > 0) {
 	    if (INSTRUMENTING) {
-		Manager.v().catchableAsFromSearch++;
+		Manager.v().catchableAsFromSearch.incrementAndGet();
 	    }
 	    for (Iterator i = exceptionsExcluded.iterator(); i.hasNext(); ) {
 		AnySubType exclusion = (AnySubType) i.next();
@@ -878,19 +969,19 @@ public final class ThrowableSet {
 	    }
 	}
 
-	if (exceptionsIncluded.contains(catcher)) {
+	if (key.includes(catcher)) {
 	    if (INSTRUMENTING) {
 		if (exceptionsExcluded.size() == 0) {
-		    Manager.v().catchableAsFromMap++;
+		    Manager.v().catchableAsFromMap.incrementAndGet();
 		} else {
-		    Manager.v().catchableAsFromSearch++;
+		    Manager.v().catchableAsFromSearch.incrementAndGet();
 		}
 	    }
 	    return true;
 	} else {
 	    if (INSTRUMENTING) {
 		if (exceptionsExcluded.size() == 0) {
-		    Manager.v().catchableAsFromSearch++;
+		    Manager.v().catchableAsFromSearch.incrementAndGet();
 		}
 	    }
 	    for (Iterator i = exceptionsIncluded.iterator(); i.hasNext(); ) {
@@ -933,19 +1024,38 @@ public final class ThrowableSet {
      */
     public Pair whichCatchableAs(RefType catcher) {
 	if (INSTRUMENTING) {
-	    Manager.v().removesOfAnySubType++;
+	    Manager.v().removesOfAnySubType.incrementAndGet();
+	}
+
+	Pair result = memoizedCatches.get(catcher);
+	if (result != null) {
+	    if (INSTRUMENTING) {
+		Manager.v().removesFromMemo.incrementAndGet();
+	    }
+	    return result;
+	}
+
+	if (INSTRUMENTING) {
+	    Manager.v().removesFromSearch.incrementAndGet();
 	}
+	result = searchCatchableAs(catcher);
+	Pair previous = memoizedCatches.putIfAbsent(catcher, result);
+	return previous == null ? result : previous;
+    }
 
+
+    /**
+     * Partitions the exceptions in this <code>ThrowableSet</code>
+     * as {@link #whichCatchableAs(RefType)} does, without looking 
+     * the result up in the memoized partitions.
+     */
+    private Pair searchCatchableAs(RefType catcher) {
 	FastHierarchy h = Scene.v().getOrMakeFastHierarchy();
 	Set caughtIncluded = null;
 	Set caughtExcluded = null;
 	Set uncaughtIncluded = null;
 	Set uncaughtExcluded = null;
 
-	if (INSTRUMENTING) {
-	    Manager.v().removesFromSearch++;
-	}
-
 	for (Iterator i = exceptionsExcluded.iterator(); i.hasNext(); ) {
 	    AnySubType exclusion = (AnySubType) i.next();
 	    RefType exclusionBase = exclusion.getBase();
@@ -1367,10 +1477,6 @@ public final class ThrowableSet {
      * ThrowableSet's internals.
      */
     Map getMemoizedAdds() {
-	if (memoizedAdds == null) {
-	    return Collections.EMPTY_MAP;
-	} else {
-	    return Collections.unmodifiableMap(memoizedAdds);
-	}
+	return Collections.unmodifiableMap(memoizedAdds);
     }
 }
@@ -31,6 +31,7 @@ import soot.Unit;
 import soot.options.Options;
 import soot.util.Chain;
 import soot.toolkits.graph.ExceptionalUnitGraph;
+import soot.toolkits.scalar.BodyAnalysisManager;
 
 /**
  * A {@link BodyTransformer} that shrinks the protected area covered
@@ -61,7 +62,8 @@ public final class TrapTightener extends BodyTransformer {
 	Chain trapChain = body.getTraps();
 	Chain unitChain = body.getUnits();
 	if (trapChain.size() > 0) {
-	    ExceptionalUnitGraph graph = new ExceptionalUnitGraph(body);
+	    ExceptionalUnitGraph graph = BodyAnalysisManager.v().getExceptionalUnitGraph(body);
+	    boolean changed = false;
 
 	    for (Iterator trapIt = trapChain.iterator(); trapIt.hasNext(); ) {
 		Trap trap = (Trap) trapIt.next();
@@ -91,17 +93,23 @@ public final class TrapTightener extends BodyTransformer {
 		if (firstTrappedThrower != null &&
 		    firstTrappedUnit != firstTrappedThrower) {
 		    trap.setBeginUnit(firstTrappedThrower);
+		    changed = true;
 		}
 		if (lastTrappedThrower == null) {
 		    lastTrappedThrower = firstTrappedUnit;
 		}
 		if (lastTrappedUnit != lastTrappedThrower) {
 		    trap.setEndUnit((Unit) unitChain.getSuccOf(lastTrappedThrower));
+		    changed = true;
 		}
 	    }
+	    if (changed)
+		BodyAnalysisManager.v().invalidate(body);
 	}
     }
 
+    protected boolean maintainsBodyAnalyses() { return true; }
+
     /**
      * A utility routine which determines if a particular {@link Unit} 
      * might throw an exception to a particular {@link Trap}, according to 
@@ -0,0 +1,674 @@
+/* Soot - a J*va Optimization Framework
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place - Suite 330,
+ * Boston, MA 02111-1307, USA.
+ */
+
+package soot.toolkits.graph;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+
+import soot.Body;
+import soot.RefType;
+import soot.Scene;
+import soot.Timers;
+import soot.Trap;
+import soot.Unit;
+import soot.UnitBox;
+import soot.jimple.ThrowStmt;
+import soot.options.Options;
+import soot.toolkits.exceptions.ThrowAnalysis;
+import soot.toolkits.exceptions.ThrowableSet;
+
+/**
+ * <p>An {@link ExceptionalUnitGraph} which numbers the {@link Unit}s of its
+ * body in chain order and stores its edges in compressed sparse row form:
+ * for every kind of edge one array of offsets, indexed by unit number, into
+ * one array of unit numbers. The lists returned by the accessors are
+ * unmodifiable views of these arrays which are created on first request.</p>
+ *
+ * <p>The graph has exactly the same nodes, edges, heads, tails and
+ * exception destinations as an <code>ExceptionalUnitGraph</code> built with
+ * the same parameters, and the lists it returns are in the same order, but
+ * it allocates a small, fixed number of arrays instead of several maps with
+ * a list per unit. The <code>Map</code> fields inherited from
+ * <code>ExceptionalUnitGraph</code> and <code>UnitGraph</code> are left
+ * <code>null</code>, and the <code>build...</code> methods of those classes
+ * other than {@link #buildExceptionDests(ThrowAnalysis)} are not used;
+ * subclasses which rely on either should extend
+ * <code>ExceptionalUnitGraph</code> instead.</p>
+ */
+public class CompactExceptionalUnitGraph extends ExceptionalUnitGraph
+{
+    private Unit[] units;
+    private Unit[] indexKeys;	// Open addressing table from units
+    private int[] indexValues;	// to their numbers.
+
+    private Adjacency unexceptionalSuccs;
+    private Adjacency unexceptionalPreds;
+    private Adjacency exceptionalSuccs;	// null if the body has no Traps.
+    private Adjacency exceptionalPreds;
+    private Adjacency succs;		// The same as unexceptionalSuccs and
+    private Adjacency preds;		// unexceptionalPreds if there are no Traps.
+
+    private Collection<ExceptionDest>[] exceptionDests; // null if the body
+							// has no Traps.
+
+    /**
+     *  Constructs the graph for a given Body instance, using the
+     *  <code>ThrowAnalysis</code> and <code>omitExceptingUnitEdges</code>
+     *  value that are passed as parameters.
+     *
+     *  @see ExceptionalUnitGraph#ExceptionalUnitGraph(Body, ThrowAnalysis, boolean)
+     */
+    public CompactExceptionalUnitGraph(Body body, ThrowAnalysis throwAnalysis,
+				       boolean omitExceptingUnitEdges) {
+	super(body, true);
+	initialize(throwAnalysis, omitExceptingUnitEdges);
+    }
+
+    /**
+     *  Constructs the graph from a given Body instance using the
+     *  passed {@link ThrowAnalysis} and the default value of
+     *  <code>omitExceptingUnitEdges</code>.
+     *
+     *  @see ExceptionalUnitGraph#ExceptionalUnitGraph(Body, ThrowAnalysis)
+     */
+    public CompactExceptionalUnitGraph(Body body, ThrowAnalysis throwAnalysis) {
+	this(body, throwAnalysis, Options.v().omit_excepting_unit_edges());
+    }
+
+    /**
+     *  Constructs the graph from a given Body instance using the
+     *  {@link Scene}'s default {@link ThrowAnalysis} and the default value
+     *  of <code>omitExceptingUnitEdges</code>.
+     *
+     *  @see ExceptionalUnitGraph#ExceptionalUnitGraph(Body)
+     */
+    public CompactExceptionalUnitGraph(Body body) {
+	this(body, Scene.v().getDefaultThrowAnalysis(),
+	     Options.v().omit_excepting_unit_edges());
+    }
+
+
+    /**
+     *  Builds the arrays of the graph, following the same steps as
+     *  {@link ExceptionalUnitGraph#initialize(ThrowAnalysis, boolean)}.
+     */
+    protected void initialize(ThrowAnalysis throwAnalysis,
+			      boolean omitExceptingUnitEdges) {
+        if(Options.v().time())
+            Timers.v().graphTimer.start();
+
+	this.throwAnalysis = throwAnalysis;
+	numberUnits();
+	buildUnexceptionalArrays();
+
+	IntList trapsThatAreHeads = new IntList();
+	if (body.getTraps().size() == 0) {
+	    succs = unexceptionalSuccs;
+	    preds = unexceptionalPreds;
+	} else {
+	    Map<Unit,Collection<ExceptionDest>> destMap = buildExceptionDests(throwAnalysis);
+	    @SuppressWarnings("unchecked")
+	    Collection<ExceptionDest>[] dests = new Collection[units.length];
+	    for (Map.Entry<Unit,Collection<ExceptionDest>> entry : destMap.entrySet()) {
+		dests[indexOf(entry.getKey())] = entry.getValue();
+	    }
+	    exceptionDests = dests;
+
+	    EdgeList edges = buildExceptionalEdges(throwAnalysis, destMap,
+						   omitExceptingUnitEdges,
+						   trapsThatAreHeads);
+	    exceptionalSuccs = edges.toAdjacency(true);
+	    exceptionalPreds = edges.toAdjacency(false);
+	    succs = combine(unexceptionalSuccs, exceptionalSuccs);
+	    preds = combine(unexceptionalPreds, exceptionalPreds);
+	}
+
+	buildHeadsAndTails(trapsThatAreHeads);
+
+        if(Options.v().time())
+            Timers.v().graphTimer.end();
+    }
+
+
+    private void numberUnits() {
+	int size = unitChain.size();
+	units = new Unit[size];
+	int capacity = 4;
+	while (capacity < size * 2) {
+	    capacity <<= 1;
+	}
+	indexKeys = new Unit[capacity];
+	indexValues = new int[capacity];
+	int i = 0;
+	for (Iterator<Unit> it = unitChain.iterator(); it.hasNext(); i++) {
+	    Unit u = it.next();
+	    units[i] = u;
+	    int slot = System.identityHashCode(u) & (capacity - 1);
+	    while (indexKeys[slot] != null) {
+		slot = (slot + 1) & (capacity - 1);
+	    }
+	    indexKeys[slot] = u;
+	    indexValues[slot] = i;
+	}
+    }
+
+
+    /** Returns the number of <code>u</code>, or -1 if it is not in the graph. */
+    private int indexOf(Object u) {
+	int mask = indexKeys.length - 1;
+	int slot = System.identityHashCode(u) & mask;
+	Unit key;
+	while ((key = indexKeys[slot]) != null) {
+	    if (key == u) {
+		return indexValues[slot];
+	    }
+	    slot = (slot + 1) & mask;
+	}
+	return -1;
+    }
+
+
+    private int checkedIndexOf(Unit u) {
+	int index = indexOf(u);
+	if (index < 0) {
+	    throw new RuntimeException("Invalid unit " + u);
+	}
+	return index;
+    }
+
+
+    /**
+     *  Computes the unexceptional edges in the same order as
+     *  {@link UnitGraph#buildUnexceptionalEdges(Map, Map)}.
+     */
+    private void buildUnexceptionalArrays() {
+	int n = units.length;
+	int[] offsets = new int[n + 1];
+	IntList targets = new IntList();
+	for (int i = 0; i < n; i++) {
+	    Unit u = units[i];
+	    int start = targets.size;
+	    if (u.fallsThrough() && i + 1 < n) {
+		targets.add(i + 1);
+	    }
+	    if (u.branches()) {
+		for (Iterator<UnitBox> it = u.getUnitBoxes().iterator(); it.hasNext(); ) {
+		    int target = checkedIndexOf(it.next().getUnit());
+		    // Arbitrary bytecode can branch to the same
+		    // target it falls through to, so we screen for duplicates:
+		    if (targets.indexOf(target, start) < 0) {
+			targets.add(target);
+		    }
+		}
+	    }
+	    offsets[i + 1] = targets.size;
+	}
+	unexceptionalSuccs = new Adjacency(offsets, targets.toArray());
+	unexceptionalPreds = unexceptionalSuccs.transpose();
+    }
+
+
+    /**
+     *  Computes the exceptional edges in the same order as
+     *  {@link ExceptionalUnitGraph#buildExceptionalEdges(ThrowAnalysis, Map, Map, Map, boolean)},
+     *  adding the numbers of the trap <code>Unit</code>s which might catch
+     *  exceptions thrown by the first <code>Unit</code> to
+     *  <code>trapsThatAreHeads</code>.
+     */
+    private EdgeList buildExceptionalEdges(ThrowAnalysis throwAnalysis,
+					   Map<Unit,Collection<ExceptionDest>> destMap,
+					   boolean omitExceptingUnitEdges,
+					   IntList trapsThatAreHeads) {
+	EdgeList edges = new EdgeList(units.length);
+
+	for (Map.Entry<Unit,Collection<ExceptionDest>> entry : destMap.entrySet()) {
+	    Unit throwerUnit = entry.getKey();
+	    int thrower = indexOf(throwerUnit);
+
+	    boolean alwaysAddSelfEdges = ((! omitExceptingUnitEdges) ||
+					  mightHaveSideEffects(throwerUnit));
+	    ThrowableSet predThrowables = null;
+	    ThrowableSet selfThrowables = null;
+	    if (throwerUnit instanceof ThrowStmt) {
+		ThrowStmt throwStmt = (ThrowStmt) throwerUnit;
+		predThrowables = throwAnalysis.mightThrowImplicitly(throwStmt);
+		selfThrowables = throwAnalysis.mightThrowExplicitly(throwStmt);
+	    }
+
+	    for (ExceptionDest dest : entry.getValue()) {
+		if (dest.getTrap() != null) {
+		    int catcher = indexOf(dest.getTrap().getHandlerUnit());
+		    RefType trapsType = dest.getTrap().getException().getType();
+		    if (predThrowables == null ||
+			predThrowables.catchableAs(trapsType)) {
+			if (thrower == 0) {
+			    trapsThatAreHeads.addIfAbsent(catcher);
+			}
+			int[] predOffsets = unexceptionalPreds.offsets;
+			for (int p = predOffsets[thrower]; p < predOffsets[thrower + 1]; p++) {
+			    edges.add(unexceptionalPreds.targets[p], catcher);
+			}
+		    }
+		    if (alwaysAddSelfEdges ||
+			(selfThrowables != null &&
+			 selfThrowables.catchableAs(trapsType))) {
+			edges.add(thrower, catcher);
+		    }
+		}
+	    }
+	}
+
+	// Transitive exceptional edges, for handlers which might
+	// themselves throw an exception that is caught within the
+	// method. The worklist holds CFG edges leading to such a
+	// handler, with a head of -1 standing for the fictitious
+	// predecessor of the first Unit.
+	IntList workHeads = new IntList();
+	IntList workTails = new IntList();
+
+	for (Iterator<Trap> trapIt = body.getTraps().iterator(); trapIt.hasNext(); ) {
+	    int handlerStart = indexOf(trapIt.next().getHandlerUnit());
+	    if (mightThrowToIntraproceduralCatcher(handlerStart)) {
+		int[] predOffsets = unexceptionalPreds.offsets;
+		for (int p = predOffsets[handlerStart]; p < predOffsets[handlerStart + 1]; p++) {
+		    workHeads.add(unexceptionalPreds.targets[p]);
+		    workTails.add(handlerStart);
+		}
+		for (int e = edges.firstIn[handlerStart]; e >= 0; e = edges.nextIn[e]) {
+		    workHeads.add(edges.heads[e]);
+		    workTails.add(handlerStart);
+		}
+		if (trapsThatAreHeads.indexOf(handlerStart, 0) >= 0) {
+		    workHeads.add(-1);
+		    workTails.add(handlerStart);
+		}
+	    }
+	}
+
+	for (int w = 0; w < workHeads.size; w++) {
+	    int pred = workHeads.values[w];
+	    Collection<ExceptionDest> throwerDests = exceptionDests[workTails.values[w]];
+	    if (throwerDests == null) {
+		continue;
+	    }
+	    for (ExceptionDest dest : throwerDests) {
+		if (dest.getTrap() != null) {
+		    int handlerStart = indexOf(dest.getTrap().getHandlerUnit());
+		    boolean edgeAdded;
+		    if (pred < 0) {
+			edgeAdded = trapsThatAreHeads.addIfAbsent(handlerStart);
+		    } else {
+			edgeAdded = edges.add(pred, handlerStart);
+		    }
+		    if (edgeAdded && mightThrowToIntraproceduralCatcher(handlerStart)) {
+			workHeads.add(pred);
+			workTails.add(handlerStart);
+		    }
+		}
+	    }
+	}
+	return edges;
+    }
+
+
+    private boolean mightThrowToIntraproceduralCatcher(int unit) {
+	Collection<ExceptionDest> dests = exceptionDests[unit];
+	if (dests != null) {
+	    for (ExceptionDest dest : dests) {
+		if (dest.getTrap() != null) {
+		    return true;
+		}
+	    }
+	}
+	return false;
+    }
+
+
+    /**
+     *  Merges unexceptional and exceptional edges in the same order as
+     *  {@link UnitGraph#combineMapValues(Map, Map)}.
+     */
+    private static Adjacency combine(Adjacency a, Adjacency b) {
+	int n = a.offsets.length - 1;
+	int[] offsets = new int[n + 1];
+	int[] targets = new int[a.targets.length + b.targets.length];
+	int size = 0;
+	for (int i = 0; i < n; i++) {
+	    int aStart = a.offsets[i], aEnd = a.offsets[i + 1];
+	    int bStart = b.offsets[i], bEnd = b.offsets[i + 1];
+	    // Copy the longer list first, screening the other for duplicates.
+	    Adjacency first = a, second = b;
+	    if (aEnd - aStart < bEnd - bStart) {
+		first = b;
+		second = a;
+	    }
+	    int start = size;
+	    for (int j = first.offsets[i]; j < first.offsets[i + 1]; j++) {
+		targets[size++] = first.targets[j];
+	    }
+	    int firstEnd = size;
+	    for (int j = second.offsets[i]; j < second.offsets[i + 1]; j++) {
+		int target = second.targets[j];
+		boolean duplicate = false;
+		for (int k = start; k < firstEnd; k++) {
+		    if (targets[k] == target) {
+			duplicate = true;
+			break;
+		    }
+		}
+		if (! duplicate) {
+		    targets[size++] = target;
+		}
+	    }
+	    offsets[i + 1] = size;
+	}
+	if (size < targets.length) {
+	    targets = Arrays.copyOf(targets, size);
+	}
+	return new Adjacency(offsets, targets);
+    }
+
+
+    /**
+     *  Defines the heads and tails as
+     *  {@link ExceptionalUnitGraph#buildHeadsAndTails()} describes.
+     */
+    private void buildHeadsAndTails(IntList trapsThatAreHeads) {
+	List<Unit> headList = new ArrayList<Unit>(trapsThatAreHeads.size + 1);
+	for (int i = 0; i < trapsThatAreHeads.size; i++) {
+	    headList.add(units[trapsThatAreHeads.values[i]]);
+	}
+	Unit entryPoint = unitChain.getFirst();
+	if (! headList.contains(entryPoint)) {
+	    headList.add(entryPoint);
+	}
+
+	List<Unit> tailList = new ArrayList<Unit>();
+	for (int i = 0; i < units.length; i++) {
+	    Unit u = units[i];
+	    if (u instanceof soot.jimple.ReturnStmt ||
+		u instanceof soot.jimple.ReturnVoidStmt) {
+		tailList.add(u);
+	    } else if (u instanceof ThrowStmt) {
+		Collection<ExceptionDest> dests =
+		    exceptionDests == null ? null : exceptionDests[i];
+		boolean escapes = (dests == null);
+		if (dests != null) {
+		    for (ExceptionDest dest : dests) {
+			if (dest.getTrap() == null) {
+			    escapes = true;
+			    break;
+			}
+		    }
+		}
+		if (escapes) {
+		    tailList.add(u);
+		}
+	    }
+	}
+	tails = Collections.unmodifiableList(tailList);
+	heads = Collections.unmodifiableList(headList);
+    }
+
+
+    public Collection<ExceptionDest> getExceptionDests(Unit u) {
+	int index = indexOf(u);
+	Collection<ExceptionDest> result = null;
+	if (index >= 0 && exceptionDests != null) {
+	    result = exceptionDests[index];
+	}
+	if (result == null) {
+	    result = new LinkedList<ExceptionDest>();
+	    result.add(new ExceptionDest(null, throwAnalysis.mightThrow(u)));
+	}
+	return result;
+    }
+
+    public List<Unit> getPredsOf(Unit u) {
+	int index = indexOf(u);
+	if (index < 0)
+	    throw new NoSuchElementException("Invalid unit " + u);
+	return preds.get(units, index);
+    }
+
+    public List<Unit> getSuccsOf(Unit u) {
+	return succs.get(units, checkedIndexOf(u));
+    }
+
+    public List<Unit> getUnexceptionalPredsOf(Unit u) {
+	return unexceptionalPreds.get(units, checkedIndexOf(u));
+    }
+
+    public List<Unit> getUnexceptionalSuccsOf(Unit u) {
+	return unexceptionalSuccs.get(units, checkedIndexOf(u));
+    }
+
+    public List<Unit> getExceptionalPredsOf(Unit u) {
+	int index = indexOf(u);
+	if (index < 0 || exceptionalPreds == null) {
+	    return Collections.emptyList();
+	}
+	return exceptionalPreds.get(units, index);
+    }
+
+    public List<Unit> getExceptionalSuccsOf(Unit u) {
+	int index = indexOf(u);
+	if (index < 0 || exceptionalSuccs == null) {
+	    return Collections.emptyList();
+	}
+	return exceptionalSuccs.get(units, index);
+    }
+
+
+    /**
+     *  One kind of edge in compressed sparse row form: the edges of node
+     *  <code>i</code> lead to the nodes in <code>targets</code> from
+     *  <code>offsets[i]</code> up to <code>offsets[i + 1]</code>.
+     */
+    private static final class Adjacency {
+	final int[] offsets;
+	final int[] targets;
+	private List<Unit>[] views;
+
+	Adjacency(int[] offsets, int[] targets) {
+	    this.offsets = offsets;
+	    this.targets = targets;
+	}
+
+	List<Unit> get(Unit[] units, int node) {
+	    int from = offsets[node];
+	    int to = offsets[node + 1];
+	    if (from == to) {
+		return Collections.emptyList();
+	    }
+	    List<Unit>[] v = views;
+	    if (v == null) {
+		@SuppressWarnings("unchecked")
+		List<Unit>[] newViews = new List[offsets.length - 1];
+		views = v = newViews;
+	    }
+	    List<Unit> result = v[node];
+	    if (result == null) {
+		v[node] = result = new Slice(units, targets, from, to);
+	    }
+	    return result;
+	}
+
+	/** Returns the reversed edges, in the order of their sources. */
+	Adjacency transpose() {
+	    int n = offsets.length - 1;
+	    int[] reverseOffsets = new int[n + 1];
+	    for (int target : targets) {
+		reverseOffsets[target + 1]++;
+	    }
+	    for (int i = 0; i < n; i++) {
+		reverseOffsets[i + 1] += reverseOffsets[i];
+	    }
+	    int[] fill = Arrays.copyOf(reverseOffsets, n);
+	    int[] reverseTargets = new int[targets.length];
+	    for (int i = 0; i < n; i++) {
+		for (int j = offsets[i]; j < offsets[i + 1]; j++) {
+		    reverseTargets[fill[targets[j]]++] = i;
+		}
+	    }
+	    return new Adjacency(reverseOffsets, reverseTargets);
+	}
+    }
+
+
+    /** An unmodifiable view of a range of an {@link Adjacency}. */
+    private static final class Slice extends AbstractList<Unit> implements RandomAccess {
+	private final Unit[] units;
+	private final int[] targets;
+	private final int from;
+	private final int size;
+
+	Slice(Unit[] units, int[] targets, int from, int to) {
+	    this.units = units;
+	    this.targets = targets;
+	    this.from = from;
+	    this.size = to - from;
+	}
+
+	public Unit get(int index) {
+	    if (index < 0 || index >= size)
+		throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+	    return units[targets[from + index]];
+	}
+
+	public int size() {
+	    return size;
+	}
+    }
+
+
+    /**
+     *  The exceptional edges under construction, in the order they were
+     *  added, threaded into a list of outgoing and a list of incoming
+     *  edges per node.
+     */
+    private static final class EdgeList {
+	final int[] firstOut, lastOut, firstIn, lastIn;
+	int[] heads = new int[16], tails = new int[16];
+	int[] nextOut = new int[16], nextIn = new int[16];
+	int size;
+
+	EdgeList(int nodes) {
+	    firstOut = new int[nodes];
+	    lastOut = new int[nodes];
+	    firstIn = new int[nodes];
+	    lastIn = new int[nodes];
+	    Arrays.fill(firstOut, -1);
+	    Arrays.fill(firstIn, -1);
+	}
+
+	/** Adds an edge unless it is already present, returning true if it was added. */
+	boolean add(int head, int tail) {
+	    for (int e = firstOut[head]; e >= 0; e = nextOut[e]) {
+		if (tails[e] == tail) {
+		    return false;
+		}
+	    }
+	    if (size == heads.length) {
+		int capacity = size * 2;
+		heads = Arrays.copyOf(heads, capacity);
+		tails = Arrays.copyOf(tails, capacity);
+		nextOut = Arrays.copyOf(nextOut, capacity);
+		nextIn = Arrays.copyOf(nextIn, capacity);
+	    }
+	    int e = size++;
+	    heads[e] = head;
+	    tails[e] = tail;
+	    nextOut[e] = -1;
+	    nextIn[e] = -1;
+	    if (firstOut[head] < 0)
+		firstOut[head] = e;
+	    else
+		nextOut[lastOut[head]] = e;
+	    lastOut[head] = e;
+	    if (firstIn[tail] < 0)
+		firstIn[tail] = e;
+	    else
+		nextIn[lastIn[tail]] = e;
+	    lastIn[tail] = e;
+	    return true;
+	}
+
+	Adjacency toAdjacency(boolean outgoing) {
+	    int n = firstOut.length;
+	    int[] first = outgoing ? firstOut : firstIn;
+	    int[] next = outgoing ? nextOut : nextIn;
+	    int[] other = outgoing ? tails : heads;
+	    int[] offsets = new int[n + 1];
+	    int[] targets = new int[size];
+	    int k = 0;
+	    for (int i = 0; i < n; i++) {
+		for (int e = first[i]; e >= 0; e = next[e]) {
+		    targets[k++] = other[e];
+		}
+		offsets[i + 1] = k;
+	    }
+	    return new Adjacency(offsets, targets);
+	}
+    }
+
+
+    /** A growable list of <code>int</code>s. */
+    private static final class IntList {
+	int[] values = new int[16];
+	int size;
+
+	void add(int value) {
+	    if (size == values.length) {
+		values = Arrays.copyOf(values, size * 2);
+	    }
+	    values[size++] = value;
+	}
+
+	boolean addIfAbsent(int value) {
+	    if (indexOf(value, 0) >= 0) {
+		return false;
+	    }
+	    add(value);
+	    return true;
+	}
+
+	int indexOf(int value, int from) {
+	    for (int i = from; i < size; i++) {
+		if (values[i] == value) {
+		    return i;
+		}
+	    }
+	    return -1;
+	}
+
+	int[] toArray() {
+	    return Arrays.copyOf(values, size);
+	}
+    }
+}
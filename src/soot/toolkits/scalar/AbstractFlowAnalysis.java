@@ -78,6 +78,18 @@ public abstract class AbstractFlowAnalysis<N,A>
      */
     protected boolean treatTrapHandlersAsEntries() { return false; }
 
+    /**
+     * Returns true to have <code>doAnalysis</code> number the graph nodes
+     * densely in iteration order once and run the fixed point iteration on
+     * arrays indexed by those numbers, with a bit set as worklist, instead
+     * of on maps and a sorted set of nodes. Nodes are visited in the same
+     * order, so the results are the same; the maps of flow sets are filled
+     * in when the iteration has finished. Analyses overriding
+     * <code>constructWorklist</code> must not return true. Ignored in
+     * interactive mode.
+     */
+    protected boolean useNumberedSolver() { return false; }
+
     /** Returns true if this analysis is forwards. */
     protected abstract boolean isForward();
 
@@ -112,6 +124,9 @@ public abstract class AbstractFlowAnalysis<N,A>
 
     /**
      * Merges in into inout, just before node succNode.
+     * By default, this merges into a new flow object and copies the result
+     * back. Analyses whose merge can update <code>inout</code> in place
+     * (e.g. a union) should override this to avoid the allocation.
      */
     protected void mergeInto(N succNode, A inout, A in) {
         A tmp = newInitialFlow();
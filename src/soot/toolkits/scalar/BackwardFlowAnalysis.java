@@ -62,6 +62,11 @@ public abstract class BackwardFlowAnalysis<N,A> extends FlowAnalysis<N,A>
 
     protected void doAnalysis()
     {
+        if (useNumberedSolver() && !Options.v().interactive_mode()) {
+            doNumberedAnalysis();
+            return;
+        }
+
         final Map<N, Integer> numbers = new HashMap<N, Integer>();
         List<N> orderedUnits = constructOrderer().newList(graph,true);
         int i = 1;
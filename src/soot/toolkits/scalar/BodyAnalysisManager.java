@@ -0,0 +1,211 @@
+/* Soot - a J*va Optimization Framework
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place - Suite 330,
+ * Boston, MA 02111-1307, USA.
+ */
+
+package soot.toolkits.scalar;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import soot.Body;
+import soot.G;
+import soot.PatchingChain;
+import soot.Scene;
+import soot.Singletons;
+import soot.options.Options;
+import soot.toolkits.exceptions.ThrowAnalysis;
+import soot.toolkits.graph.ExceptionalUnitGraph;
+import soot.util.Chain;
+import soot.util.HashChain;
+
+/**
+ * Hands out {@link ExceptionalUnitGraph}s, {@link LiveLocals},
+ * {@link LocalDefs} and {@link LocalUses} for a {@link Body}, reusing
+ * earlier results as long as the body has not changed.
+ *
+ * <p>Results are only cached while a scope is open on the body, which
+ * {@link soot.Pack#apply(Body)} does for the duration of a pack. Outside
+ * a scope every call computes a fresh result. A cached result is dropped
+ * as soon as the modification count of the body's unit, trap or local
+ * chain differs from the one it was computed for. Only {@link HashChain}s
+ * and {@link PatchingChain}s over them count their modifications; if any
+ * of the chains is of another kind, nothing is cached. Transformers that
+ * change a body without touching its chains (e.g. by replacing the value
+ * in a {@link soot.ValueBox} or moving a trap boundary) must call
+ * {@link #invalidate(Body)}; see {@link soot.BodyTransformer#maintainsBodyAnalyses()}.
+ *
+ * <p>A body must not be transformed by more than one thread at a time;
+ * different bodies may be processed concurrently.
+ */
+public class BodyAnalysisManager
+{
+    public BodyAnalysisManager( Singletons.Global g ) {}
+    public static BodyAnalysisManager v() { return G.v().soot_toolkits_scalar_BodyAnalysisManager(); }
+
+    private final Map<Body, Entry> entries = new ConcurrentHashMap<Body, Entry>();
+
+    /** The analyses cached for one body, valid for the recorded chain states. */
+    private static class Entry
+    {
+        int depth;
+        long unitCount, trapCount, localCount;
+        final Map<Pair<ThrowAnalysis, Boolean>, ExceptionalUnitGraph> graphs =
+            new HashMap<Pair<ThrowAnalysis, Boolean>, ExceptionalUnitGraph>();
+        LiveLocals liveLocals;
+        LocalDefs localDefs;
+        LocalUses localUses;
+
+        void clear()
+        {
+            graphs.clear();
+            liveLocals = null;
+            localDefs = null;
+            localUses = null;
+        }
+    }
+
+    /** Starts caching analyses for <code>b</code>. Scopes may nest; each
+     * call must be matched by a call to {@link #exitScope(Body)}. */
+    public void enterScope(Body b)
+    {
+        Entry e = entries.get(b);
+        if (e == null) {
+            e = new Entry();
+            record(b, e);
+            entries.put(b, e);
+        }
+        e.depth++;
+    }
+
+    /** Closes a scope opened by {@link #enterScope(Body)}. When the
+     * outermost scope is closed the cached analyses are released. */
+    public void exitScope(Body b)
+    {
+        Entry e = entries.get(b);
+        if (e != null && --e.depth <= 0)
+            entries.remove(b);
+    }
+
+    /** Drops all analyses cached for <code>b</code>. */
+    public void invalidate(Body b)
+    {
+        Entry e = entries.get(b);
+        if (e != null) {
+            e.clear();
+            record(b, e);
+        }
+    }
+
+    /** Returns the graph built by {@link ExceptionalUnitGraph#ExceptionalUnitGraph(Body)}. */
+    public ExceptionalUnitGraph getExceptionalUnitGraph(Body b)
+    {
+        return getExceptionalUnitGraph(b, Scene.v().getDefaultThrowAnalysis(),
+                Options.v().omit_excepting_unit_edges());
+    }
+
+    /** Returns the graph built by
+     * {@link ExceptionalUnitGraph#ExceptionalUnitGraph(Body, ThrowAnalysis, boolean)}. */
+    public ExceptionalUnitGraph getExceptionalUnitGraph(Body b, ThrowAnalysis throwAnalysis,
+            boolean omitExceptingUnitEdges)
+    {
+        Entry e = validEntry(b);
+        if (e == null)
+            return new ExceptionalUnitGraph(b, throwAnalysis, omitExceptingUnitEdges);
+        Pair<ThrowAnalysis, Boolean> key =
+            new Pair<ThrowAnalysis, Boolean>(throwAnalysis, Boolean.valueOf(omitExceptingUnitEdges));
+        ExceptionalUnitGraph graph = e.graphs.get(key);
+        if (graph == null) {
+            graph = new ExceptionalUnitGraph(b, throwAnalysis, omitExceptingUnitEdges);
+            e.graphs.put(key, graph);
+        }
+        return graph;
+    }
+
+    /** Returns a {@link SimpleLiveLocals} over {@link #getExceptionalUnitGraph(Body)}. */
+    public LiveLocals getLiveLocals(Body b)
+    {
+        Entry e = validEntry(b);
+        if (e == null)
+            return new SimpleLiveLocals(getExceptionalUnitGraph(b));
+        if (e.liveLocals == null)
+            e.liveLocals = new SimpleLiveLocals(getExceptionalUnitGraph(b));
+        return e.liveLocals;
+    }
+
+    /** Returns a {@link SmartLocalDefs} over {@link #getExceptionalUnitGraph(Body)}. */
+    public LocalDefs getLocalDefs(Body b)
+    {
+        Entry e = validEntry(b);
+        if (e == null) {
+            ExceptionalUnitGraph graph = new ExceptionalUnitGraph(b);
+            return new SmartLocalDefs(graph, new SimpleLiveLocals(graph));
+        }
+        if (e.localDefs == null)
+            e.localDefs = new SmartLocalDefs(getExceptionalUnitGraph(b), getLiveLocals(b));
+        return e.localDefs;
+    }
+
+    /** Returns a {@link SimpleLocalUses} over {@link #getExceptionalUnitGraph(Body)}
+     * and {@link #getLocalDefs(Body)}. */
+    public LocalUses getLocalUses(Body b)
+    {
+        Entry e = validEntry(b);
+        if (e == null) {
+            ExceptionalUnitGraph graph = new ExceptionalUnitGraph(b);
+            return new SimpleLocalUses(graph, new SmartLocalDefs(graph, new SimpleLiveLocals(graph)));
+        }
+        if (e.localUses == null)
+            e.localUses = new SimpleLocalUses(getExceptionalUnitGraph(b), getLocalDefs(b));
+        return e.localUses;
+    }
+
+    /** Returns the entry for <code>b</code> with stale results dropped, or
+     * <code>null</code> if no scope is open on <code>b</code>. */
+    private Entry validEntry(Body b)
+    {
+        Entry e = entries.get(b);
+        if (e == null)
+            return null;
+        if (e.unitCount < 0 || e.trapCount < 0 || e.localCount < 0
+                || e.unitCount != modificationCount(b.getUnits())
+                || e.trapCount != modificationCount(b.getTraps())
+                || e.localCount != modificationCount(b.getLocals())) {
+            e.clear();
+            record(b, e);
+        }
+        return e;
+    }
+
+    private static void record(Body b, Entry e)
+    {
+        e.unitCount = modificationCount(b.getUnits());
+        e.trapCount = modificationCount(b.getTraps());
+        e.localCount = modificationCount(b.getLocals());
+    }
+
+    /** Returns the modification count of <code>c</code>, or -1 if it does
+     * not count its modifications. */
+    private static long modificationCount(Chain<?> c)
+    {
+        if (c instanceof HashChain)
+            return ((HashChain<?>) c).getModificationCount();
+        if (c instanceof PatchingChain)
+            return ((PatchingChain<?>) c).getModificationCount();
+        return -1;
+    }
+}
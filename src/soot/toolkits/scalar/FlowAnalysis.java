@@ -26,7 +26,10 @@
 
 package soot.toolkits.scalar;
 
+import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import soot.toolkits.graph.DirectedGraph;
@@ -70,6 +73,97 @@ public abstract class FlowAnalysis<N,A> extends AbstractFlowAnalysis<N,A>
         return unitToAfterFlow.get(s);
     }
     
+    /**
+     * Fixed point iteration of {@link ForwardFlowAnalysis} and
+     * {@link BackwardFlowAnalysis} used when {@link #useNumberedSolver()}
+     * returns true. "In" and "out" refer to the direction of the analysis,
+     * as for {@link #flowThrough(Object, Object, Object)}.
+     * @return the number of times the flow function was applied
+     */
+    int doNumberedAnalysis()
+    {
+        boolean forward = isForward();
+        List<N> nodes = new ArrayList<N>(constructOrderer().newList(graph, !forward));
+        int n = nodes.size();
+        Map<N, Integer> numbers = new HashMap<N, Integer>(n * 2 + 1, 0.7f);
+        for (int i = 0; i < n; i++)
+            numbers.put(nodes.get(i), i);
+
+        // sources[i] feed the in-flow of node i; targets[i] need to be
+        // revisited when its out-flow changes.
+        int[][] sources = new int[n][];
+        int[][] targets = new int[n][];
+        // Arrays of A only ever hold flow sets created by this analysis.
+        @SuppressWarnings("unchecked")
+        A[] inFlows = (A[]) new Object[n];
+        @SuppressWarnings("unchecked")
+        A[] outFlows = (A[]) new Object[n];
+        for (int i = 0; i < n; i++) {
+            List<N> preds = graph.getPredsOf(nodes.get(i));
+            List<N> succs = graph.getSuccsOf(nodes.get(i));
+            sources[i] = indexesOf(forward ? preds : succs, numbers);
+            targets[i] = indexesOf(forward ? succs : preds, numbers);
+            inFlows[i] = newInitialFlow();
+            outFlows[i] = newInitialFlow();
+        }
+
+        boolean[] isEntry = new boolean[n];
+        for (N entry : forward ? graph.getHeads() : graph.getTails()) {
+            int i = numbers.get(entry);
+            isEntry[i] = true;
+            inFlows[i] = entryInitialFlow();
+        }
+        // BackwardFlowAnalysis has only ever merged the exit flow into tails
+        // with more than one successor; keep the results identical.
+        int minSourcesForEntryMerge = forward ? 1 : 2;
+
+        BitSet worklist = new BitSet(n);
+        worklist.set(0, n);
+        A previousOutFlow = newInitialFlow();
+        int numComputations = 0;
+        for (int i = worklist.nextSetBit(0); i >= 0; i = worklist.nextSetBit(0)) {
+            worklist.clear(i);
+            N s = nodes.get(i);
+            A inFlow = inFlows[i];
+            A outFlow = outFlows[i];
+            int[] src = sources[i];
+
+            copy(outFlow, previousOutFlow);
+
+            if (src.length > 0) {
+                copy(outFlows[src[0]], inFlow);
+                for (int k = 1; k < src.length; k++)
+                    mergeInto(s, inFlow, outFlows[src[k]]);
+                if (isEntry[i] && src.length >= minSourcesForEntryMerge)
+                    mergeInto(s, inFlow, entryInitialFlow());
+            }
+
+            flowThrough(inFlow, s, outFlow);
+            numComputations++;
+
+            if (!outFlow.equals(previousOutFlow)) {
+                for (int t : targets[i])
+                    worklist.set(t);
+            }
+        }
+
+        Map<N, A> inMap = forward ? unitToBeforeFlow : unitToAfterFlow;
+        Map<N, A> outMap = forward ? unitToAfterFlow : unitToBeforeFlow;
+        for (int i = 0; i < n; i++) {
+            inMap.put(nodes.get(i), inFlows[i]);
+            outMap.put(nodes.get(i), outFlows[i]);
+        }
+        return numComputations;
+    }
+
+    private static <N> int[] indexesOf(List<N> nodes, Map<N, Integer> numbers)
+    {
+        int[] indexes = new int[nodes.size()];
+        for (int k = 0; k < indexes.length; k++)
+            indexes[k] = numbers.get(nodes.get(k));
+        return indexes;
+    }
+
 	/**
 	 * Default implementation constructing a PseudoTopologicalOrderer. 
 	 * @return an Orderer to order the nodes for the fixed-point iteration 
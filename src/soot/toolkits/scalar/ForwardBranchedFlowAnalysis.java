@@ -97,15 +97,22 @@ public abstract class ForwardBranchedFlowAnalysis<A> extends BranchedFlowAnalysi
     {
         final Map<Unit, Integer> numbers = new HashMap<Unit, Integer>();
         List orderedUnits = new PseudoTopologicalOrderer().newList(graph,false);
+        final Unit[] nodes = new Unit[orderedUnits.size() + 1];
         {
             int i = 1;
             for( Iterator uIt = orderedUnits.iterator(); uIt.hasNext(); ) {
                 final Unit u = (Unit) uIt.next();
                 numbers.put(u, new Integer(i));
+                nodes[i] = u;
                 i++;
             }
         }
 
+        // With the numbered solver the worklist holds the numbers of the
+        // units instead of the units, which visits them in the same order.
+        final boolean numbered = useNumberedSolver() && !Options.v().interactive_mode();
+        final BitSet numberedUnits = new BitSet(nodes.length);
+
         TreeSet<Unit> changedUnits = new TreeSet<Unit>( new Comparator() {
             public int compare(Object o1, Object o2) {
                 Integer i1 = numbers.get(o1);
@@ -142,7 +149,10 @@ public abstract class ForwardBranchedFlowAnalysis<A> extends BranchedFlowAnalysi
             {
                 Unit s = (Unit) it.next();
 
-                changedUnits.add(s);
+                if (numbered)
+                    numberedUnits.set(numbers.get(s));
+                else
+                    changedUnits.add(s);
 
                 unitToBeforeFlow.put(s, newInitialFlow());
 
@@ -224,12 +234,19 @@ public abstract class ForwardBranchedFlowAnalysis<A> extends BranchedFlowAnalysi
             for (int i = 0; i < maxBranchSize+1; i++)
                 previousFlowRepositories[i] = newInitialFlow();
 
-            while(!changedUnits.isEmpty())
+            while(numbered ? !numberedUnits.isEmpty() : !changedUnits.isEmpty())
             {
                 A beforeFlow;
 
-                Unit s = changedUnits.first();
-                changedUnits.remove(s);
+                Unit s;
+                if (numbered) {
+                    int i = numberedUnits.nextSetBit(0);
+                    numberedUnits.clear(i);
+                    s = nodes[i];
+                } else {
+                    s = changedUnits.first();
+                    changedUnits.remove(s);
+                }
                 boolean isHead = heads.contains(s);
 
                 accumulateAfterFlowSets(s, previousFlowRepositories, previousAfterFlows);
@@ -251,9 +268,7 @@ public abstract class ForwardBranchedFlowAnalysis<A> extends BranchedFlowAnalysi
                         while(predIt.hasNext())
                         {
                             A otherBranchFlow = predIt.next();
-                            A newBeforeFlow = newInitialFlow();
-                            merge(s, beforeFlow, otherBranchFlow, newBeforeFlow);
-                            copy(newBeforeFlow, beforeFlow);
+                            mergeInto(s, beforeFlow, otherBranchFlow);
                         }
                     }
 
@@ -308,7 +323,10 @@ public abstract class ForwardBranchedFlowAnalysis<A> extends BranchedFlowAnalysi
                     {
                         Unit succ = (Unit) succIt.next();
                             
-                        changedUnits.add(succ);
+                        if (numbered)
+                            numberedUnits.set(numbers.get(succ));
+                        else
+                            changedUnits.add(succ);
                     }
                 }
             }
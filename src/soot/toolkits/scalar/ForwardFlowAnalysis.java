@@ -54,6 +54,13 @@ public abstract class ForwardFlowAnalysis<N,A> extends FlowAnalysis<N,A>
 
     protected void doAnalysis()
     {
+        if (useNumberedSolver() && !Options.v().interactive_mode()) {
+            int numComputations = doNumberedAnalysis();
+            Timers.v().totalFlowNodes += graph.size();
+            Timers.v().totalFlowComputations += numComputations;
+            return;
+        }
+
         final Map<N, Integer> numbers = new HashMap<N, Integer>();
 //        Timers.v().orderComputation = new soot.Timer();
 //        Timers.v().orderComputation.start();
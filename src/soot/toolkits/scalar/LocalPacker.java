@@ -67,6 +67,7 @@ public class LocalPacker extends BodyTransformer
     protected void internalTransform(Body body, String phaseName, Map options)
     {
         boolean isUnsplit = PhaseOptions.getBoolean(options, "unsplit-original-locals");
+        boolean useOlderColorer = PhaseOptions.getBoolean(options, "use-older-colorer");
         
         if(Options.v().verbose())
             G.v().out.println("[" + body.getMethod().getName() + "] Packing locals...");
@@ -124,12 +125,24 @@ public class LocalPacker extends BodyTransformer
         }
         
         // Call the graph colorer.
+        if(useOlderColorer)
+        {
             if(isUnsplit)
                 FastColorer.unsplitAssignColorsToLocals(body, localToGroup,
                     localToColor, groupToColorCount);
             else
                 FastColorer.assignColorsToLocals(body, localToGroup,
                     localToColor, groupToColorCount);
+        }
+        else
+        {
+            if(isUnsplit)
+                MatrixColorer.unsplitAssignColorsToLocals(body, localToGroup,
+                    localToColor, groupToColorCount);
+            else
+                MatrixColorer.assignColorsToLocals(body, localToGroup,
+                    localToColor, groupToColorCount);
+        }
 
                                     
         // Map each local to a new local.
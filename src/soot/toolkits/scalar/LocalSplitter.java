@@ -59,6 +59,10 @@ public class LocalSplitter extends BodyTransformer
     public LocalSplitter( Singletons.Global g ) {}
     public static LocalSplitter v() { return G.v().soot_toolkits_scalar_LocalSplitter(); }
 
+    // Every box that is redirected to a new local goes with an addition
+    // to the local chain.
+    protected boolean maintainsBodyAnalyses() { return true; }
+
     protected void internalTransform(Body body, String phaseName, Map options)
     {
         Chain units = body.getUnits();
@@ -74,13 +78,9 @@ public class LocalSplitter extends BodyTransformer
 
         // Go through the definitions, building the webs
         {
-            ExceptionalUnitGraph graph = new ExceptionalUnitGraph(body);
-
-            LocalDefs localDefs;
-            
-            localDefs = new SmartLocalDefs(graph, new SimpleLiveLocals(graph));
+            LocalDefs localDefs = BodyAnalysisManager.v().getLocalDefs(body);
 
-            LocalUses localUses = new SimpleLocalUses(graph, localDefs);
+            LocalUses localUses = BodyAnalysisManager.v().getLocalUses(body);
             
             if(Options.v().time())
                 Timers.v().splitPhase1Timer.end();
@@ -0,0 +1,492 @@
+/* Soot - a J*va Optimization Framework
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place - Suite 330,
+ * Boston, MA 02111-1307, USA.
+ */
+
+
+package soot.toolkits.scalar;
+
+import soot.*;
+import soot.toolkits.graph.*;
+
+import java.util.*;
+
+/** Provides the colorings of {@link FastColorer} from a numbered
+ * interference graph. The locals of a body are numbered once, their
+ * liveness is computed on bit vectors, and the interferences of the
+ * locals of each group are kept in one bit row per local. */
+public class MatrixColorer
+{
+    /** Provides a coloring for the locals of <code>unitBody</code>,
+     * attempting to not split locals assigned the same name in the
+     * original Jimple. The coloring is the one of
+     * {@link FastColorer#unsplitAssignColorsToLocals}. */
+    public static void unsplitAssignColorsToLocals(Body unitBody,
+                                                   Map<Local, Object> localToGroup,
+                                                   Map<Local, Integer> localToColor,
+                                                   Map<Object, Integer> groupToColorCount)
+    {
+        MatrixColorer colorer = new MatrixColorer(unitBody, localToGroup,
+                                                  localToColor, groupToColorCount);
+
+        for(int g = 0; g < colorer.groups.length; g++)
+            colorer.colorCount[g] = colorer.unsplitColor(g, colorer.colors);
+
+        colorer.store(localToColor, groupToColorCount);
+    }
+
+    /** Provides an economical coloring for the locals of
+     * <code>unitBody</code>. The locals of each group are colored in the
+     * order of decreasing degree, unless this takes more colors than the
+     * coloring of {@link FastColorer#assignColorsToLocals}, which is then
+     * kept. */
+    public static void assignColorsToLocals(Body unitBody, Map<Local, Object> localToGroup,
+        Map<Local, Integer> localToColor, Map<Object, Integer> groupToColorCount)
+    {
+        MatrixColorer colorer = new MatrixColorer(unitBody, localToGroup,
+                                                  localToColor, groupToColorCount);
+
+        for(int g = 0; g < colorer.groups.length; g++)
+        {
+            int[] inBodyOrder = colorer.colors.clone();
+            int bodyOrderCount = colorer.color(g, colorer.members[g], inBodyOrder, true);
+
+            int[] inDegreeOrder = colorer.colors.clone();
+            int degreeOrderCount = colorer.color(g, colorer.byDegree(g), inDegreeOrder, false);
+
+            if(degreeOrderCount < bodyOrderCount)
+            {
+                colorer.colors = inDegreeOrder;
+                colorer.colorCount[g] = degreeOrderCount;
+            }
+            else
+            {
+                colorer.colors = inBodyOrder;
+                colorer.colorCount[g] = bodyOrderCount;
+            }
+        }
+
+        colorer.store(localToColor, groupToColorCount);
+    }
+
+    /* End of public methods. */
+
+    private final Local[] locals;       // The locals of the body, in chain order.
+    private final int[] groupOf;        // The group of each local,
+    private final int[] indexInGroup;   // and its index among the locals of this group.
+
+    private final Object[] groups;
+    private final int[][] members;      // The locals of each group, in chain order.
+    private final int[] colorCount;     // The number of colors used by each group.
+
+    private final long[][] interferences; // The bit row of each local, indexed
+                                          // by the indexes in its group.
+    private int[] colors;               // The color of each local, or -1.
+
+    private MatrixColorer(Body body, Map<Local, Object> localToGroup,
+                          Map<Local, Integer> localToColor,
+                          Map<Object, Integer> groupToColorCount)
+    {
+        int n = body.getLocalCount();
+        Map<Local, Integer> localToIndex = new HashMap<Local, Integer>(n * 2 + 1, 0.7f);
+        Map<Object, Integer> groupToIndex = new HashMap<Object, Integer>();
+        List<Object> groupList = new ArrayList<Object>();
+
+        // Number the locals and their groups
+        locals = new Local[n];
+        groupOf = new int[n];
+        indexInGroup = new int[n];
+        colors = new int[n];
+        {
+            int[] groupSizes = new int[n];
+            int i = 0;
+
+            for(Local local : body.getLocals())
+            {
+                Object group = localToGroup.get(local);
+                Integer g = groupToIndex.get(group);
+
+                if(g == null)
+                {
+                    g = new Integer(groupList.size());
+                    groupToIndex.put(group, g);
+                    groupList.add(group);
+                }
+
+                locals[i] = local;
+                groupOf[i] = g.intValue();
+                indexInGroup[i] = groupSizes[g.intValue()]++;
+
+                Integer color = localToColor.get(local);
+                colors[i] = color == null ? -1 : color.intValue();
+
+                localToIndex.put(local, new Integer(i));
+                i++;
+            }
+
+            groups = groupList.toArray();
+            members = new int[groups.length][];
+            colorCount = new int[groups.length];
+
+            for(int g = 0; g < groups.length; g++)
+            {
+                members[g] = new int[groupSizes[g]];
+                colorCount[g] = groupToColorCount.get(groups[g]).intValue();
+            }
+
+            for(i = 0; i < n; i++)
+                members[groupOf[i]][indexInGroup[i]] = i;
+
+            interferences = new long[n][];
+
+            for(i = 0; i < n; i++)
+                interferences[i] = new long[(groupSizes[groupOf[i]] + 63) >>> 6];
+        }
+
+        noteInterferences(body, localToIndex);
+    }
+
+    /** Computes the locals live after each unit, and makes the local
+     * defined by a unit interfere with the locals of its group live after
+     * it. */
+    private void noteInterferences(Body body, Map<Local, Integer> localToIndex)
+    {
+        UnitGraph unitGraph = new CompactExceptionalUnitGraph(body);
+        int unitCount = unitGraph.size();
+        int words = (locals.length + 63) >>> 6;
+
+        Unit[] units = new Unit[unitCount];
+        Map<Unit, Integer> unitToIndex = new HashMap<Unit, Integer>(unitCount * 2 + 1, 0.7f);
+        {
+            int i = 0;
+
+            for(Unit unit : body.getUnits())
+            {
+                units[i] = unit;
+                unitToIndex.put(unit, new Integer(i));
+                i++;
+            }
+        }
+
+        // The locals used and defined by each unit, and its successors
+        int[][] uses = new int[unitCount][];
+        int[] defs = new int[unitCount];
+        int[][] succs = new int[unitCount][];
+        int[][] preds = new int[unitCount][];
+        {
+            int[] buffer = new int[16];
+
+            for(int u = 0; u < unitCount; u++)
+            {
+                Unit unit = units[u];
+                int count = 0;
+
+                for(ValueBox box : unit.getUseBoxes())
+                {
+                    Integer l = localToIndex.get(box.getValue());
+
+                    if(l != null)
+                    {
+                        if(count == buffer.length)
+                            buffer = Arrays.copyOf(buffer, count * 2);
+
+                        buffer[count++] = l.intValue();
+                    }
+                }
+
+                uses[u] = Arrays.copyOf(buffer, count);
+
+                List<ValueBox> defBoxes = unit.getDefBoxes();
+                defs[u] = -1;
+
+                if(!defBoxes.isEmpty())
+                {
+                    if(!(defBoxes.size() == 1))
+                        throw new RuntimeException
+                            ("invalid number of def boxes");
+
+                    Integer l = localToIndex.get(defBoxes.get(0).getValue());
+
+                    if(l != null)
+                        defs[u] = l.intValue();
+                }
+
+                succs[u] = indexes(unitGraph.getSuccsOf(unit), unitToIndex);
+                preds[u] = indexes(unitGraph.getPredsOf(unit), unitToIndex);
+            }
+        }
+
+        // Solve the liveness on bit vectors, starting with the last units
+        long[][] liveBefore = new long[unitCount][words];
+        long[] liveAfter = new long[words];
+        {
+            int[] worklist = new int[unitCount];
+            boolean[] queued = new boolean[unitCount];
+            int size = 0;
+
+            for(int u = 0; u < unitCount; u++)
+            {
+                worklist[size++] = u;
+                queued[u] = true;
+            }
+
+            while(size > 0)
+            {
+                int u = worklist[--size];
+                queued[u] = false;
+
+                liveAfter(u, succs, liveBefore, liveAfter);
+
+                if(defs[u] >= 0)
+                    liveAfter[defs[u] >>> 6] &= ~(1L << defs[u]);
+
+                for(int l : uses[u])
+                    liveAfter[l >>> 6] |= 1L << l;
+
+                if(!Arrays.equals(liveAfter, liveBefore[u]))
+                {
+                    System.arraycopy(liveAfter, 0, liveBefore[u], 0, words);
+
+                    for(int p : preds[u])
+                    {
+                        if(!queued[p])
+                        {
+                            worklist[size++] = p;
+                            queued[p] = true;
+                        }
+                    }
+                }
+            }
+        }
+
+        // Go through code, noting interferences
+        for(int u = 0; u < unitCount; u++)
+        {
+            int defLocal = defs[u];
+
+            if(defLocal < 0)
+                continue;
+
+            liveAfter(u, succs, liveBefore, liveAfter);
+
+            int group = groupOf[defLocal];
+
+            for(int w = 0; w < words; w++)
+            {
+                for(long bits = liveAfter[w]; bits != 0; bits &= bits - 1)
+                {
+                    int otherLocal = (w << 6) + Long.numberOfTrailingZeros(bits);
+
+                    if(otherLocal != defLocal && groupOf[otherLocal] == group)
+                        setInterference(defLocal, otherLocal);
+                }
+            }
+        }
+    }
+
+    private static void liveAfter(int u, int[][] succs, long[][] liveBefore, long[] result)
+    {
+        Arrays.fill(result, 0L);
+
+        for(int s : succs[u])
+        {
+            long[] live = liveBefore[s];
+
+            for(int w = 0; w < result.length; w++)
+                result[w] |= live[w];
+        }
+    }
+
+    private static int[] indexes(List<Unit> units, Map<Unit, Integer> unitToIndex)
+    {
+        int[] result = new int[units.size()];
+
+        for(int i = 0; i < result.length; i++)
+            result[i] = unitToIndex.get(units.get(i)).intValue();
+
+        return result;
+    }
+
+    private void setInterference(int l1, int l2)
+    {
+        interferences[l1][indexInGroup[l2] >>> 6] |= 1L << indexInGroup[l2];
+        interferences[l2][indexInGroup[l1] >>> 6] |= 1L << indexInGroup[l1];
+    }
+
+    /** Returns the locals of group g by decreasing number of
+     * interferences, and in chain order for the same number. */
+    private int[] byDegree(int g)
+    {
+        int[] locals = members[g];
+        int size = locals.length;
+        long[] keys = new long[size];
+
+        for(int i = 0; i < size; i++)
+        {
+            int degree = 0;
+
+            for(long bits : interferences[locals[i]])
+                degree += Long.bitCount(bits);
+
+            // Sorting the keys sorts by decreasing degree, then by index
+            keys[i] = ((long) (Integer.MAX_VALUE - degree) << 32) | i;
+        }
+
+        Arrays.sort(keys);
+
+        int[] result = new int[size];
+
+        for(int i = 0; i < size; i++)
+            result[i] = locals[(int) keys[i]];
+
+        return result;
+    }
+
+    /** Colors the uncolored locals of group g in the given order, and
+     * returns the number of colors of the group. The greatest free color
+     * is taken when <code>last</code> is true, as FastColorer does, and the
+     * least one otherwise. */
+    private int color(int g, int[] order, int[] colors, boolean last)
+    {
+        int count = colorCount[g];
+        boolean[] used = new boolean[Math.max(count, 1)];
+
+        for(int local : order)
+        {
+            if(colors[local] >= 0)
+            {
+                // Already assigned, probably a parameter
+                continue;
+            }
+
+            if(used.length < count)
+                used = new boolean[Math.max(used.length * 2, count)];
+
+            markUsedColors(local, colors, used, count);
+
+            int assignedColor = -1;
+
+            if(last)
+            {
+                for(int c = count - 1; c >= 0 && assignedColor < 0; c--)
+                    if(!used[c])
+                        assignedColor = c;
+            }
+            else
+            {
+                for(int c = 0; c < count && assignedColor < 0; c++)
+                    if(!used[c])
+                        assignedColor = c;
+            }
+
+            if(assignedColor < 0)
+                assignedColor = count++;
+
+            colors[local] = assignedColor;
+        }
+
+        return count;
+    }
+
+    /** Colors the uncolored locals of group g in chain order, reusing only
+     * the colors of the locals with the same original name. Returns the
+     * number of colors of the group. */
+    private int unsplitColor(int g, int[] colors)
+    {
+        int count = colorCount[g];
+        boolean[] used = new boolean[Math.max(count, 1)];
+        Map<String, List<Integer>> originalNameToColors = new HashMap<String, List<Integer>>();
+
+        for(int local : members[g])
+        {
+            if(colors[local] >= 0)
+            {
+                // Already assigned, probably a parameter
+                continue;
+            }
+
+            if(used.length < count)
+                used = new boolean[Math.max(used.length * 2, count)];
+
+            markUsedColors(local, colors, used, count);
+
+            String originalName = locals[local].getName();
+            int signIndex = originalName.indexOf("#");
+
+            if(signIndex != -1)
+                originalName = originalName.substring(0, signIndex);
+
+            List<Integer> originalNameColors = originalNameToColors.get(originalName);
+
+            if(originalNameColors == null)
+            {
+                originalNameColors = new ArrayList<Integer>();
+                originalNameToColors.put(originalName, originalNameColors);
+            }
+
+            // Take the last color of this original name which is free
+            int assignedColor = -1;
+
+            for(int i = originalNameColors.size() - 1; i >= 0 && assignedColor < 0; i--)
+            {
+                int color = originalNameColors.get(i).intValue();
+
+                if(!used[color])
+                    assignedColor = color;
+            }
+
+            if(assignedColor < 0)
+            {
+                assignedColor = count++;
+                originalNameColors.add(new Integer(assignedColor));
+            }
+
+            colors[local] = assignedColor;
+        }
+
+        return count;
+    }
+
+    /** Sets used[c] for the colors c below count which are taken by a local
+     * interfering with the given one, and clears the others. */
+    private void markUsedColors(int local, int[] colors, boolean[] used, int count)
+    {
+        Arrays.fill(used, 0, count, false);
+
+        int[] group = members[groupOf[local]];
+        long[] row = interferences[local];
+
+        for(int w = 0; w < row.length; w++)
+        {
+            for(long bits = row[w]; bits != 0; bits &= bits - 1)
+            {
+                int other = group[(w << 6) + Long.numberOfTrailingZeros(bits)];
+
+                if(colors[other] >= 0)
+                    used[colors[other]] = true;
+            }
+        }
+    }
+
+    private void store(Map<Local, Integer> localToColor, Map<Object, Integer> groupToColorCount)
+    {
+        for(int i = 0; i < locals.length; i++)
+            localToColor.put(locals[i], new Integer(colors[i]));
+
+        for(int g = 0; g < groups.length; g++)
+            groupToColorCount.put(groups[g], new Integer(colorCount[g]));
+    }
+}
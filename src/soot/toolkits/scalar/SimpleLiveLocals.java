@@ -189,6 +189,11 @@ class SimpleLiveLocalsAnalysis extends BackwardFlowAnalysis
 
     }
 
+    protected boolean useNumberedSolver()
+    {
+        return true;
+    }
+
     protected Object newInitialFlow()
     {
         return emptySet.clone();
@@ -219,6 +224,11 @@ class SimpleLiveLocalsAnalysis extends BackwardFlowAnalysis
 
         inSet1.union(inSet2, outSet);
     }
+
+    protected void mergeInto(Object succNode, Object inout, Object in)
+    {
+        ((FlowSet) inout).union((FlowSet) in);
+    }
     
     protected void copy(Object source, Object dest)
     {
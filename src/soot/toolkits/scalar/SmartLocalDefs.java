@@ -127,6 +127,12 @@ public class SmartLocalDefs implements LocalDefs
             super(g);
             doAnalysis();
         }
+        protected boolean useNumberedSolver() {
+            return true;
+        }
+        protected void mergeInto(Object succNode, Object inout, Object in) {
+            merge(inout, in);
+        }
         protected void merge(Object inoutO, Object inO) {
             HashSet inout = (HashSet) inoutO;
             HashSet in = (HashSet) inO;
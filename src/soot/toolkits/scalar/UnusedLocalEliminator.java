@@ -48,6 +48,8 @@ public class UnusedLocalEliminator extends BodyTransformer
     public UnusedLocalEliminator( Singletons.Global g ) {}
     public static UnusedLocalEliminator v() { return G.v().soot_toolkits_scalar_UnusedLocalEliminator(); }
 
+    protected boolean maintainsBodyAnalyses() { return true; }
+
     protected void internalTransform(Body body, String phaseName, Map options)
     {
         if(Options.v().verbose())
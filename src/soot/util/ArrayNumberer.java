@@ -30,7 +30,7 @@ public class ArrayNumberer<E> implements IterableNumberer<E> {
     Numberable[] numberToObj = new Numberable[1024];
     int lastNumber = 0;
 
-    public void add( E oo ) {
+    public synchronized void add( E oo ) {
         Numberable o = (Numberable) oo;
         if( o.getNumber() != 0 ) return;
         
@@ -52,15 +52,17 @@ public class ArrayNumberer<E> implements IterableNumberer<E> {
         return ret;
     }
 
-	public E get( long number ) {
+	public synchronized E get( long number ) {
         if( number == 0 ) return null;
         E ret = (E) numberToObj[(int) number];
         if( ret == null ) throw new RuntimeException( "no object with number "+number );
         return ret;
     }
 
-    public int size() { return lastNumber; }
+    public synchronized int size() { return lastNumber; }
 
+    /** Iterates over the numbered objects, including those numbered,
+     * possibly by other threads, while the iteration is in progress. */
     public Iterator<E> iterator() {
         return new NumbererIterator();
     }
@@ -68,12 +70,16 @@ public class ArrayNumberer<E> implements IterableNumberer<E> {
     final class NumbererIterator implements Iterator<E> {
         int cur = 1;
         public final boolean hasNext() {
-            return cur < numberToObj.length && numberToObj[cur] != null;
+            synchronized( ArrayNumberer.this ) {
+                return cur <= lastNumber;
+            }
         }
 
 		public final E next() { 
-            if( !hasNext() ) throw new NoSuchElementException();
-            return (E) numberToObj[cur++];
+            synchronized( ArrayNumberer.this ) {
+                if( !hasNext() ) throw new NoSuchElementException();
+                return (E) numberToObj[cur++];
+            }
         }
         public final void remove() {
             throw new UnsupportedOperationException();
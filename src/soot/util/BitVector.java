@@ -202,6 +202,10 @@ public class BitVector
         bits[indexOf(bit)] |= mask(bit);
         return ret;
     }
+    /** Returns the word holding bits 64*index to 64*index+63. */
+    long word( int index ) {
+        return index < bits.length ? bits[index] : 0L;
+    }
     /** Returns number of bits in the underlying array. */
     public int size() {
         return bits.length << 6;
@@ -459,6 +459,11 @@ public class HashChain<E> extends AbstractCollection<E>
 
     public int size(){ return map.size(); }               
 
+    /** Returns a counter which changes whenever this Chain is structurally
+     * modified, so that clients caching results computed from it can
+     * detect that they are stale. */
+    public long getModificationCount() { return stateCount; }
+
     /** Returns a textual representation of the contents of this Chain. */
     public String toString() 
     {
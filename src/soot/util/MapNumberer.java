@@ -24,23 +24,23 @@ public class MapNumberer implements Numberer {
     Map<Object, Integer> map = new HashMap<Object, Integer>();
     ArrayList<Object> al = new ArrayList<Object>();
     int nextIndex = 1;
-    public void add( Object o ) {
+    public synchronized void add( Object o ) {
         if( !map.containsKey(o) ) {
             map.put( o, new Integer(nextIndex) );
             al.add(o);
             nextIndex++;
         }
     }
-    public Object get( long number ) {
+    public synchronized Object get( long number ) {
         return al.get((int) number);
     }
-    public long get( Object o ) {
+    public synchronized long get( Object o ) {
         if( o == null ) return 0;
         Integer i = map.get(o);
         if( i == null ) throw new RuntimeException( "couldn't find "+o );
         return i.intValue();
     }
-    public int size() { return nextIndex-1; /*subtract 1 for null*/ }
+    public synchronized int size() { return nextIndex-1; /*subtract 1 for null*/ }
     public MapNumberer() { al.add(null); }
-    public boolean contains(Object o) { return map.containsKey(o); }
+    public synchronized boolean contains(Object o) { return map.containsKey(o); }
 }
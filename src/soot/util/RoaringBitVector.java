@@ -0,0 +1,428 @@
+/* Soot - a J*va Optimization Framework
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place - Suite 330,
+ * Boston, MA 02111-1307, USA.
+ */
+
+package soot.util;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/** A compressed bit set in the style of roaring bitmaps. The bits are split
+ * into chunks of 4096. A chunk with few bits set is stored as a sorted array
+ * of the low twelve bits of its elements, a fuller chunk as 64 words, and a
+ * chunk without bits set is not stored at all. Unlike {@link BitVector}, the
+ * space taken by a set depends on its elements rather than on its highest
+ * element.
+ */
+public final class RoaringBitVector implements Cloneable {
+    private static final int CHUNK_SHIFT = 12;
+    private static final int LOW_MASK = ( 1 << CHUNK_SHIFT ) - 1;
+    private static final int WORDS = 1 << ( CHUNK_SHIFT - 6 );
+    /** Chunks with more elements than this are stored as words, which take
+     * the same space as an array of this many elements. */
+    private static final int MAX_ARRAY = WORDS * 4;
+
+    /** The numbers of the chunks, in ascending order. */
+    private int[] keys;
+    /** Each chunk is a long[WORDS] if it has more than MAX_ARRAY elements,
+     * or a char[] otherwise. */
+    private Object[] chunks;
+    private int[] cards;
+    private int size = 0;
+    private int cardinality = 0;
+
+    public RoaringBitVector() {
+        keys = new int[1];
+        chunks = new Object[1];
+        cards = new int[1];
+    }
+
+    /** Returns true if bit is set. */
+    public boolean get( int bit ) {
+        int i = find( bit >>> CHUNK_SHIFT );
+        return i >= 0 && contains( i, bit & LOW_MASK );
+    }
+
+    /** Sets bit, returns true if it was not already set. */
+    public boolean set( int bit ) {
+        int key = bit >>> CHUNK_SHIFT;
+        int i = find( key );
+        if( i < 0 ) i = insert( -i-1, key, new char[4], 0 );
+        return add( i, bit & LOW_MASK );
+    }
+
+    /** Returns the number of bits set. */
+    public int cardinality() {
+        return cardinality;
+    }
+
+    public boolean isEmpty() {
+        return cardinality == 0;
+    }
+
+    /** Performs this = this OR ( orset AND andset AND NOT andnotset ), where
+     * andset and andnotset may be null. Returns true if this changed. */
+    public boolean orAndAndNot( RoaringBitVector orset, BitVector andset, RoaringBitVector andnotset ) {
+        if( orset == this ) return false;
+        boolean ret = false;
+        long[] words = null;
+        char[] chars = null;
+        for( int j = 0; j < orset.size; j++ ) {
+            int key = orset.keys[j];
+            int base = key << CHUNK_SHIFT;
+            int e = andnotset == null ? -1 : andnotset.find( key );
+            Object c = orset.chunks[j];
+            if( c instanceof long[] ) {
+                long[] w = (long[]) c;
+                Object ec = e >= 0 ? andnotset.chunks[e] : null;
+                int i = find( key );
+                if( i >= 0 && chunks[i] instanceof long[] && ( ec == null || ec instanceof long[] ) ) {
+                    ret = orWords( i, w, andset, base >>> 6, (long[]) ec ) | ret;
+                    continue;
+                }
+                if( words == null ) words = new long[WORDS];
+                for( int k = 0; k < WORDS; k++ ) {
+                    words[k] = andset == null ? w[k] : w[k] & andset.word( ( base >>> 6 ) + k );
+                }
+                if( e >= 0 ) andnotset.clearChunk( e, words );
+                ret = orWords( key, words ) | ret;
+            } else {
+                char[] a = (char[]) c;
+                int n = orset.cards[j];
+                if( andset != null || e >= 0 ) {
+                    if( chars == null ) chars = new char[MAX_ARRAY];
+                    int m = 0;
+                    for( int k = 0; k < n; k++ ) {
+                        int low = a[k];
+                        if( andset != null && !andset.get( base | low ) ) continue;
+                        if( e >= 0 && andnotset.contains( e, low ) ) continue;
+                        chars[m++] = a[k];
+                    }
+                    a = chars;
+                    n = m;
+                }
+                ret = orChars( key, a, n ) | ret;
+            }
+        }
+        return ret;
+    }
+
+    public BitIterator iterator() {
+        return new BitIterator();
+    }
+
+    public Object clone() {
+        try {
+            RoaringBitVector ret = (RoaringBitVector) super.clone();
+            ret.keys = Arrays.copyOf( keys, size );
+            ret.cards = Arrays.copyOf( cards, size );
+            ret.chunks = new Object[size];
+            for( int i = 0; i < size; i++ ) {
+                Object c = chunks[i];
+                if( c instanceof long[] ) ret.chunks[i] = ((long[]) c).clone();
+                else ret.chunks[i] = Arrays.copyOf( (char[]) c, cards[i] );
+            }
+            return ret;
+        } catch( CloneNotSupportedException e ) {
+            // cannot occur
+            throw new RuntimeException( e );
+        }
+    }
+
+    public boolean equals( Object o ) {
+        if( o == this ) return true;
+        if( !( o instanceof RoaringBitVector ) ) return false;
+        RoaringBitVector other = (RoaringBitVector) o;
+        if( cardinality != other.cardinality || size != other.size ) return false;
+        for( int i = 0; i < size; i++ ) {
+            if( keys[i] != other.keys[i] || cards[i] != other.cards[i] ) return false;
+            Object c = chunks[i];
+            Object oc = other.chunks[i];
+            // The kind of a chunk only depends on the number of its elements.
+            if( c instanceof long[] ) {
+                if( !Arrays.equals( (long[]) c, (long[]) oc ) ) return false;
+            } else {
+                char[] a = (char[]) c;
+                char[] oa = (char[]) oc;
+                for( int k = 0; k < cards[i]; k++ ) {
+                    if( a[k] != oa[k] ) return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    public int hashCode() {
+        int ret = cardinality;
+        for( int i = 0; i < size; i++ ) {
+            ret = 31 * ret + keys[i];
+            Object c = chunks[i];
+            if( c instanceof long[] ) {
+                for( long l : (long[]) c ) ret = 31 * ret + (int) ( l ^ ( l >>> 32 ) );
+            } else {
+                char[] a = (char[]) c;
+                for( int k = 0; k < cards[i]; k++ ) ret = 31 * ret + a[k];
+            }
+        }
+        return ret;
+    }
+
+    public String toString() {
+        StringBuffer ret = new StringBuffer();
+        ret.append( '{' );
+        for( BitIterator it = iterator(); it.hasNext(); ) {
+            ret.append( it.next() );
+            if( it.hasNext() ) ret.append( ", " );
+        }
+        ret.append( '}' );
+        return ret.toString();
+    }
+
+    /** Iterates through the set bits in ascending order. Like
+     * {@link BitSetIterator}, next returns an int, so this is not an
+     * Iterator. */
+    public final class BitIterator {
+        private int chunk = 0;
+        private int pos = 0;
+        private long word;
+
+        BitIterator() {
+            if( size > 0 ) load();
+        }
+
+        public boolean hasNext() {
+            return chunk < size;
+        }
+
+        public int next() {
+            if( chunk >= size ) throw new NoSuchElementException();
+            int base = keys[chunk] << CHUNK_SHIFT;
+            Object c = chunks[chunk];
+            int ret;
+            if( c instanceof long[] ) {
+                ret = base | ( pos << 6 ) | Long.numberOfTrailingZeros( word );
+                word &= word - 1;
+                if( word == 0 ) {
+                    long[] w = (long[]) c;
+                    while( ++pos < WORDS && w[pos] == 0 );
+                    if( pos < WORDS ) word = w[pos];
+                    else nextChunk();
+                }
+            } else {
+                ret = base | ((char[]) c)[pos];
+                if( ++pos == cards[chunk] ) nextChunk();
+            }
+            return ret;
+        }
+
+        private void nextChunk() {
+            chunk++;
+            pos = 0;
+            if( chunk < size ) load();
+        }
+
+        private void load() {
+            Object c = chunks[chunk];
+            if( c instanceof long[] ) {
+                long[] w = (long[]) c;
+                while( w[pos] == 0 ) pos++;
+                word = w[pos];
+            }
+        }
+    }
+
+    /* End of public methods. */
+
+    private int find( int key ) {
+        return Arrays.binarySearch( keys, 0, size, key );
+    }
+
+    private boolean contains( int i, int low ) {
+        Object c = chunks[i];
+        if( c instanceof long[] ) return ( ((long[]) c)[low >>> 6] & ( 1L << low ) ) != 0L;
+        return Arrays.binarySearch( (char[]) c, 0, cards[i], (char) low ) >= 0;
+    }
+
+    /** Inserts a chunk at position i, and returns i. */
+    private int insert( int i, int key, Object chunk, int card ) {
+        if( size == keys.length ) {
+            int length = Math.max( 1, size * 2 );
+            keys = Arrays.copyOf( keys, length );
+            chunks = Arrays.copyOf( chunks, length );
+            cards = Arrays.copyOf( cards, length );
+        }
+        System.arraycopy( keys, i, keys, i+1, size-i );
+        System.arraycopy( chunks, i, chunks, i+1, size-i );
+        System.arraycopy( cards, i, cards, i+1, size-i );
+        keys[i] = key;
+        chunks[i] = chunk;
+        cards[i] = card;
+        size++;
+        cardinality += card;
+        return i;
+    }
+
+    private boolean add( int i, int low ) {
+        Object c = chunks[i];
+        if( c instanceof long[] ) {
+            long[] w = (long[]) c;
+            long mask = 1L << low;
+            if( ( w[low >>> 6] & mask ) != 0L ) return false;
+            w[low >>> 6] |= mask;
+        } else {
+            char[] a = (char[]) c;
+            int card = cards[i];
+            int pos = Arrays.binarySearch( a, 0, card, (char) low );
+            if( pos >= 0 ) return false;
+            if( card == MAX_ARRAY ) {
+                long[] w = toWords( a, card );
+                w[low >>> 6] |= 1L << low;
+                chunks[i] = w;
+            } else {
+                pos = -pos-1;
+                if( card == a.length ) chunks[i] = a = Arrays.copyOf( a, Math.min( card * 2, MAX_ARRAY ) );
+                System.arraycopy( a, pos, a, pos+1, card-pos );
+                a[pos] = (char) low;
+            }
+        }
+        cards[i]++;
+        cardinality++;
+        return true;
+    }
+
+    /** Clears the elements of chunk i from words. */
+    private void clearChunk( int i, long[] words ) {
+        Object c = chunks[i];
+        if( c instanceof long[] ) {
+            long[] w = (long[]) c;
+            for( int k = 0; k < WORDS; k++ ) words[k] &= ~w[k];
+        } else {
+            char[] a = (char[]) c;
+            for( int k = 0; k < cards[i]; k++ ) words[a[k] >>> 6] &= ~( 1L << a[k] );
+        }
+    }
+
+    /** Adds words AND andset AND NOT andnot to the bitmap chunk i, where
+     * andset starts at word offset and andset and andnot may be null. */
+    private boolean orWords( int i, long[] words, BitVector andset, int offset, long[] andnot ) {
+        long[] w = (long[]) chunks[i];
+        int added = 0;
+        for( int k = 0; k < WORDS; k++ ) {
+            long l = words[k] & ~w[k];
+            if( l == 0L ) continue;
+            if( andset != null ) l &= andset.word( offset + k );
+            if( andnot != null ) l &= ~andnot[k];
+            if( l != 0L ) {
+                added += Long.bitCount( l );
+                w[k] |= l;
+            }
+        }
+        cards[i] += added;
+        cardinality += added;
+        return added > 0;
+    }
+
+    /** Adds words to the chunk numbered key. */
+    private boolean orWords( int key, long[] words ) {
+        int n = 0;
+        for( long l : words ) n += Long.bitCount( l );
+        if( n == 0 ) return false;
+        int i = find( key );
+        if( i < 0 ) {
+            insert( -i-1, key, n > MAX_ARRAY ? words.clone() : toChars( words, n ), n );
+            return true;
+        }
+        Object c = chunks[i];
+        int card = cards[i];
+        long[] w = c instanceof long[] ? (long[]) c : toWords( (char[]) c, card );
+        int added = 0;
+        for( int k = 0; k < WORDS; k++ ) {
+            long l = words[k] & ~w[k];
+            if( l != 0L ) {
+                added += Long.bitCount( l );
+                w[k] |= l;
+            }
+        }
+        if( added == 0 ) return false;
+        card += added;
+        if( w != c ) chunks[i] = card > MAX_ARRAY ? w : toChars( w, card );
+        cards[i] = card;
+        cardinality += added;
+        return true;
+    }
+
+    /** Adds the first n elements of the sorted array src to the chunk
+     * numbered key. */
+    private boolean orChars( int key, char[] src, int n ) {
+        if( n == 0 ) return false;
+        int i = find( key );
+        if( i < 0 ) {
+            insert( -i-1, key, Arrays.copyOf( src, n ), n );
+            return true;
+        }
+        Object c = chunks[i];
+        int card = cards[i];
+        int added = 0;
+        if( c instanceof long[] ) {
+            long[] w = (long[]) c;
+            for( int k = 0; k < n; k++ ) {
+                long mask = 1L << src[k];
+                if( ( w[src[k] >>> 6] & mask ) == 0L ) {
+                    w[src[k] >>> 6] |= mask;
+                    added++;
+                }
+            }
+        } else {
+            char[] a = (char[]) c;
+            // Count the new elements first, so that nothing is allocated if
+            // there are none.
+            for( int x = 0, y = 0; y < n; ) {
+                if( x < card && a[x] < src[y] ) x++;
+                else if( x < card && a[x] == src[y] ) { x++; y++; }
+                else { added++; y++; }
+            }
+            if( added == 0 ) return false;
+            char[] merged = new char[card + added];
+            for( int x = 0, y = 0, z = 0; z < merged.length; ) {
+                if( y == n || ( x < card && a[x] < src[y] ) ) merged[z++] = a[x++];
+                else if( x < card && a[x] == src[y] ) { merged[z++] = a[x++]; y++; }
+                else merged[z++] = src[y++];
+            }
+            chunks[i] = card + added > MAX_ARRAY ? toWords( merged, merged.length ) : merged;
+        }
+        cards[i] = card + added;
+        cardinality += added;
+        return added > 0;
+    }
+
+    private static long[] toWords( char[] a, int card ) {
+        long[] ret = new long[WORDS];
+        for( int k = 0; k < card; k++ ) ret[a[k] >>> 6] |= 1L << a[k];
+        return ret;
+    }
+
+    private static char[] toChars( long[] words, int card ) {
+        char[] ret = new char[card];
+        int j = 0;
+        for( int k = 0; k < WORDS; k++ ) {
+            for( long l = words[k]; l != 0L; l &= l - 1 ) {
+                ret[j++] = (char) ( ( k << 6 ) | Long.numberOfTrailingZeros( l ) );
+            }
+        }
+        return ret;
+    }
+}
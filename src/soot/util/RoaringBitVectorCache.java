@@ -0,0 +1,40 @@
+/* Soot - a J*va Optimization Framework
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place - Suite 330,
+ * Boston, MA 02111-1307, USA.
+ */
+
+package soot.util;
+import soot.*;
+
+/** Shares equal {@link RoaringBitVector}s, in the same way as
+ * {@link SharedBitSetCache}. A set passed to canonicalize, and the set
+ * returned, must not be changed afterwards. */
+public final class RoaringBitVectorCache {
+    public RoaringBitVectorCache( Singletons.Global g ) {}
+    public static RoaringBitVectorCache v() { return G.v().soot_util_RoaringBitVectorCache(); }
+
+    public static final int size = 32749; // a nice prime about 32k
+
+    public RoaringBitVector[] cache = new RoaringBitVector[size];
+
+    public RoaringBitVector canonicalize( RoaringBitVector set ) {
+        int hash = (set.hashCode() & 0x7fffffff) % size;
+        if( cache[hash] == null || !cache[hash].equals(set) ) {
+            return cache[hash] = set;
+        }
+        return cache[hash];
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2014 RoboVM AB
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/gpl-2.0.html>.
+ */
+package soot;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+import soot.options.Options;
+
+/**
+ * Tests that method and field references to a phantom class resolve to one
+ * member each when they are resolved from several threads at once.
+ */
+public class MemberRefResolutionTest {
+
+    private static final int THREADS = 8;
+    private static final int MEMBERS = 200;
+
+    @Test
+    public void testConcurrentPhantomMembers() throws Exception {
+        G.reset();
+        Options.v().set_soot_classpath(System.getProperty("java.class.path"));
+        Options.v().set_allow_phantom_refs(true);
+        Scene.v().loadNecessaryClasses();
+        final SootClass missing = Scene.v().getSootClass("soot.test.Missing");
+        missing.setPhantomClass();
+
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<List<ClassMember>>> results = new ArrayList<Future<List<ClassMember>>>();
+            for (int t = 0; t < THREADS; t++) {
+                final int offset = t;
+                results.add(pool.submit(new Callable<List<ClassMember>>() {
+                    public List<ClassMember> call() {
+                        List<ClassMember> members = new ArrayList<ClassMember>();
+                        for (int i = 0; i < MEMBERS; i++) {
+                            // Each thread starts at a different member.
+                            int n = (i + offset * 25) % MEMBERS;
+                            members.add(Scene.v().makeMethodRef(missing, "m" + n,
+                                    Collections.<Type>emptyList(), VoidType.v(), false).resolve());
+                            members.add(Scene.v().makeFieldRef(missing, "f" + n,
+                                    IntType.v(), false).resolve());
+                        }
+                        return members;
+                    }
+                }));
+            }
+            List<List<ClassMember>> byThread = new ArrayList<List<ClassMember>>();
+            for (Future<List<ClassMember>> f : results) {
+                byThread.add(f.get());
+            }
+            for (int i = 0; i < MEMBERS; i++) {
+                SootMethod m = missing.getMethodByName("m" + i);
+                SootField f = missing.getFieldByName("f" + i);
+                for (int t = 0; t < THREADS; t++) {
+                    int k = (i - t * 25 + MEMBERS * THREADS) % MEMBERS;
+                    assertSame(m, byThread.get(t).get(2 * k));
+                    assertSame(f, byThread.get(t).get(2 * k + 1));
+                }
+            }
+            assertEquals(MEMBERS, missing.getMethodCount());
+            assertEquals(MEMBERS, missing.getFieldCount());
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright (C) 2014 RoboVM AB
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/gpl-2.0.html>.
+ */
+package soot;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.junit.Test;
+
+import soot.javaToJimple.IInitialResolver.Dependencies;
+import soot.options.Options;
+
+/**
+ * Tests that {@link SootResolver} resolves classes requested from several
+ * threads at once with <tt>-parallel-resolver</tt>, including classes a
+ * class source asks for while it is resolving another class.
+ */
+public class SootResolverTest {
+
+    private static final String[] CLASSES = {
+        "soot.coffi.CFG", "soot.util.HashChain", "soot.toolkits.scalar.LocalPacker",
+        "soot.jimple.spark.pag.PAG", "soot.FastHierarchy",
+        "soot.jimple.toolkits.callgraph.CallGraphBuilder"
+    };
+
+    /**
+     * A class provider whose sources for the other classes of Soot ask for
+     * one of {@link #CLASSES} while resolving them, on the threads of the
+     * pool.
+     */
+    private static class ChainingClassProvider implements ClassProvider {
+        private final CoffiClassProvider coffi = new CoffiClassProvider();
+
+        public ClassSource find(final String className) {
+            final CoffiClassSource source = (CoffiClassSource) coffi.find(className);
+            if (source == null) {
+                return null;
+            }
+            return new CoffiClassSource(className, source.classFile) {
+                public Dependencies resolve(SootClass sc) {
+                    if (className.startsWith("soot.") && !Arrays.asList(CLASSES).contains(className)) {
+                        String name = CLASSES[(className.hashCode() & 0xff) % CLASSES.length];
+                        SootClass c = Scene.v().forceResolve(name, SootClass.SIGNATURES);
+                        assertTrue(c.resolvingLevel() >= SootClass.SIGNATURES);
+                    }
+                    return super.resolve(sc);
+                }
+            };
+        }
+    }
+
+    private static void setUp(boolean parallel, boolean chaining) {
+        G.reset();
+        Options.v().set_soot_classpath(System.getProperty("java.class.path"));
+        Options.v().set_allow_phantom_refs(true);
+        Options.v().set_parallel_resolver(parallel);
+        Options.v().set_num_threads(4);
+        if (chaining) {
+            SourceLocator.v().setClassProviders(
+                    Collections.<ClassProvider>singletonList(new ChainingClassProvider()));
+        }
+        Scene.v().loadNecessaryClasses();
+    }
+
+    /**
+     * Loads {@link #CLASSES} on as many threads, each in a different order,
+     * and returns the level and the number of methods of every class of the
+     * Scene.
+     */
+    private static Map<String, String> loadConcurrently() throws InterruptedException {
+        final List<Throwable> errors = Collections.synchronizedList(new ArrayList<Throwable>());
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int t = 0; t < CLASSES.length; t++) {
+            final int first = t;
+            Thread thread = new Thread() {
+                public void run() {
+                    try {
+                        for (int i = 0; i < CLASSES.length; i++) {
+                            String name = CLASSES[(first + i) % CLASSES.length];
+                            SootClass c = Scene.v().loadClassAndSupport(name);
+                            assertEquals(name, SootClass.BODIES, c.resolvingLevel());
+                        }
+                    } catch (Throwable e) {
+                        errors.add(e);
+                    }
+                }
+            };
+            thread.setDaemon(true);
+            thread.start();
+            threads.add(thread);
+        }
+        for (Thread thread : threads) {
+            thread.join(60000);
+            assertFalse("Deadlocked resolving classes", thread.isAlive());
+        }
+        if (!errors.isEmpty()) {
+            throw new AssertionError(errors.get(0));
+        }
+        return describeScene();
+    }
+
+    private static Map<String, String> describeScene() {
+        Map<String, String> ret = new TreeMap<String, String>();
+        for (SootClass c : new ArrayList<SootClass>(Scene.v().getClasses())) {
+            ret.put(c.getName(), c.resolvingLevel() + " " + c.isPhantom() + " "
+                    + (c.resolvingLevel() >= SootClass.SIGNATURES ? c.getMethodCount() : -1));
+        }
+        return ret;
+    }
+
+    private static Map<String, String> loadSequentially() {
+        for (String name : CLASSES) {
+            Scene.v().loadClassAndSupport(name);
+        }
+        return describeScene();
+    }
+
+    @Test
+    public void testConcurrentResolution() throws InterruptedException {
+        setUp(false, false);
+        Map<String, String> expected = loadSequentially();
+        setUp(true, false);
+        Map<String, String> actual = loadConcurrently();
+        assertEquals(expected, actual);
+        assertTrue(actual.size() > 300);
+        for (String name : CLASSES) {
+            assertFalse(name, Scene.v().getSootClass(name).isPhantom());
+        }
+    }
+
+    @Test
+    public void testSourceResolvesOtherClasses() throws InterruptedException {
+        setUp(false, true);
+        Map<String, String> expected = loadSequentially();
+        setUp(true, true);
+        Map<String, String> actual = loadConcurrently();
+        assertEquals(expected, actual);
+    }
+}
@@ -0,0 +1,246 @@
+/*
+ * Copyright (C) 2014 RoboVM AB
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/gpl-2.0.html>.
+ */
+package soot.coffi;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import soot.G;
+import soot.Scene;
+import soot.SootClass;
+import soot.SootMethod;
+import soot.jimple.JimpleBody;
+import soot.jimple.JimpleBodySerializer;
+import soot.options.Options;
+
+/**
+ * Tests that the {@link BodyCache} returns the bodies it stored, only for
+ * the same class file and format, and keeps its directory within its size.
+ */
+public class BodyCacheTest {
+
+    static class Sample {
+        int n;
+
+        int sum(int[] values) {
+            int s = 0;
+            for (int v : values) {
+                s += v;
+            }
+            return s + n;
+        }
+
+        String name(int i) {
+            switch (i) {
+            case 0: return "zero";
+            case 1: return "one";
+            default:
+                try {
+                    return Integer.toString(i, 36);
+                } catch (RuntimeException e) {
+                    return null;
+                }
+            }
+        }
+    }
+
+    private File dir;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = File.createTempFile("bodycache", "");
+        assertTrue(dir.delete());
+        assertTrue(dir.mkdir());
+    }
+
+    @After
+    public void tearDown() {
+        delete(dir);
+    }
+
+    private static void delete(File f) {
+        File[] children = f.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        f.delete();
+    }
+
+    private static byte[] classBytes(Class<?> c) throws IOException {
+        String name = c.getName();
+        InputStream in = c.getResourceAsStream(name.substring(name.lastIndexOf('.') + 1) + ".class");
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buf = new byte[4096];
+            int n;
+            while ((n = in.read(buf)) != -1) {
+                out.write(buf, 0, n);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+
+    private static ClassFile classFile(byte[] data) {
+        ClassFile cf = new ClassFile(Sample.class.getName());
+        assertTrue(cf.loadClassFile(new ByteArrayInputStream(data)));
+        assertNotNull(cf.content_hash);
+        return cf;
+    }
+
+    /**
+     * Loads {@link Sample} with the cache in {@link #dir} and returns the
+     * Jimple text of each of its methods.
+     */
+    private Map<SootMethod, String> load() {
+        return load(512);
+    }
+
+    private Map<SootMethod, String> load(int cacheSize) {
+        G.reset();
+        Options.v().set_soot_classpath(System.getProperty("java.class.path"));
+        Options.v().set_allow_phantom_refs(true);
+        Options.v().set_body_cache_dir(dir.getPath());
+        Options.v().set_body_cache_size(cacheSize);
+        SootClass c = Scene.v().loadClassAndSupport(Sample.class.getName());
+        Scene.v().loadNecessaryClasses();
+        Map<SootMethod, String> ret = new LinkedHashMap<SootMethod, String>();
+        for (SootMethod m : c.getMethods()) {
+            if (m.isConcrete()) {
+                ret.put(m, m.retrieveActiveBody().toString());
+            }
+        }
+        return ret;
+    }
+
+    private List<File> entries() {
+        List<File> ret = new ArrayList<File>();
+        File[] subdirs = dir.listFiles();
+        if (subdirs != null) {
+            for (File subdir : subdirs) {
+                ret.addAll(Arrays.asList(subdir.listFiles()));
+            }
+        }
+        return ret;
+    }
+
+    @Test
+    public void testLoadStored() throws IOException {
+        Map<SootMethod, String> bodies = load();
+        assertEquals(bodies.size(), entries().size());
+        ClassFile cf = classFile(classBytes(Sample.class));
+        for (Map.Entry<SootMethod, String> e : bodies.entrySet()) {
+            JimpleBody cached = BodyCache.v().load(e.getKey(), cf);
+            assertNotNull(e.getKey().getSignature(), cached);
+            assertEquals(e.getValue(), cached.toString());
+        }
+
+        // A second run reads the bodies from the cache, which marks them as
+        // recently used, and stores nothing new.
+        long past = System.currentTimeMillis() - 3600 * 1000;
+        for (File f : entries()) {
+            assertTrue(f.setLastModified(past));
+        }
+        Map<SootMethod, String> again = load();
+        assertEquals(new ArrayList<String>(bodies.values()), new ArrayList<String>(again.values()));
+        assertEquals(bodies.size(), entries().size());
+        for (File f : entries()) {
+            assertTrue("Entry not read: " + f, f.lastModified() > past);
+        }
+    }
+
+    @Test
+    public void testChangedClassFile() throws IOException {
+        Map<SootMethod, String> bodies = load();
+        byte[] data = classBytes(Sample.class);
+        // Trailing bytes are not read, but they change the hash of the file.
+        ClassFile changed = classFile(Arrays.copyOf(data, data.length + 1));
+        for (SootMethod m : bodies.keySet()) {
+            assertNull(m.getSignature(), BodyCache.v().load(m, changed));
+        }
+        assertEquals(bodies.size(), entries().size());
+    }
+
+    @Test
+    public void testWrongFormat() throws IOException {
+        Map<SootMethod, String> bodies = load();
+        List<File> files = entries();
+        assertTrue(files.size() >= 2);
+        // The magic number of the first entry and the version of the others
+        for (int i = 0; i < files.size(); i++) {
+            RandomAccessFile f = new RandomAccessFile(files.get(i), "rw");
+            try {
+                if (i == 0) {
+                    f.writeInt(0xCAFEBABE);
+                } else {
+                    f.seek(4);
+                    f.writeInt(JimpleBodySerializer.FORMAT_VERSION + 1);
+                }
+            } finally {
+                f.close();
+            }
+        }
+        ClassFile cf = classFile(classBytes(Sample.class));
+        for (SootMethod m : bodies.keySet()) {
+            assertNull(m.getSignature(), BodyCache.v().load(m, cf));
+        }
+        for (File f : files) {
+            assertFalse("Entry not discarded: " + f, f.exists());
+        }
+    }
+
+    @Test
+    public void testPrune() throws IOException {
+        File old = new File(new File(dir, "00"), "old");
+        old.getParentFile().mkdirs();
+        FileOutputStream out = new FileOutputStream(old);
+        try {
+            out.write(new byte[2 * 1024 * 1024]);
+        } finally {
+            out.close();
+        }
+        assertTrue(old.setLastModified(System.currentTimeMillis() - 3600 * 1000));
+
+        Map<SootMethod, String> bodies = load(1);
+        assertFalse("The least recently used entry was kept", old.exists());
+        assertEquals(bodies.size(), entries().size());
+        long size = 0;
+        for (File f : entries()) {
+            size += f.length();
+        }
+        assertTrue(size <= 1024 * 1024);
+    }
+}
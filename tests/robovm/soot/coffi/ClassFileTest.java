@@ -0,0 +1,163 @@
+/*
+ * Copyright (C) 2014 RoboVM AB
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/gpl-2.0.html>.
+ */
+package soot.coffi;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+import soot.options.Options;
+
+/**
+ * Tests that {@link ClassFile} reads the same class file from a stream and
+ * from a {@link ByteBuffer}.
+ */
+public class ClassFileTest {
+
+    private static byte[] classBytes(Class<?> c) throws IOException {
+        InputStream in = c.getResourceAsStream(c.getSimpleName() + ".class");
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buf = new byte[4096];
+            int n;
+            while ((n = in.read(buf)) != -1) {
+                out.write(buf, 0, n);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+
+    private static void assertSameClassFile(ClassFile expected, ClassFile actual) {
+        assertEquals(expected.constant_pool_count, actual.constant_pool_count);
+        for (int i = 1; i < expected.constant_pool_count; i++) {
+            cp_info e = expected.constant_pool[i];
+            cp_info a = actual.constant_pool[i];
+            if (e == null) {
+                assertNull(a);
+                continue;
+            }
+            assertEquals(e.getClass(), a.getClass());
+            assertEquals(e.toString(expected.constant_pool), a.toString(actual.constant_pool));
+        }
+        assertEquals(expected.access_flags, actual.access_flags);
+        assertEquals(expected.this_class, actual.this_class);
+        assertEquals(expected.super_class, actual.super_class);
+        assertEquals(expected.fields_count, actual.fields_count);
+        assertEquals(expected.methods_count, actual.methods_count);
+        for (int i = 0; i < expected.methods_count; i++) {
+            assertEquals(expected.methods[i].toName(expected.constant_pool),
+                    actual.methods[i].toName(actual.constant_pool));
+            Code_attribute ec = expected.methods[i].locate_code_attribute();
+            Code_attribute ac = actual.methods[i].locate_code_attribute();
+            if (ec == null) {
+                assertNull(ac);
+            } else {
+                assertArrayEquals(ec.code, ac.code);
+            }
+        }
+        assertEquals(expected.attributes_count, actual.attributes_count);
+    }
+
+    @Test
+    public void testLoadFromByteBuffer() throws IOException {
+        byte[] data = classBytes(ClassFile.class);
+
+        ClassFile fromStream = new ClassFile("soot.coffi.ClassFile");
+        assertTrue(fromStream.loadClassFile(new ByteArrayInputStream(data)));
+
+        ClassFile fromHeap = new ClassFile("soot.coffi.ClassFile");
+        assertTrue(fromHeap.loadClassFile(ByteBuffer.wrap(data)));
+        assertSameClassFile(fromStream, fromHeap);
+
+        ByteBuffer direct = ByteBuffer.allocateDirect(data.length);
+        direct.put(data).flip();
+        ClassFile fromDirect = new ClassFile("soot.coffi.ClassFile");
+        assertTrue(fromDirect.loadClassFile(direct));
+        assertSameClassFile(fromStream, fromDirect);
+        assertEquals("Buffer position must not change", 0, direct.position());
+    }
+
+    @Test
+    public void testLazyConstantPool() throws IOException {
+        byte[] data = classBytes(ClassFile.class);
+
+        ClassFile eager = new ClassFile("soot.coffi.ClassFile");
+        assertTrue(eager.loadClassFile(new ByteArrayInputStream(data)));
+
+        Options.v().set_lazy_constant_pool(true);
+        try {
+            ClassFile fromStream = new ClassFile("soot.coffi.ClassFile");
+            assertTrue(fromStream.loadClassFile(new ByteArrayInputStream(data)));
+            assertSameClassFile(eager, fromStream);
+
+            ByteBuffer buf = ByteBuffer.wrap(data.clone());
+            ClassFile fromBuffer = new ClassFile("soot.coffi.ClassFile");
+            assertTrue(fromBuffer.loadClassFile(buf));
+            // The buffer may be reused once the class file has been read.
+            buf.put(new byte[data.length]);
+            assertSameClassFile(eager, fromBuffer);
+
+            for (int i = 1; i < eager.constant_pool_count; i++) {
+                if (eager.constant_pool[i] instanceof CONSTANT_Utf8_info) {
+                    CONSTANT_Utf8_info e = (CONSTANT_Utf8_info) eager.constant_pool[i];
+                    CONSTANT_Utf8_info l = (CONSTANT_Utf8_info) fromBuffer.constant_pool[i];
+                    assertTrue(e.equals(l));
+                    assertEquals(0, e.compareTo(l));
+                    assertEquals(e.length(), l.length());
+                }
+            }
+        } finally {
+            Options.v().set_lazy_constant_pool(false);
+        }
+    }
+
+    @Test
+    public void testByteBufferDataInput() throws IOException {
+        ByteBuffer buf = ByteBuffer.wrap(new byte[] {
+                (byte) 0xCA, (byte) 0xFE, (byte) 0xBA, (byte) 0xBE, (byte) 0xFF, (byte) 0xFE, 1 });
+        ByteBufferDataInput d = new ByteBufferDataInput(buf);
+        assertEquals(0xCAFEBABE, d.readInt());
+        assertEquals(0xFFFE, d.readUnsignedShort());
+        assertEquals(1, d.readUnsignedByte());
+        try {
+            d.readByte();
+            fail("EOFException expected");
+        } catch (EOFException e) {
+        }
+    }
+
+    @Test
+    public void testByteBufferReadLine() throws IOException {
+        byte[] bytes = "a\nbc\r\nd\re\r\n\nf".getBytes("ISO-8859-1");
+        ByteBufferDataInput d = new ByteBufferDataInput(ByteBuffer.wrap(bytes));
+        java.io.DataInputStream expected = new java.io.DataInputStream(new ByteArrayInputStream(bytes));
+        String line;
+        do {
+            line = expected.readLine();
+            assertEquals(line, d.readLine());
+        } while (line != null);
+    }
+}
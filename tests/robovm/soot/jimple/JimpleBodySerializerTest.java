@@ -0,0 +1,213 @@
+/*
+ * Copyright (C) 2014 RoboVM AB
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/gpl-2.0.html>.
+ */
+package soot.jimple;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import soot.Body;
+import soot.G;
+import soot.LocalVariable;
+import soot.Scene;
+import soot.SootClass;
+import soot.SootMethod;
+import soot.Unit;
+import soot.Value;
+import soot.ValueBox;
+import soot.options.Options;
+import soot.tagkit.StringTag;
+
+/**
+ * Tests that {@link JimpleBodySerializer} reads back the bodies it writes.
+ */
+public class JimpleBodySerializerTest {
+
+    /** Code using the statements and constants the format must keep. */
+    static class Sample {
+        static final Object LOCK = new Object();
+        long total;
+
+        int table(int i) {
+            switch (i) {
+            case 0: return 10;
+            case 1: return 11;
+            case 2: return 12;
+            case 3: return 13;
+            default: return -1;
+            }
+        }
+
+        String lookup(int i) {
+            switch (i) {
+            case -100: return "minus";
+            case 7: return "seven";
+            case 100000: return "large";
+            default: return null;
+            }
+        }
+
+        double constants(float f) {
+            total += 1234567890123L;
+            Class<?> c = String[].class;
+            return f * 2.5f + 3.25 + c.getName().length() + 'x';
+        }
+
+        int traps(String s) {
+            int n = 0;
+            try {
+                n = Integer.parseInt(s);
+            } catch (NumberFormatException e) {
+                n = -1;
+            } finally {
+                total++;
+            }
+            synchronized (LOCK) {
+                n += s.length();
+            }
+            return n;
+        }
+
+        Object arrays(Object o, int n) {
+            int[][] grid = new int[n][n + 1];
+            grid[0][0] = n;
+            if (o instanceof Sample && !(o instanceof Runnable)) {
+                return ((Sample) o).total > 0 ? grid : o;
+            }
+            return new long[] { n, n << 3, n >>> 1, n ^ 5, ~n, -n % 3 };
+        }
+    }
+
+    private static final String[] CLASSES = {
+        Sample.class.getName(), "soot.coffi.CFG", "soot.coffi.BodyCache", "soot.util.HashChain"
+    };
+
+    private static List<Body> loadBodies() {
+        G.reset();
+        Options.v().set_soot_classpath(System.getProperty("java.class.path"));
+        Options.v().set_allow_phantom_refs(true);
+        Options.v().set_keep_line_number(true);
+        List<SootClass> classes = new ArrayList<SootClass>();
+        for (String className : CLASSES) {
+            classes.add(Scene.v().loadClassAndSupport(className));
+        }
+        Scene.v().loadNecessaryClasses();
+        List<Body> bodies = new ArrayList<Body>();
+        for (SootClass c : classes) {
+            for (SootMethod m : c.getMethods()) {
+                if (m.isConcrete()) {
+                    bodies.add(m.retrieveActiveBody());
+                }
+            }
+        }
+        return bodies;
+    }
+
+    /** Returns the Jimple text of b followed by its tags and its local variables. */
+    private static String describe(Body b) {
+        StringBuilder sb = new StringBuilder(b.toString());
+        for (Unit u : b.getUnits()) {
+            sb.append(u).append(' ').append(u.getTags()).append('\n');
+        }
+        for (LocalVariable v : b.getLocalVariables()) {
+            sb.append(v.getName()).append(' ').append(v.getIndex()).append(' ')
+                .append(v.getStartUnit()).append(' ').append(v.getEndUnit()).append(' ')
+                .append(v.getDescriptor()).append('\n');
+        }
+        return sb.toString();
+    }
+
+    private static byte[] write(Body b) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        assertTrue(b.getMethod().getSignature(), JimpleBodySerializer.write((JimpleBody) b, out));
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private static JimpleBody read(SootMethod m, byte[] data, int length) throws IOException {
+        JimpleBody jb = Jimple.v().newBody(m);
+        JimpleBodySerializer.read(jb, new DataInputStream(new ByteArrayInputStream(data, 0, length)));
+        return jb;
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        int traps = 0, tableSwitches = 0, lookupSwitches = 0, tags = 0;
+        List<Class<?>> constants = new ArrayList<Class<?>>();
+        for (Body b : loadBodies()) {
+            byte[] data = write(b);
+            JimpleBody read = read(b.getMethod(), data, data.length);
+            assertEquals(describe(b), describe(read));
+
+            traps += b.getTraps().size();
+            for (Unit u : b.getUnits()) {
+                if (u instanceof TableSwitchStmt) {
+                    tableSwitches++;
+                } else if (u instanceof LookupSwitchStmt) {
+                    lookupSwitches++;
+                }
+                tags += u.getTags().size();
+                for (Object box : u.getUseBoxes()) {
+                    Value v = ((ValueBox) box).getValue();
+                    if (v instanceof Constant && !constants.contains(v.getClass())) {
+                        constants.add(v.getClass());
+                    }
+                }
+            }
+        }
+        assertTrue(traps > 10);
+        assertTrue(tableSwitches > 0);
+        assertTrue(lookupSwitches > 0);
+        assertTrue(tags > 1000);
+        for (Class<?> c : new Class<?>[] { IntConstant.class, LongConstant.class, FloatConstant.class,
+                DoubleConstant.class, StringConstant.class, ClassConstant.class, NullConstant.class }) {
+            assertTrue(c.getName(), constants.contains(c));
+        }
+    }
+
+    @Test
+    public void testTruncated() throws IOException {
+        loadBodies();
+        Body b = Scene.v().getSootClass(Sample.class.getName()).getMethodByName("traps").getActiveBody();
+        byte[] data = write(b);
+        for (int length = 0; length < data.length; length++) {
+            try {
+                read(b.getMethod(), data, length);
+                fail("Read a body from " + length + " of " + data.length + " bytes");
+            } catch (EOFException e) {
+            }
+        }
+    }
+
+    @Test
+    public void testUnsupportedTag() throws IOException {
+        loadBodies();
+        Body b = Scene.v().getSootClass(Sample.class.getName()).getMethodByName("table").getActiveBody();
+        b.getUnits().getFirst().addTag(new StringTag("unsupported"));
+        assertFalse(JimpleBodySerializer.write((JimpleBody) b, new DataOutputStream(new ByteArrayOutputStream())));
+    }
+}
@@ -0,0 +1,242 @@
+/*
+ * Copyright (C) 2014 RoboVM AB
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/gpl-2.0.html>.
+ */
+package soot.jimple.spark.ondemand;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import soot.G;
+import soot.Local;
+import soot.Modifier;
+import soot.PhaseOptions;
+import soot.PointsToSet;
+import soot.RefType;
+import soot.Scene;
+import soot.SootClass;
+import soot.SootMethod;
+import soot.SootMethodRef;
+import soot.Transform;
+import soot.Type;
+import soot.Unit;
+import soot.Value;
+import soot.VoidType;
+import soot.jimple.Jimple;
+import soot.jimple.JimpleBody;
+import soot.jimple.NewExpr;
+import soot.jimple.NullConstant;
+import soot.jimple.spark.SparkTransformer;
+import soot.jimple.spark.pag.AllocNode;
+import soot.jimple.spark.pag.Node;
+import soot.jimple.spark.pag.PAG;
+import soot.jimple.spark.sets.P2SetVisitor;
+import soot.jimple.spark.sets.PointsToSetInternal;
+import soot.jimple.toolkits.callgraph.Edge;
+import soot.options.Options;
+import soot.robovm.RoboVMLocalAlias;
+
+/**
+ * Tests that {@link DemandPointsTo} matches returns with their call sites,
+ * falls back to the Spark sets when it runs out of steps, and finds the
+ * nodes of aliases; and that the on-the-fly call graph handles aliases and
+ * dynamic invokes.
+ */
+public class DemandPointsToTest {
+
+    private SootClass a;
+    private SootMethod main;
+    private NewExpr newA;
+    private NewExpr newB;
+    private NewExpr newInM;
+    private Local x;
+    private Local y;
+    private Local alias;
+    private Local z;
+    private Unit aliasCall;
+    private Unit dynamicCall;
+    private DemandPointsTo demand;
+    private PAG pag;
+
+    /**
+     * Builds the classes
+     * <pre>
+     * class A { Object m() { return new B(); } }
+     * class B {}
+     * class C {
+     *     static Object id(Object p) { return p; }
+     *     static void main() {
+     *         A a = new A(); B b = new B();
+     *         Object x = id(a); Object y = id(b);
+     *         Object z = a'.m();  // a' is an alias of a
+     *         dynamicinvoke f();
+     *     }
+     * }
+     * </pre>
+     * and runs Spark with the on-demand analysis on them.
+     */
+    @Before
+    public void setUp() {
+        G.reset();
+        Options.v().set_soot_classpath(System.getProperty("java.class.path"));
+        Options.v().set_allow_phantom_refs(true);
+        Scene.v().loadNecessaryClasses();
+        Jimple j = Jimple.v();
+        RefType object = RefType.v("java.lang.Object");
+
+        a = newClass("A");
+        SootClass b = newClass("B");
+        JimpleBody mBody = (JimpleBody) newMethod(a, "m", Collections.<Type>emptyList(), object, 0)
+                .getActiveBody();
+        Local thisA = newLocal(mBody, "this", a.getType());
+        Local r = newLocal(mBody, "r", b.getType());
+        newInM = j.newNewExpr(b.getType());
+        mBody.getUnits().add(j.newIdentityStmt(thisA, j.newThisRef(a.getType())));
+        mBody.getUnits().add(j.newAssignStmt(r, newInM));
+        mBody.getUnits().add(j.newReturnStmt(r));
+        SootClass c = newClass("C");
+
+        SootMethod id = newMethod(c, "id", Collections.<Type>singletonList(object), object, Modifier.STATIC);
+        JimpleBody idBody = (JimpleBody) id.getActiveBody();
+        Local p = newLocal(idBody, "p", object);
+        idBody.getUnits().add(j.newIdentityStmt(p, j.newParameterRef(object, 0)));
+        idBody.getUnits().add(j.newReturnStmt(p));
+
+        SootMethod bsm = newMethod(c, "bsm", Collections.<Type>emptyList(),
+                RefType.v("java.lang.invoke.CallSite"), Modifier.STATIC);
+        bsm.getActiveBody().getUnits().add(j.newReturnStmt(NullConstant.v()));
+
+        main = newMethod(c, "main", Collections.<Type>emptyList(), VoidType.v(), Modifier.STATIC);
+        JimpleBody body = (JimpleBody) main.getActiveBody();
+        Local la = newLocal(body, "a", a.getType());
+        Local lb = newLocal(body, "b", b.getType());
+        x = newLocal(body, "x", object);
+        y = newLocal(body, "y", object);
+        z = newLocal(body, "z", object);
+        newA = j.newNewExpr(a.getType());
+        newB = j.newNewExpr(b.getType());
+        body.getUnits().add(j.newAssignStmt(la, newA));
+        body.getUnits().add(j.newAssignStmt(lb, newB));
+        body.getUnits().add(j.newAssignStmt(x, j.newStaticInvokeExpr(id.makeRef(), la)));
+        body.getUnits().add(j.newAssignStmt(y, j.newStaticInvokeExpr(id.makeRef(), lb)));
+        alias = new RoboVMLocalAlias(la, 1);
+        aliasCall = j.newAssignStmt(z, j.newVirtualInvokeExpr(alias, a.getMethodByName("m").makeRef()));
+        body.getUnits().add(aliasCall);
+        SootClass dummy = Scene.v().containsClass(SootClass.INVOKEDYNAMIC_DUMMY_CLASS_NAME)
+                ? Scene.v().getSootClass(SootClass.INVOKEDYNAMIC_DUMMY_CLASS_NAME)
+                : newClass(SootClass.INVOKEDYNAMIC_DUMMY_CLASS_NAME);
+        SootMethodRef f = Scene.v().makeMethodRef(dummy, "f", Collections.<Type>emptyList(), VoidType.v(), true);
+        dynamicCall = j.newInvokeStmt(j.newDynamicInvokeExpr(bsm.makeRef(),
+                Collections.<Value>emptyList(), f, Collections.<Value>emptyList()));
+        body.getUnits().add(dynamicCall);
+        body.getUnits().add(j.newReturnVoidStmt());
+
+        Scene.v().setEntryPoints(Collections.singletonList(main));
+        Transform spark = new Transform("cg.spark", SparkTransformer.v());
+        PhaseOptions.v().setPhaseOption(spark, "enabled:true");
+        PhaseOptions.v().setPhaseOption(spark, "cs-demand:true");
+        PhaseOptions.v().setPhaseOption(spark, "lazy-pts:false");
+        SparkTransformer.v().transform("cg.spark", PhaseOptions.v().getPhaseOptions(spark));
+        demand = (DemandPointsTo) Scene.v().getPointsToAnalysis();
+        pag = demand.getPAG();
+    }
+
+    private static SootClass newClass(String name) {
+        SootClass c = new SootClass(name);
+        c.setSuperclass(Scene.v().getSootClass("java.lang.Object"));
+        Scene.v().addClass(c);
+        c.setApplicationClass();
+        return c;
+    }
+
+    private static SootMethod newMethod(SootClass c, String name, List<Type> parameterTypes,
+            Type returnType, int modifiers) {
+        SootMethod m = new SootMethod(name, parameterTypes, returnType, modifiers);
+        c.addMethod(m);
+        m.setActiveBody(Jimple.v().newBody(m));
+        return m;
+    }
+
+    private static Local newLocal(JimpleBody b, String name, Type type) {
+        Local l = Jimple.v().newLocal(name, type);
+        b.getLocals().add(l);
+        return l;
+    }
+
+    /** Returns the new expressions of the allocation sites in s. */
+    private static Set<Object> sites(PointsToSet s) {
+        final Set<Object> ret = new HashSet<Object>();
+        ((PointsToSetInternal) s).forall(new P2SetVisitor() {
+            public void visit(Node n) {
+                ret.add(((AllocNode) n).getNewExpr());
+            }
+        });
+        return ret;
+    }
+
+    @Test
+    public void testCallSiteMatching() {
+        Set<Object> both = new HashSet<Object>(Arrays.<Object>asList(newA, newB));
+        // Spark merges the returns of both calls to id.
+        assertEquals(both, sites(pag.reachingObjects(x)));
+        assertEquals(both, sites(pag.reachingObjects(y)));
+        // The on-demand analysis only returns the argument of each call.
+        assertEquals(Collections.<Object>singleton(newA), sites(demand.reachingObjects(x)));
+        assertEquals(Collections.<Object>singleton(newB), sites(demand.reachingObjects(y)));
+        assertFalse(demand.hasNonEmptyIntersection(x, y));
+        assertTrue(pag.findLocalVarNode(x).getP2Set().hasNonEmptyIntersection(
+                pag.findLocalVarNode(y).getP2Set()));
+    }
+
+    @Test
+    public void testBudgetFallback() {
+        DemandPointsTo noSteps = new DemandPointsTo(pag, 0, false);
+        assertSame(pag.reachingObjects(x), noSteps.reachingObjects(x));
+        assertSame(pag.reachingObjects(y), noSteps.reachingObjects(y));
+        assertTrue(noSteps.hasNonEmptyIntersection(x, y));
+    }
+
+    @Test
+    public void testAlias() {
+        Local owner = ((RoboVMLocalAlias) alias).getOwner();
+        assertNotNull(pag.findLocalVarNode(owner));
+        assertSame(pag.findLocalVarNode(owner), pag.findLocalVarNode(alias));
+        assertEquals(Collections.<Object>singleton(newA), sites(demand.reachingObjects(alias)));
+
+        // The call on the alias is resolved from the objects of its owner
+        // while the points-to sets are propagated, so the result of the
+        // call is known.
+        assertEquals(Collections.<Object>singleton(newInM), sites(pag.reachingObjects(z)));
+        Iterator<Edge> edges = Scene.v().getCallGraph().edgesOutOf(aliasCall);
+        assertTrue(edges.hasNext());
+        assertSame(a.getMethodByName("m"), edges.next().tgt());
+        assertFalse(edges.hasNext());
+    }
+
+    @Test
+    public void testDynamicInvoke() {
+        assertFalse(Scene.v().getCallGraph().edgesOutOf(dynamicCall).hasNext());
+        assertTrue(Scene.v().getReachableMethods().contains(main));
+    }
+}
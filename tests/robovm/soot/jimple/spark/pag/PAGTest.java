@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) 2014 RoboVM AB
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/gpl-2.0.html>.
+ */
+package soot.jimple.spark.pag;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Test;
+
+import soot.G;
+import soot.PhaseOptions;
+import soot.RefType;
+import soot.Scene;
+import soot.Transform;
+import soot.jimple.spark.SparkTransformer;
+import soot.options.Options;
+import soot.options.SparkOptions;
+
+/**
+ * Tests that merging nodes of the {@link PAG} keeps the edges of the other
+ * kinds of nodes, with and without the compact edge tables.
+ */
+public class PAGTest {
+
+    private static PAG newPAG(boolean compactEdges) {
+        G.reset();
+        Options.v().set_soot_classpath(System.getProperty("java.class.path"));
+        Options.v().set_allow_phantom_refs(true);
+        Scene.v().loadNecessaryClasses();
+        Transform spark = new Transform("cg.spark", SparkTransformer.v());
+        PhaseOptions.v().setPhaseOption(spark, "compact-edges:" + compactEdges);
+        return new PAG(new SparkOptions(PhaseOptions.v().getPhaseOptions(spark)));
+    }
+
+    private static Set<Node> set(Node... nodes) {
+        return new HashSet<Node>(Arrays.asList(nodes));
+    }
+
+    private static void testMergeVarNodes(boolean compactEdges) {
+        PAG pag = newPAG(compactEdges);
+        RefType object = RefType.v("java.lang.Object");
+        // Variables, allocation sites and field references are numbered
+        // separately, so v1, a1 and f1 share a number, and so do v2, a2
+        // and f2.
+        VarNode v1 = pag.makeGlobalVarNode("v1", object);
+        VarNode v2 = pag.makeGlobalVarNode("v2", object);
+        AllocNode a1 = pag.makeAllocNode("a1", object, null);
+        AllocNode a2 = pag.makeAllocNode("a2", object, null);
+        // Merging variables also merges their field references, so f2 has
+        // a base which is not merged.
+        VarNode v3 = pag.makeGlobalVarNode("v3", object);
+        FieldRefNode f1 = pag.makeFieldRefNode(v1, ArrayElement.v());
+        FieldRefNode f2 = pag.makeFieldRefNode(v3, ArrayElement.v());
+        assertEquals(v1.getNumber(), a1.getNumber());
+        assertEquals(v1.getNumber(), f1.getNumber());
+        assertEquals(v2.getNumber(), a2.getNumber());
+        assertEquals(v2.getNumber(), f2.getNumber());
+
+        assertTrue(pag.addAllocEdge(a1, v1));
+        assertTrue(pag.addAllocEdge(a2, v2));
+        assertTrue(pag.addLoadEdge(f1, v1));
+        assertTrue(pag.addLoadEdge(f2, v2));
+        assertTrue(pag.addStoreEdge(v1, f1));
+        assertTrue(pag.addStoreEdge(v2, f2));
+
+        v1.mergeWith(v2);
+        pag.cleanUpMerges();
+
+        assertEquals(set(v1), set(pag.allocLookup(a1)));
+        assertEquals(set(v1), set(pag.allocLookup(a2)));
+        assertEquals(set(v1), set(pag.loadLookup(f1)));
+        assertEquals(set(v1), set(pag.loadLookup(f2)));
+        assertEquals(set(v1), set(pag.storeInvLookup(f1)));
+        assertEquals(set(v1), set(pag.storeInvLookup(f2)));
+
+        assertEquals(set(a1, a2), set(pag.allocInvLookup(v1)));
+        assertEquals(set(f1, f2), set(pag.loadInvLookup(v1)));
+        assertEquals(set(f1, f2), set(pag.storeLookup(v1)));
+        assertEquals(0, pag.allocInvLookup(v2).length);
+        assertEquals(0, pag.loadInvLookup(v2).length);
+        assertEquals(0, pag.storeLookup(v2).length);
+    }
+
+    @Test
+    public void testMergeVarNodes() {
+        testMergeVarNodes(false);
+    }
+
+    @Test
+    public void testMergeVarNodesCompactEdges() {
+        testMergeVarNodes(true);
+    }
+}
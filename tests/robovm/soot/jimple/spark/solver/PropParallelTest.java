@@ -0,0 +1,315 @@
+/*
+ * Copyright (C) 2014 RoboVM AB
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/gpl-2.0.html>.
+ */
+package soot.jimple.spark.solver;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Test;
+
+import soot.G;
+import soot.Local;
+import soot.Modifier;
+import soot.PhaseOptions;
+import soot.RefLikeType;
+import soot.RefType;
+import soot.Scene;
+import soot.SootClass;
+import soot.SootMethod;
+import soot.SootMethodRef;
+import soot.Transform;
+import soot.Type;
+import soot.Unit;
+import soot.ValueBox;
+import soot.VoidType;
+import soot.jimple.IntConstant;
+import soot.jimple.Jimple;
+import soot.jimple.JimpleBody;
+import soot.jimple.spark.SparkTransformer;
+import soot.jimple.spark.ondemand.DemandPointsTo;
+import soot.jimple.spark.pag.AllocNode;
+import soot.jimple.spark.pag.Node;
+import soot.jimple.spark.pag.PAG;
+import soot.jimple.spark.sets.P2SetVisitor;
+import soot.jimple.spark.sets.PointsToSetInternal;
+import soot.jimple.toolkits.callgraph.Edge;
+import soot.options.Options;
+
+/**
+ * Tests that {@link PropParallel} computes the same points-to sets and the
+ * same on-the-fly call graph as {@link PropWorklist}.
+ */
+public class PropParallelTest {
+
+    /**
+     * The program to analyse. It only refers to {@link Object} of the JDK,
+     * which may be a phantom class.
+     */
+    static abstract class Shape {
+        Shape next;
+        Object payload;
+
+        abstract Shape copy();
+
+        Shape link(Shape s) {
+            next = s;
+            return this;
+        }
+
+        Object payload() {
+            return payload;
+        }
+    }
+
+    static class Circle extends Shape {
+        Shape copy() {
+            Circle c = new Circle();
+            c.payload = payload;
+            return c;
+        }
+    }
+
+    static class Square extends Shape {
+        Shape copy() {
+            Square q = new Square();
+            q.next = next;
+            q.payload = new Object[] { payload };
+            return q;
+        }
+
+        Object payload() {
+            return next != null ? next.payload() : payload;
+        }
+    }
+
+    static class Box {
+        Object[] items = new Object[4];
+
+        void put(int i, Object o) {
+            items[i] = o;
+        }
+
+        Object get(int i) {
+            return items[i];
+        }
+    }
+
+    static class Program {
+        static Shape build(int n) {
+            Shape head = new Circle();
+            for (int i = 0; i < n; i++) {
+                Shape s = i % 2 == 0 ? new Square() : new Circle();
+                s.payload = new Box();
+                head = s.link(head);
+            }
+            return head;
+        }
+
+        static Object walk(Shape s, Box b) {
+            int i = 0;
+            while (s != null) {
+                b.put(i++ % 4, s.copy());
+                s = s.next;
+            }
+            return b.get(0);
+        }
+
+        static Box fill(Box b, Object o) {
+            Box inner = new Box();
+            inner.put(0, o);
+            b.put(1, inner);
+            b.put(2, b.get(1));
+            return (Box) b.get(2);
+        }
+
+        static Object run(int n) {
+            Shape a = build(n);
+            Shape b = build(n + 1).copy();
+            Box box = fill(new Box(), a);
+            Object x = walk(a, box);
+            Object y = walk(b.link(a), fill(box, x));
+            Shape c = (Shape) box.get(3);
+            return c != null ? c.payload() : y;
+        }
+    }
+
+    private static final Class<?>[] CLASSES = {
+        Shape.class, Circle.class, Square.class, Box.class, Program.class
+    };
+
+    /**
+     * Spark does not start from a clean state when it is run a second time on
+     * the same Scene, so each run loads the classes again. The results are
+     * described by method signatures, local names and statement positions,
+     * which do not change from one load to the next.
+     */
+    private static class Result {
+        final Map<String, Set<String>> pointsTo = new HashMap<String, Set<String>>();
+        final Set<String> edges = new HashSet<String>();
+        // The position of every statement, and of every value used by a
+        // statement, in the bodies of the Scene.
+        final Map<Object, String> positions = new IdentityHashMap<Object, String>();
+
+        String position(Object o) {
+            String p = positions.get(o);
+            return p != null ? p : String.valueOf(o);
+        }
+    }
+
+    private static List<SootMethod> load() {
+        G.reset();
+        Options.v().set_soot_classpath(System.getProperty("java.class.path"));
+        Options.v().set_allow_phantom_refs(true);
+        Options.v().set_num_threads(4);
+        List<SootClass> classes = new ArrayList<SootClass>();
+        for (Class<?> cls : CLASSES) {
+            SootClass c = Scene.v().loadClassAndSupport(cls.getName());
+            c.setApplicationClass();
+            classes.add(c);
+        }
+        Scene.v().loadNecessaryClasses();
+        addWideMethod(Scene.v().getSootClass(Program.class.getName()));
+        List<SootMethod> methods = new ArrayList<SootMethod>();
+        for (SootClass c : classes) {
+            for (SootMethod m : c.getMethods()) {
+                if (m.isConcrete()) {
+                    m.retrieveActiveBody();
+                    methods.add(m);
+                }
+            }
+        }
+        Scene.v().setEntryPoints(methods);
+        return methods;
+    }
+
+    /**
+     * Adds a method whose locals are not connected by simple edges, so that
+     * the first wave of {@link PropParallel} is large enough to be processed
+     * in parallel.
+     */
+    private static void addWideMethod(SootClass program) {
+        Jimple j = Jimple.v();
+        SootMethod m = new SootMethod("wide", Collections.<Type>emptyList(), VoidType.v(), Modifier.STATIC);
+        program.addMethod(m);
+        JimpleBody b = j.newBody(m);
+        m.setActiveBody(b);
+        SootClass boxClass = Scene.v().getSootClass(Box.class.getName());
+        RefType box = boxClass.getType();
+        SootMethodRef init = boxClass.getMethod("void <init>()").makeRef();
+        SootMethodRef put = boxClass.getMethod("void put(int,java.lang.Object)").makeRef();
+        Local prev = null;
+        for (int i = 0; i < 200; i++) {
+            Local l = j.newLocal("b" + i, box);
+            b.getLocals().add(l);
+            b.getUnits().add(j.newAssignStmt(l, j.newNewExpr(box)));
+            b.getUnits().add(j.newInvokeStmt(j.newSpecialInvokeExpr(l, init)));
+            if (prev != null) {
+                b.getUnits().add(j.newInvokeStmt(j.newVirtualInvokeExpr(l, put, IntConstant.v(i % 4), prev)));
+            }
+            prev = l;
+        }
+        b.getUnits().add(j.newReturnVoidStmt());
+    }
+
+    private static Result run(String propagator, String setImpl) {
+        List<SootMethod> methods = load();
+        Transform spark = new Transform("cg.spark", SparkTransformer.v());
+        PhaseOptions.v().setPhaseOption(spark, "enabled:true");
+        PhaseOptions.v().setPhaseOption(spark, "propagator:" + propagator);
+        PhaseOptions.v().setPhaseOption(spark, "set-impl:" + setImpl);
+        // Spark only makes its PAG available through the on-demand analysis.
+        PhaseOptions.v().setPhaseOption(spark, "cs-demand:true");
+        SparkTransformer.v().transform("cg.spark", PhaseOptions.v().getPhaseOptions(spark));
+
+        final Result result = new Result();
+        for (SootClass c : Scene.v().getClasses()) {
+            for (SootMethod m : c.getMethods()) {
+                if (!m.hasActiveBody()) {
+                    continue;
+                }
+                int i = 0;
+                for (Unit u : m.getActiveBody().getUnits()) {
+                    String position = m.getSignature() + "#" + i++;
+                    result.positions.put(u, position);
+                    for (ValueBox box : u.getUseBoxes()) {
+                        result.positions.put(box.getValue(), position);
+                    }
+                }
+            }
+        }
+        PAG pag = ((DemandPointsTo) Scene.v().getPointsToAnalysis()).getPAG();
+        for (SootMethod m : methods) {
+            for (Local l : m.getActiveBody().getLocals()) {
+                if (!(l.getType() instanceof RefLikeType)) {
+                    continue;
+                }
+                final Set<String> sites = new HashSet<String>();
+                ((PointsToSetInternal) pag.reachingObjects(l)).forall(new P2SetVisitor() {
+                    public void visit(Node n) {
+                        sites.add(result.position(((AllocNode) n).getNewExpr()));
+                    }
+                });
+                result.pointsTo.put(m.getSignature() + " " + l.getName(), sites);
+            }
+        }
+        for (Iterator<Edge> it = Scene.v().getCallGraph().listener(); it.hasNext();) {
+            Edge e = it.next();
+            result.edges.add(e.src() + " " + result.position(e.srcUnit()) + " -> " + e.tgt() + " " + e.kind());
+        }
+        return result;
+    }
+
+    private static void assertSameResult(String setImpl) {
+        Result expected = run("worklist", setImpl);
+        Result actual = run("parallel", setImpl);
+
+        int nonEmpty = 0;
+        for (Map.Entry<String, Set<String>> e : expected.pointsTo.entrySet()) {
+            assertEquals(e.getKey(), e.getValue(), actual.pointsTo.get(e.getKey()));
+            if (!e.getValue().isEmpty()) {
+                nonEmpty++;
+            }
+        }
+        assertEquals(expected.pointsTo.size(), actual.pointsTo.size());
+        assertTrue("No local points to anything", nonEmpty > 0);
+        assertEquals(expected.edges, actual.edges);
+    }
+
+    @Test
+    public void testHybridSets() {
+        assertSameResult("hybrid");
+    }
+
+    @Test
+    public void testBitSets() {
+        assertSameResult("bit");
+    }
+
+    @Test
+    public void testSharedSetsSequential() {
+        assertSameResult("sharedroaring");
+    }
+}
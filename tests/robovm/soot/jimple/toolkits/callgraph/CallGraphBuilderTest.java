@@ -0,0 +1,252 @@
+/*
+ * Copyright (C) 2014 RoboVM AB
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/gpl-2.0.html>.
+ */
+package soot.jimple.toolkits.callgraph;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import soot.G;
+import soot.Local;
+import soot.MethodOrMethodContext;
+import soot.Modifier;
+import soot.Scene;
+import soot.SootClass;
+import soot.SootMethod;
+import soot.Type;
+import soot.VoidType;
+import soot.jimple.Jimple;
+import soot.jimple.JimpleBody;
+import soot.jimple.toolkits.pointer.DumbPointerAnalysis;
+import soot.options.Options;
+
+/**
+ * Tests that {@link CallGraphBuilder#update} gives the same call graph as
+ * building it again after classes were changed.
+ */
+public class CallGraphBuilderTest {
+
+    private SootClass base;
+    private SootClass sub;
+    private SootClass util;
+    private SootClass main;
+    private CallGraphBuilder builder;
+
+    /**
+     * Builds the classes
+     * <pre>
+     * class Base { void foo() { Util.a(); } }
+     * class Sub extends Base { void foo() { Util.b(); } }
+     * class Util { static void a() {} static void b() {} static void c() {} }
+     * class Main { static void main() { Base x = new Sub(); x.foo(); Util.c(); } }
+     * </pre>
+     * and their CHA call graph.
+     */
+    @Before
+    public void setUp() {
+        G.reset();
+        Options.v().set_soot_classpath(System.getProperty("java.class.path"));
+        Options.v().set_allow_phantom_refs(true);
+        Scene.v().loadNecessaryClasses();
+
+        util = newClass("Util", null);
+        for (String name : new String[] { "a", "b", "c" }) {
+            newMethod(util, name, Modifier.STATIC);
+        }
+        base = newClass("Base", null);
+        calls(newMethod(base, "foo", 0), "a");
+        sub = newClass("Sub", base);
+        calls(newMethod(sub, "foo", 0), "b");
+        main = newClass("Main", null);
+        mainCalls("c");
+
+        Scene.v().setEntryPoints(Collections.singletonList(main.getMethodByName("main")));
+        builder = new CallGraphBuilder(DumbPointerAnalysis.v());
+        builder.build();
+    }
+
+    private static SootClass newClass(String name, SootClass superclass) {
+        SootClass c = new SootClass(name);
+        c.setSuperclass(superclass != null ? superclass : Scene.v().getSootClass("java.lang.Object"));
+        Scene.v().addClass(c);
+        c.setApplicationClass();
+        return c;
+    }
+
+    private static SootMethod newMethod(SootClass c, String name, int modifiers) {
+        SootMethod m = new SootMethod(name, Collections.<Type>emptyList(), VoidType.v(), modifiers);
+        c.addMethod(m);
+        JimpleBody b = Jimple.v().newBody(m);
+        b.getUnits().add(Jimple.v().newReturnVoidStmt());
+        m.setActiveBody(b);
+        return m;
+    }
+
+    /** Makes m call the static method of Util with the given name first. */
+    private void calls(SootMethod m, String name) {
+        m.getActiveBody().getUnits().addFirst(Jimple.v().newInvokeStmt(
+                Jimple.v().newStaticInvokeExpr(util.getMethodByName(name).makeRef())));
+    }
+
+    /** Gives Main a new main method, which calls x.foo() on a new Sub and
+     * the static method of Util with the given name. */
+    private void mainCalls(String name) {
+        Jimple j = Jimple.v();
+        SootMethod m = main.declaresMethodByName("main") ? main.getMethodByName("main")
+                : newMethod(main, "main", Modifier.STATIC);
+        JimpleBody b = j.newBody(m);
+        Local x = j.newLocal("x", base.getType());
+        b.getLocals().add(x);
+        b.getUnits().add(j.newAssignStmt(x, j.newNewExpr(sub.getType())));
+        b.getUnits().add(j.newInvokeStmt(j.newVirtualInvokeExpr(x, base.getMethodByName("foo").makeRef())));
+        b.getUnits().add(j.newInvokeStmt(j.newStaticInvokeExpr(util.getMethodByName(name).makeRef())));
+        b.getUnits().add(j.newReturnVoidStmt());
+        m.setActiveBody(b);
+    }
+
+    private static Set<List<Object>> edges() {
+        CallGraph cg = Scene.v().getCallGraph();
+        Set<List<Object>> result = new HashSet<List<Object>>();
+        for (Iterator<MethodOrMethodContext> mIt = cg.sourceMethods(); mIt.hasNext();) {
+            for (Iterator<Edge> it = cg.edgesOutOf(mIt.next()); it.hasNext();) {
+                Edge e = it.next();
+                result.add(Arrays.<Object>asList(e.src(), e.srcUnit(), e.tgt(), e.kind()));
+            }
+        }
+        assertEquals(cg.size(), result.size());
+        return result;
+    }
+
+    private static Set<SootMethod> reachable() {
+        ReachableMethods rm = Scene.v().getReachableMethods();
+        Set<SootMethod> result = new HashSet<SootMethod>();
+        for (Iterator<MethodOrMethodContext> it = rm.listener(); it.hasNext();) {
+            MethodOrMethodContext m = it.next();
+            if (rm.contains(m)) {
+                result.add(m.method());
+            }
+        }
+        return result;
+    }
+
+    private void update(SootClass... changed) {
+        Scene.v().initiateIncrementalBuild();
+        try {
+            builder.update(Arrays.asList(changed));
+        } finally {
+            Scene.v().incrementalBuildFinished();
+        }
+    }
+
+    /**
+     * Updates the call graph for the changed classes, then builds it again
+     * from scratch and compares the two.
+     */
+    private void assertUpdateEqualsRebuild(SootClass... changed) {
+        Set<List<Object>> before = edges();
+        update(changed);
+        Set<List<Object>> updated = edges();
+        Set<SootMethod> updatedReachable = reachable();
+        assertFalse("The change must affect the call graph", before.equals(updated));
+
+        Scene.v().releaseCallGraph();
+        Scene.v().releaseReachableMethods();
+        Scene.v().releaseFastHierarchy();
+        new CallGraphBuilder(DumbPointerAnalysis.v()).build();
+        assertEquals(edges(), updated);
+        assertEquals(reachable(), updatedReachable);
+    }
+
+    @Test
+    public void testChangedBody() {
+        mainCalls("a");
+        assertUpdateEqualsRebuild(main);
+        assertFalse(reachable().contains(util.getMethodByName("c")));
+    }
+
+    @Test
+    public void testRemovedMethod() {
+        sub.removeMethod(sub.getMethodByName("foo"));
+        assertUpdateEqualsRebuild(sub);
+        assertFalse(reachable().contains(util.getMethodByName("b")));
+    }
+
+    @Test
+    public void testAddedSubclass() {
+        SootClass sub2 = newClass("Sub2", base);
+        calls(newMethod(sub2, "foo", 0), "c");
+        assertUpdateEqualsRebuild(sub2);
+        assertTrue(reachable().contains(sub2.getMethodByName("foo")));
+    }
+
+    /**
+     * Builds the call graph again with {@link CallGraphBuilder#buildInWaves}
+     * after adding a third level to the hierarchy. The waves must find every
+     * edge and reachable method build() finds; the only differences allowed
+     * are further edges to phantom methods, which a wave may add to phantom
+     * classes before all of its virtual calls are resolved.
+     */
+    @Test
+    public void testBuildInWaves() {
+        SootClass sub2 = newClass("Sub2", sub);
+        calls(newMethod(sub2, "foo", 0), "c");
+        Scene.v().releaseCallGraph();
+        Scene.v().releaseReachableMethods();
+        Scene.v().releaseFastHierarchy();
+        new CallGraphBuilder(DumbPointerAnalysis.v()).build();
+        Set<List<Object>> built = edges();
+        Set<SootMethod> builtReachable = reachable();
+
+        Scene.v().releaseCallGraph();
+        Scene.v().releaseReachableMethods();
+        Scene.v().releaseFastHierarchy();
+        new CallGraphBuilder(DumbPointerAnalysis.v()).buildInWaves(4);
+        Set<List<Object>> waves = edges();
+        Set<SootMethod> wavesReachable = reachable();
+
+        assertTrue(waves.containsAll(built));
+        assertTrue(wavesReachable.containsAll(builtReachable));
+        waves.removeAll(built);
+        for (List<Object> e : waves) {
+            assertTrue(e.toString(), ((SootMethod) e.get(2)).isPhantom());
+        }
+        wavesReachable.removeAll(builtReachable);
+        for (SootMethod m : wavesReachable) {
+            assertTrue(m.toString(), m.isPhantom());
+        }
+        assertTrue(builtReachable.contains(sub2.getMethodByName("foo")));
+        assertTrue(builtReachable.contains(util.getMethodByName("b")));
+        assertTrue(builtReachable.contains(util.getMethodByName("c")));
+    }
+
+    @Test
+    public void testRemovedClass() {
+        SootClass sub2 = newClass("Sub2", base);
+        calls(newMethod(sub2, "foo", 0), "c");
+        update(sub2);
+        Scene.v().removeClass(sub2);
+        assertUpdateEqualsRebuild(sub2);
+    }
+}
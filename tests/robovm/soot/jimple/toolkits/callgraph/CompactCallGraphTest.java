@@ -0,0 +1,270 @@
+/*
+ * Copyright (C) 2014 RoboVM AB
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/gpl-2.0.html>.
+ */
+package soot.jimple.toolkits.callgraph;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import soot.G;
+import soot.Kind;
+import soot.Scene;
+import soot.SootClass;
+import soot.SootMethod;
+import soot.Type;
+import soot.Unit;
+import soot.VoidType;
+import soot.jimple.Jimple;
+import soot.util.queue.QueueReader;
+
+/**
+ * Tests {@link CompactCallGraph} against a set of edges.
+ */
+public class CompactCallGraphTest {
+
+    private List<SootMethod> methods;
+    private List<Unit> units;
+
+    @Before
+    public void setUp() {
+        G.reset();
+        SootClass c = new SootClass("C");
+        Scene.v().addClass(c);
+        methods = new ArrayList<SootMethod>();
+        for (int i = 0; i < 50; i++) {
+            SootMethod m = new SootMethod("m" + i, Collections.<Type>emptyList(), VoidType.v());
+            c.addMethod(m);
+            methods.add(m);
+        }
+        units = new ArrayList<Unit>();
+        for (int i = 0; i < 200; i++) {
+            units.add(Jimple.v().newNopStmt());
+        }
+    }
+
+    private Edge randomEdge(Random r) {
+        int u = r.nextInt(units.size());
+        Kind kind = r.nextBoolean() ? Kind.VIRTUAL : Kind.SPECIAL;
+        // Some edges, like finalizer calls, have no source unit.
+        Unit unit = u < 10 ? null : units.get(u);
+        return new Edge(methods.get(u % methods.size()), unit, methods.get(r.nextInt(methods.size())), kind);
+    }
+
+    private static Set<Edge> toSet(Iterator<Edge> it) {
+        Set<Edge> ret = new HashSet<Edge>();
+        while (it.hasNext()) {
+            assertTrue(ret.add(it.next()));
+        }
+        return ret;
+    }
+
+    private void assertSameEdges(Set<Edge> expected, CallGraph actual) {
+        assertEquals(expected.size(), actual.size());
+        for (SootMethod m : methods) {
+            Set<Edge> out = new HashSet<Edge>();
+            Set<Edge> in = new HashSet<Edge>();
+            for (Edge e : expected) {
+                if (e.src() == m) {
+                    out.add(e);
+                }
+                if (e.tgt() == m) {
+                    in.add(e);
+                }
+            }
+            assertEquals(out, toSet(actual.edgesOutOf(m)));
+            assertEquals(in, toSet(actual.edgesInto(m)));
+            assertEquals(in.isEmpty(), actual.isEntryMethod(m));
+        }
+        for (Unit u : units) {
+            Set<Edge> out = new HashSet<Edge>();
+            for (Edge e : expected) {
+                if (e.srcUnit() == u) {
+                    out.add(e);
+                }
+            }
+            assertEquals(out, toSet(actual.edgesOutOf(u)));
+        }
+        assertEquals(expected, toSet(actual.listener()));
+    }
+
+    @Test
+    public void testAddAndRemove() {
+        Random r = new Random(1);
+        Set<Edge> expected = new HashSet<Edge>();
+        CompactCallGraph actual = new CompactCallGraph();
+        List<Edge> added = new ArrayList<Edge>();
+        for (int i = 0; i < 3000; i++) {
+            Edge e = randomEdge(r);
+            assertEquals(expected.add(e), actual.addEdge(e));
+            added.add(e);
+        }
+        assertSameEdges(expected, actual);
+
+        for (int i = 0; i < added.size(); i += 3) {
+            Edge e = added.get(i);
+            assertEquals(expected.remove(e), actual.removeEdge(e));
+        }
+        assertSameEdges(expected, actual);
+
+        for (int i = 0; i < added.size(); i += 2) {
+            Edge e = added.get(i);
+            assertEquals(expected.add(e), actual.addEdge(e));
+        }
+        assertSameEdges(expected, actual);
+    }
+
+    @Test
+    public void testListeners() {
+        Random r = new Random(2);
+        CompactCallGraph cg = new CompactCallGraph();
+        Edge first = randomEdge(r);
+        cg.addEdge(first);
+        QueueReader<Edge> all = cg.listener();
+        QueueReader<Edge> fresh = cg.newListener();
+        Edge second = randomEdge(r);
+        while (second.equals(first)) {
+            second = randomEdge(r);
+        }
+        cg.addEdge(second);
+        assertEquals(first, all.next());
+        assertSame(second, all.next());
+        assertFalse(all.hasNext());
+        assertSame(second, fresh.next());
+        assertFalse(fresh.hasNext());
+    }
+
+    /**
+     * Returns count distinct edges, with hundreds of edges into each target.
+     */
+    private List<Edge> popularEdges(int count) {
+        List<Edge> edges = new ArrayList<Edge>();
+        for (int i = 0; i < count; i++) {
+            Kind kind = i % 2 == 0 ? Kind.VIRTUAL : Kind.SPECIAL;
+            edges.add(new Edge(methods.get(i % methods.size()), units.get(i % units.size()),
+                    methods.get(i / units.size() % methods.size()), kind));
+        }
+        return edges;
+    }
+
+    @Test
+    public void testReclaimRemovedRows() {
+        Random r = new Random(3);
+        Set<Edge> expected = new HashSet<Edge>();
+        CompactCallGraph actual = new CompactCallGraph();
+        List<Edge> edges = popularEdges(20000);
+        for (int round = 0; round < 5; round++) {
+            Collections.shuffle(edges, r);
+            for (Edge e : edges) {
+                assertEquals(expected.add(e), actual.addEdge(e));
+            }
+            for (Edge e : edges.subList(0, edges.size() * 9 / 10)) {
+                assertEquals(expected.remove(e), actual.removeEdge(e));
+            }
+            assertSameEdges(expected, actual);
+        }
+        // Without reclaiming, there would be a row for each edge added.
+        assertTrue(actual.rowCount() < 2 * edges.size());
+    }
+
+    @Test
+    public void testIteratorsSurviveChanges() {
+        CompactCallGraph cg = new CompactCallGraph();
+        SootMethod popular = methods.get(0);
+        List<Edge> edges = new ArrayList<Edge>();
+        for (int i = 0; i < units.size(); i++) {
+            Edge e = new Edge(methods.get(1), units.get(i), popular, Kind.VIRTUAL);
+            cg.addEdge(e);
+            edges.add(e);
+        }
+        Iterator<Edge> it = cg.edgesInto(popular);
+        for (int i = 0; i < 100; i++) {
+            assertEquals(edges.get(i), it.next());
+        }
+        // Removes the edge the iterator is on and the ones after it, and
+        // enough other edges for the rows to be reclaimed.
+        for (int i = 1; i < units.size(); i++) {
+            if (i != 150) {
+                cg.removeEdge(edges.get(i));
+            }
+        }
+        // Grows the graph past the 256 rows which fit the table, so that it
+        // is rebuilt while most of its rows belong to removed edges.
+        Random r = new Random(4);
+        while (cg.rowCount() <= 300) {
+            cg.addEdge(randomEdge(r));
+        }
+        assertEquals(edges.get(150), it.next());
+        int rows = cg.rowCount();
+        while (it.hasNext()) {
+            it.next();
+        }
+
+        // Once no iterator is in progress, the rows are reclaimed.
+        for (Edge e : toSet(cg.edgesOutOf(methods.get(1)))) {
+            cg.removeEdge(e);
+        }
+        for (int i = 0; i < 50; i++) {
+            for (Iterator<Edge> out = cg.edgesOutOf(methods.get(i)); out.hasNext();) {
+                cg.removeEdge(out.next());
+            }
+        }
+        assertEquals(0, cg.size());
+        for (int i = 0; i < rows; i++) {
+            cg.addEdge(randomEdge(r));
+        }
+        assertTrue(cg.rowCount() < rows + cg.size());
+    }
+
+    @Test
+    public void testDroppedListenersAreReleased() throws InterruptedException {
+        Random r = new Random(5);
+        CompactCallGraph cg = new CompactCallGraph();
+        QueueReader<Edge> kept = cg.listener();
+        cg.listener();
+        cg.listener();
+        assertEquals(3, cg.listenerCount());
+        for (int i = 0; i < 100 && cg.listenerCount() > 1; i++) {
+            System.gc();
+            Thread.sleep(10);
+            cg.addEdge(randomEdge(r));
+        }
+        assertEquals(1, cg.listenerCount());
+        assertTrue(kept.hasNext());
+    }
+
+    @Test
+    public void testFindEdge() {
+        CompactCallGraph cg = new CompactCallGraph();
+        Unit u = units.get(20);
+        Edge e = new Edge(methods.get(0), u, methods.get(1), Kind.VIRTUAL);
+        cg.addEdge(e);
+        assertEquals(e, cg.findEdge(u, methods.get(1)));
+        assertNull(cg.findEdge(u, methods.get(2)));
+        assertNull(cg.findEdge(units.get(21), methods.get(1)));
+        assertFalse(cg.isEntryMethod(methods.get(1)));
+        assertTrue(cg.isEntryMethod(methods.get(0)));
+    }
+}
@@ -0,0 +1,270 @@
+/*
+ * Copyright (C) 2014 RoboVM AB
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/gpl-2.0.html>.
+ */
+package soot.jimple.toolkits.callgraph;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import soot.AnySubType;
+import soot.FastHierarchy;
+import soot.G;
+import soot.Modifier;
+import soot.RefType;
+import soot.Scene;
+import soot.SootClass;
+import soot.SootMethod;
+import soot.Type;
+import soot.VoidType;
+import soot.options.Options;
+import soot.util.NumberedString;
+import soot.util.queue.ChunkedQueue;
+import soot.util.queue.QueueReader;
+
+/**
+ * Tests that {@link DispatchIndex} resolves virtual calls like the vtable
+ * walk and the subtype traversal {@link VirtualCalls} used before.
+ */
+public class DispatchIndexTest {
+
+    private List<SootClass> classes;
+    private List<NumberedString> subSigs;
+    private SootClass i, a, b, c, d, e, f, p, q;
+
+    /**
+     * Builds the classes
+     * <pre>
+     * interface I { void run(); }
+     * abstract class A implements I { abstract void foo(); void bar() {} }
+     * class B extends A { void foo() {} void run() {} }
+     * class C extends B { void bar() {} }
+     * class D extends C { void foo() {} }
+     * abstract class E extends A { void foo() {} abstract void bar(); }
+     * class F extends E implements I { }
+     * phantom class P { }
+     * class Q extends P implements I { void run() {} }
+     * </pre>
+     */
+    @Before
+    public void setUp() {
+        G.reset();
+        Options.v().set_soot_classpath(System.getProperty("java.class.path"));
+        Options.v().set_allow_phantom_refs(true);
+        Scene.v().loadNecessaryClasses();
+
+        classes = new ArrayList<SootClass>();
+        i = newClass("I", Modifier.INTERFACE | Modifier.ABSTRACT, null);
+        newMethod(i, "run", Modifier.ABSTRACT);
+        a = newClass("A", Modifier.ABSTRACT, null, i);
+        newMethod(a, "foo", Modifier.ABSTRACT);
+        newMethod(a, "bar", 0);
+        b = newClass("B", 0, a);
+        newMethod(b, "foo", 0);
+        newMethod(b, "run", 0);
+        c = newClass("C", 0, b);
+        newMethod(c, "bar", 0);
+        d = newClass("D", 0, c);
+        newMethod(d, "foo", 0);
+        e = newClass("E", Modifier.ABSTRACT, a);
+        newMethod(e, "foo", 0);
+        newMethod(e, "bar", Modifier.ABSTRACT);
+        f = newClass("F", 0, e, i);
+        p = Scene.v().getSootClass("P");
+        p.setPhantomClass();
+        classes.add(p);
+        q = newClass("Q", 0, p, i);
+        newMethod(q, "run", 0);
+
+        subSigs = new ArrayList<NumberedString>();
+        for (String name : new String[] { "foo", "bar", "run", "baz", "missing" }) {
+            subSigs.add(Scene.v().getSubSigNumberer().findOrAdd("void " + name + "()"));
+        }
+    }
+
+    private SootClass newClass(String name, int modifiers, SootClass superclass, SootClass... interfaces) {
+        SootClass cl = new SootClass(name, modifiers);
+        if (!cl.isInterface()) {
+            cl.setSuperclass(superclass != null ? superclass : Scene.v().getSootClass("java.lang.Object"));
+        }
+        for (SootClass iface : interfaces) {
+            cl.addInterface(iface);
+        }
+        Scene.v().addClass(cl);
+        cl.setApplicationClass();
+        classes.add(cl);
+        return cl;
+    }
+
+    private static SootMethod newMethod(SootClass cl, String name, int modifiers) {
+        SootMethod m = new SootMethod(name, Collections.<Type>emptyList(), VoidType.v(), modifiers);
+        cl.addMethod(m);
+        return m;
+    }
+
+    /** The former VirtualCalls.resolveNonSpecial, without its cache. */
+    private static SootMethod oldResolveNonSpecial(RefType t, NumberedString subSig) {
+        SootClass cls = t.getSootClass();
+        if (cls.declaresMethod(subSig)) {
+            SootMethod m = cls.getMethod(subSig);
+            return m.isConcrete() || m.isNative() || m.isPhantom() ? m : null;
+        }
+        return cls.hasSuperclass() ? oldResolveNonSpecial(cls.getSuperclass().getType(), subSig) : null;
+    }
+
+    /**
+     * The former traversal of VirtualCalls for an AnySubType: the base type,
+     * then the concrete classes below it in breadth first order. The base
+     * type used to be left out the first time a base type was seen, which
+     * was a bug of its cache, and to be listed twice afterwards if it was
+     * concrete, which only resolved the same targets again.
+     */
+    private static List<RefType> oldSubTypes(RefType base) {
+        FastHierarchy fh = Scene.v().getOrMakeFastHierarchy();
+        List<RefType> ret = new ArrayList<RefType>();
+        ret.add(base);
+        LinkedList<SootClass> worklist = new LinkedList<SootClass>();
+        Set<SootClass> workset = new HashSet<SootClass>();
+        worklist.add(base.getSootClass());
+        workset.add(base.getSootClass());
+        while (!worklist.isEmpty()) {
+            SootClass cl = worklist.removeFirst();
+            List<SootClass> next = new ArrayList<SootClass>();
+            if (cl.isInterface()) {
+                next.addAll(fh.getAllImplementersOfInterface(cl));
+            } else {
+                if (cl.isConcrete() && cl != base.getSootClass()) {
+                    ret.add(cl.getType());
+                }
+                next.addAll(fh.getSubclassesOf(cl));
+            }
+            for (SootClass sub : next) {
+                if (workset.add(sub)) {
+                    worklist.add(sub);
+                }
+            }
+        }
+        return ret;
+    }
+
+    private List<SootMethod> resolve(Type t, Type declaredType, NumberedString subSig) {
+        ChunkedQueue<SootMethod> targets = new ChunkedQueue<SootMethod>();
+        QueueReader<SootMethod> reader = targets.reader();
+        VirtualCalls.v().resolve(t, declaredType, subSig, null, targets);
+        List<SootMethod> ret = new ArrayList<SootMethod>();
+        while (reader.hasNext()) {
+            ret.add(reader.next());
+        }
+        return ret;
+    }
+
+    private List<SootMethod> oldResolve(AnySubType t, Type declaredType, NumberedString subSig) {
+        FastHierarchy fh = Scene.v().getOrMakeFastHierarchy();
+        List<SootMethod> ret = new ArrayList<SootMethod>();
+        for (RefType st : oldSubTypes(t.getBase())) {
+            if (declaredType == null || fh.canStoreType(st, declaredType)) {
+                SootMethod m = oldResolveNonSpecial(st, subSig);
+                if (m != null) {
+                    ret.add(m);
+                }
+            }
+        }
+        return ret;
+    }
+
+    @Test
+    public void testResolveNonSpecial() {
+        DispatchIndex index = new DispatchIndex(Scene.v().getOrMakeFastHierarchy());
+        for (SootClass cl : classes) {
+            for (NumberedString subSig : subSigs) {
+                assertSame(cl + " " + subSig, oldResolveNonSpecial(cl.getType(), subSig),
+                        index.resolve(cl.getType(), subSig));
+            }
+        }
+        // Overriding across levels of the hierarchy
+        assertSame(b.getMethodByName("foo"), index.resolve(c.getType(), subSigs.get(0)));
+        assertSame(d.getMethodByName("foo"), index.resolve(d.getType(), subSigs.get(0)));
+        assertSame(c.getMethodByName("bar"), index.resolve(d.getType(), subSigs.get(1)));
+        assertSame(a.getMethodByName("bar"), index.resolve(b.getType(), subSigs.get(1)));
+        // Abstract methods, including ones overriding a concrete method
+        assertNull(index.resolve(a.getType(), subSigs.get(0)));
+        assertNull(index.resolve(e.getType(), subSigs.get(1)));
+        assertNull(index.resolve(f.getType(), subSigs.get(1)));
+        assertNull(index.resolve(i.getType(), subSigs.get(2)));
+        // Interface methods are not inherited from the interfaces
+        assertNull(index.resolve(f.getType(), subSigs.get(2)));
+    }
+
+    @Test
+    public void testAnySubType() {
+        DispatchIndex index = new DispatchIndex(Scene.v().getOrMakeFastHierarchy());
+        for (SootClass cl : classes) {
+            RefType t = cl.getType();
+            assertEquals(cl.toString(), oldSubTypes(t), Arrays.asList(index.subTypesOf(t)));
+            for (NumberedString subSig : subSigs) {
+                for (SootClass declared : classes) {
+                    assertEquals(cl + " " + declared + " " + subSig,
+                            oldResolve(AnySubType.v(t), declared.getType(), subSig),
+                            resolve(AnySubType.v(t), declared.getType(), subSig));
+                }
+            }
+        }
+        // Interface receivers
+        Set<SootMethod> runs = new HashSet<SootMethod>(resolve(AnySubType.v(i.getType()), i.getType(), subSigs.get(2)));
+        assertEquals(new HashSet<SootMethod>(Arrays.asList(b.getMethodByName("run"), q.getMethodByName("run"))),
+                runs);
+        Set<SootMethod> foos = new HashSet<SootMethod>(resolve(AnySubType.v(i.getType()), i.getType(), subSigs.get(0)));
+        assertEquals(new HashSet<SootMethod>(Arrays.asList(b.getMethodByName("foo"),
+                d.getMethodByName("foo"), e.getMethodByName("foo"))), foos);
+    }
+
+    @Test
+    public void testCanStoreType() {
+        FastHierarchy fh = Scene.v().getOrMakeFastHierarchy();
+        DispatchIndex index = new DispatchIndex(fh);
+        for (SootClass child : classes) {
+            for (SootClass parent : classes) {
+                assertEquals(child + " " + parent, fh.canStoreType(child.getType(), parent.getType()),
+                        index.canStoreType(child.getType(), parent.getType()));
+            }
+        }
+    }
+
+    @Test
+    public void testPhantomGainsMethods() {
+        DispatchIndex index = new DispatchIndex(Scene.v().getOrMakeFastHierarchy());
+        NumberedString baz = subSigs.get(3);
+        assertNull(index.resolve(q.getType(), baz));
+        assertNull(index.resolve(p.getType(), baz));
+
+        // As SootMethodRefImpl does for a method missing from a phantom class
+        SootMethod m = newMethod(p, "baz", 0);
+        m.setPhantom(true);
+        assertSame(m, oldResolveNonSpecial(q.getType(), baz));
+        assertSame(m, index.resolve(q.getType(), baz));
+        assertSame(m, index.resolve(p.getType(), baz));
+        assertSame(q.getMethodByName("run"), index.resolve(q.getType(), subSigs.get(2)));
+    }
+}
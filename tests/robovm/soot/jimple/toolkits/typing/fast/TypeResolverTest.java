@@ -0,0 +1,195 @@
+/*
+ * Copyright (C) 2014 RoboVM AB
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/gpl-2.0.html>.
+ */
+package soot.jimple.toolkits.typing.fast;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import soot.BooleanType;
+import soot.ByteType;
+import soot.G;
+import soot.Local;
+import soot.Modifier;
+import soot.RefType;
+import soot.Scene;
+import soot.SootClass;
+import soot.SootMethod;
+import soot.Type;
+import soot.UnknownType;
+import soot.VoidType;
+import soot.jimple.IntConstant;
+import soot.jimple.Jimple;
+import soot.jimple.JimpleBody;
+import soot.options.Options;
+
+/**
+ * Tests the bounded mode of {@link TypeResolver} against the exact
+ * inference.
+ */
+public class TypeResolverTest {
+
+    interface I {
+    }
+
+    interface J {
+    }
+
+    static class A implements I, J {
+    }
+
+    static class B implements I, J {
+    }
+
+    private static final int BRANCHES = 4;
+
+    private static void load() {
+        G.reset();
+        Options.v().set_soot_classpath(System.getProperty("java.class.path"));
+        Options.v().set_allow_phantom_refs(true);
+        for (Class<?> cls : new Class<?>[] { I.class, J.class, A.class, B.class }) {
+            Scene.v().loadClassAndSupport(cls.getName()).setApplicationClass();
+        }
+        Scene.v().loadNecessaryClasses();
+    }
+
+    private static JimpleBody newBody(String name) {
+        SootClass c = new SootClass("Fixture", Modifier.PUBLIC);
+        c.setSuperclass(Scene.v().getSootClass("java.lang.Object"));
+        Scene.v().addClass(c);
+        SootMethod m = new SootMethod(name, Collections.<Type>emptyList(), VoidType.v(), Modifier.STATIC);
+        c.addMethod(m);
+        JimpleBody b = Jimple.v().newBody(m);
+        m.setActiveBody(b);
+        return b;
+    }
+
+    private static Local newLocal(JimpleBody b, String name) {
+        Local l = Jimple.v().newLocal(name, UnknownType.v());
+        b.getLocals().add(l);
+        return l;
+    }
+
+    /**
+     * a = 1; b = a; c = b; bools[0] = c; bytes[0] = c. The locals a, b and c
+     * are connected by copies, and a is the representative of their class.
+     * c cannot be both a boolean and a byte, so the integer types are
+     * resolved by the integer TypeResolver, from the types of the locals.
+     */
+    private static JimpleBody copiedIntegers() {
+        Jimple j = Jimple.v();
+        JimpleBody body = newBody("copiedIntegers");
+        Local a = newLocal(body, "a");
+        Local b = newLocal(body, "b");
+        Local c = newLocal(body, "c");
+        Local bools = newLocal(body, "bools");
+        Local bytes = newLocal(body, "bytes");
+        body.getUnits().add(j.newAssignStmt(a, IntConstant.v(1)));
+        body.getUnits().add(j.newAssignStmt(b, a));
+        body.getUnits().add(j.newAssignStmt(c, b));
+        body.getUnits().add(j.newAssignStmt(bools, j.newNewArrayExpr(BooleanType.v(), IntConstant.v(1))));
+        body.getUnits().add(j.newAssignStmt(j.newArrayRef(bools, IntConstant.v(0)), c));
+        body.getUnits().add(j.newAssignStmt(bytes, j.newNewArrayExpr(ByteType.v(), IntConstant.v(1))));
+        body.getUnits().add(j.newAssignStmt(j.newArrayRef(bytes, IntConstant.v(0)), c));
+        body.getUnits().add(j.newReturnVoidStmt());
+        return body;
+    }
+
+    /**
+     * Each x<i> is assigned both an A and a B, so it may be typed as I or
+     * as J, and there are 2^BRANCHES typings. y = x0 is a copy.
+     */
+    private static JimpleBody branching() {
+        Jimple j = Jimple.v();
+        JimpleBody body = newBody("branching");
+        RefType a = Scene.v().getSootClass(A.class.getName()).getType();
+        RefType b = Scene.v().getSootClass(B.class.getName()).getType();
+        List<Local> xs = new ArrayList<Local>();
+        for (int i = 0; i < BRANCHES; i++) {
+            Local x = newLocal(body, "x" + i);
+            body.getUnits().add(j.newAssignStmt(x, j.newNewExpr(a)));
+            body.getUnits().add(j.newAssignStmt(x, j.newNewExpr(b)));
+            xs.add(x);
+        }
+        Local y = newLocal(body, "y");
+        body.getUnits().add(j.newAssignStmt(y, xs.get(0)));
+        body.getUnits().add(j.newReturnVoidStmt());
+        return body;
+    }
+
+    // The bodies are typed in different Scenes, so their types are compared
+    // by name.
+    private static List<String> types(JimpleBody body) {
+        List<String> types = new ArrayList<String>();
+        for (Local l : body.getLocals()) {
+            types.add(l.getName() + ":" + l.getType());
+        }
+        return types;
+    }
+
+    @Test
+    public void testBoundedCopiedIntegers() {
+        load();
+        JimpleBody exact = copiedIntegers();
+        new TypeResolver(exact).inferTypes();
+
+        load();
+        JimpleBody bounded = copiedIntegers();
+        TypeResolver tr = new TypeResolver(bounded, 8);
+        assertEquals(3, tr.getLocalClassCount());
+        tr.inferTypes();
+
+        assertEquals(types(exact), types(bounded));
+        for (Local l : bounded.getLocals()) {
+            assertFalse(l.getName(), l.getType() instanceof BottomType);
+        }
+    }
+
+    @Test
+    public void testExactBranching() {
+        load();
+        JimpleBody body = branching();
+        TypeResolver tr = new TypeResolver(body);
+        assertEquals(body.getLocalCount(), tr.getLocalClassCount());
+        tr.inferTypes();
+        assertTrue(tr.getPeakTypingCount() >= 1 << BRANCHES);
+        assertEquals(0, tr.getPrunedTypingCount());
+    }
+
+    @Test
+    public void testBoundedBranching() {
+        load();
+        JimpleBody body = branching();
+        TypeResolver tr = new TypeResolver(body, 2);
+        // y is in the class of x0.
+        assertEquals(BRANCHES, tr.getLocalClassCount());
+        tr.inferTypes();
+        assertEquals(2, tr.getPeakTypingCount());
+        assertTrue(tr.getPrunedTypingCount() > 0);
+
+        RefType i = Scene.v().getSootClass(I.class.getName()).getType();
+        RefType j = Scene.v().getSootClass(J.class.getName()).getType();
+        for (Local l : body.getLocals()) {
+            assertTrue(l + ":" + l.getType(), l.getType().equals(i) || l.getType().equals(j));
+        }
+        assertEquals(body.getLocals().getFirst().getType(), body.getLocals().getLast().getType());
+    }
+}
@@ -0,0 +1,300 @@
+/*
+ * Copyright (C) 2014 RoboVM AB
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/gpl-2.0.html>.
+ */
+package soot.jimple.toolkits.typing.fast;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+import soot.BooleanType;
+import soot.ByteType;
+import soot.CharType;
+import soot.G;
+import soot.IntType;
+import soot.Local;
+import soot.ShortType;
+import soot.Type;
+import soot.UnknownType;
+import soot.jimple.Jimple;
+
+/**
+ * Tests that copies of a {@link Typing} do not affect one another, and that
+ * {@link Typing#compare(Typing, Typing, IHierarchy)} gives the same result
+ * as comparing the typings local by local.
+ */
+public class TypingTest {
+
+    private static final IHierarchy HIERARCHY = new AugHierarchy();
+
+    private static List<Local> newLocals(int n) {
+        List<Local> locals = new ArrayList<Local>();
+        for (int i = 0; i < n; i++) {
+            locals.add(Jimple.v().newLocal("l" + i, UnknownType.v()));
+        }
+        return locals;
+    }
+
+    /**
+     * The types of a chain, each an ancestor of the ones before it.
+     */
+    private static Type[] chain() {
+        return new Type[] { BottomType.v(), Integer1Type.v(), Integer127Type.v(),
+                Integer32767Type.v(), ShortType.v(), IntType.v() };
+    }
+
+    /**
+     * Types which are not ancestors of some types of the chain, nor their
+     * descendants.
+     */
+    private static Type[] others() {
+        return new Type[] { BooleanType.v(), ByteType.v(), CharType.v() };
+    }
+
+    private static Type randomType(Random random) {
+        if (random.nextInt(8) == 0) {
+            Type[] others = others();
+            return others[random.nextInt(others.length)];
+        }
+        Type[] chain = chain();
+        return chain[random.nextInt(chain.length)];
+    }
+
+    /**
+     * Returns a type which is an ancestor of t, or t itself if t is not in
+     * the chain.
+     */
+    private static Type widen(Type t, Random random) {
+        Type[] chain = chain();
+        for (int i = 0; i < chain.length; i++) {
+            if (TypeResolver.typesEqual(chain[i], t)) {
+                return chain[i + random.nextInt(chain.length - i)];
+            }
+        }
+        return t;
+    }
+
+    /**
+     * The comparison of the typings as it was written before typings shared
+     * their nodes: local by local, in the order in which the locals were
+     * added.
+     */
+    private static int compareLocals(Typing a, Typing b, List<Local> locals, IHierarchy h) {
+        int r = 0;
+        for (Local v : locals) {
+            Type ta = a.get(v), tb = b.get(v);
+            if (ta == null) {
+                continue;
+            }
+            int cmp;
+            if (h.ancestor(ta, tb)) {
+                cmp = 1;
+            } else if (h.ancestor(tb, ta)) {
+                cmp = -1;
+            } else {
+                return -2;
+            }
+            if ((cmp == 1 && r == -1) || (cmp == -1 && r == 1)) {
+                return 2;
+            }
+            if (r == 0) {
+                r = cmp;
+            }
+        }
+        return r;
+    }
+
+    private static void assertTypes(Map<Local, Type> expected, Typing tg) {
+        for (Map.Entry<Local, Type> e : expected.entrySet()) {
+            assertSame(e.getKey().getName(), e.getValue(), tg.get(e.getKey()));
+        }
+    }
+
+    @Test
+    public void testNewTyping() {
+        G.reset();
+        List<Local> locals = newLocals(3);
+        Typing tg = new Typing(locals);
+        for (Local v : locals) {
+            assertSame(BottomType.v(), tg.get(v));
+        }
+        assertNull(tg.get(Jimple.v().newLocal("other", UnknownType.v())));
+        assertSame(BottomType.v(), tg.set(locals.get(1), IntType.v()));
+        assertSame(IntType.v(), tg.set(locals.get(1), ByteType.v()));
+        assertSame(ByteType.v(), tg.get(locals.get(1)));
+    }
+
+    @Test
+    public void testCopiesAreIsolated() {
+        G.reset();
+        Random random = new Random(42);
+        List<Local> locals = newLocals(100);
+        Typing original = new Typing(locals);
+        Map<Local, Type> originalTypes = new HashMap<Local, Type>();
+        for (Local v : locals) {
+            Type t = randomType(random);
+            original.set(v, t);
+            originalTypes.put(v, t);
+        }
+
+        // Copies of copies, each changed after it was copied, and each
+        // changed again after it was copied itself.
+        List<Typing> typings = new ArrayList<Typing>();
+        List<Map<Local, Type>> types = new ArrayList<Map<Local, Type>>();
+        typings.add(original);
+        types.add(originalTypes);
+        for (int i = 0; i < 50; i++) {
+            int from = random.nextInt(typings.size());
+            Typing copy = new Typing(typings.get(from));
+            Map<Local, Type> copyTypes = new HashMap<Local, Type>(types.get(from));
+            typings.add(copy);
+            types.add(copyTypes);
+            for (int k = random.nextInt(5); k > 0; k--) {
+                int j = random.nextInt(typings.size());
+                Local v = locals.get(random.nextInt(locals.size()));
+                Type t = randomType(random);
+                assertSame(types.get(j).get(v), typings.get(j).set(v, t));
+                types.get(j).put(v, t);
+            }
+            for (int j = 0; j < typings.size(); j++) {
+                assertTypes(types.get(j), typings.get(j));
+            }
+        }
+    }
+
+    @Test
+    public void testClasses() {
+        G.reset();
+        List<Local> locals = newLocals(4);
+        Map<Local, Local> classes = new HashMap<Local, Local>();
+        classes.put(locals.get(1), locals.get(0));
+        classes.put(locals.get(2), locals.get(0));
+        Typing tg = new Typing(locals, classes);
+        Typing copy = new Typing(tg);
+
+        tg.set(locals.get(2), IntType.v());
+        assertSame(IntType.v(), tg.get(locals.get(0)));
+        assertSame(IntType.v(), tg.get(locals.get(1)));
+        assertSame(BottomType.v(), tg.get(locals.get(3)));
+        for (Local v : locals) {
+            assertSame(BottomType.v(), copy.get(v));
+        }
+    }
+
+    @Test
+    public void testGrowth() {
+        G.reset();
+        // One, two and three levels of nodes.
+        List<Local> locals = newLocals(2000);
+        Typing small = new Typing(locals.subList(0, 10));
+        for (int i = 0; i < 10; i++) {
+            small.set(locals.get(i), ByteType.v());
+        }
+        Typing copy = new Typing(small);
+
+        // The copy grows past 32 and then past 1024 locals.
+        Type[] chain = chain();
+        for (int i = 10; i < locals.size(); i++) {
+            assertNull(copy.set(locals.get(i), chain[i % chain.length]));
+        }
+        for (int i = 0; i < locals.size(); i++) {
+            assertSame(i < 10 ? ByteType.v() : chain[i % chain.length], copy.get(locals.get(i)));
+        }
+
+        // The locals added to the copy have no type in the original, until
+        // it gives them one.
+        for (int i = 0; i < locals.size(); i++) {
+            assertEquals(i < 10 ? ByteType.v() : null, small.get(locals.get(i)));
+        }
+        small.set(locals.get(1500), CharType.v());
+        small.set(locals.get(3), IntType.v());
+        assertSame(CharType.v(), small.get(locals.get(1500)));
+        assertSame(IntType.v(), small.get(locals.get(3)));
+        assertSame(chain[1500 % chain.length], copy.get(locals.get(1500)));
+        assertSame(ByteType.v(), copy.get(locals.get(3)));
+    }
+
+    @Test
+    public void testCompareMatchesLocalComparison() {
+        G.reset();
+        Random random = new Random(7);
+        Set<Integer> results = new HashSet<Integer>();
+        // One, two and three levels of nodes.
+        for (int n : new int[] { 20, 300, 1100 }) {
+            List<Local> locals = newLocals(n);
+            Typing base = new Typing(locals);
+            for (Local v : locals) {
+                base.set(v, randomType(random));
+            }
+            List<Typing> typings = new ArrayList<Typing>();
+            typings.add(base);
+            for (int i = 0; i < 30; i++) {
+                Typing copy = new Typing(typings.get(random.nextInt(typings.size())));
+                // Mostly widen a few locals, so that the copies are often
+                // comparable and share most of their nodes.
+                for (int k = random.nextInt(4); k > 0; k--) {
+                    Local v = locals.get(random.nextInt(n));
+                    copy.set(v, random.nextInt(4) == 0 ? randomType(random) : widen(copy.get(v), random));
+                }
+                typings.add(copy);
+            }
+            // A typing with slots of its own.
+            Typing separate = new Typing(locals);
+            for (Local v : locals) {
+                separate.set(v, base.get(v));
+            }
+            typings.add(separate);
+
+            for (Typing a : typings) {
+                for (Typing b : typings) {
+                    int expected = compareLocals(a, b, locals, HIERARCHY);
+                    assertEquals(expected, Typing.compare(a, b, HIERARCHY));
+                    results.add(expected);
+                }
+            }
+        }
+        // Equal types compare as 1, so -1 is only possible if every type of
+        // a is narrower than that of b.
+        for (int r : new int[] { -2, 1, 2 }) {
+            assertTrue("No comparison gave " + r, results.contains(r));
+        }
+    }
+
+    @Test
+    public void testCompareAfterGrowth() {
+        G.reset();
+        List<Local> locals = newLocals(40);
+        Typing a = new Typing(locals.subList(0, 20));
+        Typing b = new Typing(a);
+        // b has more levels of nodes than a.
+        for (int i = 20; i < 40; i++) {
+            b.set(locals.get(i), IntType.v());
+        }
+        a.set(locals.get(5), Integer1Type.v());
+        assertEquals(compareLocals(a, b, locals, HIERARCHY), Typing.compare(a, b, HIERARCHY));
+        assertEquals(compareLocals(b, a, locals, HIERARCHY), Typing.compare(b, a, HIERARCHY));
+        assertEquals(1, Typing.compare(a, b, HIERARCHY));
+        assertEquals(2, Typing.compare(b, a, HIERARCHY));
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2014 RoboVM AB
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/gpl-2.0.html>.
+ */
+package soot.metrics;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import soot.Body;
+import soot.BodyTransformer;
+import soot.G;
+import soot.Pack;
+import soot.PackManager;
+import soot.PhaseOptions;
+import soot.Scene;
+import soot.SootClass;
+import soot.SootMethod;
+import soot.Transform;
+import soot.options.Options;
+
+/**
+ * Tests that {@link Metrics} reports the jb pack and its transforms to a
+ * {@link MetricsRecorder}.
+ */
+public class MetricsRecorderTest {
+
+    private static SootClass loadClass(String className) {
+        G.reset();
+        Options.v().set_soot_classpath(System.getProperty("java.class.path"));
+        Options.v().set_allow_phantom_refs(true);
+        SootClass c = Scene.v().loadClassAndSupport(className);
+        Scene.v().loadNecessaryClasses();
+        return c;
+    }
+
+    @Test
+    public void testRecordsBodyPhases() throws IOException {
+        SootClass c = loadClass("soot.metrics.MetricsRecorder");
+        MetricsRecorder recorder = new MetricsRecorder();
+        Metrics.v().addListener(recorder);
+        SootMethod m = c.getMethodByName("getSlowest");
+        Body b = m.retrieveActiveBody();
+        Metrics.v().removeListener(recorder);
+        assertFalse(Metrics.v().isEnabled());
+
+        List<PhaseMetrics> metrics = recorder.getMetrics();
+        PhaseMetrics pack = null;
+        PhaseMetrics split = null;
+        for (PhaseMetrics pm : metrics) {
+            assertSame(m, pm.getMethod());
+            assertTrue(pm.getWallTimeNanos() >= 0);
+            if (pm.getPhaseName().equals("jb")) {
+                pack = pm;
+            } else if (pm.getPhaseName().equals("jb.ls")) {
+                split = pm;
+            }
+        }
+        assertNotNull(pack);
+        assertNotNull(split);
+        assertSame("The pack finishes last", pack, metrics.get(metrics.size() - 1));
+        assertEquals(b.getUnits().size(), pack.getUnitsAfter());
+        assertEquals(b.getLocalCount(), pack.getLocalsAfter());
+        assertTrue(pack.getWallTimeNanos() >= split.getWallTimeNanos());
+        assertTrue(split.getLocalsAfter() >= split.getLocalsBefore());
+
+        StringWriter csv = new StringWriter();
+        recorder.writeCsv(csv);
+        String[] lines = csv.toString().split("\n");
+        assertEquals(metrics.size() + 1, lines.length);
+        assertTrue(lines[0].startsWith("phase,method,"));
+        assertTrue(lines[lines.length - 1].startsWith("jb,\"" + m.getSignature() + "\","));
+
+        StringWriter json = new StringWriter();
+        recorder.writeJson(json);
+        assertTrue(json.toString().startsWith("[\n{\"phase\":"));
+        assertTrue(json.toString().contains("\"method\":\"" + m.getSignature() + "\""));
+
+        assertEquals(1, recorder.getSlowest("jb", 5).size());
+    }
+
+    @Test
+    public void testFailingTransformFinishesPhases() {
+        SootClass c = loadClass("soot.metrics.MetricsRecorder");
+        Body b = c.getMethodByName("getSlowest").retrieveActiveBody();
+        Pack pack = PackManager.v().getPack("jtp");
+        Transform fail = new Transform("jtp.fail", new BodyTransformer() {
+            protected void internalTransform(Body b, String phaseName, Map options) {
+                throw new IllegalStateException("fail");
+            }
+        });
+        pack.add(fail);
+        PhaseOptions.v().setPhaseOption(pack, "enabled:true");
+        PhaseOptions.v().setPhaseOption(fail, "enabled:true");
+
+        MetricsRecorder recorder = new MetricsRecorder();
+        Metrics.v().addListener(recorder);
+        try {
+            pack.apply(b);
+            fail("IllegalStateException expected");
+        } catch (IllegalStateException e) {
+        } finally {
+            Metrics.v().removeListener(recorder);
+        }
+
+        List<PhaseMetrics> metrics = recorder.getMetrics();
+        assertEquals("jtp.fail", metrics.get(metrics.size() - 2).getPhaseName());
+        assertEquals("jtp", metrics.get(metrics.size() - 1).getPhaseName());
+    }
+
+    @Test
+    public void testDisabledWithoutListener() {
+        loadClass("soot.metrics.MetricsRecorder");
+        assertFalse(Metrics.v().isEnabled());
+        assertNull(Metrics.v().start("jb", null));
+        Metrics.v().finish(null);
+    }
+}
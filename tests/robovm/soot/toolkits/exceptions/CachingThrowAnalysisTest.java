@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2014 RoboVM AB
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/gpl-2.0.html>.
+ */
+package soot.toolkits.exceptions;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import soot.FloatType;
+import soot.G;
+import soot.IntType;
+import soot.Local;
+import soot.Scene;
+import soot.Unit;
+import soot.jimple.AssignStmt;
+import soot.jimple.DivExpr;
+import soot.jimple.IntConstant;
+import soot.jimple.Jimple;
+import soot.jimple.ThrowStmt;
+import soot.options.Options;
+
+/**
+ * Tests that {@link CachingThrowAnalysis} reuses results only while the
+ * unit is unchanged.
+ */
+public class CachingThrowAnalysisTest {
+
+    private static class CountingThrowAnalysis implements ThrowAnalysis {
+        int calls = 0;
+
+        public ThrowableSet mightThrow(Unit u) {
+            calls++;
+            return UnitThrowAnalysis.v().mightThrow(u);
+        }
+
+        public ThrowableSet mightThrowExplicitly(ThrowStmt t) {
+            return UnitThrowAnalysis.v().mightThrowExplicitly(t);
+        }
+
+        public ThrowableSet mightThrowImplicitly(ThrowStmt t) {
+            return UnitThrowAnalysis.v().mightThrowImplicitly(t);
+        }
+    }
+
+    @Test
+    public void testInvalidation() {
+        G.reset();
+        Options.v().set_soot_classpath(System.getProperty("java.class.path"));
+        Options.v().set_allow_phantom_refs(true);
+        Scene.v().loadNecessaryClasses();
+
+        Jimple j = Jimple.v();
+        Local x = j.newLocal("x", IntType.v());
+        Local a = j.newLocal("a", IntType.v());
+        Local b = j.newLocal("b", IntType.v());
+        AssignStmt s = j.newAssignStmt(x, j.newDivExpr(a, b));
+
+        CountingThrowAnalysis counting = new CountingThrowAnalysis();
+        CachingThrowAnalysis ta = new CachingThrowAnalysis(counting);
+        UnitThrowAnalysis unit = UnitThrowAnalysis.v();
+
+        ThrowableSet intDivisor = ta.mightThrow(s);
+        assertSame(intDivisor, ta.mightThrow(s));
+        assertEquals(1, counting.calls);
+
+        // Retyping the divisor changes the result.
+        b.setType(FloatType.v());
+        ThrowableSet floatDivisor = ta.mightThrow(s);
+        assertNotSame(intDivisor, floatDivisor);
+        assertSame(unit.mightThrow(s), floatDivisor);
+        assertEquals(2, counting.calls);
+
+        // So does replacing the value in one of the unit's boxes.
+        b.setType(IntType.v());
+        ((DivExpr) s.getRightOp()).setOp2(IntConstant.v(2));
+        assertSame(floatDivisor, ta.mightThrow(s));
+        assertEquals(3, counting.calls);
+        ((DivExpr) s.getRightOp()).setOp2(b);
+        assertSame(intDivisor, ta.mightThrow(s));
+        assertEquals(4, counting.calls);
+
+        ta.clear();
+        assertSame(intDivisor, ta.mightThrow(s));
+        assertEquals(5, counting.calls);
+    }
+}
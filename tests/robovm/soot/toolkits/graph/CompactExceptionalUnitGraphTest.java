@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) 2014 RoboVM AB
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/gpl-2.0.html>.
+ */
+package soot.toolkits.graph;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.Test;
+
+import soot.Body;
+import soot.G;
+import soot.Scene;
+import soot.SootClass;
+import soot.SootMethod;
+import soot.Unit;
+import soot.options.Options;
+import soot.toolkits.exceptions.ThrowAnalysis;
+
+/**
+ * Tests that {@link CompactExceptionalUnitGraph} builds the same graph as
+ * {@link ExceptionalUnitGraph}.
+ */
+public class CompactExceptionalUnitGraphTest {
+
+    private static List<Body> loadBodies(String... classNames) {
+        G.reset();
+        Options.v().set_soot_classpath(System.getProperty("java.class.path"));
+        Options.v().set_allow_phantom_refs(true);
+        List<SootClass> classes = new ArrayList<SootClass>();
+        for (String className : classNames) {
+            classes.add(Scene.v().loadClassAndSupport(className));
+        }
+        Scene.v().loadNecessaryClasses();
+        List<Body> bodies = new ArrayList<Body>();
+        for (SootClass c : classes) {
+            for (SootMethod m : c.getMethods()) {
+                if (m.isConcrete()) {
+                    bodies.add(m.retrieveActiveBody());
+                }
+            }
+        }
+        return bodies;
+    }
+
+    private static void assertSameGraph(ExceptionalUnitGraph expected, ExceptionalUnitGraph actual) {
+        assertEquals(expected.size(), actual.size());
+        assertEquals(expected.getHeads(), actual.getHeads());
+        assertEquals(expected.getTails(), actual.getTails());
+        for (Iterator<Unit> it = expected.iterator(); it.hasNext();) {
+            Unit u = it.next();
+            assertEquals(expected.getPredsOf(u), actual.getPredsOf(u));
+            assertEquals(expected.getSuccsOf(u), actual.getSuccsOf(u));
+            assertEquals(expected.getUnexceptionalPredsOf(u), actual.getUnexceptionalPredsOf(u));
+            assertEquals(expected.getUnexceptionalSuccsOf(u), actual.getUnexceptionalSuccsOf(u));
+            assertEquals(expected.getExceptionalPredsOf(u), actual.getExceptionalPredsOf(u));
+            assertEquals(expected.getExceptionalSuccsOf(u), actual.getExceptionalSuccsOf(u));
+            Collection<ExceptionalUnitGraph.ExceptionDest> e = expected.getExceptionDests(u);
+            Collection<ExceptionalUnitGraph.ExceptionDest> a = actual.getExceptionDests(u);
+            assertEquals(e.toString(), a.toString());
+        }
+    }
+
+    @Test
+    public void testSameGraph() {
+        List<Body> bodies = loadBodies("soot.coffi.BodyCache", "soot.toolkits.graph.ExceptionalUnitGraph");
+        ThrowAnalysis ta = Scene.v().getDefaultThrowAnalysis();
+        int withTraps = 0;
+        for (Body b : bodies) {
+            if (!b.getTraps().isEmpty()) {
+                withTraps++;
+            }
+            for (boolean omit : new boolean[] { false, true }) {
+                assertSameGraph(new ExceptionalUnitGraph(b, ta, omit),
+                        new CompactExceptionalUnitGraph(b, ta, omit));
+            }
+        }
+        assertTrue("Expected bodies with traps", withTraps > 0);
+    }
+
+    @Test
+    public void testInvalidUnit() {
+        List<Body> bodies = loadBodies("soot.coffi.BodyCache");
+        CompactExceptionalUnitGraph g = new CompactExceptionalUnitGraph(bodies.get(0));
+        Unit other = bodies.get(1).getUnits().getFirst();
+        assertTrue(g.getExceptionalSuccsOf(other).isEmpty());
+        try {
+            g.getSuccsOf(other);
+            fail("RuntimeException expected");
+        } catch (RuntimeException e) {
+        }
+    }
+}
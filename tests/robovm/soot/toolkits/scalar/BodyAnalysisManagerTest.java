@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2014 RoboVM AB
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/gpl-2.0.html>.
+ */
+package soot.toolkits.scalar;
+
+import static org.junit.Assert.*;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+import org.junit.Test;
+
+import soot.Body;
+import soot.G;
+import soot.Local;
+import soot.Scene;
+import soot.SootClass;
+import soot.jimple.Jimple;
+import soot.options.Options;
+import soot.util.Chain;
+import soot.util.HashChain;
+
+/**
+ * Tests that {@link BodyAnalysisManager} reuses analyses only while the
+ * chains of a body are unchanged.
+ */
+public class BodyAnalysisManagerTest {
+
+    /**
+     * A body whose local chain is not a {@link HashChain}.
+     */
+    private static class ForeignChainBody extends Body {
+        @SuppressWarnings("unchecked")
+        ForeignChainBody(Body b) {
+            super(b.getMethod());
+            importBodyContentsFrom(b);
+            final Chain<Local> delegate = localChain;
+            localChain = (Chain<Local>) Proxy.newProxyInstance(Chain.class.getClassLoader(),
+                    new Class<?>[] { Chain.class }, new InvocationHandler() {
+                        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                            try {
+                                return method.invoke(delegate, args);
+                            } catch (InvocationTargetException e) {
+                                throw e.getCause();
+                            }
+                        }
+                    });
+        }
+
+        public Object clone() {
+            return new ForeignChainBody(this);
+        }
+    }
+
+    private static Body loadBody() {
+        G.reset();
+        Options.v().set_soot_classpath(System.getProperty("java.class.path"));
+        Options.v().set_allow_phantom_refs(true);
+        SootClass c = Scene.v().loadClassAndSupport("soot.toolkits.scalar.BodyAnalysisManager");
+        Scene.v().loadNecessaryClasses();
+        return c.getMethodByName("validEntry").retrieveActiveBody();
+    }
+
+    @Test
+    public void testReuseUntilChanged() {
+        Body b = loadBody();
+        BodyAnalysisManager m = BodyAnalysisManager.v();
+        assertNotSame(m.getExceptionalUnitGraph(b), m.getExceptionalUnitGraph(b));
+
+        m.enterScope(b);
+        try {
+            LocalDefs defs = m.getLocalDefs(b);
+            assertSame(defs, m.getLocalDefs(b));
+            b.getLocals().add(Jimple.v().newLocal("unused", b.getLocals().getFirst().getType()));
+            LocalDefs changed = m.getLocalDefs(b);
+            assertNotSame(defs, changed);
+            assertSame(changed, m.getLocalDefs(b));
+            b.getUnits().addFirst(Jimple.v().newNopStmt());
+            assertNotSame(changed, m.getLocalDefs(b));
+        } finally {
+            m.exitScope(b);
+        }
+    }
+
+    @Test
+    public void testForeignChainsAreNotCached() {
+        Body b = new ForeignChainBody(loadBody());
+        assertFalse(b.getLocals() instanceof HashChain);
+        BodyAnalysisManager m = BodyAnalysisManager.v();
+        m.enterScope(b);
+        try {
+            assertNotSame(m.getLocalDefs(b), m.getLocalDefs(b));
+            assertNotSame(m.getExceptionalUnitGraph(b), m.getExceptionalUnitGraph(b));
+        } finally {
+            m.exitScope(b);
+        }
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright (C) 2014 RoboVM AB
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/gpl-2.0.html>.
+ */
+package soot.toolkits.scalar;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import soot.Body;
+import soot.G;
+import soot.IdentityUnit;
+import soot.Local;
+import soot.PhaseOptions;
+import soot.Scene;
+import soot.SootClass;
+import soot.SootMethod;
+import soot.Unit;
+import soot.options.Options;
+import soot.toolkits.graph.ExceptionalUnitGraph;
+
+/**
+ * Tests that {@link MatrixColorer} colors locals like {@link FastColorer}
+ * with unsplit-original-locals, and with no more colors per group without
+ * it.
+ */
+public class MatrixColorerTest {
+
+    /**
+     * The maps {@link LocalPacker} passes to the colorers: the groups of
+     * the locals, and the colors of the parameter locals.
+     */
+    private static class Coloring {
+        final Map<Local, Object> localToGroup = new HashMap<Local, Object>();
+        final Map<Local, Integer> localToColor = new HashMap<Local, Integer>();
+        final Map<Object, Integer> groupToColorCount = new HashMap<Object, Integer>();
+
+        Coloring(Body body) {
+            for (Local l : body.getLocals()) {
+                localToGroup.put(l, l.getType());
+                if (!groupToColorCount.containsKey(l.getType())) {
+                    groupToColorCount.put(l.getType(), 0);
+                }
+            }
+            for (Unit u : body.getUnits()) {
+                if (u instanceof IdentityUnit && ((IdentityUnit) u).getLeftOp() instanceof Local) {
+                    Local l = (Local) ((IdentityUnit) u).getLeftOp();
+                    int count = groupToColorCount.get(l.getType());
+                    localToColor.put(l, count);
+                    groupToColorCount.put(l.getType(), count + 1);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the bodies of the given classes before their locals are
+     * packed, so that there is something to color.
+     */
+    private static List<Body> loadBodies(String... classNames) {
+        G.reset();
+        Options.v().set_soot_classpath(System.getProperty("java.class.path"));
+        Options.v().set_allow_phantom_refs(true);
+        PhaseOptions.v().setPhaseOption("jb.lp", "enabled:false");
+        List<SootClass> classes = new ArrayList<SootClass>();
+        for (String className : classNames) {
+            classes.add(Scene.v().loadClassAndSupport(className));
+        }
+        Scene.v().loadNecessaryClasses();
+        List<Body> bodies = new ArrayList<Body>();
+        for (SootClass c : classes) {
+            for (SootMethod m : c.getMethods()) {
+                if (m.isConcrete()) {
+                    bodies.add(m.retrieveActiveBody());
+                }
+            }
+        }
+        return bodies;
+    }
+
+    private static final String[] CLASSES = {
+        "soot.coffi.CFG", "soot.util.HashChain", "soot.toolkits.scalar.LocalPacker"
+    };
+
+    @Test
+    public void testUnsplitSameColoring() {
+        int colored = 0;
+        for (Body body : loadBodies(CLASSES)) {
+            Coloring fast = new Coloring(body);
+            FastColorer.unsplitAssignColorsToLocals(body, fast.localToGroup, fast.localToColor,
+                    fast.groupToColorCount);
+            Coloring matrix = new Coloring(body);
+            MatrixColorer.unsplitAssignColorsToLocals(body, matrix.localToGroup, matrix.localToColor,
+                    matrix.groupToColorCount);
+            String method = body.getMethod().getSignature();
+            assertEquals(method, fast.localToColor, matrix.localToColor);
+            assertEquals(method, fast.groupToColorCount, matrix.groupToColorCount);
+            colored += body.getLocalCount();
+        }
+        assertTrue(colored > 1000);
+    }
+
+    @Test
+    public void testNoMoreColors() {
+        int locals = 0;
+        int fastColors = 0;
+        int matrixColors = 0;
+        for (Body body : loadBodies(CLASSES)) {
+            Coloring fast = new Coloring(body);
+            FastColorer.assignColorsToLocals(body, fast.localToGroup, fast.localToColor,
+                    fast.groupToColorCount);
+            Coloring matrix = new Coloring(body);
+            MatrixColorer.assignColorsToLocals(body, matrix.localToGroup, matrix.localToColor,
+                    matrix.groupToColorCount);
+            String method = body.getMethod().getSignature();
+            assertEquals(method, fast.groupToColorCount.keySet(), matrix.groupToColorCount.keySet());
+            for (Map.Entry<Object, Integer> e : fast.groupToColorCount.entrySet()) {
+                int count = matrix.groupToColorCount.get(e.getKey());
+                assertTrue(method + " " + e.getKey(), count <= e.getValue());
+                fastColors += e.getValue();
+                matrixColors += count;
+            }
+            assertEquals(method, body.getLocalCount(), matrix.localToColor.size());
+            for (Local l : body.getLocals()) {
+                int color = matrix.localToColor.get(l);
+                assertTrue(method + " " + l, color >= 0 && color < matrix.groupToColorCount.get(l.getType()));
+            }
+            // Locals of the same color must not interfere.
+            FastColorer.UnitInterferenceGraph graph = new FastColorer.UnitInterferenceGraph(body,
+                    matrix.localToGroup, new SimpleLiveLocals(new ExceptionalUnitGraph(body)));
+            for (Local l1 : body.getLocals()) {
+                for (Local l2 : body.getLocals()) {
+                    if (l1 != l2 && l1.getType().equals(l2.getType())
+                            && matrix.localToColor.get(l1).equals(matrix.localToColor.get(l2))) {
+                        assertFalse(method + " " + l1 + " " + l2, graph.localsInterfere(l1, l2));
+                    }
+                }
+            }
+            locals += body.getLocalCount();
+        }
+        assertTrue(locals > 1000);
+        assertTrue(matrixColors <= fastColors);
+    }
+}
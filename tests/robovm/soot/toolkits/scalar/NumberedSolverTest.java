@@ -0,0 +1,154 @@
+/*
+ * Copyright (C) 2014 RoboVM AB
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/gpl-2.0.html>.
+ */
+package soot.toolkits.scalar;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import soot.Body;
+import soot.G;
+import soot.Scene;
+import soot.SootClass;
+import soot.SootMethod;
+import soot.Unit;
+import soot.jimple.toolkits.annotation.nullcheck.NullnessAnalysis;
+import soot.jimple.toolkits.scalar.SlowAvailableExpressionsAnalysis;
+import soot.options.Options;
+import soot.toolkits.graph.ExceptionalUnitGraph;
+import soot.toolkits.graph.UnitGraph;
+
+/**
+ * Tests that the numbered worklist solver of {@link FlowAnalysis} and
+ * {@link ForwardBranchedFlowAnalysis} computes the same flow sets as the
+ * map-based one, for a forward, a backward and a branched analysis.
+ */
+public class NumberedSolverTest {
+
+    private static class MapBasedLiveLocals extends SimpleLiveLocalsAnalysis {
+        MapBasedLiveLocals(UnitGraph g) {
+            super(g);
+        }
+        protected boolean useNumberedSolver() {
+            return false;
+        }
+    }
+
+    private static class MapBasedAvailableExpressions extends SlowAvailableExpressionsAnalysis {
+        MapBasedAvailableExpressions(UnitGraph g) {
+            super(g);
+        }
+        protected boolean useNumberedSolver() {
+            return false;
+        }
+    }
+
+    private static class MapBasedNullness extends NullnessAnalysis {
+        MapBasedNullness(UnitGraph g) {
+            super(g);
+        }
+        protected boolean useNumberedSolver() {
+            return false;
+        }
+    }
+
+    private static List<Body> loadBodies(String... classNames) {
+        G.reset();
+        Options.v().set_soot_classpath(System.getProperty("java.class.path"));
+        Options.v().set_allow_phantom_refs(true);
+        List<SootClass> classes = new ArrayList<SootClass>();
+        for (String className : classNames) {
+            classes.add(Scene.v().loadClassAndSupport(className));
+        }
+        Scene.v().loadNecessaryClasses();
+        List<Body> bodies = new ArrayList<Body>();
+        for (SootClass c : classes) {
+            for (SootMethod m : c.getMethods()) {
+                if (m.isConcrete()) {
+                    bodies.add(m.retrieveActiveBody());
+                }
+            }
+        }
+        return bodies;
+    }
+
+    private static final String[] CLASSES = {
+        "soot.coffi.CFG", "soot.util.HashChain", "soot.toolkits.scalar.LocalPacker"
+    };
+
+    private static void assertSameFlow(String method, Unit u, FlowAnalysis<Unit, ?> expected,
+            FlowAnalysis<Unit, ?> actual) {
+        assertEquals(method + ": before " + u, expected.getFlowBefore(u), actual.getFlowBefore(u));
+        assertEquals(method + ": after " + u, expected.getFlowAfter(u), actual.getFlowAfter(u));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testBackward() {
+        int units = 0;
+        for (Body body : loadBodies(CLASSES)) {
+            UnitGraph g = new ExceptionalUnitGraph(body);
+            FlowAnalysis<Unit, ?> numbered = new SimpleLiveLocalsAnalysis(g);
+            FlowAnalysis<Unit, ?> mapBased = new MapBasedLiveLocals(g);
+            assertTrue(numbered.useNumberedSolver());
+            for (Unit u : body.getUnits()) {
+                assertSameFlow(body.getMethod().getSignature(), u, mapBased, numbered);
+                units++;
+            }
+        }
+        assertTrue(units > 1000);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testForward() {
+        int units = 0;
+        for (Body body : loadBodies(CLASSES)) {
+            UnitGraph g = new ExceptionalUnitGraph(body);
+            FlowAnalysis<Unit, ?> numbered = new SlowAvailableExpressionsAnalysis(g);
+            FlowAnalysis<Unit, ?> mapBased = new MapBasedAvailableExpressions(g);
+            assertTrue(numbered.useNumberedSolver());
+            for (Unit u : body.getUnits()) {
+                assertSameFlow(body.getMethod().getSignature(), u, mapBased, numbered);
+                units++;
+            }
+        }
+        assertTrue(units > 1000);
+    }
+
+    @Test
+    public void testBranched() {
+        int branches = 0;
+        for (Body body : loadBodies(CLASSES)) {
+            UnitGraph g = new ExceptionalUnitGraph(body);
+            NullnessAnalysis numbered = new NullnessAnalysis(g);
+            NullnessAnalysis mapBased = new MapBasedNullness(g);
+            String method = body.getMethod().getSignature();
+            for (Unit u : body.getUnits()) {
+                assertEquals(method + ": before " + u, mapBased.getFlowBefore(u), numbered.getFlowBefore(u));
+                assertEquals(method + ": fall " + u, mapBased.getFallFlowAfter(u), numbered.getFallFlowAfter(u));
+                assertEquals(method + ": branch " + u, mapBased.getBranchFlowAfter(u),
+                        numbered.getBranchFlowAfter(u));
+                branches += u.getUnitBoxes().size();
+            }
+        }
+        assertTrue(branches > 100);
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright (C) 2014 RoboVM AB
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/gpl-2.0.html>.
+ */
+package soot.util;
+
+import static org.junit.Assert.*;
+
+import java.util.Iterator;
+
+import org.junit.Test;
+
+/**
+ * Tests that iterating over an {@link ArrayNumberer} sees the objects
+ * numbered during the iteration.
+ */
+public class ArrayNumbererTest {
+
+    private static class Item implements Numberable {
+        private int number;
+
+        public void setNumber(int number) {
+            this.number = number;
+        }
+
+        public int getNumber() {
+            return number;
+        }
+    }
+
+    @Test
+    public void testIterationSeesNewObjects() {
+        ArrayNumberer<Item> numberer = new ArrayNumberer<Item>();
+        numberer.add(new Item());
+        int seen = 0;
+        // Grows the table past its initial size while iterating.
+        for (Iterator<Item> it = numberer.iterator(); it.hasNext();) {
+            Item item = it.next();
+            seen++;
+            assertEquals(seen, item.getNumber());
+            assertSame(item, numberer.get(seen));
+            if (numberer.size() < 3000) {
+                numberer.add(new Item());
+            }
+        }
+        assertEquals(3000, seen);
+        assertEquals(3000, numberer.size());
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2014 RoboVM AB
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/gpl-2.0.html>.
+ */
+package soot.util;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import soot.G;
+
+/**
+ * Tests {@link RoaringBitVector} against {@link BitVector}.
+ */
+public class RoaringBitVectorTest {
+
+    private static final int UNIVERSE = 20000;
+
+    private static void fill(Random r, RoaringBitVector rb, BitVector bv, int count, int from, int to) {
+        for (int i = 0; i < count; i++) {
+            int bit = from + r.nextInt(to - from);
+            assertEquals(bv.set(bit), rb.set(bit));
+        }
+    }
+
+    private static void assertSameBits(BitVector expected, RoaringBitVector actual) {
+        assertEquals(expected.cardinality(), actual.cardinality());
+        BitSetIterator it = expected.iterator();
+        RoaringBitVector.BitIterator rit = actual.iterator();
+        while (it.hasNext()) {
+            assertTrue(rit.hasNext());
+            assertEquals(it.next(), rit.next());
+        }
+        assertFalse(rit.hasNext());
+    }
+
+    @Test
+    public void testSetAndGet() {
+        Random r = new Random(1);
+        RoaringBitVector rb = new RoaringBitVector();
+        BitVector bv = new BitVector(UNIVERSE);
+        // Sparse in the first chunks, dense enough for words in the last.
+        fill(r, rb, bv, 300, 0, UNIVERSE);
+        fill(r, rb, bv, 2000, 16384, UNIVERSE);
+        assertSameBits(bv, rb);
+        for (int i = 0; i < UNIVERSE; i++) {
+            assertEquals(bv.get(i), rb.get(i));
+        }
+        assertFalse(rb.get(UNIVERSE * 100));
+        assertTrue(new RoaringBitVector().isEmpty());
+        assertFalse(new RoaringBitVector().iterator().hasNext());
+    }
+
+    @Test
+    public void testOrAndAndNot() {
+        Random r = new Random(2);
+        for (int round = 0; round < 50; round++) {
+            int density = 1 + r.nextInt(3000);
+            RoaringBitVector rThis = new RoaringBitVector();
+            RoaringBitVector rOr = new RoaringBitVector();
+            RoaringBitVector rNot = new RoaringBitVector();
+            BitVector bThis = new BitVector(UNIVERSE);
+            BitVector bOr = new BitVector(UNIVERSE);
+            BitVector bNot = new BitVector(UNIVERSE);
+            BitVector and = new BitVector(UNIVERSE);
+            fill(r, rThis, bThis, r.nextInt(density), 0, UNIVERSE);
+            fill(r, rOr, bOr, density, 0, UNIVERSE);
+            fill(r, rNot, bNot, r.nextInt(density), 0, UNIVERSE);
+            for (int i = 0; i < UNIVERSE; i++) {
+                if (r.nextInt(4) != 0) and.set(i);
+            }
+            BitVector bAnd = round % 2 == 0 ? and : null;
+            RoaringBitVector rNotOrNull = round % 3 == 0 ? null : rNot;
+            BitVector bNotOrNull = round % 3 == 0 ? null : bNot;
+
+            RoaringBitVector before = (RoaringBitVector) rThis.clone();
+            assertEquals(bThis.orAndAndNot(bOr, bAnd, bNotOrNull),
+                    rThis.orAndAndNot(rOr, bAnd, rNotOrNull));
+            assertSameBits(bThis, rThis);
+            assertFalse(rThis.orAndAndNot(rOr, bAnd, rNotOrNull));
+            assertEquals(before.equals(rThis), before.cardinality() == rThis.cardinality());
+
+            RoaringBitVector copy = new RoaringBitVector();
+            copy.orAndAndNot(rThis, null, null);
+            assertEquals(rThis, copy);
+            assertEquals(rThis.hashCode(), copy.hashCode());
+        }
+    }
+
+    @Test
+    public void testCacheSharesEqualSets() {
+        G.reset();
+        RoaringBitVector a = new RoaringBitVector();
+        RoaringBitVector b = new RoaringBitVector();
+        for (int i = 0; i < 1000; i += 3) {
+            a.set(i);
+            b.set(i);
+        }
+        assertSame(a, RoaringBitVectorCache.v().canonicalize(a));
+        assertSame(a, RoaringBitVectorCache.v().canonicalize(b));
+    }
+
+    @Test
+    public void testCacheMinValueHash() {
+        G.reset();
+        RoaringBitVector a = new RoaringBitVector();
+        a.set(294154239);
+        a.set(302096382);
+        assertEquals(Integer.MIN_VALUE, a.hashCode());
+        assertSame(a, RoaringBitVectorCache.v().canonicalize(a));
+    }
+}